@@ -0,0 +1,100 @@
+package com.glovoapp.backender;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic orders and couriers for the benchmarks, spread around Barcelona. Generated from fixed seeds, so every
+ * run measures the same data, and configured like application.properties.
+ */
+public final class BenchmarkData {
+
+    public static final double SLOT_DISTANCE_IN_KM = 0.5;
+    public static final List<SortingCriteria> DEFAULT_CRITERIA = Arrays.asList(
+            SortingCriteria.VIP, SortingCriteria.DISTANCE_SLOT, SortingCriteria.FOOD, SortingCriteria.ABSOLUTE_DISTANCE);
+
+    private static final long ORDERS_SEED = 42;
+    private static final long COURIERS_SEED = 4242;
+    private static final Location CENTER = new Location(41.3965463, 2.1963997);
+    private static final double SPREAD_IN_DEGREES = 0.1; // Around 11 km of latitude to each side.
+    private static final String[] DESCRIPTIONS = {
+            "I want a pizza cut into very small slices",
+            "I want a chocolate cake",
+            "2x Hot dog with Fries\n2x Kebab with Fries",
+            "1x Kebab with Fries\n1x Hot dog with Fries",
+            "Envelope with some documents",
+            "Keys",
+            "Flamingo for my pool",
+            "1x Burger with Fries\n1x Coke",
+    };
+
+    private BenchmarkData() {
+    }
+
+    public static List<Order> orders(int count) {
+        final Random random = new Random(ORDERS_SEED);
+        final List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(new Order().withId("order-" + i)
+                    .withDescription(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)])
+                    .withFood(random.nextBoolean())
+                    .withVip(random.nextInt(10) == 0)
+                    .withPickup(location(random))
+                    .withDelivery(location(random)));
+        }
+        return orders;
+    }
+
+    public static List<Courier> couriers(int count) {
+        final Random random = new Random(COURIERS_SEED);
+        final Vehicle[] vehicles = Vehicle.values();
+        final List<Courier> couriers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            couriers.add(new Courier().withId("courier-" + i)
+                    .withName("Courier " + i)
+                    .withBox(random.nextBoolean())
+                    .withVehicle(vehicles[random.nextInt(vehicles.length)])
+                    .withLocation(location(random)));
+        }
+        return couriers;
+    }
+
+    /**
+     * A courier without box on a bicycle, at the center: both filters leave out part of the orders.
+     */
+    public static Courier courier() {
+        return new Courier().withId("courier-benchmark")
+                .withName("Benchmark")
+                .withBox(false)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(CENTER);
+    }
+
+    public static OrderFilter orderFilter() {
+        return new OrderFilter("pizza,cake,flamingo", ",", 5);
+    }
+
+    public static OrderSorter orderSorter(List<SortingCriteria> criteria) {
+        final SortingPriorityConfig config = new SortingPriorityConfig();
+        for (int i = 0; i < criteria.size(); i++) {
+            config.getSortingCriteria().put(i + 1, criteria.get(i).name());
+        }
+        return new OrderSorter(config, SLOT_DISTANCE_IN_KM);
+    }
+
+    private static Location location(Random random) {
+        return new Location(CENTER.getLat() + (random.nextDouble() * 2 - 1) * SPREAD_IN_DEGREES,
+                CENTER.getLon() + (random.nextDouble() * 2 - 1) * SPREAD_IN_DEGREES);
+    }
+}
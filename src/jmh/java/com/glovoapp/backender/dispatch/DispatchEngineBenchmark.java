@@ -0,0 +1,76 @@
+package com.glovoapp.backender.dispatch;
+
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Dispatch;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.offers.OfferPipeline;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigning the synthetic orders to the whole fleet, in both modes. Exact groups are not limited in size here, so the
+ * exact mode is measured even where the application would reject it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchEngineBenchmark {
+
+    @Param({"10000", "100000"})
+    private int orders;
+
+    @Param({"100", "1000"})
+    private int couriers;
+
+    private DispatchEngine dispatchEngine;
+    private BatchOfferPipeline batchOfferPipeline;
+
+    @Setup
+    public void setUp() {
+        final OrderRepository orderRepository = new OrderRepository(OrderStorage.COLUMNAR);
+        orderRepository.reload(new ColumnarOrderStore(BenchmarkData.orders(orders)));
+        final CourierRepository courierRepository = new CourierRepository();
+        courierRepository.reload(BenchmarkData.couriers(couriers));
+
+        final OrderFilter orderFilter = BenchmarkData.orderFilter();
+        batchOfferPipeline = new BatchOfferPipeline(orderFilter,
+                new OfferPipeline(orderFilter, BenchmarkData.orderSorter(BenchmarkData.DEFAULT_CRITERIA)), 0);
+        dispatchEngine = new DispatchEngine(orderRepository, courierRepository, batchOfferPipeline, 20, Integer.MAX_VALUE, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatchEngine.shutdown();
+        batchOfferPipeline.shutdown();
+    }
+
+    @Benchmark
+    public Dispatch greedy() {
+        return dispatchEngine.dispatch(DispatchMode.GREEDY);
+    }
+
+    @Benchmark
+    public Dispatch exact() {
+        return dispatchEngine.dispatch(DispatchMode.EXACT);
+    }
+}
@@ -0,0 +1,79 @@
+package com.glovoapp.backender.filters;
+
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.repositories.OrderStorage;
+import com.glovoapp.backender.repositories.OrderStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Filtering every order of the store for one courier, with each filter on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OrderFilterBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int orders;
+
+    @Param({"OBJECTS", "COLUMNAR", "OFF_HEAP"})
+    private OrderStorage storage;
+
+    private OrderFilter orderFilter;
+    private OrderStore store;
+    private Courier courier;
+
+    @Setup
+    public void setUp() {
+        orderFilter = BenchmarkData.orderFilter();
+        store = storage.create(BenchmarkData.orders(orders));
+        courier = BenchmarkData.courier();
+    }
+
+    @Benchmark
+    public int filterByCourierBox() {
+        return count(orderFilter.filterByCourierBox(store, courier));
+    }
+
+    /**
+     * Box filter of the batch pipeline: the descriptions are scanned once for all the couriers.
+     */
+    @Benchmark
+    public int findOrdersRequiringBox() {
+        final BitSet ordersRequiringBox = orderFilter.findOrdersRequiringBox(store);
+        return count(orderFilter.filterByCourierBox(ordersRequiringBox, courier));
+    }
+
+    @Benchmark
+    public int filterByDistanceToCourier() {
+        return count(orderFilter.filterByDistanceToCourier(store, courier));
+    }
+
+    private int count(IntPredicate filter) {
+        int count = 0;
+        for (int row = 0; row < store.size(); row++) {
+            if (filter.test(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
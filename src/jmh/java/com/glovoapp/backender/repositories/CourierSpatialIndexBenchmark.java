@@ -0,0 +1,99 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The eligible couriers closest to the pickup of an order, from the KD-tree and scanning every courier. Every
+ * invocation asks for the next order, so the pickups go all over the area. The moving variant first moves the next
+ * courier to the delivery of that order, so the queries also scan the moves not yet rebuilt into the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CourierSpatialIndexBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int couriers;
+
+    @Param({"10"})
+    private int k;
+
+    private List<Courier> courierList;
+    private CourierSpatialIndex courierSpatialIndex;
+    private OrderFilter orderFilter;
+    private List<Order> orders;
+    private int nextOrder;
+    private int nextCourier;
+
+    @Setup
+    public void setUp() {
+        courierList = BenchmarkData.couriers(couriers);
+        courierSpatialIndex = new CourierSpatialIndex(courierList);
+        orderFilter = BenchmarkData.orderFilter();
+        orders = BenchmarkData.orders(1000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        courierSpatialIndex.shutdown();
+    }
+
+    @Benchmark
+    public List<Courier> findNearest() {
+        final Order order = nextOrder();
+        return courierSpatialIndex.findNearest(order.getPickup(), k, orderFilter.filterCouriers(order));
+    }
+
+    @Benchmark
+    public List<Courier> findNearest_moving() {
+        final Order order = nextOrder();
+        final Courier courier = courierList.get(nextCourier);
+        nextCourier = (nextCourier + 1) % courierList.size();
+        courierSpatialIndex.courierMoved(courier, new Courier().withId(courier.getId())
+                .withName(courier.getName())
+                .withBox(courier.getBox())
+                .withVehicle(courier.getVehicle())
+                .withLocation(order.getDelivery()));
+        return courierSpatialIndex.findNearest(order.getPickup(), k, orderFilter.filterCouriers(order));
+    }
+
+    @Benchmark
+    public List<Courier> scanAll() {
+        final Order order = nextOrder();
+        return courierList.stream()
+                .filter(orderFilter.filterCouriers(order))
+                .sorted(Comparator.comparingDouble(courier -> DistanceCalculator.calculateDistance(order.getPickup(), courier.getLocation())))
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    private Order nextOrder() {
+        final Order order = orders.get(nextOrder);
+        nextOrder = (nextOrder + 1) % orders.size();
+        return order;
+    }
+}
@@ -0,0 +1,118 @@
+package com.glovoapp.backender.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.OrderVM;
+import com.glovoapp.backender.entities.Stat;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.metrics.OfferMetrics;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.offers.OfferCache;
+import com.glovoapp.backender.offers.OfferExecutor;
+import com.glovoapp.backender.offers.OfferPipeline;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderStorage;
+import com.glovoapp.backender.sharding.ShardRouter;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortPlanCache;
+import com.glovoapp.backender.stats.StatsEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The endpoints end to end, without HTTP: the resource wired as in the application, over the synthetic orders and
+ * couriers. Every invocation asks for the orders of the next courier, so all of them are served in turn, and waits for
+ * them to be ranked on the OfferExecutor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OrderResourceBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int orders;
+
+    @Param({"100"})
+    private int couriers;
+
+    @Param({"OBJECTS", "COLUMNAR", "OFF_HEAP"})
+    private OrderStorage storage;
+
+    @Param({"0"})
+    private int offerCacheRows;
+
+    private OrderResource orderResource;
+    private BatchOfferPipeline batchOfferPipeline;
+    private OfferExecutor offerExecutor;
+    private String[] courierIds;
+    private int nextCourier;
+
+    @Setup
+    public void setUp() {
+        final OrderRepository orderRepository = new OrderRepository(storage);
+        orderRepository.reload(new ColumnarOrderStore(BenchmarkData.orders(orders)));
+        final CourierRepository courierRepository = new CourierRepository();
+        final List<Courier> courierList = BenchmarkData.couriers(couriers);
+        courierRepository.reload(courierList);
+        courierIds = courierList.stream().map(Courier::getId).toArray(String[]::new);
+
+        final OrderFilter orderFilter = BenchmarkData.orderFilter();
+        final OfferMetrics offerMetrics = new OfferMetrics(new SimpleMeterRegistry());
+        final OrderSorter orderSorter = BenchmarkData.orderSorter(BenchmarkData.DEFAULT_CRITERIA);
+        final OfferPipeline offerPipeline = new OfferPipeline(orderFilter, orderSorter, offerMetrics);
+        batchOfferPipeline = new BatchOfferPipeline(orderFilter, offerPipeline, 0);
+        offerExecutor = new OfferExecutor(0, 1000);
+        orderResource = new OrderResource(orderRepository, courierRepository, orderFilter, offerPipeline, batchOfferPipeline,
+                new OfferCache(offerCacheRows, BenchmarkData.SLOT_DISTANCE_IN_KM), new StatsEngine(orderRepository, courierRepository, orderFilter), offerMetrics,
+                offerExecutor, new SortPlanCache(orderSorter, 100), new ShardRouter(), new ObjectMapper());
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchOfferPipeline.shutdown();
+        offerExecutor.shutdown();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<OrderVM>> getCourierOrders() {
+        return orderResource.getCourierOrders(nextCourierId(), null, null, null, null).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<OrderVM>> getCourierOrders_limit20() {
+        return orderResource.getCourierOrders(nextCourierId(), 20, null, null, null).join();
+    }
+
+    // Only reads the published stats: StatsEngineBenchmark measures applying the changes.
+    @Benchmark
+    public Stat getStats() {
+        return orderResource.getStats().join();
+    }
+
+    private String nextCourierId() {
+        final String courierId = courierIds[nextCourier];
+        nextCourier = (nextCourier + 1) % courierIds.length;
+        return courierId;
+    }
+}
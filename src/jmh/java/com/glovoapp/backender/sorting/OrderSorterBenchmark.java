@@ -0,0 +1,98 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.repositories.OrderStorage;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Sorting every order of the store for one courier, under every order of the four sorting criteria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OrderSorterBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int orders;
+
+    // Criteria by priority, first to last, separated by '-' (JMH splits parameters on commas). Every permutation.
+    @Param({
+            "VIP-DISTANCE_SLOT-FOOD-ABSOLUTE_DISTANCE", "VIP-DISTANCE_SLOT-ABSOLUTE_DISTANCE-FOOD",
+            "VIP-FOOD-DISTANCE_SLOT-ABSOLUTE_DISTANCE", "VIP-FOOD-ABSOLUTE_DISTANCE-DISTANCE_SLOT",
+            "VIP-ABSOLUTE_DISTANCE-DISTANCE_SLOT-FOOD", "VIP-ABSOLUTE_DISTANCE-FOOD-DISTANCE_SLOT",
+            "DISTANCE_SLOT-VIP-FOOD-ABSOLUTE_DISTANCE", "DISTANCE_SLOT-VIP-ABSOLUTE_DISTANCE-FOOD",
+            "DISTANCE_SLOT-FOOD-VIP-ABSOLUTE_DISTANCE", "DISTANCE_SLOT-FOOD-ABSOLUTE_DISTANCE-VIP",
+            "DISTANCE_SLOT-ABSOLUTE_DISTANCE-VIP-FOOD", "DISTANCE_SLOT-ABSOLUTE_DISTANCE-FOOD-VIP",
+            "FOOD-VIP-DISTANCE_SLOT-ABSOLUTE_DISTANCE", "FOOD-VIP-ABSOLUTE_DISTANCE-DISTANCE_SLOT",
+            "FOOD-DISTANCE_SLOT-VIP-ABSOLUTE_DISTANCE", "FOOD-DISTANCE_SLOT-ABSOLUTE_DISTANCE-VIP",
+            "FOOD-ABSOLUTE_DISTANCE-VIP-DISTANCE_SLOT", "FOOD-ABSOLUTE_DISTANCE-DISTANCE_SLOT-VIP",
+            "ABSOLUTE_DISTANCE-VIP-DISTANCE_SLOT-FOOD", "ABSOLUTE_DISTANCE-VIP-FOOD-DISTANCE_SLOT",
+            "ABSOLUTE_DISTANCE-DISTANCE_SLOT-VIP-FOOD", "ABSOLUTE_DISTANCE-DISTANCE_SLOT-FOOD-VIP",
+            "ABSOLUTE_DISTANCE-FOOD-VIP-DISTANCE_SLOT", "ABSOLUTE_DISTANCE-FOOD-DISTANCE_SLOT-VIP",
+    })
+    private String criteria;
+
+    private OrderSorter orderSorter;
+    private OrderStore store;
+    private Courier courier;
+    private int[] rows;
+    private double[] distancesToCourier;
+
+    @Setup
+    public void setUp() {
+        final List<SortingCriteria> sortingCriteria = new ArrayList<>();
+        for (String criterion : criteria.split("-")) {
+            sortingCriteria.add(SortingCriteria.valueOf(criterion));
+        }
+        orderSorter = BenchmarkData.orderSorter(sortingCriteria);
+        store = OrderStorage.COLUMNAR.create(BenchmarkData.orders(orders));
+        courier = BenchmarkData.courier();
+
+        rows = new int[store.size()];
+        distancesToCourier = new double[rows.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+            distancesToCourier[row] = DistanceCalculator.calculateDistance(store.getDeliveryLat(row), store.getDeliveryLon(row),
+                    courier.getLocation().getLat(), courier.getLocation().getLon());
+        }
+    }
+
+    @Benchmark
+    public int[] sortOrders() {
+        return orderSorter.sortOrders(store, IntStream.range(0, store.size()), courier).toArray();
+    }
+
+    /**
+     * Ranking alone, distances already calculated: every order, and the first page as served with a limit.
+     */
+    @Benchmark
+    public RankedOrders rankOrders() {
+        return orderSorter.rankOrders(store, rows, distancesToCourier, Integer.MAX_VALUE, null);
+    }
+
+    @Benchmark
+    public RankedOrders rankOrders_limit20() {
+        return orderSorter.rankOrders(store, rows, distancesToCourier, 20, null);
+    }
+}
@@ -0,0 +1,89 @@
+package com.glovoapp.backender.stats;
+
+import com.glovoapp.backender.BenchmarkData;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Stat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stats after every change: reading the published ones, and moving a courier or saving an order and waiting for
+ * the engine to apply it. Every invocation moves the next courier to the pickup of the next order, or saves the next
+ * order again, so the totals change on every one of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StatsEngineBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int orders;
+
+    @Param({"100", "1000"})
+    private int couriers;
+
+    private StatsEngine statsEngine;
+    private List<Order> orderList;
+    private List<Courier> courierList;
+    private int nextOrder;
+    private int nextCourier;
+
+    @Setup
+    public void setUp() {
+        orderList = BenchmarkData.orders(orders);
+        courierList = BenchmarkData.couriers(couriers);
+        statsEngine = new StatsEngine(orderList, courierList, BenchmarkData.orderFilter());
+        statsEngine.getStat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        statsEngine.shutdown();
+    }
+
+    @Benchmark
+    public Stat getStat() {
+        return statsEngine.getStat();
+    }
+
+    @Benchmark
+    public Stat moveCourier_getStat() {
+        final Courier courier = courierList.get(nextCourier);
+        nextCourier = (nextCourier + 1) % courierList.size();
+        final Location location = nextOrder().getPickup();
+        statsEngine.moveCourier(courier.getId(), location);
+        statsEngine.awaitChanges();
+        return statsEngine.getStat();
+    }
+
+    @Benchmark
+    public Stat saveOrder_getStat() {
+        statsEngine.addOrder(nextOrder());
+        statsEngine.awaitChanges();
+        return statsEngine.getStat();
+    }
+
+    private Order nextOrder() {
+        final Order order = orderList.get(nextOrder);
+        nextOrder = (nextOrder + 1) % orderList.size();
+        return order;
+    }
+}
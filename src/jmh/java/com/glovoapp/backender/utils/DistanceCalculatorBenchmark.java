@@ -0,0 +1,63 @@
+package com.glovoapp.backender.utils;
+
+import com.glovoapp.backender.entities.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single distance, over a fixed set of location pairs so the JIT cannot fold the calculation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DistanceCalculatorBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    private final Location[] starts = new Location[PAIRS];
+    private final Location[] ends = new Location[PAIRS];
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < PAIRS; i++) {
+            starts[i] = new Location(41 + random.nextDouble(), 2 + random.nextDouble());
+            ends[i] = new Location(41 + random.nextDouble(), 2 + random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double calculateDistance() {
+        double sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += DistanceCalculator.calculateDistance(starts[i], ends[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double calculateDistance_coordinates() {
+        double sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += DistanceCalculator.calculateDistance(starts[i].getLat(), starts[i].getLon(), ends[i].getLat(), ends[i].getLon());
+        }
+        return sum;
+    }
+}
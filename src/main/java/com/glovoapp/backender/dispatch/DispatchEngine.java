@@ -0,0 +1,326 @@
+package com.glovoapp.backender.dispatch;
+
+import com.glovoapp.backender.entities.Assignment;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Dispatch;
+import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sorting.RankedOrders;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Assigns the orders to the couriers of the whole fleet, at most one order per courier and one courier per order,
+ * trying to minimise the total distance from the couriers to the pickups.
+ * A courier is only given one of the orders it would be offered: its candidates are the first orders
+ * OfferPipeline ranks for it, so the filters apply and the sorting priorities pick which orders it competes for.
+ * Candidates come from the spatial index of the deliveries, and are ranked and measured in parallel.
+ * EXACT solves every group of couriers connected by their candidates on its own, and falls back to GREEDY for the
+ * groups too large for it, so asking for fewer couriers is what keeps a dispatch exact.
+ */
+@Component
+public class DispatchEngine {
+
+    private static final int NOT_ASSIGNED = -1;
+
+    private final OrderRepository orderRepository;
+    private final CourierRepository courierRepository;
+    private final BatchOfferPipeline batchOfferPipeline;
+    private final int candidatesPerCourier;
+    private final int exactMaxSize;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public DispatchEngine(OrderRepository orderRepository,
+                          CourierRepository courierRepository,
+                          BatchOfferPipeline batchOfferPipeline,
+                          @Value("${backender.dispatch.candidates-per-courier:20}") int candidatesPerCourier,
+                          @Value("${backender.dispatch.exact-max-size:200}") int exactMaxSize,
+                          @Value("${backender.dispatch.parallelism:0}") int parallelism) {
+        this.orderRepository = orderRepository;
+        this.courierRepository = courierRepository;
+        this.batchOfferPipeline = batchOfferPipeline;
+        this.candidatesPerCourier = candidatesPerCourier;
+        this.exactMaxSize = exactMaxSize;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Assigns the current orders to every courier.
+     */
+    public Dispatch dispatch(DispatchMode mode) {
+        return dispatch(orderRepository.getSnapshot(), courierRepository.findAll(), mode);
+    }
+
+    /**
+     * Assigns the current orders to the couriers with the given ids only, such as the ones of a region. Repeated ids
+     * count once, so a courier still gets one order at most.
+     */
+    public Dispatch dispatch(DispatchMode mode, List<String> courierIds) {
+        final Set<String> uniqueCourierIds = new LinkedHashSet<>(courierIds);
+        final List<Courier> couriers = new ArrayList<>(uniqueCourierIds.size());
+        for (String courierId : uniqueCourierIds) {
+            final Courier courier = courierRepository.findById(courierId);
+            if (courier == null) {
+                throw new CourierNotFoundException();
+            }
+            couriers.add(courier);
+        }
+        return dispatch(orderRepository.getSnapshot(), couriers, mode);
+    }
+
+    Dispatch dispatch(OrderSnapshot snapshot, List<Courier> couriers, DispatchMode mode) {
+        final OrderStore store = snapshot.getStore();
+        final Map<String, RankedOrders> rankedOrders = batchOfferPipeline.rankOrders(snapshot, couriers, candidatesPerCourier);
+        final Candidates[] candidates = pool.submit(() -> IntStream.range(0, couriers.size())
+                .parallel()
+                .mapToObj(courier -> new Candidates(store, couriers.get(courier), rankedOrders.get(couriers.get(courier).getId())))
+                .toArray(Candidates[]::new)).join();
+
+        final int[] rowOfCourier = new int[couriers.size()];
+        Arrays.fill(rowOfCourier, NOT_ASSIGNED);
+        final int greedyCouriers;
+        if (mode == DispatchMode.EXACT) {
+            greedyCouriers = assignExactly(candidates, rowOfCourier);
+        } else {
+            assignGreedily(candidates, IntStream.range(0, couriers.size()).boxed().collect(Collectors.toList()), rowOfCourier);
+            greedyCouriers = couriers.size();
+        }
+
+        final List<Assignment> assignments = new ArrayList<>();
+        for (int courier = 0; courier < couriers.size(); courier++) {
+            if (rowOfCourier[courier] != NOT_ASSIGNED) {
+                assignments.add(new Assignment(couriers.get(courier).getId(), store.getId(rowOfCourier[courier]),
+                        candidates[courier].distanceTo(rowOfCourier[courier])));
+            }
+        }
+        return new Dispatch(mode.name(), assignments, couriers.size() - assignments.size(), store.size() - assignments.size(),
+                greedyCouriers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closest pairs first: every candidate pair of the couriers is visited by distance, and kept when neither the
+     * courier nor the order were taken yet. Pairs at the same distance go by the rank of the order for the courier.
+     */
+    private static void assignGreedily(Candidates[] candidates, List<Integer> couriers, int[] rowOfCourier) {
+        int pairCount = 0;
+        for (int courier : couriers) {
+            pairCount += candidates[courier].size();
+        }
+        final int[] pairCouriers = new int[pairCount];
+        final int[] pairRanks = new int[pairCount];
+        final double[] pairDistances = new double[pairCount];
+        final Integer[] pairs = new Integer[pairCount];
+        int pair = 0;
+        for (int courier : couriers) {
+            for (int rank = 0; rank < candidates[courier].size(); rank++) {
+                pairCouriers[pair] = courier;
+                pairRanks[pair] = rank;
+                pairDistances[pair] = candidates[courier].distances[rank];
+                pairs[pair] = pair++;
+            }
+        }
+        Arrays.parallelSort(pairs, (a, b) -> {
+            final int byDistance = Double.compare(pairDistances[a], pairDistances[b]);
+            if (byDistance != 0) {
+                return byDistance;
+            }
+            return pairRanks[a] != pairRanks[b] ? Integer.compare(pairRanks[a], pairRanks[b]) : Integer.compare(a, b);
+        });
+
+        final BitSet assignedRows = new BitSet();
+        for (int sortedPair : pairs) {
+            final int courier = pairCouriers[sortedPair];
+            final int row = candidates[courier].rows[pairRanks[sortedPair]];
+            if (rowOfCourier[courier] == NOT_ASSIGNED && !assignedRows.get(row)) {
+                rowOfCourier[courier] = row;
+                assignedRows.set(row);
+            }
+        }
+    }
+
+    /**
+     * As many orders as possible, with the minimum total distance among those assignments. Couriers that share no
+     * candidates with each other are independent, so every group of couriers connected by their candidates is solved
+     * on its own, in parallel. Groups with more couriers or orders than the maximum are assigned greedily. Returns the
+     * number of couriers assigned greedily.
+     */
+    private int assignExactly(Candidates[] candidates, int[] rowOfCourier) {
+        final List<List<Integer>> groups = findConnectedCouriers(candidates);
+        final boolean[] tooLarge = new boolean[groups.size()];
+        int greedyCouriers = 0;
+        for (int group = 0; group < groups.size(); group++) {
+            final List<Integer> couriers = groups.get(group);
+            tooLarge[group] = couriers.size() > exactMaxSize || countRows(candidates, couriers) > exactMaxSize;
+            if (tooLarge[group]) {
+                greedyCouriers += couriers.size();
+            }
+        }
+        // Groups write the rows of different couriers, and share no candidate order.
+        pool.submit(() -> IntStream.range(0, groups.size()).parallel().forEach(group -> {
+            if (tooLarge[group]) {
+                assignGreedily(candidates, groups.get(group), rowOfCourier);
+            } else {
+                assignExactly(candidates, groups.get(group), rowOfCourier);
+            }
+        })).join();
+        return greedyCouriers;
+    }
+
+    private static void assignExactly(Candidates[] candidates, List<Integer> couriers, int[] rowOfCourier) {
+        final Map<Integer, Integer> columnsByRow = new LinkedHashMap<>();
+        double feasibleTotal = 0;
+        for (int courier : couriers) {
+            for (int rank = 0; rank < candidates[courier].size(); rank++) {
+                columnsByRow.putIfAbsent(candidates[courier].rows[rank], columnsByRow.size());
+                feasibleTotal += candidates[courier].distances[rank];
+            }
+        }
+        final int[] rows = columnsByRow.keySet().stream().mapToInt(Integer::intValue).toArray();
+
+        // Pairs that are not candidates cost more than all the candidate pairs together, so the fewer of them, the better.
+        final double notCandidate = feasibleTotal + 1;
+        final double[][] cost = new double[couriers.size()][rows.length];
+        for (int i = 0; i < couriers.size(); i++) {
+            Arrays.fill(cost[i], notCandidate);
+            final Candidates courierCandidates = candidates[couriers.get(i)];
+            for (int rank = 0; rank < courierCandidates.size(); rank++) {
+                cost[i][columnsByRow.get(courierCandidates.rows[rank])] = courierCandidates.distances[rank];
+            }
+        }
+
+        // The algorithm assigns every row of the matrix, so the smaller side goes in the rows.
+        if (couriers.size() <= rows.length) {
+            final int[] columnOfCourier = HungarianAlgorithm.solve(cost);
+            for (int i = 0; i < couriers.size(); i++) {
+                if (cost[i][columnOfCourier[i]] < notCandidate) {
+                    rowOfCourier[couriers.get(i)] = rows[columnOfCourier[i]];
+                }
+            }
+        } else {
+            final int[] courierOfColumn = HungarianAlgorithm.solve(transpose(cost));
+            for (int j = 0; j < rows.length; j++) {
+                if (cost[courierOfColumn[j]][j] < notCandidate) {
+                    rowOfCourier[couriers.get(courierOfColumn[j])] = rows[j];
+                }
+            }
+        }
+    }
+
+    // Couriers grouped with union-find, joined through the orders they have in common.
+    private static List<List<Integer>> findConnectedCouriers(Candidates[] candidates) {
+        final int[] parents = new int[candidates.length];
+        for (int courier = 0; courier < parents.length; courier++) {
+            parents[courier] = courier;
+        }
+        final Map<Integer, Integer> firstCourierByRow = new HashMap<>();
+        for (int courier = 0; courier < candidates.length; courier++) {
+            for (int row : candidates[courier].rows) {
+                final Integer firstCourier = firstCourierByRow.putIfAbsent(row, courier);
+                if (firstCourier != null) {
+                    parents[find(parents, courier)] = find(parents, firstCourier);
+                }
+            }
+        }
+
+        final Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int courier = 0; courier < candidates.length; courier++) {
+            if (candidates[courier].size() > 0) {
+                groups.computeIfAbsent(find(parents, courier), root -> new ArrayList<>()).add(courier);
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int find(int[] parents, int courier) {
+        while (parents[courier] != courier) {
+            parents[courier] = parents[parents[courier]];
+            courier = parents[courier];
+        }
+        return courier;
+    }
+
+    private static int countRows(Candidates[] candidates, List<Integer> couriers) {
+        final BitSet rows = new BitSet();
+        for (int courier : couriers) {
+            for (int row : candidates[courier].rows) {
+                rows.set(row);
+            }
+        }
+        return rows.cardinality();
+    }
+
+    private static double[][] transpose(double[][] matrix) {
+        final double[][] transposed = new double[matrix[0].length][matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                transposed[j][i] = matrix[i][j];
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Orders a courier can be given, in the order it is offered them, with the distance from the courier to their pickup.
+     * Orders without a pickup location can't be given to anyone.
+     */
+    private static class Candidates {
+        private final int[] rows;
+        private final double[] distances;
+
+        Candidates(OrderStore store, Courier courier, RankedOrders rankedOrders) {
+            final int[] candidateRows = new int[rankedOrders.size()];
+            final double[] candidateDistances = new double[rankedOrders.size()];
+            int size = 0;
+            for (int position = 0; position < rankedOrders.size(); position++) {
+                final int row = rankedOrders.getRow(position);
+                final double distance = DistanceCalculator.calculateDistance(store.getPickupLat(row), store.getPickupLon(row),
+                        courier.getLocation().getLat(), courier.getLocation().getLon());
+                if (!Double.isNaN(distance)) {
+                    candidateRows[size] = row;
+                    candidateDistances[size++] = distance;
+                }
+            }
+            this.rows = Arrays.copyOf(candidateRows, size);
+            this.distances = Arrays.copyOf(candidateDistances, size);
+        }
+
+        int size() {
+            return rows.length;
+        }
+
+        double distanceTo(int row) {
+            for (int rank = 0; rank < rows.length; rank++) {
+                if (rows[rank] == row) {
+                    return distances[rank];
+                }
+            }
+            throw new IllegalArgumentException("Not a candidate: " + row);
+        }
+    }
+}
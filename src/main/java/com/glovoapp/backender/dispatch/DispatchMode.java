@@ -0,0 +1,12 @@
+package com.glovoapp.backender.dispatch;
+
+public enum DispatchMode {
+    /**
+     * Closest pairs first. Fast for the whole fleet, but not always the minimum total distance.
+     */
+    GREEDY,
+    /**
+     * Minimum total distance, for small batches.
+     */
+    EXACT
+}
@@ -0,0 +1,82 @@
+package com.glovoapp.backender.dispatch;
+
+import java.util.Arrays;
+
+/**
+ * Minimum cost assignment of every row of a cost matrix to a different column, with no more rows than columns.
+ * Runs in O(rows^2 * columns) with row and column potentials.
+ */
+final class HungarianAlgorithm {
+
+    private HungarianAlgorithm() {
+    }
+
+    /**
+     * Returns the column assigned to every row.
+     */
+    static int[] solve(double[][] cost) {
+        final int rows = cost.length;
+        final int columns = rows == 0 ? 0 : cost[0].length;
+        if (rows > columns) {
+            throw new IllegalArgumentException("More rows than columns: " + rows + " > " + columns);
+        }
+
+        // 1-based: column 0 and row 0 stand for "not assigned yet".
+        final double[] rowPotential = new double[rows + 1];
+        final double[] columnPotential = new double[columns + 1];
+        final int[] rowOfColumn = new int[columns + 1];
+        final int[] previousColumn = new int[columns + 1];
+        final double[] minSlack = new double[columns + 1];
+        final boolean[] used = new boolean[columns + 1];
+
+        for (int row = 1; row <= rows; row++) {
+            rowOfColumn[0] = row;
+            int column = 0;
+            Arrays.fill(minSlack, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            // Grows a tree of tight edges from the row until it reaches a free column.
+            do {
+                used[column] = true;
+                final int treeRow = rowOfColumn[column];
+                double delta = Double.POSITIVE_INFINITY;
+                int nextColumn = 0;
+                for (int j = 1; j <= columns; j++) {
+                    if (!used[j]) {
+                        final double slack = cost[treeRow - 1][j - 1] - rowPotential[treeRow] - columnPotential[j];
+                        if (slack < minSlack[j]) {
+                            minSlack[j] = slack;
+                            previousColumn[j] = column;
+                        }
+                        if (minSlack[j] < delta) {
+                            delta = minSlack[j];
+                            nextColumn = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= columns; j++) {
+                    if (used[j]) {
+                        rowPotential[rowOfColumn[j]] += delta;
+                        columnPotential[j] -= delta;
+                    } else {
+                        minSlack[j] -= delta;
+                    }
+                }
+                column = nextColumn;
+            } while (rowOfColumn[column] != 0);
+            // Flips the augmenting path back to the row.
+            do {
+                final int previous = previousColumn[column];
+                rowOfColumn[column] = rowOfColumn[previous];
+                column = previous;
+            } while (column != 0);
+        }
+
+        final int[] columnOfRow = new int[rows];
+        for (int j = 1; j <= columns; j++) {
+            if (rowOfColumn[j] != 0) {
+                columnOfRow[rowOfColumn[j] - 1] = j - 1;
+            }
+        }
+        return columnOfRow;
+    }
+}
@@ -0,0 +1,28 @@
+package com.glovoapp.backender.entities;
+
+/**
+ * An order given to a courier by a dispatch, with the distance the courier has to travel to pick it up.
+ */
+public class Assignment {
+    private final String courierId;
+    private final String orderId;
+    private final double pickupDistanceInKm;
+
+    public Assignment(String courierId, String orderId, double pickupDistanceInKm) {
+        this.courierId = courierId;
+        this.orderId = orderId;
+        this.pickupDistanceInKm = pickupDistanceInKm;
+    }
+
+    public String getCourierId() {
+        return courierId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public double getPickupDistanceInKm() {
+        return pickupDistanceInKm;
+    }
+}
@@ -0,0 +1,22 @@
+package com.glovoapp.backender.entities;
+
+/**
+ * A courier that can take an order, with the distance it has to travel to pick it up.
+ */
+public class CourierDistance {
+    private final Courier courier;
+    private final double pickupDistanceInKm;
+
+    public CourierDistance(Courier courier, double pickupDistanceInKm) {
+        this.courier = courier;
+        this.pickupDistanceInKm = pickupDistanceInKm;
+    }
+
+    public Courier getCourier() {
+        return courier;
+    }
+
+    public double getPickupDistanceInKm() {
+        return pickupDistanceInKm;
+    }
+}
@@ -0,0 +1,54 @@
+package com.glovoapp.backender.entities;
+
+import java.util.List;
+
+/**
+ * To be used for exposing a fleet-wide assignment of orders to couriers through the API
+ */
+public class Dispatch {
+    private final String mode;
+    private final List<Assignment> assignments;
+    private final int unassignedCouriers;
+    private final int unassignedOrders;
+    private final int greedyCouriers;
+
+    public Dispatch(String mode, List<Assignment> assignments, int unassignedCouriers, int unassignedOrders,
+                    int greedyCouriers) {
+        this.mode = mode;
+        this.assignments = assignments;
+        this.unassignedCouriers = unassignedCouriers;
+        this.unassignedOrders = unassignedOrders;
+        this.greedyCouriers = greedyCouriers;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public List<Assignment> getAssignments() {
+        return assignments;
+    }
+
+    public int getUnassignedCouriers() {
+        return unassignedCouriers;
+    }
+
+    public int getUnassignedOrders() {
+        return unassignedOrders;
+    }
+
+    /**
+     * Couriers assigned greedily: all of them in GREEDY mode, and the ones of the groups too large for EXACT.
+     */
+    public int getGreedyCouriers() {
+        return greedyCouriers;
+    }
+
+    public double getTotalPickupDistanceInKm() {
+        double total = 0;
+        for (Assignment assignment : assignments) {
+            total += assignment.getPickupDistanceInKm();
+        }
+        return total;
+    }
+}
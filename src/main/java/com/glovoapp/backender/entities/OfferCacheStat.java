@@ -0,0 +1,44 @@
+package com.glovoapp.backender.entities;
+
+/**
+ * To be used for exposing how the offer cache is doing through the API
+ */
+public class OfferCacheStat {
+    private final long hits;
+    private final long misses;
+    private final int size;
+    private final long rows;
+    private final int maxRows;
+
+    public OfferCacheStat(long hits, long misses, int size, long rows, int maxRows) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+        this.rows = rows;
+        this.maxRows = maxRows;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
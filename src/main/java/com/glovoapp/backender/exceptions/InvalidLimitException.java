@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Limit must be greater than zero.")
+public class InvalidLimitException extends RuntimeException {
+    public InvalidLimitException() {
+        super("Limit must be greater than zero.");
+    }
+}
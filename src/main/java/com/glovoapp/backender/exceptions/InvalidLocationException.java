@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Invalid location.")
+public class InvalidLocationException extends RuntimeException {
+    public InvalidLocationException() {
+        super("Invalid location.");
+    }
+}
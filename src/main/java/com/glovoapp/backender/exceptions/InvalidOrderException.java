@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Invalid order.")
+public class InvalidOrderException extends RuntimeException {
+    public InvalidOrderException() {
+        super("Invalid order.");
+    }
+}
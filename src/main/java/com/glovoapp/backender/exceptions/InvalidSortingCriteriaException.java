@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.BAD_REQUEST, reason = "Invalid sorting criteria.")
+public class InvalidSortingCriteriaException extends RuntimeException {
+    public InvalidSortingCriteriaException(String detail) {
+        super("Invalid sorting criteria: " + detail);
+    }
+}
@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE, reason = "Too many offers waiting to be ranked.")
+public class OffersOverloadedException extends RuntimeException {
+    public OffersOverloadedException() {
+        super("Too many offers waiting to be ranked.");
+    }
+}
@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.NOT_FOUND, reason = "Order not found.")
+public class OrderNotFoundException extends RuntimeException {
+    public OrderNotFoundException() {
+        super("Order not found.");
+    }
+}
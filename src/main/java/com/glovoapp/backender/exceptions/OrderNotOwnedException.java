@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.CONFLICT, reason = "The order belongs to the shard of another instance.")
+public class OrderNotOwnedException extends RuntimeException {
+    public OrderNotOwnedException() {
+        super("The order belongs to the shard of another instance.");
+    }
+}
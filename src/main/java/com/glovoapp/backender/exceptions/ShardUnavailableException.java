@@ -0,0 +1,11 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE, reason = "An instance with part of the orders did not answer.")
+public class ShardUnavailableException extends RuntimeException {
+    public ShardUnavailableException(Throwable cause) {
+        super("An instance with part of the orders did not answer.", cause);
+    }
+}
@@ -0,0 +1,16 @@
+package com.glovoapp.backender.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A RejectedExecutionException, so Spring MVC still completes the rejected response with it, with this status.
+ */
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE, reason = "Too many responses waiting to be streamed.")
+public class StreamingOverloadedException extends RejectedExecutionException {
+    public StreamingOverloadedException() {
+        super("Too many responses waiting to be streamed.");
+    }
+}
@@ -0,0 +1,154 @@
+package com.glovoapp.backender.filters;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Aho-Corasick automaton over the excluded words. A text is scanned once, whatever the number of words,
+ * comparing characters case-insensitively and without allocating.
+ */
+public class ExcludedWordsMatcher {
+
+    private static final int ASCII = 128;
+    private static final int ROOT = 0;
+
+    // Characters of the words are mapped to a compact alphabet. Index 0 stands for any character not in the words.
+    private final int[] asciiSymbols = new int[ASCII];
+    private final char[] otherChars;
+    private final int alphabetSize;
+
+    // transitions[state * alphabetSize + symbol] is the next state, already following the failure links.
+    private final int[] transitions;
+    private final boolean[] matches;
+
+    private ExcludedWordsMatcher(List<String> words) {
+        final TreeSet<Character> alphabet = new TreeSet<>();
+        for (String word : words) {
+            for (char c : word.toCharArray()) {
+                alphabet.add(c);
+            }
+        }
+
+        final List<Character> others = new ArrayList<>();
+        int symbol = 1;
+        for (char c : alphabet) {
+            if (c < ASCII) {
+                asciiSymbols[c] = symbol++;
+            } else {
+                others.add(c);
+            }
+        }
+        this.otherChars = new char[others.size()];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherChars[i] = others.get(i);
+        }
+        this.alphabetSize = symbol + otherChars.length;
+
+        final int maxStates = 1 + words.stream().mapToInt(String::length).sum();
+        final int[] trie = new int[maxStates * alphabetSize];
+        final boolean[] terminal = new boolean[maxStates];
+        final int states = buildTrie(words, trie, terminal);
+
+        this.transitions = Arrays.copyOf(trie, states * alphabetSize);
+        this.matches = Arrays.copyOf(terminal, states);
+        linkFailures();
+    }
+
+    /**
+     * Compiles the words of the delimited list (the delimiter is a regular expression, as in String.split).
+     * Empty words are ignored, and a null list matches nothing.
+     */
+    public static ExcludedWordsMatcher compile(String words, String delimiter) {
+        final List<String> wordList = new ArrayList<>();
+        if (words != null) {
+            for (String word : words.split(delimiter)) {
+                if (!word.isEmpty()) {
+                    wordList.add(toLowerCase(word));
+                }
+            }
+        }
+        return new ExcludedWordsMatcher(wordList);
+    }
+
+    /**
+     * Whether the text contains any of the words, ignoring case.
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + symbol(Character.toLowerCase(text.charAt(i)))];
+            if (matches[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Lowercased char by char, the same way the texts are compared.
+    private static String toLowerCase(String word) {
+        final char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private int buildTrie(List<String> words, int[] trie, boolean[] terminal) {
+        int states = 1;
+        for (String word : words) {
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                final int index = state * alphabetSize + symbol(word.charAt(i));
+                if (trie[index] == ROOT) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            terminal[state] = true;
+        }
+        return states;
+    }
+
+    // Breadth-first, so the failure state of every state is complete when its children are visited.
+    private void linkFailures() {
+        final int[] failures = new int[matches.length];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            final int child = transitions[ROOT * alphabetSize + symbol];
+            if (child != ROOT) {
+                queue.add(child);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            matches[state] |= matches[failures[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                final int index = state * alphabetSize + symbol;
+                final int fallback = transitions[failures[state] * alphabetSize + symbol];
+                if (transitions[index] == ROOT) {
+                    transitions[index] = fallback;
+                } else {
+                    failures[transitions[index]] = fallback;
+                    queue.add(transitions[index]);
+                }
+            }
+        }
+    }
+
+    private int symbol(char c) {
+        if (c < ASCII) {
+            return asciiSymbols[c];
+        }
+        final int index = Arrays.binarySearch(otherChars, c);
+        return index < 0 ? 0 : alphabetSize - otherChars.length + index;
+    }
+}
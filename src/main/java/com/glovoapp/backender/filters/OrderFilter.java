@@ -4,24 +4,30 @@ import com.glovoapp.backender.entities.Courier;
 import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.entities.Vehicle;
 import com.glovoapp.backender.exceptions.InvalidDistanceThresholdException;
+import com.glovoapp.backender.repositories.OrderStore;
 import com.glovoapp.backender.utils.DistanceCalculator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.BitSet;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 
 @Component
 public class OrderFilter {
 
-    private final String excludedWords;
-    private final String excludedWordsDelimiter;
+    private final ExcludedWordsMatcher excludedWordsMatcher;
+    // The same object on every call, so stores remember what it answers for every line of the descriptions.
+    private final Predicate<String> excludedWordsPredicate;
     private final double distanceThresholdInKm;
 
     public OrderFilter(@Value("${backender.filter.excluded-words}") String excludedWords,
                        @Value("${backender.filter.excluded-words-delimiter}") String excludedWordsDelimiter,
                        @Value("${backender.filter.distance-threshold-in-km}") double distanceThresholdInKm) {
-        this.excludedWords = excludedWords;
-        this.excludedWordsDelimiter = excludedWordsDelimiter;
+        // Compiled once, so every description is scanned a single time whatever the number of words.
+        this.excludedWordsMatcher = ExcludedWordsMatcher.compile(excludedWords, excludedWordsDelimiter);
+        this.excludedWordsPredicate = this::containsExcludedWords;
         this.distanceThresholdInKm = distanceThresholdInKm;
     }
 
@@ -36,29 +42,100 @@ public class OrderFilter {
      * If the order is further than distanceThresholdInKm to the courier, will only return true if the courier has motorcycle or electric scooter.
      */
     public Predicate<Order> filterByDistanceToCourier(final Courier courier) {
-        if (distanceThresholdInKm <= 0) {
-            throw new InvalidDistanceThresholdException();
-        }
+        validateDistanceThreshold();
 
         return o -> {
             final double courierOrderDistance = DistanceCalculator.calculateDistance(o.getDelivery(), courier.getLocation());
-            return !(courierOrderDistance > distanceThresholdInKm) ||
-                    courier.getVehicle() == Vehicle.MOTORCYCLE || courier.getVehicle() == Vehicle.ELECTRIC_SCOOTER;
+            return !(courierOrderDistance > distanceThresholdInKm) || allowsLongTrips(courier);
         };
     }
 
-    private boolean containsExcludedWords(final String orderDescription) {
-        boolean containsExcludedWords = false;
-        final String orderDescriptionLower = orderDescription.toLowerCase();
+    /**
+     * Same as filterByCourierBox(Courier), over the rows of an order store.
+     */
+    public IntPredicate filterByCourierBox(final OrderStore store, final Courier courier) {
+        return row -> !store.descriptionMatches(row, excludedWordsPredicate) || courier.getBox();
+    }
 
-        for (String word : excludedWords.split(excludedWordsDelimiter)) {
-            if (orderDescriptionLower.contains(word)) {
-                containsExcludedWords = true;
-                break;
+    /**
+     * Rows of the store whose description contains any excluded word, so only couriers with a Glovo Box can take them.
+     * Lets the descriptions be scanned once for many couriers.
+     */
+    public BitSet findOrdersRequiringBox(final OrderStore store) {
+        final BitSet ordersRequiringBox = new BitSet(store.size());
+        for (int row = 0; row < store.size(); row++) {
+            if (store.descriptionMatches(row, excludedWordsPredicate)) {
+                ordersRequiringBox.set(row);
             }
         }
+        return ordersRequiringBox;
+    }
+
+    /**
+     * Same as filterByCourierBox(OrderStore, Courier), over the rows found by findOrdersRequiringBox.
+     */
+    public IntPredicate filterByCourierBox(final BitSet ordersRequiringBox, final Courier courier) {
+        return row -> !ordersRequiringBox.get(row) || courier.getBox();
+    }
+
+    /**
+     * Same as filterByDistanceToCourier(Courier), over the rows of an order store.
+     * The distance is not even calculated for the couriers that can do long trips.
+     */
+    public IntPredicate filterByDistanceToCourier(final OrderStore store, final Courier courier) {
+        final DoublePredicate distanceFilter = filterByDistance(courier);
+        final boolean allowsLongTrips = allowsLongTrips(courier);
+        final double courierLat = courier.getLocation().getLat();
+        final double courierLon = courier.getLocation().getLon();
+
+        return row -> allowsLongTrips || distanceFilter.test(DistanceCalculator.calculateDistance(
+                store.getDeliveryLat(row), store.getDeliveryLon(row), courierLat, courierLon));
+    }
+
+    /**
+     * Same rule as filterByDistanceToCourier(Courier), over a distance from the order delivery to the courier that is already calculated.
+     */
+    public DoublePredicate filterByDistance(final Courier courier) {
+        validateDistanceThreshold();
+
+        final boolean allowsLongTrips = allowsLongTrips(courier);
+        return distanceToCourierInKm -> !(distanceToCourierInKm > distanceThresholdInKm) || allowsLongTrips;
+    }
+
+    /**
+     * Maximum distance to the courier at which an order can pass filterByDistanceToCourier. Unlimited for motorcycles and electric scooters.
+     */
+    public double getMaxDistanceToCourierInKm(final Courier courier) {
+        validateDistanceThreshold();
+
+        return allowsLongTrips(courier) ? Double.POSITIVE_INFINITY : distanceThresholdInKm;
+    }
+
+    /**
+     * Couriers that can take the order: the rules of filterByCourierBox and filterByDistanceToCourier, from the side of the order.
+     * The description is scanned once, and the distance is not even calculated for the couriers that can do long trips.
+     */
+    public Predicate<Courier> filterCouriers(final Order order) {
+        validateDistanceThreshold();
+
+        final boolean requiresBox = containsExcludedWords(order.getDescription());
+        return courier -> (!requiresBox || courier.getBox())
+                && (allowsLongTrips(courier)
+                || !(DistanceCalculator.calculateDistance(order.getDelivery(), courier.getLocation()) > distanceThresholdInKm));
+    }
+
+    private void validateDistanceThreshold() {
+        if (distanceThresholdInKm <= 0) {
+            throw new InvalidDistanceThresholdException();
+        }
+    }
 
-        return containsExcludedWords;
+    private boolean allowsLongTrips(final Courier courier) {
+        return courier.getVehicle() == Vehicle.MOTORCYCLE || courier.getVehicle() == Vehicle.ELECTRIC_SCOOTER;
+    }
+
+    private boolean containsExcludedWords(final String orderDescription) {
+        return excludedWordsMatcher.matches(orderDescription);
     }
 
 }
@@ -0,0 +1,113 @@
+package com.glovoapp.backender.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of every stage of the offers of a courier, and the sizes of the order sets going through them, exposed
+ * at /actuator/metrics. Stages are timed once per request, not per order: the filters are applied to every order
+ * in a single loop, so they are timed together and each of them counts the orders it leaves out.
+ * RESPONSE_MAPPING maps the ranked orders to the view models that the framework serializes as JSON once the handler
+ * returns, and SERIALIZATION writes them as NDJSON. The whole request, serialization by the framework included, is
+ * timed as http.server.requests.
+ */
+@Component
+public class OfferMetrics {
+
+    public enum Stage {
+        COURIER_LOOKUP, CANDIDATE_LOOKUP, FILTER, SORT, RESPONSE_MAPPING, SERIALIZATION
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Timer statsTimer;
+    private final DistributionSummary candidates;
+    private final DistributionSummary excludedByBox;
+    private final DistributionSummary excludedByDistance;
+    private final DistributionSummary results;
+    private final Counter distanceCalculations;
+
+    @Autowired
+    public OfferMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, timer("backender.offers.stage", registry, "stage", stage.name().toLowerCase()));
+        }
+        this.statsTimer = timer("backender.stats", registry);
+        this.candidates = summary(registry, "candidates");
+        this.excludedByBox = summary(registry, "excluded_by_box");
+        this.excludedByDistance = summary(registry, "excluded_by_distance");
+        this.results = summary(registry, "results");
+        this.distanceCalculations = Counter.builder("backender.offers.distance.calculations")
+                .description("Haversine distances calculated between couriers and orders")
+                .register(registry);
+    }
+
+    /**
+     * Metrics registered nowhere, for components built outside of Spring.
+     */
+    public static OfferMetrics none() {
+        return new OfferMetrics(new CompositeMeterRegistry());
+    }
+
+    public <T> T time(Stage stage, Supplier<T> supplier) {
+        final long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T timeStats(Supplier<T> supplier) {
+        return statsTimer.record(supplier);
+    }
+
+    /**
+     * Sizes of the order sets filtered for one courier: the candidates and the ones each filter left out.
+     * Every candidate that passes the box filter gets its distance calculated.
+     */
+    public void recordFiltering(int candidateCount, int excludedByBoxCount, int excludedByDistanceCount) {
+        candidates.record(candidateCount);
+        excludedByBox.record(excludedByBoxCount);
+        excludedByDistance.record(excludedByDistanceCount);
+        distanceCalculations.increment(candidateCount - excludedByBoxCount);
+    }
+
+    /**
+     * Orders returned to one courier, after the page limit.
+     */
+    public void recordResults(int resultCount) {
+        results.record(resultCount);
+    }
+
+    private static Timer timer(String name, MeterRegistry registry, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary summary(MeterRegistry registry, String set) {
+        return DistributionSummary.builder("backender.offers.orders")
+                .description("Orders per courier request at each step of the offer pipeline")
+                .tags("set", set)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+}
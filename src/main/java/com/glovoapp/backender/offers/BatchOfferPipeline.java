@@ -0,0 +1,121 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sorting.RankedOrders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Ranks the orders of many couriers at once, sharing the work that does not depend on a single courier:
+ * descriptions are scanned for excluded words once per order, and couriers close to each other share one
+ * spatial query. Groups of couriers are ranked in parallel on a fork-join pool.
+ */
+@Component
+public class BatchOfferPipeline {
+
+    private static final double KM_PER_DEGREE = 111.19492664455873; // 2 * PI * 6371 / 360
+    private static final double GROUP_CELL_SIZE_IN_DEGREES = 0.01; // Around 1.1 km of latitude.
+    // Farthest a courier can be from the center of its cell, so the candidates of the center cover every courier.
+    private static final double GROUP_CELL_RADIUS_IN_KM = GROUP_CELL_SIZE_IN_DEGREES * KM_PER_DEGREE * Math.sqrt(2) / 2;
+
+    private final OrderFilter orderFilter;
+    private final OfferPipeline offerPipeline;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public BatchOfferPipeline(OrderFilter orderFilter,
+                              OfferPipeline offerPipeline,
+                              @Value("${backender.offers.batch-parallelism:0}") int parallelism) {
+        this.orderFilter = orderFilter;
+        this.offerPipeline = offerPipeline;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the rows of the snapshot store that every courier can see, sorted by priority, at most limit per courier.
+     * Same result as OfferPipeline.rankOrders for each courier on its own.
+     */
+    public Map<String, RankedOrders> rankOrders(OrderSnapshot snapshot, List<Courier> couriers, int limit) {
+        final OrderStore store = snapshot.getStore();
+        final BitSet ordersRequiringBox = orderFilter.findOrdersRequiringBox(store);
+
+        final Map<CourierGroup, List<Courier>> groups = new LinkedHashMap<>();
+        for (Courier courier : couriers) {
+            groups.computeIfAbsent(new CourierGroup(courier.getLocation(), orderFilter.getMaxDistanceToCourierInKm(courier)),
+                    group -> new ArrayList<>()).add(courier);
+        }
+
+        final Map<String, RankedOrders> rankedOrders = new ConcurrentHashMap<>(couriers.size() * 2);
+        final List<ForkJoinTask<Void>> tasks = new ArrayList<>(groups.size());
+        groups.forEach((group, groupCouriers) -> tasks.add(pool.submit(() -> {
+            final int[] candidateRows = snapshot.findNearby(group.getCenter(), group.getRadiusInKm());
+            for (Courier courier : groupCouriers) {
+                rankedOrders.put(courier.getId(), offerPipeline.rankOrders(store, ordersRequiringBox, candidateRows, courier, limit, null));
+            }
+            return null;
+        })));
+
+        // Rethrows the first failure of any group.
+        tasks.forEach(ForkJoinTask::join);
+        return rankedOrders;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Couriers in the same grid cell and with the same maximum distance to their orders.
+     */
+    private static class CourierGroup {
+        private final int latCell;
+        private final int lonCell;
+        private final double maxDistanceInKm;
+
+        CourierGroup(Location location, double maxDistanceInKm) {
+            this.latCell = (int) Math.floor(location.getLat() / GROUP_CELL_SIZE_IN_DEGREES);
+            this.lonCell = (int) Math.floor(location.getLon() / GROUP_CELL_SIZE_IN_DEGREES);
+            this.maxDistanceInKm = maxDistanceInKm;
+        }
+
+        Location getCenter() {
+            return new Location((latCell + 0.5) * GROUP_CELL_SIZE_IN_DEGREES, (lonCell + 0.5) * GROUP_CELL_SIZE_IN_DEGREES);
+        }
+
+        double getRadiusInKm() {
+            return maxDistanceInKm + GROUP_CELL_RADIUS_IN_KM;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CourierGroup that = (CourierGroup) o;
+            return latCell == that.latCell &&
+                    lonCell == that.lonCell &&
+                    Double.compare(that.maxDistanceInKm, maxDistanceInKm) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(latCell, lonCell, maxDistanceInKm);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * LRU cache of the candidate orders of a location cell, bounded by the number of rows cached. Couriers with the same
+ * capabilities, in the same cell and polling the same version of the orders, share the rows in range of any point of
+ * the cell that their box allows. Each courier then filters and ranks them from its exact location, so the distance
+ * rule and the distance slots are the same as without the cache. Cells are as big as a distance slot. Only the latest
+ * version of the orders is cached: caching a newer one drops the others, and older ones are no longer cached.
+ * Disabled when the maximum number of rows is 0.
+ */
+@Component
+public class OfferCache {
+
+    private static final double KM_PER_DEGREE = 111.19492664455873; // 2 * PI * 6371 / 360
+
+    private final int maxRows;
+    private final double cellSizeInKm;
+    private final double cellSizeInDegrees;
+    // Guarded by itself, along with the number of rows they hold and the version they are from.
+    private final LinkedHashMap<OfferKey, int[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+    private long latestVersion = Long.MIN_VALUE;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public OfferCache(@Value("${backender.offers.cache.max-rows:1000000}") int maxRows,
+                      @Value("${backender.sorting.slot-distance-in-km}") double cellSizeInKm) {
+        this.maxRows = maxRows;
+        this.cellSizeInKm = cellSizeInKm;
+        this.cellSizeInDegrees = cellSizeInKm / KM_PER_DEGREE;
+    }
+
+    public boolean isEnabled() {
+        return maxRows > 0;
+    }
+
+    /**
+     * Returns the cached candidate rows of the courier, or finds and caches them with the lookup, which gets a location
+     * and a radius in km and returns the rows in range that the box of the courier allows, in ascending order. When
+     * enabled, the lookup gets the center of the cell of the courier and a radius covering the whole cell: some rows
+     * can be further than maxDistanceInKm from the courier, so the distance filter still has to be applied.
+     */
+    public int[] findCandidates(long version, Courier courier, double maxDistanceInKm,
+                                BiFunction<Location, Double, int[]> lookup) {
+        if (!isEnabled()) {
+            return lookup.apply(courier.getLocation(), maxDistanceInKm);
+        }
+
+        // Without a maximum distance, every cell has the same candidates.
+        final boolean anyCell = Double.isInfinite(maxDistanceInKm);
+        final int latCell = anyCell ? 0 : (int) Math.floor(courier.getLocation().getLat() / cellSizeInDegrees);
+        final double lonCellSizeInDegrees = lonCellSizeInDegrees(latCell);
+        final int lonCell = anyCell ? 0 : (int) Math.floor(courier.getLocation().getLon() / lonCellSizeInDegrees);
+        final OfferKey key = new OfferKey(courier.getBox(), maxDistanceInKm, latCell, lonCell, version);
+
+        synchronized (entries) {
+            final int[] candidateRows = entries.get(key);
+            if (candidateRows != null) {
+                hits.incrementAndGet();
+                return candidateRows;
+            }
+        }
+
+        // Found out of the lock. Couriers missing the same key at once look it up twice, with the same result.
+        misses.incrementAndGet();
+        final int[] candidateRows = anyCell ? lookup.apply(courier.getLocation(), maxDistanceInKm)
+                // No point of the cell is further than its size from the center.
+                : lookup.apply(new Location((latCell + 0.5) * cellSizeInDegrees, (lonCell + 0.5) * lonCellSizeInDegrees),
+                maxDistanceInKm + cellSizeInKm);
+        synchronized (entries) {
+            put(key, candidateRows);
+        }
+        return candidateRows;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The number of candidate rows held by the cached entries.
+     */
+    public long getRows() {
+        synchronized (entries) {
+            return rows;
+        }
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    // Under the lock of the entries.
+    private void put(OfferKey key, int[] candidateRows) {
+        if (key.version < latestVersion || candidateRows.length > maxRows) {
+            return;
+        }
+        if (key.version > latestVersion) {
+            // Nobody asks for the older versions again once a newer one is polled.
+            entries.clear();
+            rows = 0;
+            latestVersion = key.version;
+        }
+        final int[] replaced = entries.put(key, candidateRows);
+        rows += candidateRows.length - (replaced == null ? 0 : replaced.length);
+        final Iterator<int[]> leastRecentlyUsed = entries.values().iterator();
+        while (rows > maxRows) {
+            rows -= leastRecentlyUsed.next().length;
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    // Longitude degrees get shorter towards the poles, so cells are widened to keep about the same size in km.
+    private double lonCellSizeInDegrees(int latCell) {
+        final double cos = Math.cos(Math.toRadians(Math.min(89, Math.abs((latCell + 0.5) * cellSizeInDegrees))));
+        return cellSizeInDegrees / cos;
+    }
+
+    private static class OfferKey {
+        private final Boolean box;
+        private final double maxDistanceInKm;
+        private final int latCell;
+        private final int lonCell;
+        private final long version;
+
+        OfferKey(Boolean box, double maxDistanceInKm, int latCell, int lonCell, long version) {
+            this.box = box;
+            this.maxDistanceInKm = maxDistanceInKm;
+            this.latCell = latCell;
+            this.lonCell = lonCell;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            OfferKey that = (OfferKey) o;
+            return Double.compare(maxDistanceInKm, that.maxDistanceInKm) == 0 &&
+                    latCell == that.latCell &&
+                    lonCell == that.lonCell &&
+                    version == that.version &&
+                    Objects.equals(box, that.box);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(box, maxDistanceInKm, latCell, lonCell, version);
+        }
+    }
+}
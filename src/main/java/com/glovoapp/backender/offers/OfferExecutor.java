@@ -0,0 +1,87 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.exceptions.OffersOverloadedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the CPU-bound work of the requests (filtering, sorting and mapping orders) on a fixed number of threads, so
+ * request threads are released while it runs. Work beyond the bounded queue is rejected instead of piling up.
+ */
+@Component
+public class OfferExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public OfferExecutor(@Value("${backender.offers.async.threads:0}") int threads,
+                         @Value("${backender.offers.async.queue-size:1000}") int queueSize) {
+        final int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    final Thread thread = new Thread(runnable, "offers-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns a future completed with the result of the supplier, or with what it threw as is, not wrapped, so the
+     * exception keeps its response status. Completed with OffersOverloadedException when the queue is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new OffersOverloadedException());
+        }
+        return future;
+    }
+
+    /**
+     * Same as supply, with the result of the dependency once it completes, so no thread waits for it. Completed with
+     * what the dependency failed with, unwrapped as well, without running the function.
+     */
+    public <U, T> CompletableFuture<T> supplyAfter(CompletableFuture<U> dependency, Function<U, T> function) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        dependency.whenComplete((value, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            supply(() -> function.apply(value)).whenComplete((result, failure) -> {
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(result);
+                }
+            });
+        });
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.metrics.OfferMetrics;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.RankedOrders;
+import com.glovoapp.backender.sorting.SortPlan;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+
+/**
+ * Filters and sorts the orders of a courier in a single pass. The distance between the courier and each order is
+ * calculated once, and the same value is used by the distance filter and by the distance sorting criteria.
+ */
+@Component
+public class OfferPipeline {
+
+    private final OrderFilter orderFilter;
+    private final OrderSorter orderSorter;
+    private final OfferMetrics offerMetrics;
+
+    public OfferPipeline(OrderFilter orderFilter, OrderSorter orderSorter) {
+        this(orderFilter, orderSorter, OfferMetrics.none());
+    }
+
+    @Autowired
+    public OfferPipeline(OrderFilter orderFilter, OrderSorter orderSorter, OfferMetrics offerMetrics) {
+        this.orderFilter = orderFilter;
+        this.orderSorter = orderSorter;
+        this.offerMetrics = offerMetrics;
+    }
+
+    /**
+     * Returns the candidate rows that the courier can see, sorted by priority.
+     */
+    public RankedOrders rankOrders(OrderStore store, int[] candidateRows, Courier courier) {
+        return rankOrders(store, candidateRows, courier, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Returns a page of the candidate rows that the courier can see, sorted by priority: at most limit rows, starting
+     * after the cursor when there is one. Candidate rows are expected in ascending order.
+     */
+    public RankedOrders rankOrders(OrderStore store, int[] candidateRows, Courier courier, int limit, OrderCursor after) {
+        return rankOrders(orderSorter.getPlan(), store, candidateRows, courier, limit, after);
+    }
+
+    /**
+     * Same as rankOrders(OrderStore, int[], Courier, int, OrderCursor), sorted by the given plan instead of the configured one.
+     */
+    public RankedOrders rankOrders(SortPlan plan, OrderStore store, int[] candidateRows, Courier courier, int limit,
+                                   OrderCursor after) {
+        return rankOrders(plan, store, orderFilter.filterByCourierBox(store, courier), candidateRows, courier, limit, after);
+    }
+
+    /**
+     * Same as rankOrders(SortPlan, OrderStore, int[], Courier, int, OrderCursor), over candidate rows that the box of
+     * the courier already allows, such as the ones cached by OfferCache.
+     */
+    public RankedOrders rankCarriedOrders(SortPlan plan, OrderStore store, int[] candidateRows, Courier courier, int limit,
+                                          OrderCursor after) {
+        return rankOrders(plan, store, row -> true, candidateRows, courier, limit, after);
+    }
+
+    /**
+     * Same as rankOrders(OrderStore, int[], Courier, int, OrderCursor), with the orders that require a box already found
+     * by OrderFilter.findOrdersRequiringBox, so the descriptions are not scanned again for every courier.
+     */
+    public RankedOrders rankOrders(OrderStore store, BitSet ordersRequiringBox, int[] candidateRows, Courier courier,
+                                   int limit, OrderCursor after) {
+        return rankOrders(orderSorter.getPlan(), store, orderFilter.filterByCourierBox(ordersRequiringBox, courier), candidateRows,
+                courier, limit, after);
+    }
+
+    private RankedOrders rankOrders(SortPlan plan, OrderStore store, IntPredicate boxFilter, int[] candidateRows, Courier courier,
+                                    int limit, OrderCursor after) {
+        final long start = System.nanoTime();
+        final DoublePredicate distanceFilter = orderFilter.filterByDistance(courier);
+        final double courierLat = courier.getLocation().getLat();
+        final double courierLon = courier.getLocation().getLon();
+
+        final int[] rows = new int[candidateRows.length];
+        final double[] distances = new double[candidateRows.length];
+        int size = 0;
+        int excludedByBox = 0;
+        for (int row : candidateRows) {
+            // The box filter goes first, so there is no distance to calculate for the orders the courier can't carry.
+            if (boxFilter.test(row)) {
+                final double distance = DistanceCalculator.calculateDistance(store.getDeliveryLat(row), store.getDeliveryLon(row), courierLat, courierLon);
+                if (distanceFilter.test(distance)) {
+                    rows[size] = row;
+                    distances[size++] = distance;
+                }
+            } else {
+                excludedByBox++;
+            }
+        }
+        final long filtered = System.nanoTime();
+        offerMetrics.record(OfferMetrics.Stage.FILTER, filtered - start);
+        offerMetrics.recordFiltering(candidateRows.length, excludedByBox, candidateRows.length - excludedByBox - size);
+
+        final RankedOrders rankedOrders = orderSorter.rankOrders(plan, store, Arrays.copyOf(rows, size), Arrays.copyOf(distances, size), limit, after);
+        offerMetrics.record(OfferMetrics.Stage.SORT, System.nanoTime() - filtered);
+        offerMetrics.recordResults(rankedOrders.size());
+        return rankedOrders;
+    }
+}
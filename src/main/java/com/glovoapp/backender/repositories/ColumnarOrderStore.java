@@ -0,0 +1,169 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Keeps every field of the orders in its own column: primitive arrays for the coordinates, bitsets for the flags,
+ * a side table for ids and a DescriptionColumn for descriptions. Only a handful of objects live on the heap besides the ids.
+ */
+public class ColumnarOrderStore implements OrderStore {
+
+    private final int size;
+    private final String[] ids;
+    private final DescriptionColumn descriptions;
+    private final BitSet food;
+    private final BitSet vip;
+    private final double[] pickupLats;
+    private final double[] pickupLons;
+    private final double[] deliveryLats;
+    private final double[] deliveryLons;
+
+    public ColumnarOrderStore(List<Order> orders) {
+        this(Builder.of(orders));
+    }
+
+    private ColumnarOrderStore(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.descriptions = builder.descriptions.build();
+        this.food = builder.food;
+        this.vip = builder.vip;
+        this.pickupLats = Arrays.copyOf(builder.pickupLats, size);
+        this.pickupLons = Arrays.copyOf(builder.pickupLons, size);
+        this.deliveryLats = Arrays.copyOf(builder.deliveryLats, size);
+        this.deliveryLons = Arrays.copyOf(builder.deliveryLons, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getId(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public String getDescription(int row) {
+        return descriptions.get(row);
+    }
+
+    @Override
+    public boolean descriptionMatches(int row, Predicate<String> matcher) {
+        return descriptions.matches(row, matcher);
+    }
+
+    @Override
+    public boolean isFood(int row) {
+        return food.get(row);
+    }
+
+    @Override
+    public boolean isVip(int row) {
+        return vip.get(row);
+    }
+
+    @Override
+    public double getPickupLat(int row) {
+        return pickupLats[row];
+    }
+
+    @Override
+    public double getPickupLon(int row) {
+        return pickupLons[row];
+    }
+
+    @Override
+    public double getDeliveryLat(int row) {
+        return deliveryLats[row];
+    }
+
+    @Override
+    public double getDeliveryLon(int row) {
+        return deliveryLons[row];
+    }
+
+    /**
+     * Appends the fields of every order to the columns, growing them as needed. Not to be used once built.
+     */
+    static class Builder implements OrderStoreBuilder {
+        private int size;
+        private String[] ids;
+        private final DescriptionColumn.Builder descriptions = new DescriptionColumn.Builder();
+        private final BitSet food = new BitSet();
+        private final BitSet vip = new BitSet();
+        private double[] pickupLats;
+        private double[] pickupLons;
+        private double[] deliveryLats;
+        private double[] deliveryLons;
+
+        Builder(int expectedSize) {
+            final int capacity = Math.max(16, expectedSize);
+            this.ids = new String[capacity];
+            this.pickupLats = new double[capacity];
+            this.pickupLons = new double[capacity];
+            this.deliveryLats = new double[capacity];
+            this.deliveryLons = new double[capacity];
+        }
+
+        static Builder of(List<Order> orders) {
+            final Builder builder = new Builder(orders.size());
+            orders.forEach(builder::add);
+            return builder;
+        }
+
+        @Override
+        public void add(Order order) {
+            add(order.getId(), order.getDescription(), Boolean.TRUE.equals(order.getFood()), Boolean.TRUE.equals(order.getVip()),
+                    lat(order.getPickup()), lon(order.getPickup()), lat(order.getDelivery()), lon(order.getDelivery()));
+        }
+
+        @Override
+        public void add(OrderStore store, int row) {
+            add(store.getId(row), store.getDescription(row), store.isFood(row), store.isVip(row),
+                    store.getPickupLat(row), store.getPickupLon(row), store.getDeliveryLat(row), store.getDeliveryLon(row));
+        }
+
+        private void add(String id, String description, boolean isFood, boolean isVip,
+                         double pickupLat, double pickupLon, double deliveryLat, double deliveryLon) {
+            if (size == ids.length) {
+                final int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                pickupLats = Arrays.copyOf(pickupLats, capacity);
+                pickupLons = Arrays.copyOf(pickupLons, capacity);
+                deliveryLats = Arrays.copyOf(deliveryLats, capacity);
+                deliveryLons = Arrays.copyOf(deliveryLons, capacity);
+            }
+
+            final int row = size++;
+            ids[row] = id;
+            descriptions.add(description);
+            food.set(row, isFood);
+            vip.set(row, isVip);
+            pickupLats[row] = pickupLat;
+            pickupLons[row] = pickupLon;
+            deliveryLats[row] = deliveryLat;
+            deliveryLons[row] = deliveryLon;
+        }
+
+        @Override
+        public OrderStore build() {
+            return new ColumnarOrderStore(this);
+        }
+
+        private static double lat(Location location) {
+            return location == null ? Double.NaN : location.getLat();
+        }
+
+        private static double lon(Location location) {
+            return location == null ? Double.NaN : location.getLon();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Courier;
+
+/**
+ * Notified of every courier update of the CourierRepository. The updates of one courier are notified in order.
+ */
+public interface CourierChangeListener {
+
+    void courierMoved(Courier previous, Courier courier);
+
+    /**
+     * The courier was added, or replaced the previous courier with the same id (null when there was none), by a reload.
+     */
+    void courierSaved(Courier previous, Courier courier);
+
+    /**
+     * The courier was removed by a reload.
+     */
+    void courierDeleted(Courier courier);
+}
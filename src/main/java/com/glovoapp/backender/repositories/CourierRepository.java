@@ -1,40 +1,196 @@
 package com.glovoapp.backender.repositories;
 
 import com.glovoapp.backender.entities.Courier;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.glovoapp.backender.entities.Location;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Couriers indexed by id. A courier is never modified once stored: an update stores a new copy, so readers always
+ * get a consistent courier without locking, and updates of different couriers only wait for each other when they
+ * share a lock stripe.
+ * A reload swaps all the couriers at once, so readers see either the previous couriers or the reloaded ones.
+ */
 @Component
 public class CourierRepository {
     private static final String COURIERS_FILE = "/couriers.json";
-    private static final List<Courier> couriers;
-
-    static {
-        try (Reader reader = new InputStreamReader(CourierRepository.class.getResourceAsStream(COURIERS_FILE))) {
-            Type type = new TypeToken<List<Courier>>() {
-            }.getType();
-            couriers = new Gson().fromJson(reader, type);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private static final int UPDATE_LOCK_STRIPES = 64;
+
+    private final String couriersFile;
+    private final SourceFormat format;
+    private volatile Couriers couriers;
+    // Location updates share the lock, a reload takes it alone so no update is lost in the swap.
+    private final ReadWriteLock reloadLock = new ReentrantReadWriteLock();
+    private final List<CourierChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object[] updateLocks = new Object[UPDATE_LOCK_STRIPES];
+
+    public CourierRepository() {
+        this("");
+    }
+
+    public CourierRepository(String couriersFile) {
+        this(couriersFile, SourceFormat.JSON);
+    }
+
+    /**
+     * Loads the couriers of the file at couriersFile, or of the bundled ones when it is empty.
+     */
+    @Autowired
+    public CourierRepository(@Value("${backender.couriers.file:}") String couriersFile,
+                             @Value("${backender.couriers.format:JSON}") SourceFormat format) {
+        this.couriersFile = couriersFile;
+        this.format = format;
+        this.couriers = new Couriers(load(couriersFile, format));
+        for (int i = 0; i < updateLocks.length; i++) {
+            updateLocks[i] = new Object();
         }
     }
 
     public Courier findById(String courierId) {
-        return couriers.stream()
-                .filter(courier -> courierId.equals(courier.getId()))
-                .findFirst()
-                .orElse(null);
+        return couriers.byId.get(courierId);
     }
 
     public List<Courier> findAll() {
-        return new ArrayList<>(couriers);
+        final Couriers current = couriers;
+        final List<Courier> result = new ArrayList<>(current.ids.size());
+        for (String courierId : current.ids) {
+            result.add(current.byId.get(courierId));
+        }
+        return result;
+    }
+
+    /**
+     * Moves the courier to the given location. Returns the updated courier, or null when there is no courier with that id.
+     */
+    public Courier updateLocation(String courierId, Location location) {
+        reloadLock.readLock().lock();
+        try {
+            // Updates of a courier take its stripe, so they reach the listeners in order; the map itself is never
+            // locked while they run.
+            synchronized (updateLocks[Math.floorMod(courierId.hashCode(), updateLocks.length)]) {
+                final Courier previous = couriers.byId.get(courierId);
+                if (previous == null) {
+                    return null;
+                }
+                final Courier courier = new Courier().withId(previous.getId())
+                        .withName(previous.getName())
+                        .withBox(previous.getBox())
+                        .withVehicle(previous.getVehicle())
+                        .withLocation(location);
+                couriers.byId.put(courierId, courier);
+                listeners.forEach(listener -> listener.courierMoved(previous, courier));
+                return courier;
+            }
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The file the couriers were loaded from, or null for the bundled ones.
+     */
+    public Path getSourceFile() {
+        return couriersFile.isEmpty() ? null : Paths.get(couriersFile);
+    }
+
+    /**
+     * Reads the source file again and applies the differences by id: new and changed couriers are saved, missing
+     * ones deleted, and only those are notified. The file is read in full before anything changes.
+     * Returns the number of couriers changed.
+     */
+    public int reload() {
+        return reload(load(couriersFile, format));
+    }
+
+    /**
+     * Replaces the couriers with the given ones, applying only the differences by id. Returns the number of couriers changed.
+     */
+    public int reload(List<Courier> reloaded) {
+        reloadLock.writeLock().lock();
+        try {
+            final Couriers previous = couriers;
+            final Couriers next = new Couriers(reloaded);
+            couriers = next;
+
+            int changes = 0;
+            for (String courierId : next.ids) {
+                final Courier courier = next.byId.get(courierId);
+                final Courier replaced = previous.byId.get(courierId);
+                if (!Objects.equals(replaced, courier)) {
+                    listeners.forEach(listener -> listener.courierSaved(replaced, courier));
+                    changes++;
+                }
+            }
+            for (String courierId : previous.ids) {
+                final Courier courier = previous.byId.get(courierId);
+                if (!next.byId.containsKey(courierId)) {
+                    listeners.forEach(listener -> listener.courierDeleted(courier));
+                    changes++;
+                }
+            }
+            return changes;
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the couriers, with their current locations, as a binary snapshot at the given path.
+     */
+    public void writeSnapshot(Path path) {
+        CourierSnapshotFile.write(findAll(), path);
+    }
+
+    /**
+     * Registers a listener for the updates from now on. Couriers read after registering already include the updates
+     * not notified to it.
+     */
+    public void addChangeListener(CourierChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    private static List<Courier> load(String couriersFile, SourceFormat format) {
+        final List<Courier> loaded = new ArrayList<>();
+        if (format == SourceFormat.BINARY) {
+            if (couriersFile.isEmpty()) {
+                throw new IllegalArgumentException("A file is required to load BINARY couriers");
+            }
+            CourierSnapshotFile.read(Paths.get(couriersFile), loaded::add);
+        } else {
+            JsonRecordReader.read(couriersFile, COURIERS_FILE, Courier.class, loaded::add);
+        }
+        return loaded;
+    }
+
+    /**
+     * The couriers by id, and their ids in the order of the file. A later courier replaces an earlier one with the same id.
+     */
+    private static class Couriers {
+        private final List<String> ids;
+        private final Map<String, Courier> byId;
+
+        Couriers(List<Courier> couriers) {
+            final List<String> courierIds = new ArrayList<>(couriers.size());
+            this.byId = new ConcurrentHashMap<>(couriers.size() * 2);
+            for (Courier courier : couriers) {
+                if (byId.put(courier.getId(), courier) == null) {
+                    courierIds.add(courier.getId());
+                }
+            }
+            this.ids = Collections.unmodifiableList(courierIds);
+        }
     }
 }
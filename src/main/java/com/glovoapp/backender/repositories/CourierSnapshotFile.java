@@ -0,0 +1,117 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Vehicle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the couriers: location columns (NaN for a missing location), a byte of flags and a byte of
+ * vehicle per courier, then the offset tables of ids and names. Couriers are updated in place by the repository,
+ * so they are read into objects right away, which is still far cheaper than parsing JSON.
+ */
+final class CourierSnapshotFile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CourierSnapshotFile.class);
+    private static final int MAGIC = 0x424b4331; // "BKC1"
+
+    private static final byte NULL_ID = 1;
+    private static final byte NULL_NAME = 2;
+    private static final byte HAS_BOX = 4;
+    private static final byte BOX = 8;
+    private static final byte NULL_VEHICLE = 0; // Vehicles are stored as their ordinal plus one.
+
+    private static final Vehicle[] VEHICLES = Vehicle.values();
+
+    private CourierSnapshotFile() {
+    }
+
+    /**
+     * Writes the couriers as a snapshot at the given path, replacing the file there.
+     */
+    static void write(List<Courier> couriers, Path path) {
+        final Layout layout = new Layout(couriers.size());
+        final SnapshotFiles.StringColumn ids = new SnapshotFiles.StringColumn(layout.size, row -> couriers.get(row).getId());
+        final SnapshotFiles.StringColumn names = new SnapshotFiles.StringColumn(layout.size, row -> couriers.get(row).getName());
+        final long fileSize = (long) layout.bytesAt + ids.byteCount() + names.byteCount();
+
+        SnapshotFiles.write(path, MAGIC, layout.size, fileSize, buffer -> {
+            for (int row = 0; row < layout.size; row++) {
+                final Courier courier = couriers.get(row);
+                buffer.putDouble(layout.latsAt + 8 * row, courier.getLocation() == null ? Double.NaN : courier.getLocation().getLat());
+                buffer.putDouble(layout.lonsAt + 8 * row, courier.getLocation() == null ? Double.NaN : courier.getLocation().getLon());
+                buffer.put(layout.flagsAt + row, (byte) ((courier.getId() == null ? NULL_ID : 0)
+                        | (courier.getName() == null ? NULL_NAME : 0)
+                        | (courier.getBox() != null ? HAS_BOX : 0)
+                        | (Boolean.TRUE.equals(courier.getBox()) ? BOX : 0)));
+                buffer.put(layout.vehiclesAt + row, courier.getVehicle() == null ? NULL_VEHICLE : (byte) (courier.getVehicle().ordinal() + 1));
+            }
+            ids.write(buffer, layout.idsAt, layout.bytesAt);
+            names.write(buffer, layout.namesAt, (int) (layout.bytesAt + ids.byteCount()));
+        });
+    }
+
+    /**
+     * Reads the couriers of the snapshot at the given path, in order. Returns the number of couriers read.
+     */
+    static int read(Path path, Consumer<Courier> consumer) {
+        final long start = System.nanoTime();
+        final ByteBuffer buffer = SnapshotFiles.map(path, MAGIC);
+        final Layout layout = new Layout(SnapshotFiles.size(buffer));
+        if (layout.bytesAt > buffer.capacity()
+                || SnapshotFiles.StringColumn.end(buffer, layout.namesAt, layout.size) > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated courier snapshot " + path);
+        }
+
+        for (int row = 0; row < layout.size; row++) {
+            final byte flags = buffer.get(layout.flagsAt + row);
+            final byte vehicle = buffer.get(layout.vehiclesAt + row);
+            consumer.accept(new Courier()
+                    .withId((flags & NULL_ID) != 0 ? null : SnapshotFiles.StringColumn.read(buffer, layout.idsAt, row))
+                    .withName((flags & NULL_NAME) != 0 ? null : SnapshotFiles.StringColumn.read(buffer, layout.namesAt, row))
+                    .withBox((flags & HAS_BOX) == 0 ? null : (flags & BOX) != 0)
+                    .withVehicle(vehicle == NULL_VEHICLE ? null : VEHICLES[vehicle - 1])
+                    .withLocation(OrderStore.toLocation(buffer.getDouble(layout.latsAt + 8 * row), buffer.getDouble(layout.lonsAt + 8 * row))));
+        }
+
+        LOGGER.info("Read {} couriers from {} in {} ms", layout.size, path, (System.nanoTime() - start) / 1_000_000);
+        return layout.size;
+    }
+
+    /**
+     * Positions of the columns in a snapshot of the given number of couriers.
+     */
+    private static class Layout {
+        private final int size;
+        private final int latsAt;
+        private final int lonsAt;
+        private final int flagsAt;
+        private final int vehiclesAt;
+        private final int idsAt;
+        private final int namesAt;
+        private final int bytesAt;
+
+        Layout(int size) {
+            final long columnsAt = SnapshotFiles.HEADER_SIZE;
+            final long idsAt = SnapshotFiles.align(columnsAt + 18L * size, 4);
+            final long bytesAt = idsAt + 2L * SnapshotFiles.StringColumn.tableSize(size);
+            if (bytesAt > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many couriers for a snapshot: " + size);
+            }
+
+            this.size = size;
+            this.latsAt = (int) columnsAt;
+            this.lonsAt = (int) columnsAt + 8 * size;
+            this.flagsAt = (int) columnsAt + 16 * size;
+            this.vehiclesAt = (int) columnsAt + 17 * size;
+            this.idsAt = (int) idsAt;
+            this.namesAt = (int) (idsAt + SnapshotFiles.StringColumn.tableSize(size));
+            this.bytesAt = (int) bytesAt;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Couriers in a KD-tree by location, so the couriers closest to a location are found visiting around log(n) of them.
+ * Locations are points on the unit sphere: straight-line distances between them grow with the distances over the
+ * surface, so the tree finds the same couriers as comparing the haversine distances.
+ * Moved, added and deleted couriers are kept aside, and scanned by every query, until a background thread rebuilds
+ * the tree with them, once they are more than around the square root of the couriers. Queries and changes take no
+ * lock: they work over the generation of the tree published last.
+ */
+@Component
+public class CourierSpatialIndex implements CourierChangeListener {
+
+    // The tree is rebuilt when the changes kept aside are more than the square root of its size, and at least this many.
+    private static final int MIN_CHANGES_TO_REBUILD = 32;
+    // Kept aside for a deleted courier, as the map of changes takes no nulls.
+    private static final Courier DELETED = new Courier();
+
+    private volatile Generation generation;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "couriers-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CourierSpatialIndex(CourierRepository courierRepository) {
+        // Listening before building, so no change is missed: the ones notified meanwhile are kept aside, and
+        // override the couriers read for the tree.
+        // No rebuild starts until then.
+        final Map<String, Courier> changes = new ConcurrentHashMap<>();
+        rebuildScheduled.set(true);
+        this.generation = new Generation(new KdTree(Collections.emptyList()), Collections.emptyMap(), changes);
+        courierRepository.addChangeListener(this);
+        this.generation = new Generation(new KdTree(courierRepository.findAll()), Collections.emptyMap(), changes);
+        rebuildScheduled.set(false);
+        scheduleRebuildIfNeeded(generation);
+    }
+
+    public CourierSpatialIndex(List<Courier> couriers) {
+        this.generation = new Generation(new KdTree(couriers), Collections.emptyMap(), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Returns at most k of the couriers accepted by the filter, the closest to the location first.
+     * Couriers without a location are never found.
+     */
+    public List<Courier> findNearest(Location location, int k, Predicate<Courier> filter) {
+        final NearestCouriers nearest = new NearestCouriers(k);
+        if (k <= 0 || location == null || location.getLat() == null || location.getLon() == null) {
+            return nearest.sorted();
+        }
+
+        final Generation current = generation;
+        final double[] point = toPoint(location.getLat(), location.getLon());
+        current.tree.search(point, courier -> !current.isChanged(courier.getId()) && filter.test(courier), nearest);
+        current.forEachChanged(courier -> {
+            if (hasLocation(courier) && filter.test(courier)) {
+                nearest.offer(courier, squaredDistance(point, toPoint(courier.getLocation().getLat(), courier.getLocation().getLon())));
+            }
+        });
+        return nearest.sorted();
+    }
+
+    @Override
+    public void courierMoved(Courier previous, Courier courier) {
+        change(courier.getId(), courier);
+    }
+
+    @Override
+    public void courierSaved(Courier previous, Courier courier) {
+        change(courier.getId(), courier);
+    }
+
+    @Override
+    public void courierDeleted(Courier courier) {
+        change(courier.getId(), DELETED);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdown();
+    }
+
+    /**
+     * Waits for the rebuilds running or scheduled, if any, including the ones they schedule.
+     */
+    void awaitRebuild() {
+        do {
+            CompletableFuture.runAsync(() -> {
+            }, rebuilder).join();
+        } while (rebuildScheduled.get());
+    }
+
+    /**
+     * The number of couriers kept aside, out of the tree.
+     */
+    int changesAside() {
+        final Generation current = generation;
+        return current.frozenChanges.size() + current.changes.size();
+    }
+
+    private void change(String courierId, Courier courier) {
+        Generation current;
+        do {
+            current = generation;
+            current.changes.put(courierId, courier);
+            // A rebuild may have started meanwhile, reading the changes before this one: it goes to the next ones too.
+        } while (current != generation);
+        scheduleRebuildIfNeeded(current);
+    }
+
+    private void scheduleRebuildIfNeeded(Generation current) {
+        if (current.changes.size() > Math.max(MIN_CHANGES_TO_REBUILD, Math.sqrt(current.tree.size()))
+                && rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        // The changes so far are frozen, still scanned by the queries, while the tree is rebuilt with them. The next
+        // ones go to a new map, which the rebuilt generation keeps.
+        final Generation from = generation;
+        final Map<String, Courier> changes = new ConcurrentHashMap<>();
+        generation = new Generation(from.tree, from.changes, changes);
+
+        final Map<String, Courier> frozenChanges = from.changes;
+        final List<Courier> couriers = new ArrayList<>(from.tree.size() + frozenChanges.size());
+        for (Courier treeCourier : from.tree.couriers) {
+            if (!frozenChanges.containsKey(treeCourier.getId())) {
+                couriers.add(treeCourier);
+            }
+        }
+        for (Courier changedCourier : frozenChanges.values()) {
+            if (changedCourier != DELETED) {
+                couriers.add(changedCourier);
+            }
+        }
+        final Generation rebuilt = new Generation(new KdTree(couriers), Collections.emptyMap(), changes);
+        generation = rebuilt;
+
+        rebuildScheduled.set(false);
+        // Changes made while rebuilding may already be enough for the next one.
+        scheduleRebuildIfNeeded(rebuilt);
+    }
+
+    private static boolean hasLocation(Courier courier) {
+        return courier != null && courier.getLocation() != null
+                && courier.getLocation().getLat() != null && courier.getLocation().getLon() != null;
+    }
+
+    private static double[] toPoint(double lat, double lon) {
+        final double latRadians = Math.toRadians(lat);
+        final double lonRadians = Math.toRadians(lon);
+        return new double[]{
+                Math.cos(latRadians) * Math.cos(lonRadians),
+                Math.cos(latRadians) * Math.sin(lonRadians),
+                Math.sin(latRadians)};
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        final double dx = a[0] - b[0];
+        final double dy = a[1] - b[1];
+        final double dz = a[2] - b[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * A tree and the couriers changed since it was built, by id: their current version, or DELETED. The tree still has
+     * their previous version, which is skipped. The frozen changes are the ones being built into the next tree, and
+     * the changes after them override them.
+     */
+    private static class Generation {
+        private final KdTree tree;
+        private final Map<String, Courier> frozenChanges;
+        private final Map<String, Courier> changes;
+
+        Generation(KdTree tree, Map<String, Courier> frozenChanges, Map<String, Courier> changes) {
+            this.tree = tree;
+            this.frozenChanges = frozenChanges;
+            this.changes = changes;
+        }
+
+        boolean isChanged(String courierId) {
+            return changes.containsKey(courierId) || frozenChanges.containsKey(courierId);
+        }
+
+        void forEachChanged(Consumer<Courier> action) {
+            for (Map.Entry<String, Courier> frozen : frozenChanges.entrySet()) {
+                if (!changes.containsKey(frozen.getKey()) && frozen.getValue() != DELETED) {
+                    action.accept(frozen.getValue());
+                }
+            }
+            for (Courier courier : changes.values()) {
+                if (courier != DELETED) {
+                    action.accept(courier);
+                }
+            }
+        }
+    }
+
+    /**
+     * Balanced KD-tree stored in arrays: the node of the range [from, to) is at its middle, and its children are the
+     * ranges at each side. Every node splits on the axis its range is widest in.
+     */
+    private static class KdTree {
+        private final Courier[] couriers;
+        private final double[][] points;
+        private final byte[] axes;
+
+        KdTree(List<Courier> allCouriers) {
+            final List<Courier> locatedCouriers = new ArrayList<>(allCouriers.size());
+            for (Courier courier : allCouriers) {
+                if (hasLocation(courier)) {
+                    locatedCouriers.add(courier);
+                }
+            }
+            this.couriers = locatedCouriers.toArray(new Courier[0]);
+            this.points = new double[couriers.length][];
+            for (int i = 0; i < couriers.length; i++) {
+                points[i] = toPoint(couriers[i].getLocation().getLat(), couriers[i].getLocation().getLon());
+            }
+            this.axes = new byte[couriers.length];
+            build(0, couriers.length);
+        }
+
+        int size() {
+            return couriers.length;
+        }
+
+        void search(double[] point, Predicate<Courier> filter, NearestCouriers nearest) {
+            search(0, couriers.length, point, filter, nearest);
+        }
+
+        private void build(int from, int to) {
+            if (to - from <= 1) {
+                return;
+            }
+            final int axis = widestAxis(from, to);
+            final int middle = (from + to) >>> 1;
+            select(from, to, middle, axis);
+            axes[middle] = (byte) axis;
+            build(from, middle);
+            build(middle + 1, to);
+        }
+
+        private void search(int from, int to, double[] point, Predicate<Courier> filter, NearestCouriers nearest) {
+            if (from >= to) {
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            if (filter.test(couriers[middle])) {
+                nearest.offer(couriers[middle], squaredDistance(point, points[middle]));
+            }
+            if (to - from == 1) {
+                return;
+            }
+
+            final double difference = point[axes[middle]] - points[middle][axes[middle]];
+            if (difference < 0) {
+                search(from, middle, point, filter, nearest);
+                if (difference * difference < nearest.worstSquaredDistance()) {
+                    search(middle + 1, to, point, filter, nearest);
+                }
+            } else {
+                search(middle + 1, to, point, filter, nearest);
+                if (difference * difference < nearest.worstSquaredDistance()) {
+                    search(from, middle, point, filter, nearest);
+                }
+            }
+        }
+
+        private int widestAxis(int from, int to) {
+            int widestAxis = 0;
+            double widestSpread = -1;
+            for (int axis = 0; axis < 3; axis++) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    min = Math.min(min, points[i][axis]);
+                    max = Math.max(max, points[i][axis]);
+                }
+                if (max - min > widestSpread) {
+                    widestSpread = max - min;
+                    widestAxis = axis;
+                }
+            }
+            return widestAxis;
+        }
+
+        // Quickselect: leaves at k the point that goes there sorted by the axis, the smaller ones before and the rest after.
+        private void select(int from, int to, int k, int axis) {
+            int low = from;
+            int high = to - 1;
+            while (low < high) {
+                final double pivot = points[(low + high) >>> 1][axis];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (points[i][axis] < pivot) {
+                        i++;
+                    }
+                    while (points[j][axis] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    high = j;
+                } else if (k >= i) {
+                    low = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            final Courier courier = couriers[i];
+            couriers[i] = couriers[j];
+            couriers[j] = courier;
+            final double[] point = points[i];
+            points[i] = points[j];
+            points[j] = point;
+        }
+    }
+
+    /**
+     * The k closest couriers offered so far, in a heap with the furthest one on top.
+     */
+    private static class NearestCouriers {
+        private final int k;
+        private final PriorityQueue<Candidate> candidates;
+
+        NearestCouriers(int k) {
+            this.k = k;
+            this.candidates = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)),
+                    Comparator.comparingDouble((Candidate candidate) -> candidate.squaredDistance).reversed());
+        }
+
+        void offer(Courier courier, double squaredDistance) {
+            if (candidates.size() < k) {
+                candidates.add(new Candidate(courier, squaredDistance));
+            } else if (squaredDistance < candidates.peek().squaredDistance) {
+                candidates.poll();
+                candidates.add(new Candidate(courier, squaredDistance));
+            }
+        }
+
+        double worstSquaredDistance() {
+            return candidates.size() < k ? Double.POSITIVE_INFINITY : candidates.peek().squaredDistance;
+        }
+
+        List<Courier> sorted() {
+            final List<Courier> couriers = new ArrayList<>(candidates.size());
+            while (!candidates.isEmpty()) {
+                couriers.add(candidates.poll().courier);
+            }
+            Collections.reverse(couriers);
+            return couriers;
+        }
+    }
+
+    private static class Candidate {
+        private final Courier courier;
+        private final double squaredDistance;
+
+        Candidate(Courier courier, double squaredDistance) {
+            this.courier = courier;
+            this.squaredDistance = squaredDistance;
+        }
+    }
+}
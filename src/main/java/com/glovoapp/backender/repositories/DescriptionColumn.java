@@ -0,0 +1,167 @@
+package com.glovoapp.backender.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Descriptions of the orders of a store, dictionary-encoded by line: every distinct line is kept once in UTF-8, and
+ * every description as the codes of its lines. Descriptions repeat the same line items ("1x Kebab with Fries") over
+ * and over, so this takes a fraction of their strings. They are decoded only when read, and matched line by line,
+ * testing every distinct line once.
+ */
+class DescriptionColumn {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    // The codes of the lines of the description in a row go from lineStarts[row] to lineStarts[row + 1].
+    private final int[] lineStarts;
+    private final int[] lineCodes;
+    private final BitSet nulls;
+    // The bytes of the line with a code go from lineOffsets[code] to lineOffsets[code + 1].
+    private final byte[] lineBytes;
+    private final int[] lineOffsets;
+    private volatile LineMatches lineMatches;
+
+    private DescriptionColumn(Builder builder) {
+        this.lineStarts = Arrays.copyOf(builder.lineStarts, builder.size + 1);
+        this.lineCodes = Arrays.copyOf(builder.lineCodes, builder.lineStarts[builder.size]);
+        this.nulls = builder.nulls;
+        this.lineBytes = Arrays.copyOf(builder.lineBytes, builder.lineOffsets[builder.codes.size()]);
+        this.lineOffsets = Arrays.copyOf(builder.lineOffsets, builder.codes.size() + 1);
+    }
+
+    /**
+     * Number of distinct lines in the dictionary.
+     */
+    int lineCount() {
+        return lineOffsets.length - 1;
+    }
+
+    String get(int row) {
+        if (nulls.get(row)) {
+            return null;
+        }
+
+        final int from = lineStarts[row];
+        final int to = lineStarts[row + 1];
+        if (to - from == 1) {
+            return line(lineCodes[from]);
+        }
+        final StringBuilder description = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                description.append('\n');
+            }
+            description.append(line(lineCodes[i]));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Whether any line of the description in the row is matched, false for a missing description.
+     * What the matcher answers for every line is kept until another matcher is given.
+     */
+    boolean matches(int row, Predicate<String> matcher) {
+        LineMatches matches = lineMatches;
+        if (matches == null || matches.matcher != matcher) {
+            matches = new LineMatches(matcher);
+            lineMatches = matches;
+        }
+
+        for (int i = lineStarts[row]; i < lineStarts[row + 1]; i++) {
+            if (matches.matches(lineCodes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String line(int code) {
+        return new String(lineBytes, lineOffsets[code], lineOffsets[code + 1] - lineOffsets[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Answers of a matcher by line code. Readers may race to test the same line, and then store the same answer.
+     */
+    private class LineMatches {
+        private final Predicate<String> matcher;
+        private final byte[] answers = new byte[lineCount()];
+
+        LineMatches(Predicate<String> matcher) {
+            this.matcher = matcher;
+        }
+
+        boolean matches(int code) {
+            byte answer = answers[code];
+            if (answer == UNKNOWN) {
+                answer = matcher.test(line(code)) ? MATCH : NO_MATCH;
+                answers[code] = answer;
+            }
+            return answer == MATCH;
+        }
+    }
+
+    /**
+     * Appends descriptions, growing the arrays as needed. Not to be used once built.
+     */
+    static class Builder {
+        private int size;
+        private int[] lineStarts = new int[17];
+        private int[] lineCodes = new int[16];
+        private final BitSet nulls = new BitSet();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private byte[] lineBytes = new byte[256];
+        private int[] lineOffsets = new int[17];
+
+        void add(String description) {
+            if (size + 1 == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            }
+
+            final int row = size++;
+            int lineCount = lineStarts[row];
+            if (description == null) {
+                nulls.set(row);
+            } else {
+                for (String line : description.split("\n", -1)) {
+                    if (lineCount == lineCodes.length) {
+                        lineCodes = Arrays.copyOf(lineCodes, lineCount * 2);
+                    }
+                    lineCodes[lineCount++] = code(line);
+                }
+            }
+            lineStarts[row + 1] = lineCount;
+        }
+
+        DescriptionColumn build() {
+            return new DescriptionColumn(this);
+        }
+
+        private int code(String line) {
+            final Integer existing = codes.get(line);
+            if (existing != null) {
+                return existing;
+            }
+
+            final int code = codes.size();
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            final int from = lineOffsets[code];
+            if (code + 1 == lineOffsets.length) {
+                lineOffsets = Arrays.copyOf(lineOffsets, lineOffsets.length * 2);
+            }
+            if (from + bytes.length > lineBytes.length) {
+                lineBytes = Arrays.copyOf(lineBytes, Math.max(lineBytes.length * 2, from + bytes.length));
+            }
+            System.arraycopy(bytes, 0, lineBytes, from, bytes.length);
+            lineOffsets[code + 1] = from + bytes.length;
+            codes.put(line, code);
+            return code;
+        }
+    }
+}
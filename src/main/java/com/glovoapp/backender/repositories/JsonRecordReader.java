@@ -0,0 +1,125 @@
+package com.glovoapp.backender.repositories;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * Reads a JSON array of records one at a time, handing every record to a consumer as soon as it is parsed.
+ * Besides what the consumer keeps, only the record being read is in memory, whatever the size of the source.
+ * Records are read from a file when a path is given, and from a classpath resource otherwise.
+ */
+class JsonRecordReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonRecordReader.class);
+    private static final int PROGRESS_INTERVAL = 100_000;
+
+    private static final Gson GSON = new Gson();
+
+    private JsonRecordReader() {
+    }
+
+    /**
+     * Reads the records of the file at the given path, or of the classpath resource when the path is empty.
+     * Returns the number of records read.
+     */
+    static <T> int read(String path, String classpathResource, Class<T> type, Consumer<T> consumer) {
+        final boolean fromFile = path != null && !path.isEmpty();
+        final String source = fromFile ? path : "classpath:" + classpathResource;
+        try (CountingInputStream input = new CountingInputStream(open(fromFile, path, classpathResource));
+             JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            final long totalBytes = fromFile ? Files.size(Paths.get(path)) : -1;
+            return read(reader, type, consumer, source, input, totalBytes);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new RuntimeException("Could not read " + type.getSimpleName() + " records from " + source, e);
+        }
+    }
+
+    private static <T> int read(JsonReader reader, Class<T> type, Consumer<T> consumer, String source,
+                                CountingInputStream input, long totalBytes) throws IOException {
+        final long start = System.nanoTime();
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            consumer.accept(GSON.fromJson(reader, type));
+            if (++count % PROGRESS_INTERVAL == 0) {
+                logProgress(type, count, source, input.getCount(), totalBytes);
+            }
+        }
+        reader.endArray();
+
+        LOGGER.info("Read {} {} records from {} in {} ms", count, type.getSimpleName(), source, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+
+    private static void logProgress(Class<?> type, int count, String source, long readBytes, long totalBytes) {
+        if (totalBytes > 0) {
+            LOGGER.info("Read {} {} records from {} ({}% of {} bytes)", count, type.getSimpleName(), source,
+                    readBytes * 100 / totalBytes, totalBytes);
+        } else {
+            LOGGER.info("Read {} {} records from {}", count, type.getSimpleName(), source);
+        }
+    }
+
+    private static InputStream open(boolean fromFile, String path, String classpathResource) throws IOException {
+        if (fromFile) {
+            return Files.newInputStream(Paths.get(path));
+        }
+        final InputStream input = JsonRecordReader.class.getResourceAsStream(classpathResource);
+        if (input == null) {
+            throw new IOException("Resource not found");
+        }
+        return input;
+    }
+
+    /**
+     * Counts the bytes read, to report how much of the source is done.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
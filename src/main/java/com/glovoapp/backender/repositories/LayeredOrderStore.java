@@ -0,0 +1,296 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * An immutable base store shared by many versions of the orders, with the rows written since it was built patched on
+ * top. Writing copies the patches, never the base, so a write costs O(patches) instead of O(orders) until the layers
+ * are compacted into a new base. Rows stay dense: a deleted row gets the last order, and saved orders go last.
+ */
+final class LayeredOrderStore implements OrderStore {
+
+    private final Base base;
+    private final int size;
+    // Rows below the base size whose order is not the base one of the same row.
+    private final BitSet patchedRows;
+    private final Map<Integer, Patch> patches;
+    // Rows of the ids that are not in their base row: saved after the base was built, moved, or deleted (-1).
+    private final Map<String, Integer> patchedIds;
+
+    LayeredOrderStore(OrderStore base) {
+        this(new Base(base), base.size(), new BitSet(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    private LayeredOrderStore(Base base, int size, BitSet patchedRows, Map<Integer, Patch> patches, Map<String, Integer> patchedIds) {
+        this.base = base;
+        this.size = size;
+        this.patchedRows = patchedRows;
+        this.patches = patches;
+        this.patchedIds = patchedIds;
+    }
+
+    OrderStore getBase() {
+        return base.store;
+    }
+
+    /**
+     * Rows and ids written since the base was built, which every write copies.
+     */
+    int patchCount() {
+        return patches.size() + patchedIds.size();
+    }
+
+    /**
+     * The rows not read from the same row of the base, in ascending order.
+     */
+    int[] getPatchedRows() {
+        final int[] rows = new int[patches.size()];
+        int i = 0;
+        for (Integer row : patches.keySet()) {
+            rows[i++] = row;
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    boolean isPatched(int row) {
+        return row >= base.store.size() || patchedRows.get(row);
+    }
+
+    /**
+     * Row of the order with the given id, or -1 when there is none.
+     */
+    int findRow(String orderId) {
+        final Integer row = patchedIds.get(orderId);
+        return row != null ? row : base.findRow(orderId);
+    }
+
+    /**
+     * Every order in a new store of the given storage, copied row by row into a builder of the exact size.
+     */
+    OrderStore compact(OrderStorage storage) {
+        final OrderStoreBuilder builder = storage.builder(size);
+        for (int row = 0; row < size; row++) {
+            final Patch patch = patch(row);
+            if (patch == null) {
+                builder.add(base.store, row);
+            } else {
+                builder.add(patch.store, patch.row);
+            }
+        }
+        return builder.build();
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getId(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getId(row) : patch.store.getId(patch.row);
+    }
+
+    @Override
+    public String getDescription(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getDescription(row) : patch.store.getDescription(patch.row);
+    }
+
+    @Override
+    public boolean descriptionMatches(int row, Predicate<String> matcher) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.descriptionMatches(row, matcher) : patch.store.descriptionMatches(patch.row, matcher);
+    }
+
+    @Override
+    public boolean isFood(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.isFood(row) : patch.store.isFood(patch.row);
+    }
+
+    @Override
+    public boolean isVip(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.isVip(row) : patch.store.isVip(patch.row);
+    }
+
+    @Override
+    public double getPickupLat(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getPickupLat(row) : patch.store.getPickupLat(patch.row);
+    }
+
+    @Override
+    public double getPickupLon(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getPickupLon(row) : patch.store.getPickupLon(patch.row);
+    }
+
+    @Override
+    public double getDeliveryLat(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getDeliveryLat(row) : patch.store.getDeliveryLat(patch.row);
+    }
+
+    @Override
+    public double getDeliveryLon(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getDeliveryLon(row) : patch.store.getDeliveryLon(patch.row);
+    }
+
+    @Override
+    public Order getOrder(int row) {
+        final Patch patch = patch(row);
+        return patch == null ? base.store.getOrder(row) : patch.store.getOrder(patch.row);
+    }
+
+    private Patch patch(int row) {
+        return isPatched(row) ? patches.get(row) : null;
+    }
+
+    /**
+     * Where the order of a patched row is read from: a row of the base, or a saved order.
+     */
+    private static final class Patch {
+        private final OrderStore store;
+        private final int row;
+
+        private Patch(OrderStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        static Patch of(Order order) {
+            return new Patch(new ObjectOrderStore(Collections.singletonList(order)), 0);
+        }
+    }
+
+    /**
+     * The base store with the row of every id, built on first use: ids of a mapped store are read only when needed.
+     */
+    private static final class Base {
+        private final OrderStore store;
+        private volatile Map<String, Integer> rowsById;
+
+        private Base(OrderStore store) {
+            this.store = store;
+        }
+
+        int findRow(String orderId) {
+            final Integer row = rowsById().get(orderId);
+            return row == null ? -1 : row;
+        }
+
+        private Map<String, Integer> rowsById() {
+            Map<String, Integer> rows = rowsById;
+            if (rows == null) {
+                synchronized (this) {
+                    rows = rowsById;
+                    if (rows == null) {
+                        rows = new HashMap<>(store.size() * 2);
+                        for (int row = 0; row < store.size(); row++) {
+                            rows.put(store.getId(row), row);
+                        }
+                        rowsById = rows;
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Writes over copies of the patches of a store, and builds the next store from them. Not thread-safe.
+     */
+    static final class Editor {
+        private final Base base;
+        private int size;
+        private final BitSet patchedRows;
+        private final Map<Integer, Patch> patches;
+        private final Map<String, Integer> patchedIds;
+
+        private Editor(LayeredOrderStore store) {
+            this.base = store.base;
+            this.size = store.size;
+            this.patchedRows = (BitSet) store.patchedRows.clone();
+            this.patches = new HashMap<>(store.patches);
+            this.patchedIds = new HashMap<>(store.patchedIds);
+        }
+
+        /**
+         * Adds the order, or replaces the one with the same id in its row. Returns the replaced order, null when
+         * there was none.
+         */
+        Order save(Order order) {
+            final int row = findRow(order.getId());
+            if (row < 0) {
+                patchedIds.put(order.getId(), size);
+                setPatch(size++, Patch.of(order));
+                return null;
+            }
+            final Order previous = getOrder(row);
+            setPatch(row, Patch.of(order));
+            return previous;
+        }
+
+        /**
+         * Deletes the order with the given id, moving the last one to its row. Returns the deleted order, null when
+         * there was none.
+         */
+        Order delete(String orderId) {
+            final int row = findRow(orderId);
+            if (row < 0) {
+                return null;
+            }
+            final Order previous = getOrder(row);
+            final int last = --size;
+            if (row != last) {
+                final Patch lastPatch = patch(last);
+                patchedIds.put(lastPatch == null ? base.store.getId(last) : lastPatch.store.getId(lastPatch.row), row);
+                setPatch(row, lastPatch == null ? new Patch(base.store, last) : lastPatch);
+            }
+            patches.remove(last);
+            patchedRows.clear(last);
+            patchedIds.put(orderId, -1);
+            return previous;
+        }
+
+        LayeredOrderStore build() {
+            return new LayeredOrderStore(base, size, patchedRows, patches, patchedIds);
+        }
+
+        private int findRow(String orderId) {
+            final Integer row = patchedIds.get(orderId);
+            return row != null ? row : base.findRow(orderId);
+        }
+
+        private Order getOrder(int row) {
+            final Patch patch = patch(row);
+            return patch == null ? base.store.getOrder(row) : patch.store.getOrder(patch.row);
+        }
+
+        private Patch patch(int row) {
+            return row >= base.store.size() || patchedRows.get(row) ? patches.get(row) : null;
+        }
+
+        private void setPatch(int row, Patch patch) {
+            patches.put(row, patch);
+            if (row < base.store.size()) {
+                patchedRows.set(row);
+            }
+        }
+    }
+}
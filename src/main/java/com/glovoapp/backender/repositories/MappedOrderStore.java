@@ -0,0 +1,162 @@
+package com.glovoapp.backender.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Reads the orders straight from a memory-mapped binary snapshot, so an instance serves as soon as the file is mapped
+ * and only the pages it reads are loaded. Coordinates are double columns (NaN for a missing location) followed by a
+ * byte of flags per order and the offset tables of ids and descriptions. Strings are decoded when read.
+ */
+public class MappedOrderStore implements OrderStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedOrderStore.class);
+    private static final int MAGIC = 0x424b4f31; // "BKO1"
+
+    private static final byte FOOD = 1;
+    private static final byte VIP = 2;
+    private static final byte NULL_ID = 4;
+    private static final byte NULL_DESCRIPTION = 8;
+
+    private final ByteBuffer buffer;
+    private final Layout layout;
+
+    MappedOrderStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.layout = new Layout(SnapshotFiles.size(buffer));
+        if (layout.bytesAt > buffer.capacity()
+                || SnapshotFiles.StringColumn.end(buffer, layout.descriptionsAt, layout.size) > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated order snapshot");
+        }
+    }
+
+    /**
+     * Maps the order snapshot at the given path.
+     */
+    public static MappedOrderStore open(Path path) {
+        final long start = System.nanoTime();
+        final MappedOrderStore store = new MappedOrderStore(SnapshotFiles.map(path, MAGIC));
+        LOGGER.info("Mapped {} orders from {} in {} ms", store.size(), path, (System.nanoTime() - start) / 1_000_000);
+        return store;
+    }
+
+    /**
+     * Writes the orders of the store as a snapshot at the given path, replacing the file there.
+     */
+    public static void write(OrderStore store, Path path) {
+        final Layout layout = new Layout(store.size());
+        final SnapshotFiles.StringColumn ids = new SnapshotFiles.StringColumn(layout.size, store::getId);
+        final SnapshotFiles.StringColumn descriptions = new SnapshotFiles.StringColumn(layout.size, store::getDescription);
+        final long fileSize = (long) layout.bytesAt + ids.byteCount() + descriptions.byteCount();
+
+        SnapshotFiles.write(path, MAGIC, layout.size, fileSize, buffer -> {
+            for (int row = 0; row < layout.size; row++) {
+                buffer.putDouble(layout.pickupLatsAt + 8 * row, store.getPickupLat(row));
+                buffer.putDouble(layout.pickupLonsAt + 8 * row, store.getPickupLon(row));
+                buffer.putDouble(layout.deliveryLatsAt + 8 * row, store.getDeliveryLat(row));
+                buffer.putDouble(layout.deliveryLonsAt + 8 * row, store.getDeliveryLon(row));
+                buffer.put(layout.flagsAt + row, (byte) ((store.isFood(row) ? FOOD : 0)
+                        | (store.isVip(row) ? VIP : 0)
+                        | (store.getId(row) == null ? NULL_ID : 0)
+                        | (store.getDescription(row) == null ? NULL_DESCRIPTION : 0)));
+            }
+            ids.write(buffer, layout.idsAt, layout.bytesAt);
+            descriptions.write(buffer, layout.descriptionsAt, (int) (layout.bytesAt + ids.byteCount()));
+        });
+    }
+
+    @Override
+    public int size() {
+        return layout.size;
+    }
+
+    @Override
+    public String getId(int row) {
+        return hasFlag(row, NULL_ID) ? null : SnapshotFiles.StringColumn.read(buffer, layout.idsAt, row);
+    }
+
+    @Override
+    public String getDescription(int row) {
+        return hasFlag(row, NULL_DESCRIPTION) ? null : SnapshotFiles.StringColumn.read(buffer, layout.descriptionsAt, row);
+    }
+
+    @Override
+    public boolean isFood(int row) {
+        return hasFlag(row, FOOD);
+    }
+
+    @Override
+    public boolean isVip(int row) {
+        return hasFlag(row, VIP);
+    }
+
+    @Override
+    public double getPickupLat(int row) {
+        return buffer.getDouble(layout.pickupLatsAt + 8 * checkRow(row));
+    }
+
+    @Override
+    public double getPickupLon(int row) {
+        return buffer.getDouble(layout.pickupLonsAt + 8 * checkRow(row));
+    }
+
+    @Override
+    public double getDeliveryLat(int row) {
+        return buffer.getDouble(layout.deliveryLatsAt + 8 * checkRow(row));
+    }
+
+    @Override
+    public double getDeliveryLon(int row) {
+        return buffer.getDouble(layout.deliveryLonsAt + 8 * checkRow(row));
+    }
+
+    private boolean hasFlag(int row, byte flag) {
+        return (buffer.get(layout.flagsAt + checkRow(row)) & flag) != 0;
+    }
+
+    // Out of range rows would otherwise read the neighbouring column.
+    private int checkRow(int row) {
+        if (row < 0 || row >= layout.size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + layout.size);
+        }
+        return row;
+    }
+
+    /**
+     * Positions of the columns in a snapshot of the given number of orders.
+     */
+    private static class Layout {
+        private final int size;
+        private final int pickupLatsAt;
+        private final int pickupLonsAt;
+        private final int deliveryLatsAt;
+        private final int deliveryLonsAt;
+        private final int flagsAt;
+        private final int idsAt;
+        private final int descriptionsAt;
+        private final int bytesAt;
+
+        Layout(int size) {
+            final long columnsAt = SnapshotFiles.HEADER_SIZE;
+            final long flagsAt = columnsAt + 32L * size;
+            final long idsAt = SnapshotFiles.align(flagsAt + size, 4);
+            final long bytesAt = idsAt + 2L * SnapshotFiles.StringColumn.tableSize(size);
+            if (bytesAt > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many orders for a snapshot: " + size);
+            }
+
+            this.size = size;
+            this.pickupLatsAt = (int) columnsAt;
+            this.pickupLonsAt = (int) columnsAt + 8 * size;
+            this.deliveryLatsAt = (int) columnsAt + 16 * size;
+            this.deliveryLonsAt = (int) columnsAt + 24 * size;
+            this.flagsAt = (int) flagsAt;
+            this.idsAt = (int) idsAt;
+            this.descriptionsAt = (int) (idsAt + SnapshotFiles.StringColumn.tableSize(size));
+            this.bytesAt = (int) bytesAt;
+        }
+    }
+}
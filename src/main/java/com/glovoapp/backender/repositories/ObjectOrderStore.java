@@ -0,0 +1,77 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the orders as they are parsed, one Order object (plus its locations) per row.
+ */
+public class ObjectOrderStore implements OrderStore {
+
+    private final List<Order> orders;
+
+    public ObjectOrderStore(List<Order> orders) {
+        this.orders = new ArrayList<>(orders);
+    }
+
+    @Override
+    public int size() {
+        return orders.size();
+    }
+
+    @Override
+    public String getId(int row) {
+        return orders.get(row).getId();
+    }
+
+    @Override
+    public String getDescription(int row) {
+        return orders.get(row).getDescription();
+    }
+
+    @Override
+    public boolean isFood(int row) {
+        return Boolean.TRUE.equals(orders.get(row).getFood());
+    }
+
+    @Override
+    public boolean isVip(int row) {
+        return Boolean.TRUE.equals(orders.get(row).getVip());
+    }
+
+    @Override
+    public double getPickupLat(int row) {
+        return lat(orders.get(row).getPickup());
+    }
+
+    @Override
+    public double getPickupLon(int row) {
+        return lon(orders.get(row).getPickup());
+    }
+
+    @Override
+    public double getDeliveryLat(int row) {
+        return lat(orders.get(row).getDelivery());
+    }
+
+    @Override
+    public double getDeliveryLon(int row) {
+        return lon(orders.get(row).getDelivery());
+    }
+
+    @Override
+    public Order getOrder(int row) {
+        return orders.get(row);
+    }
+
+    private static double lat(Location location) {
+        return location == null ? Double.NaN : location.getLat();
+    }
+
+    private static double lon(Location location) {
+        return location == null ? Double.NaN : location.getLon();
+    }
+}
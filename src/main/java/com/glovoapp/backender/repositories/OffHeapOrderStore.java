@@ -0,0 +1,205 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Same columns as the ColumnarOrderStore, but the coordinates and flags live in direct buffers outside of the heap.
+ * Only the ids and the encoded descriptions, needed by the filters and the OrderVM, stay on the heap, so millions of
+ * orders take little more heap than their ids and the collector has no coordinates to copy or compact.
+ */
+public class OffHeapOrderStore implements OrderStore {
+
+    private static final byte FOOD = 1;
+    private static final byte VIP = 2;
+
+    private final int size;
+    private final String[] ids;
+    private final DescriptionColumn descriptions;
+    private final ByteBuffer flags;
+    private final DoubleBuffer pickupLats;
+    private final DoubleBuffer pickupLons;
+    private final DoubleBuffer deliveryLats;
+    private final DoubleBuffer deliveryLons;
+
+    public OffHeapOrderStore(List<Order> orders) {
+        this(Builder.of(orders));
+    }
+
+    private OffHeapOrderStore(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.descriptions = builder.descriptions.build();
+        this.flags = Builder.copyOf(builder.flags, size);
+        this.pickupLats = Builder.copyOf(builder.pickupLats, size);
+        this.pickupLons = Builder.copyOf(builder.pickupLons, size);
+        this.deliveryLats = Builder.copyOf(builder.deliveryLats, size);
+        this.deliveryLons = Builder.copyOf(builder.deliveryLons, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getId(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public String getDescription(int row) {
+        return descriptions.get(row);
+    }
+
+    @Override
+    public boolean descriptionMatches(int row, Predicate<String> matcher) {
+        return descriptions.matches(row, matcher);
+    }
+
+    @Override
+    public boolean isFood(int row) {
+        return (flags.get(row) & FOOD) != 0;
+    }
+
+    @Override
+    public boolean isVip(int row) {
+        return (flags.get(row) & VIP) != 0;
+    }
+
+    @Override
+    public double getPickupLat(int row) {
+        return pickupLats.get(row);
+    }
+
+    @Override
+    public double getPickupLon(int row) {
+        return pickupLons.get(row);
+    }
+
+    @Override
+    public double getDeliveryLat(int row) {
+        return deliveryLats.get(row);
+    }
+
+    @Override
+    public double getDeliveryLon(int row) {
+        return deliveryLons.get(row);
+    }
+
+    /**
+     * Appends the fields of every order to the columns, growing them as needed. Not to be used once built.
+     * The store gets buffers of its exact size, the ones outgrown are released by the collector like any other.
+     */
+    static class Builder implements OrderStoreBuilder {
+        private int size;
+        private String[] ids;
+        private final DescriptionColumn.Builder descriptions = new DescriptionColumn.Builder();
+        private ByteBuffer flags;
+        private DoubleBuffer pickupLats;
+        private DoubleBuffer pickupLons;
+        private DoubleBuffer deliveryLats;
+        private DoubleBuffer deliveryLons;
+
+        Builder(int expectedSize) {
+            final int capacity = Math.max(16, expectedSize);
+            this.ids = new String[capacity];
+            this.flags = ByteBuffer.allocateDirect(capacity);
+            this.pickupLats = allocateDoubles(capacity);
+            this.pickupLons = allocateDoubles(capacity);
+            this.deliveryLats = allocateDoubles(capacity);
+            this.deliveryLons = allocateDoubles(capacity);
+        }
+
+        // Sized for the orders, so their buffers are allocated once.
+        static Builder of(List<Order> orders) {
+            final Builder builder = new Builder(orders.size());
+            orders.forEach(builder::add);
+            return builder;
+        }
+
+        @Override
+        public void add(Order order) {
+            add(order.getId(), order.getDescription(), Boolean.TRUE.equals(order.getFood()), Boolean.TRUE.equals(order.getVip()),
+                    lat(order.getPickup()), lon(order.getPickup()), lat(order.getDelivery()), lon(order.getDelivery()));
+        }
+
+        @Override
+        public void add(OrderStore store, int row) {
+            add(store.getId(row), store.getDescription(row), store.isFood(row), store.isVip(row),
+                    store.getPickupLat(row), store.getPickupLon(row), store.getDeliveryLat(row), store.getDeliveryLon(row));
+        }
+
+        private void add(String id, String description, boolean isFood, boolean isVip,
+                         double pickupLat, double pickupLon, double deliveryLat, double deliveryLon) {
+            if (size == ids.length) {
+                final int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                flags = copyOf(flags, capacity);
+                pickupLats = copyOf(pickupLats, capacity);
+                pickupLons = copyOf(pickupLons, capacity);
+                deliveryLats = copyOf(deliveryLats, capacity);
+                deliveryLons = copyOf(deliveryLons, capacity);
+            }
+
+            final int row = size++;
+            ids[row] = id;
+            descriptions.add(description);
+            flags.put(row, (byte) ((isFood ? FOOD : 0) | (isVip ? VIP : 0)));
+            pickupLats.put(row, pickupLat);
+            pickupLons.put(row, pickupLon);
+            deliveryLats.put(row, deliveryLat);
+            deliveryLons.put(row, deliveryLon);
+        }
+
+        @Override
+        public OrderStore build() {
+            return new OffHeapOrderStore(this);
+        }
+
+        private static double lat(Location location) {
+            return location == null ? Double.NaN : location.getLat();
+        }
+
+        private static double lon(Location location) {
+            return location == null ? Double.NaN : location.getLon();
+        }
+
+        private static DoubleBuffer allocateDoubles(int capacity) {
+            return ByteBuffer.allocateDirect(8 * capacity).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+
+        // The values of the buffer that fit in the given capacity, in a new buffer unless it already has that capacity.
+        private static ByteBuffer copyOf(ByteBuffer buffer, int capacity) {
+            if (buffer.capacity() == capacity) {
+                return buffer;
+            }
+            final ByteBuffer copy = ByteBuffer.allocateDirect(capacity);
+            final ByteBuffer values = buffer.duplicate();
+            ((Buffer) values).limit(Math.min(capacity, buffer.capacity()));
+            copy.put(values);
+            ((Buffer) copy).clear();
+            return copy;
+        }
+
+        private static DoubleBuffer copyOf(DoubleBuffer buffer, int capacity) {
+            if (buffer.capacity() == capacity) {
+                return buffer;
+            }
+            final DoubleBuffer copy = allocateDoubles(capacity);
+            final DoubleBuffer values = buffer.duplicate();
+            ((Buffer) values).limit(Math.min(capacity, buffer.capacity()));
+            copy.put(values);
+            ((Buffer) copy).clear();
+            return copy;
+        }
+    }
+}
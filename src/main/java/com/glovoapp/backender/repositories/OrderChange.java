@@ -0,0 +1,74 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+/**
+ * A pending write to the orders: the order to save, or only the id of the order to delete.
+ * Written and read under the write lock of the OrderRepository.
+ */
+class OrderChange {
+
+    private final String orderId;
+    private final Order order;
+    private Order previous;
+    private boolean done;
+    private RuntimeException failure;
+
+    private OrderChange(String orderId, Order order) {
+        this.orderId = orderId;
+        this.order = order;
+    }
+
+    static OrderChange save(Order order) {
+        return new OrderChange(order.getId(), order);
+    }
+
+    static OrderChange delete(String orderId) {
+        return new OrderChange(orderId, null);
+    }
+
+    String getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * The order to save, null when the change is a deletion.
+     */
+    Order getOrder() {
+        return order;
+    }
+
+    /**
+     * The order with the same id before the change, null when there was none.
+     */
+    Order getPrevious() {
+        if (failure != null) {
+            throw failure;
+        }
+        return previous;
+    }
+
+    /**
+     * Why the change was not published, null when it was or is still pending.
+     */
+    RuntimeException getFailure() {
+        return failure;
+    }
+
+    void setPrevious(Order previous) {
+        this.previous = previous;
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    void done() {
+        this.done = true;
+    }
+
+    void fail(RuntimeException failure) {
+        this.failure = failure;
+        this.done = true;
+    }
+}
@@ -0,0 +1,17 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+/**
+ * Notified of every change published by the OrderRepository, in the order the changes are published.
+ * Called under the write lock, so the next changes wait for it.
+ */
+public interface OrderChangeListener {
+
+    /**
+     * The order was added, or replaced the previous order with the same id (null when there was none).
+     */
+    void orderSaved(Order previous, Order order);
+
+    void orderDeleted(Order order);
+}
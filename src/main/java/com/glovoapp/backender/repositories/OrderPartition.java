@@ -0,0 +1,14 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+/**
+ * The orders an instance keeps when they are split between several instances. The rest are loaded by the others.
+ */
+@FunctionalInterface
+public interface OrderPartition {
+
+    OrderPartition ALL = order -> true;
+
+    boolean owns(Order order);
+}
@@ -1,33 +1,312 @@
 package com.glovoapp.backender.repositories;
 
+import com.glovoapp.backender.entities.Location;
 import com.glovoapp.backender.entities.Order;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.Type;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Orders kept as immutable snapshots. Reads take the current snapshot without locking or copying, and writes
+ * publish a new one: writers queue their changes, and whoever holds the write lock applies all the queued ones
+ * in a single new snapshot. Snapshots only patch the written rows over a shared store, which a background thread
+ * compacts into a new one once enough rows are patched.
+ */
 @Component
 public class OrderRepository {
     private static final String ORDERS_FILE = "/orders.json";
-    private static final List<Order> orders;
+    private static final double INDEX_CELL_SIZE_IN_DEGREES = 0.05; // Around 5.5 km of latitude.
 
-    static {
-        try (Reader reader = new InputStreamReader(OrderRepository.class.getResourceAsStream(ORDERS_FILE))) {
-            Type type = new TypeToken<List<Order>>() {
-            }.getType();
-            orders = new Gson().fromJson(reader, type);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private final OrderStorage storage;
+    private final String ordersFile;
+    private final SourceFormat format;
+    private final OrderPartition partition;
+    private final AtomicReference<OrderSnapshot> snapshot;
+    private final Queue<OrderChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final List<OrderChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "orders-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Guarded by the write lock. The changes published while a compaction runs, applied again over its store.
+    private List<OrderChange> changesDuringCompaction;
+    private boolean compactionScheduled;
+
+    public OrderRepository() {
+        this(OrderStorage.OBJECTS);
+    }
+
+    public OrderRepository(OrderStorage storage) {
+        this(storage, "");
+    }
+
+    public OrderRepository(OrderStorage storage, String ordersFile) {
+        this(storage, ordersFile, SourceFormat.JSON);
+    }
+
+    public OrderRepository(OrderStorage storage, String ordersFile, SourceFormat format) {
+        this(storage, ordersFile, format, OrderPartition.ALL);
+    }
+
+    /**
+     * Loads the orders of the file at ordersFile, or of the bundled ones when it is empty. JSON orders go straight
+     * from the parser into the store, so a columnar store never holds all of them as objects. A BINARY file is mapped
+     * and read in place until the first compaction, which copies the orders into the given storage. Only the orders of the
+     * partition are kept, from the file and from every reload, so a partitioned BINARY file is copied into the storage.
+     */
+    @Autowired
+    public OrderRepository(@Value("${backender.orders.storage:OBJECTS}") OrderStorage storage,
+                           @Value("${backender.orders.file:}") String ordersFile,
+                           @Value("${backender.orders.format:JSON}") SourceFormat format,
+                           OrderPartition partition) {
+        this.storage = storage;
+        this.ordersFile = ordersFile;
+        this.format = format;
+        this.partition = partition;
+        this.snapshot = new AtomicReference<>(new OrderSnapshot(0, storage, load(), INDEX_CELL_SIZE_IN_DEGREES));
+    }
+
+    /**
+     * The current version of the orders. Take it once per request and read everything from it.
+     */
+    public OrderSnapshot getSnapshot() {
+        return snapshot.get();
     }
 
     public List<Order> findAll() {
-        return new ArrayList<>(orders);
+        return getSnapshot().findAll();
+    }
+
+    /**
+     * The orders addressed by row, from the current snapshot.
+     */
+    public OrderStore getStore() {
+        return getSnapshot().getStore();
+    }
+
+    /**
+     * Same as OrderSnapshot.findNearby, over the current snapshot. Use the snapshot to read its rows.
+     */
+    public int[] findNearby(Location location, double radiusInKm) {
+        return getSnapshot().findNearby(location, radiusInKm);
+    }
+
+    /**
+     * Adds the order, or replaces the one with the same id. Returns the replaced order, null when there was none.
+     * The order is visible to readers when this returns.
+     */
+    public Order save(Order order) {
+        return write(OrderChange.save(order));
+    }
+
+    /**
+     * Deletes the order with the given id. Returns the deleted order, null when there was none.
+     */
+    public Order delete(String orderId) {
+        return write(OrderChange.delete(orderId));
+    }
+
+    /**
+     * The file the orders were loaded from, or null for the bundled ones.
+     */
+    public Path getSourceFile() {
+        return ordersFile.isEmpty() ? null : Paths.get(ordersFile);
+    }
+
+    /**
+     * Reads the source file again and publishes the differences by id, in a single snapshot: new and changed orders
+     * are saved, missing ones deleted, and only those are notified. The file is read in full, outside of the write
+     * lock, before anything changes. Returns the number of orders changed.
+     */
+    public int reload() {
+        return reload(load());
+    }
+
+    /**
+     * Replaces the orders with the ones of the store, publishing only the differences by id in a single snapshot.
+     * Returns the number of orders changed.
+     */
+    public int reload(OrderStore orders) {
+        writeLock.lock();
+        try {
+            // Diffed against the latest orders, with the changes queued meanwhile already published.
+            if (!pendingChanges.isEmpty()) {
+                publishPendingChanges();
+            }
+            final List<OrderChange> changes = getSnapshot().diff(orders);
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            pendingChanges.addAll(changes);
+            publishPendingChanges();
+            final RuntimeException failure = changes.get(0).getFailure();
+            if (failure != null) {
+                throw failure;
+            }
+            return changes.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the orders of the current snapshot into a new store of the storage, so the next writes patch a fresh
+     * one. The copy is made outside of the write lock, and the changes published meanwhile are applied again over it.
+     * Runs in the background once enough rows are patched, and waits for a compaction already running.
+     */
+    public void compact() {
+        compactionLock.lock();
+        try {
+            final OrderSnapshot from;
+            writeLock.lock();
+            try {
+                changesDuringCompaction = new ArrayList<>();
+                from = getSnapshot();
+            } finally {
+                writeLock.unlock();
+            }
+
+            OrderSnapshot compacted = null;
+            try {
+                compacted = from.compact();
+            } finally {
+                writeLock.lock();
+                try {
+                    if (compacted != null) {
+                        // Versions only grow: the snapshots published meanwhile are newer than the compacted one.
+                        final OrderSnapshot latest = changesDuringCompaction.isEmpty() ? compacted : compacted.apply(changesDuringCompaction);
+                        snapshot.set(latest.withVersion(getSnapshot().getVersion() + 1));
+                    }
+                    changesDuringCompaction = null;
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdown();
+    }
+
+    /**
+     * Writes the orders of the current snapshot as a binary snapshot at the given path.
+     */
+    public void writeSnapshot(Path path) {
+        MappedOrderStore.write(getStore(), path);
+    }
+
+    /**
+     * Registers a listener for the changes published from now on, and returns the snapshot they start from.
+     */
+    public OrderSnapshot addChangeListener(OrderChangeListener listener) {
+        writeLock.lock();
+        try {
+            listeners.add(listener);
+            return getSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private OrderStore load() {
+        if (format == SourceFormat.BINARY) {
+            if (ordersFile.isEmpty()) {
+                throw new IllegalArgumentException("A file is required to load BINARY orders");
+            }
+            final MappedOrderStore mapped = MappedOrderStore.open(Paths.get(ordersFile));
+            if (partition == OrderPartition.ALL) {
+                return mapped;
+            }
+            final OrderStoreBuilder builder = storage.builder(mapped.size());
+            for (int row = 0; row < mapped.size(); row++) {
+                addOwned(builder, mapped.getOrder(row));
+            }
+            return builder.build();
+        }
+        final OrderStoreBuilder builder = storage.builder();
+        JsonRecordReader.read(ordersFile, ORDERS_FILE, Order.class, order -> addOwned(builder, order));
+        return builder.build();
+    }
+
+    private void addOwned(OrderStoreBuilder builder, Order order) {
+        if (partition.owns(order)) {
+            builder.add(order);
+        }
+    }
+
+    private Order write(OrderChange change) {
+        pendingChanges.add(change);
+        writeLock.lock();
+        try {
+            // Another writer may have published this change along with its own.
+            if (!change.isDone()) {
+                publishPendingChanges();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return change.getPrevious();
+    }
+
+    private void compactScheduled() {
+        writeLock.lock();
+        try {
+            compactionScheduled = false;
+        } finally {
+            writeLock.unlock();
+        }
+        compact();
+    }
+
+    private void publishPendingChanges() {
+        final List<OrderChange> changes = new ArrayList<>();
+        for (OrderChange change = pendingChanges.poll(); change != null; change = pendingChanges.poll()) {
+            changes.add(change);
+        }
+
+        try {
+            snapshot.set(getSnapshot().apply(changes));
+        } catch (RuntimeException e) {
+            changes.forEach(change -> change.fail(e));
+            return;
+        }
+
+        changes.forEach(OrderChange::done);
+        if (changesDuringCompaction != null) {
+            changes.forEach(change -> changesDuringCompaction.add(change.getOrder() != null ?
+                    OrderChange.save(change.getOrder()) : OrderChange.delete(change.getOrderId())));
+        } else if (!compactionScheduled && getSnapshot().needsCompaction()) {
+            compactionScheduled = true;
+            compactor.execute(this::compactScheduled);
+        }
+        for (OrderChange change : changes) {
+            for (OrderChangeListener listener : listeners) {
+                if (change.getOrder() != null) {
+                    listener.orderSaved(change.getPrevious(), change.getOrder());
+                } else if (change.getPrevious() != null) {
+                    listener.orderDeleted(change.getPrevious());
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,186 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable version of the orders: the store, its spatial index and the row of every order id.
+ * Readers keep a snapshot for the whole request, so the rows they get from it always refer to the same store,
+ * whatever is written meanwhile. Versions share the store they were loaded or compacted into, and the index of its
+ * deliveries, and only patch the rows written since on top of them.
+ */
+public class OrderSnapshot {
+
+    // Copying the patches costs O(patches) per write, and compacting them O(orders): around the square root of the
+    // orders keeps both low.
+    private static final int MIN_PATCHES_TO_COMPACT = 1024;
+
+    private final long version;
+    private final OrderStorage storage;
+    private final LayeredOrderStore store;
+    private final OrderSpatialIndex baseIndex;
+    private final double indexCellSizeInDegrees;
+    private volatile PatchIndex patchIndex; // Built on first use: most versions of a burst of writes are never read.
+
+    OrderSnapshot(long version, OrderStorage storage, OrderStore store, double indexCellSizeInDegrees) {
+        this(version, storage, new LayeredOrderStore(store), OrderSpatialIndex.forDeliveries(store, indexCellSizeInDegrees),
+                indexCellSizeInDegrees);
+    }
+
+    private OrderSnapshot(long version, OrderStorage storage, LayeredOrderStore store, OrderSpatialIndex baseIndex,
+                          double indexCellSizeInDegrees) {
+        this.version = version;
+        this.storage = storage;
+        this.store = store;
+        this.baseIndex = baseIndex;
+        this.indexCellSizeInDegrees = indexCellSizeInDegrees;
+    }
+
+    /**
+     * Increases with every published change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The orders addressed by row. Rows returned by findNearby refer to this store. Without writes since the last
+     * compaction, it is the compacted store itself.
+     */
+    public OrderStore getStore() {
+        return store.patchCount() == 0 ? store.getBase() : store;
+    }
+
+    public List<Order> findAll() {
+        final List<Order> orders = new ArrayList<>(store.size());
+        for (int row = 0; row < store.size(); row++) {
+            orders.add(store.getOrder(row));
+        }
+        return orders;
+    }
+
+    /**
+     * Returns the rows of the orders whose delivery location may be within radiusInKm of the given location, in ascending order.
+     * Only the grid cells in range are visited, so some of the returned orders can still be a bit further than radiusInKm.
+     */
+    public int[] findNearby(Location location, double radiusInKm) {
+        final int[] baseRows = baseIndex.findNearby(location, radiusInKm);
+        if (store.patchCount() == 0) {
+            return baseRows;
+        }
+
+        // Base rows still holding their order, and the patched rows in range of the index of the patches.
+        final PatchIndex patches = patchIndex();
+        final int[] patchedRowsInRange = patches.index.findNearby(location, radiusInKm);
+        final int[] rows = new int[baseRows.length + patchedRowsInRange.length];
+        int size = 0;
+        for (int row : baseRows) {
+            if (row < store.size() && !store.isPatched(row)) {
+                rows[size++] = row;
+            }
+        }
+        for (int position : patchedRowsInRange) {
+            rows[size++] = patches.rows[position];
+        }
+        Arrays.sort(rows, 0, size);
+        return Arrays.copyOf(rows, size);
+    }
+
+    /**
+     * Row of the order with the given id, or -1 when there is none.
+     */
+    public int findRow(String orderId) {
+        return store.findRow(orderId);
+    }
+
+    public Order findById(String orderId) {
+        final int row = findRow(orderId);
+        return row < 0 ? null : store.getOrder(row);
+    }
+
+    /**
+     * Builds the next version with all the changes applied in order, over copies of the patches: the shared store is
+     * not copied. Saved orders keep their row when they already existed and go last otherwise, and a deleted order
+     * leaves its row to the last one.
+     */
+    OrderSnapshot apply(List<OrderChange> changes) {
+        final LayeredOrderStore.Editor editor = store.edit();
+        for (OrderChange change : changes) {
+            change.setPrevious(change.getOrder() != null ? editor.save(change.getOrder()) : editor.delete(change.getOrderId()));
+        }
+        return new OrderSnapshot(version + 1, storage, editor.build(), baseIndex, indexCellSizeInDegrees);
+    }
+
+    /**
+     * Whether the patches have grown enough to be compacted.
+     */
+    boolean needsCompaction() {
+        return store.patchCount() >= Math.max(MIN_PATCHES_TO_COMPACT, 4 * (int) Math.sqrt(store.getBase().size()));
+    }
+
+    /**
+     * The same orders, in the same rows, copied into a new store of the storage with its own index. A new version,
+     * since rows cached for this one do not refer to the new store.
+     */
+    OrderSnapshot compact() {
+        return new OrderSnapshot(version + 1, storage, store.compact(storage), indexCellSizeInDegrees);
+    }
+
+    /**
+     * The same orders under another version.
+     */
+    OrderSnapshot withVersion(long version) {
+        return new OrderSnapshot(version, storage, store, baseIndex, indexCellSizeInDegrees);
+    }
+
+    /**
+     * Changes turning this version into the given orders: saves for the new and the changed orders, in the order of
+     * the store, and deletes for the orders it does not have.
+     */
+    List<OrderChange> diff(OrderStore orders) {
+        final List<OrderChange> changes = new ArrayList<>();
+        final Set<String> ids = new HashSet<>(orders.size() * 2);
+        for (int row = 0; row < orders.size(); row++) {
+            final Order order = orders.getOrder(row);
+            ids.add(order.getId());
+            if (!order.equals(findById(order.getId()))) {
+                changes.add(OrderChange.save(order));
+            }
+        }
+        for (int row = 0; row < store.size(); row++) {
+            if (!ids.contains(store.getId(row))) {
+                changes.add(OrderChange.delete(store.getId(row)));
+            }
+        }
+        return changes;
+    }
+
+    private PatchIndex patchIndex() {
+        PatchIndex index = patchIndex;
+        if (index == null) {
+            index = new PatchIndex(store, indexCellSizeInDegrees);
+            patchIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Index of the deliveries of the patched rows: positions in the index are positions in rows.
+     */
+    private static class PatchIndex {
+        private final int[] rows;
+        private final OrderSpatialIndex index;
+
+        PatchIndex(LayeredOrderStore store, double cellSizeInDegrees) {
+            this.rows = store.getPatchedRows();
+            this.index = new OrderSpatialIndex(rows.length, position -> store.getDeliveryLat(rows[position]),
+                    position -> store.getDeliveryLon(rows[position]), cellSizeInDegrees);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Uniform lat/lon grid over one location of the orders. Every cell keeps the positions (rows) of its orders,
+ * so a query only visits the cells that intersect the bounding box of the searched circle.
+ * The index is immutable: it is built once for a given store of orders.
+ */
+public class OrderSpatialIndex {
+
+    private static final double KM_PER_DEGREE = 111.19492664455873; // 2 * PI * 6371 / 360
+
+    private final double cellSizeInDegrees;
+    private final int lonCells;
+    private final int size;
+    private final Map<Long, int[]> cells;
+
+    public OrderSpatialIndex(int size, IntToDoubleFunction latitudes, IntToDoubleFunction longitudes, double cellSizeInDegrees) {
+        this.cellSizeInDegrees = cellSizeInDegrees;
+        this.lonCells = (int) Math.ceil(360 / cellSizeInDegrees);
+        this.size = size;
+        this.cells = createCells(latitudes, longitudes);
+    }
+
+    /**
+     * Indexes the delivery location of the orders, which is the one used to filter and sort them for a courier.
+     */
+    public static OrderSpatialIndex forDeliveries(OrderStore store, double cellSizeInDegrees) {
+        return new OrderSpatialIndex(store.size(), store::getDeliveryLat, store::getDeliveryLon, cellSizeInDegrees);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns, in ascending order, the rows of the locations that may be within radiusInKm of the given location.
+     * The result is a superset: the exact distance still has to be checked by the caller.
+     */
+    public int[] findNearby(Location location, double radiusInKm) {
+        final double latDelta = radiusInKm / KM_PER_DEGREE;
+        final double minLat = location.getLat() - latDelta;
+        final double maxLat = location.getLat() + latDelta;
+
+        // Close to the poles, or with an infinite radius, every longitude is in range.
+        final double lonDelta = minLat <= -90 || maxLat >= 90 ? 180 :
+                latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        if (latDelta >= 180) {
+            return allRows();
+        }
+
+        final int fromLatCell = latCell(Math.max(minLat, -90));
+        final int toLatCell = latCell(Math.min(maxLat, 90));
+        final int fromLonCell;
+        final int toLonCell;
+        if (lonDelta >= 180) {
+            fromLonCell = 0;
+            toLonCell = lonCells - 1;
+        } else {
+            fromLonCell = lonCell(location.getLon() - lonDelta);
+            toLonCell = lonCell(location.getLon() + lonDelta);
+        }
+
+        final long cellsInBox = (long) (toLatCell - fromLatCell + 1) * Math.min(lonCells, toLonCell - fromLonCell + 1);
+        return cellsInBox > cells.size() ?
+                scanCells(fromLatCell, toLatCell, fromLonCell, toLonCell) :
+                visitCells(fromLatCell, toLatCell, fromLonCell, toLonCell);
+    }
+
+    // Few occupied cells compared to the box: cheaper to check every occupied cell against the box.
+    private int[] scanCells(int fromLatCell, int toLatCell, int fromLonCell, int toLonCell) {
+        final RowCollector collector = new RowCollector();
+        for (Map.Entry<Long, int[]> cell : cells.entrySet()) {
+            final int latCell = (int) (cell.getKey() >> 32);
+            final int lonCell = (int) (long) cell.getKey();
+            if (latCell >= fromLatCell && latCell <= toLatCell && containsLonCell(fromLonCell, toLonCell, lonCell)) {
+                collector.add(cell.getValue());
+            }
+        }
+        return collector.toSortedArray();
+    }
+
+    private int[] visitCells(int fromLatCell, int toLatCell, int fromLonCell, int toLonCell) {
+        final RowCollector collector = new RowCollector();
+        final int lonSpan = Math.min(lonCells, toLonCell - fromLonCell + 1);
+        for (int latCell = fromLatCell; latCell <= toLatCell; latCell++) {
+            for (int i = 0; i < lonSpan; i++) {
+                final int lonCell = Math.floorMod(fromLonCell + i, lonCells); // Wraps around the antimeridian.
+                final int[] rows = cells.get(cellKey(latCell, lonCell));
+                if (rows != null) {
+                    collector.add(rows);
+                }
+            }
+        }
+        return collector.toSortedArray();
+    }
+
+    private boolean containsLonCell(int fromLonCell, int toLonCell, int lonCell) {
+        if (toLonCell - fromLonCell + 1 >= lonCells) {
+            return true;
+        }
+        return Math.floorMod(lonCell - fromLonCell, lonCells) <= toLonCell - fromLonCell;
+    }
+
+    private int[] allRows() {
+        final int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    private Map<Long, int[]> createCells(IntToDoubleFunction latitudes, IntToDoubleFunction longitudes) {
+        // First pass counts the rows of every cell, so the second one can fill arrays of the exact size.
+        final long[] keys = new long[size];
+        final Map<Long, int[]> counts = new HashMap<>();
+        for (int row = 0; row < keys.length; row++) {
+            keys[row] = cellKey(latCell(latitudes.applyAsDouble(row)), Math.floorMod(lonCell(longitudes.applyAsDouble(row)), lonCells));
+            counts.computeIfAbsent(keys[row], k -> new int[1])[0]++;
+        }
+
+        final Map<Long, int[]> rowsByCell = new HashMap<>(counts.size() * 2);
+        for (int row = 0; row < keys.length; row++) {
+            final int[] count = counts.get(keys[row]);
+            final int[] rows = rowsByCell.computeIfAbsent(keys[row], k -> new int[count[0]]);
+            rows[rows.length - count[0]--] = row;
+        }
+        return rowsByCell;
+    }
+
+    private int latCell(double lat) {
+        return (int) Math.floor((lat + 90) / cellSizeInDegrees);
+    }
+
+    private int lonCell(double lon) {
+        return (int) Math.floor((lon + 180) / cellSizeInDegrees);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+
+    private static class RowCollector {
+        private int[] rows = new int[16];
+        private int size;
+
+        void add(int[] cellRows) {
+            if (size + cellRows.length > rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(rows.length * 2, size + cellRows.length));
+            }
+            System.arraycopy(cellRows, 0, rows, size, cellRows.length);
+            size += cellRows.length;
+        }
+
+        // Rows are sorted so the candidates keep the order of the repository.
+        int[] toSortedArray() {
+            final int[] result = Arrays.copyOf(rows, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
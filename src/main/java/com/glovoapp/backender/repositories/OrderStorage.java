@@ -0,0 +1,71 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the OrderRepository keeps the orders in memory.
+ */
+public enum OrderStorage {
+    OBJECTS {
+        @Override
+        public OrderStore create(List<Order> orders) {
+            return new ObjectOrderStore(orders);
+        }
+
+        @Override
+        public OrderStoreBuilder builder(int expectedSize) {
+            final List<Order> orders = new ArrayList<>(expectedSize);
+            return new OrderStoreBuilder() {
+                @Override
+                public void add(Order order) {
+                    orders.add(order);
+                }
+
+                @Override
+                public OrderStore build() {
+                    return new ObjectOrderStore(orders);
+                }
+            };
+        }
+    },
+    COLUMNAR {
+        @Override
+        public OrderStore create(List<Order> orders) {
+            return new ColumnarOrderStore(orders);
+        }
+
+        @Override
+        public OrderStoreBuilder builder(int expectedSize) {
+            return new ColumnarOrderStore.Builder(expectedSize);
+        }
+    },
+    OFF_HEAP {
+        @Override
+        public OrderStore create(List<Order> orders) {
+            return new OffHeapOrderStore(orders);
+        }
+
+        @Override
+        public OrderStoreBuilder builder(int expectedSize) {
+            return new OffHeapOrderStore.Builder(expectedSize);
+        }
+    };
+
+    public abstract OrderStore create(List<Order> orders);
+
+    /**
+     * Builder of a store of this kind. The columnar and off-heap ones keep only the columns of the orders added, not the orders.
+     */
+    public OrderStoreBuilder builder() {
+        return builder(0);
+    }
+
+    /**
+     * Same as builder(), sized for the given number of orders: when known, adding that many grows nothing, so an
+     * off-heap store allocates its direct buffers once.
+     */
+    public abstract OrderStoreBuilder builder(int expectedSize);
+}
@@ -0,0 +1,58 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+
+import java.util.function.Predicate;
+
+/**
+ * Read-only storage of orders addressed by row. Filters and sorters read single fields by row,
+ * so they don't need an Order object for every order they visit.
+ */
+public interface OrderStore {
+
+    int size();
+
+    String getId(int row);
+
+    String getDescription(int row);
+
+    boolean isFood(int row);
+
+    boolean isVip(int row);
+
+    double getPickupLat(int row);
+
+    double getPickupLon(int row);
+
+    double getDeliveryLat(int row);
+
+    double getDeliveryLon(int row);
+
+    /**
+     * Whether the matcher accepts the description in the row, false for a missing description. Stores that encode the
+     * descriptions by line test every distinct line once and remember the answers, so the matcher must not match across
+     * lines, and should be the same object on every call.
+     */
+    default boolean descriptionMatches(int row, Predicate<String> matcher) {
+        final String description = getDescription(row);
+        return description != null && matcher.test(description);
+    }
+
+    /**
+     * Builds (or returns, depending on the storage) the order in the given row.
+     */
+    default Order getOrder(int row) {
+        return new Order().withId(getId(row))
+                .withDescription(getDescription(row))
+                .withFood(isFood(row))
+                .withVip(isVip(row))
+                .withPickup(toLocation(getPickupLat(row), getPickupLon(row)))
+                .withDelivery(toLocation(getDeliveryLat(row), getDeliveryLon(row)));
+    }
+
+    // Missing locations are stored as NaN coordinates.
+    static Location toLocation(double lat, double lon) {
+        return Double.isNaN(lat) && Double.isNaN(lon) ? null : new Location(lat, lon);
+    }
+}
@@ -0,0 +1,21 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Order;
+
+/**
+ * Builds an order store one order at a time, so the orders do not have to be collected in a list first.
+ */
+public interface OrderStoreBuilder {
+
+    void add(Order order);
+
+    /**
+     * Adds the order in the row of another store. Builders of columns copy its fields one by one, without building
+     * the order.
+     */
+    default void add(OrderStore store, int row) {
+        add(store.getOrder(row));
+    }
+
+    OrderStore build();
+}
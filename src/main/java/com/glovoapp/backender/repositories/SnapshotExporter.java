@@ -0,0 +1,52 @@
+package com.glovoapp.backender.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the loaded orders and couriers as binary snapshots (orders.bin and couriers.bin) once the service is up,
+ * when an export directory is configured. Instances started from those files with the BINARY format skip parsing.
+ */
+@Component
+public class SnapshotExporter implements ApplicationRunner {
+
+    static final String ORDERS_SNAPSHOT = "orders.bin";
+    static final String COURIERS_SNAPSHOT = "couriers.bin";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotExporter.class);
+
+    private final OrderRepository orderRepository;
+    private final CourierRepository courierRepository;
+    private final String exportDirectory;
+
+    @Autowired
+    public SnapshotExporter(OrderRepository orderRepository,
+                            CourierRepository courierRepository,
+                            @Value("${backender.snapshot.export-dir:}") String exportDirectory) {
+        this.orderRepository = orderRepository;
+        this.courierRepository = courierRepository;
+        this.exportDirectory = exportDirectory;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!exportDirectory.isEmpty()) {
+            export(Paths.get(exportDirectory));
+        }
+    }
+
+    public void export(Path directory) {
+        final long start = System.nanoTime();
+        orderRepository.writeSnapshot(directory.resolve(ORDERS_SNAPSHOT));
+        courierRepository.writeSnapshot(directory.resolve(COURIERS_SNAPSHOT));
+        LOGGER.info("Wrote snapshots to {} in {} ms", directory, (System.nanoTime() - start) / 1_000_000);
+    }
+}
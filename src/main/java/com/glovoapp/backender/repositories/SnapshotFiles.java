@@ -0,0 +1,141 @@
+package com.glovoapp.backender.repositories;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Helpers shared by the binary snapshot files. Every file starts with a header (magic number, format version and
+ * number of records) followed by fixed-width columns, so a record is found by arithmetic on its row, and ends with
+ * the bytes of its strings, found through offset tables. Files are read through a read-only memory mapping: the OS
+ * pages in what is read, nothing is parsed up front. They are limited to 2 GB, the size of a single mapping.
+ */
+final class SnapshotFiles {
+
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16; // Magic, format version, number of records and a spare int.
+
+    private SnapshotFiles() {
+    }
+
+    /**
+     * Maps the file read-only and checks its header. The mapping stays valid once the file is closed.
+     */
+    static ByteBuffer map(Path path, int magic) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected size: " + channel.size() + " bytes");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != magic || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) < 0) {
+                throw new IOException("Not a snapshot of the expected kind and version");
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not map snapshot " + path, e);
+        }
+    }
+
+    static int size(ByteBuffer buffer) {
+        return buffer.getInt(8);
+    }
+
+    /**
+     * Writes a file of the given size to a temporary file replacing the one at path once complete, so a file is never
+     * seen half written, and an instance mapping the previous file keeps reading the previous contents.
+     */
+    static void write(Path path, int magic, int size, long fileSize, Consumer<ByteBuffer> content) {
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Snapshot of " + fileSize + " bytes does not fit in a single file mapping");
+        }
+
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                buffer.putInt(0, magic);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, size);
+                content.accept(buffer);
+                buffer.force();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write snapshot " + path, e);
+        }
+    }
+
+    static long align(long position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * A column of strings: offsets[row] to offsets[row + 1] are the UTF-8 bytes of the row. Nulls are stored as empty
+     * strings, so the files flag them in their own columns.
+     */
+    static final class StringColumn {
+        private static final byte[] EMPTY = new byte[0];
+
+        private final byte[][] values;
+        private final long byteCount;
+
+        StringColumn(int size, IntFunction<String> strings) {
+            this.values = new byte[size][];
+            long count = 0;
+            for (int row = 0; row < size; row++) {
+                final String value = strings.apply(row);
+                values[row] = value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+                count += values[row].length;
+            }
+            this.byteCount = count;
+        }
+
+        static long tableSize(int size) {
+            return 4L * (size + 1);
+        }
+
+        long byteCount() {
+            return byteCount;
+        }
+
+        /**
+         * Writes the offset table at tableAt and the bytes from bytesAt on.
+         */
+        void write(ByteBuffer buffer, int tableAt, int bytesAt) {
+            int position = bytesAt;
+            for (int row = 0; row < values.length; row++) {
+                buffer.putInt(tableAt + 4 * row, position);
+                ((Buffer) buffer).position(position);
+                buffer.put(values[row]);
+                position += values[row].length;
+            }
+            buffer.putInt(tableAt + 4 * values.length, position);
+        }
+
+        static String read(ByteBuffer buffer, int tableAt, int row) {
+            final int from = buffer.getInt(tableAt + 4 * row);
+            final byte[] bytes = new byte[buffer.getInt(tableAt + 4 * row + 4) - from];
+            final ByteBuffer view = buffer.duplicate(); // Positioned on its own, so concurrent readers do not interfere.
+            ((Buffer) view).position(from);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Where the bytes of the column end, to check they are within the file.
+         */
+        static int end(ByteBuffer buffer, int tableAt, int size) {
+            return buffer.getInt(tableAt + 4 * size);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.glovoapp.backender.repositories;
+
+/**
+ * Format of the file the orders or couriers are loaded from.
+ */
+public enum SourceFormat {
+    /**
+     * A JSON array, parsed record by record.
+     */
+    JSON,
+    /**
+     * A binary snapshot, memory-mapped. Written by SnapshotExporter.
+     */
+    BINARY
+}
@@ -0,0 +1,135 @@
+package com.glovoapp.backender.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Reloads the orders and couriers when their source files change, without restarting. The files are watched on a
+ * background thread, which reads the new file in full and has the repository apply only the differences by id, so
+ * requests keep being served from the current orders and couriers until the reloaded ones replace them at once.
+ * Files should be replaced by moving a complete file into place; a file still being written is reloaded once no
+ * change is seen for a moment, and a file that cannot be read leaves the current orders or couriers as they are.
+ */
+@Component
+public class SourceWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceWatcher.class);
+    private static final long QUIET_PERIOD_IN_MS = 500;
+
+    private final OrderRepository orderRepository;
+    private final CourierRepository courierRepository;
+    private final boolean enabled;
+    private final Path ordersFile;
+    private final Path couriersFile;
+    private WatchService watchService;
+
+    @Autowired
+    public SourceWatcher(OrderRepository orderRepository,
+                         CourierRepository courierRepository,
+                         @Value("${backender.reload.watch:false}") boolean enabled) {
+        this.orderRepository = orderRepository;
+        this.courierRepository = courierRepository;
+        this.enabled = enabled;
+        this.ordersFile = normalize(orderRepository.getSourceFile());
+        this.couriersFile = normalize(courierRepository.getSourceFile());
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (ordersFile == null && couriersFile == null) {
+            LOGGER.warn("Reload enabled, but orders and couriers are loaded from the bundled files: nothing to watch");
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path file : new Path[]{ordersFile, couriersFile}) {
+            if (file != null) {
+                // Registering the same directory twice returns the same key.
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                LOGGER.info("Watching {} for changes", file);
+            }
+        }
+
+        final Thread thread = new Thread(this::watch, "source-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                final Set<Path> changed = new HashSet<>();
+                collect(watchService.take(), changed);
+                for (WatchKey key = watchService.poll(QUIET_PERIOD_IN_MS, TimeUnit.MILLISECONDS); key != null;
+                     key = watchService.poll(QUIET_PERIOD_IN_MS, TimeUnit.MILLISECONDS)) {
+                    collect(key, changed);
+                }
+
+                if (ordersFile != null && changed.contains(ordersFile)) {
+                    reload("orders", ordersFile, orderRepository::reload);
+                }
+                if (couriersFile != null && changed.contains(couriersFile)) {
+                    reload("couriers", couriersFile, courierRepository::reload);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.info("Stopped watching for changes");
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        final Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost: any of the files may have changed.
+                changed.add(ordersFile);
+                changed.add(couriersFile);
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    private static void reload(String name, Path file, IntSupplier reload) {
+        final long start = System.nanoTime();
+        try {
+            final int changes = reload.getAsInt();
+            LOGGER.info("Reloaded {} from {}: {} changed in {} ms", name, file, changes, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not reload {} from {}, keeping the current ones", name, file, e);
+        }
+    }
+
+    private static Path normalize(Path file) {
+        return file == null ? null : file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,87 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.CourierDistance;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.exceptions.InvalidLimitException;
+import com.glovoapp.backender.exceptions.InvalidLocationException;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.CourierSpatialIndex;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Controller
+public class CourierResource {
+
+    private static final int DEFAULT_NEAREST_COURIERS = 10;
+
+    private final CourierRepository courierRepository;
+    private final OrderRepository orderRepository;
+    private final OrderFilter orderFilter;
+    private final CourierSpatialIndex courierSpatialIndex;
+
+    @Autowired
+    public CourierResource(CourierRepository courierRepository, OrderRepository orderRepository, OrderFilter orderFilter,
+                           CourierSpatialIndex courierSpatialIndex) {
+        this.courierRepository = courierRepository;
+        this.orderRepository = orderRepository;
+        this.orderFilter = orderFilter;
+        this.courierSpatialIndex = courierSpatialIndex;
+    }
+
+    /**
+     * Moves the courier to the reported location. Its next orders are filtered and sorted from there.
+     */
+    @PutMapping(value = "/couriers/{courierId}/location")
+    @ResponseBody
+    public Courier updateLocation(@PathVariable("courierId") final String courierId,
+                                  @RequestBody final Location location) {
+        if (location == null || location.getLat() == null || location.getLon() == null
+                || Math.abs(location.getLat()) > 90 || Math.abs(location.getLon()) > 180) {
+            throw new InvalidLocationException();
+        }
+
+        final Courier courier = courierRepository.updateLocation(courierId, location);
+        if (courier == null) {
+            throw new CourierNotFoundException();
+        }
+        return courier;
+    }
+
+    /**
+     * The k couriers closest to the pickup of the order among the ones that can take it, by the rules of OrderFilter.
+     */
+    @GetMapping(value = "/orders/{orderId}/couriers")
+    @ResponseBody
+    public List<CourierDistance> getNearestCouriers(@PathVariable("orderId") final String orderId,
+                                                    @RequestParam(value = "k", required = false) final Integer k) {
+        if (k != null && k <= 0) {
+            throw new InvalidLimitException();
+        }
+
+        final Order order = orderRepository.getSnapshot().findById(orderId);
+        if (order == null) {
+            throw new OrderNotFoundException();
+        }
+
+        return courierSpatialIndex.findNearest(order.getPickup(), k == null ? DEFAULT_NEAREST_COURIERS : k, orderFilter.filterCouriers(order))
+                .stream()
+                .map(courier -> new CourierDistance(courier, DistanceCalculator.calculateDistance(order.getPickup(), courier.getLocation())))
+                .collect(Collectors.toList());
+    }
+}
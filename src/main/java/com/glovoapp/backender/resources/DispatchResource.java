@@ -0,0 +1,35 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.dispatch.DispatchEngine;
+import com.glovoapp.backender.dispatch.DispatchMode;
+import com.glovoapp.backender.entities.Dispatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+
+@Controller
+public class DispatchResource {
+
+    private final DispatchEngine dispatchEngine;
+
+    @Autowired
+    public DispatchResource(DispatchEngine dispatchEngine) {
+        this.dispatchEngine = dispatchEngine;
+    }
+
+    /**
+     * Assigns the current orders to every courier, or to the couriers with the given ids, GREEDY by default. EXACT
+     * assigns greedily the groups of couriers too large for it, so fewer couriers keep it exact. Nothing is saved:
+     * the assignment is only returned.
+     */
+    @GetMapping(value = "/dispatch")
+    @ResponseBody
+    public Dispatch dispatch(@RequestParam(value = "mode", required = false, defaultValue = "GREEDY") final DispatchMode mode,
+                             @RequestParam(value = "courierIds", required = false) final List<String> courierIds) {
+        return courierIds == null ? dispatchEngine.dispatch(mode) : dispatchEngine.dispatch(mode, courierIds);
+    }
+}
@@ -1,99 +1,384 @@
 package com.glovoapp.backender.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.OfferCacheStat;
 import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.entities.OrderVM;
 import com.glovoapp.backender.entities.Stat;
 import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.exceptions.InvalidLimitException;
+import com.glovoapp.backender.exceptions.InvalidOrderException;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
 import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.metrics.OfferMetrics;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.offers.OfferCache;
+import com.glovoapp.backender.offers.OfferExecutor;
+import com.glovoapp.backender.offers.OfferPipeline;
 import com.glovoapp.backender.repositories.CourierRepository;
 import com.glovoapp.backender.repositories.OrderRepository;
-import com.glovoapp.backender.sorting.OrderSorter;
-import com.glovoapp.backender.utils.DistanceCalculator;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderStorage;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sharding.ShardRouter;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.RankedOrders;
+import com.glovoapp.backender.sorting.SortPlan;
+import com.glovoapp.backender.sorting.SortPlanCache;
+import com.glovoapp.backender.stats.StatsEngine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
+/**
+ * Ranking, filtering and mapping of orders run on the OfferExecutor: the handlers return futures, so request threads
+ * are released while that work runs. Requests are validated and couriers are found before that, on the request thread.
+ */
 @Controller
 public class OrderResource {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String NDJSON_VALUE = "application/x-ndjson";
+    static final MediaType NDJSON = MediaType.parseMediaType(NDJSON_VALUE);
+
     private final OrderRepository orderRepository;
     private final CourierRepository courierRepository;
-    private final OrderSorter orderSorter;
     private final OrderFilter orderFilter;
+    private final OfferPipeline offerPipeline;
+    private final BatchOfferPipeline batchOfferPipeline;
+    private final OfferCache offerCache;
+    private final StatsEngine statsEngine;
+    private final OfferMetrics offerMetrics;
+    private final OfferExecutor offerExecutor;
+    private final SortPlanCache sortPlanCache;
+    private final ShardRouter shardRouter;
+    private final ObjectWriter orderWriter;
 
     @Autowired
     public OrderResource(OrderRepository orderRepository,
                          CourierRepository courierRepository,
-                         OrderSorter orderSorter,
-                         OrderFilter orderFilter) {
+                         OrderFilter orderFilter,
+                         OfferPipeline offerPipeline,
+                         BatchOfferPipeline batchOfferPipeline,
+                         OfferCache offerCache,
+                         StatsEngine statsEngine,
+                         OfferMetrics offerMetrics,
+                         OfferExecutor offerExecutor,
+                         SortPlanCache sortPlanCache,
+                         ShardRouter shardRouter,
+                         ObjectMapper objectMapper) {
         this.orderRepository = orderRepository;
         this.courierRepository = courierRepository;
-        this.orderSorter = orderSorter;
         this.orderFilter = orderFilter;
+        this.offerPipeline = offerPipeline;
+        this.batchOfferPipeline = batchOfferPipeline;
+        this.offerCache = offerCache;
+        this.statsEngine = statsEngine;
+        this.offerMetrics = offerMetrics;
+        this.offerExecutor = offerExecutor;
+        this.sortPlanCache = sortPlanCache;
+        this.shardRouter = shardRouter;
+        // The mapper of the JSON responses, so both formats write orders the same way. Orders are buffered by the
+        // generator and flushed as the buffer fills, not one by one.
+        this.orderWriter = objectMapper
+                .writerFor(OrderVM.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping(value = "/orders")
     @ResponseBody
-    public List<OrderVM> orders() {
-        return orderRepository.findAll()
-                .stream()
-                .map(order -> new OrderVM(order.getId(), order.getDescription()))
-                .collect(Collectors.toList());
+    public CompletableFuture<List<OrderVM>> orders() {
+        final OrderStore store = orderRepository.getStore();
+        return offerExecutor.supply(() -> IntStream.range(0, store.size())
+                .mapToObj(row -> new OrderVM(store.getId(row), store.getDescription(row)))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Same as orders(), one JSON order per line. Orders are written while they are read, so the list is never held in memory.
+     */
+    @GetMapping(value = "/orders", produces = NDJSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> streamOrders() {
+        final OrderStore store = orderRepository.getStore();
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(writeOrders(store, IntStream.range(0, store.size())));
     }
 
+    /**
+     * Orders the courier can see, sorted by the configured criteria, or by the criteria (in priority order) and the
+     * slot size in km requested instead. Cursors only page through orders sorted the same way.
+     */
     @GetMapping(value = "/orders/{courierId}")
     @ResponseBody
-    public List<OrderVM> getCourierOrders(@PathVariable("courierId") final String courierId) {
+    public CompletableFuture<ResponseEntity<List<OrderVM>>> getCourierOrders(@PathVariable("courierId") final String courierId,
+                                                                             @RequestParam(value = "limit", required = false) final Integer limit,
+                                                                             @RequestParam(value = "cursor", required = false) final String cursor,
+                                                                             @RequestParam(value = "criteria", required = false) final List<String> criteria,
+                                                                             @RequestParam(value = "slot", required = false) final Double slotDistanceInKm) {
+        validateLimit(limit);
+        final SortPlan plan = sortPlanCache.getPlan(criteria, slotDistanceInKm);
+        final OrderCursor after = cursor == null ? null : OrderCursor.decode(cursor, plan);
+        final Courier courier = offerMetrics.time(OfferMetrics.Stage.COURIER_LOOKUP, () -> findCourier(courierId));
+        final OrderSnapshot snapshot = orderRepository.getSnapshot();
+
+        return rankCourierOrders(snapshot, plan, courier, limit, after, offers -> {
+            final OrderStore store = offers.store;
+            final List<OrderVM> orders = offerMetrics.time(OfferMetrics.Stage.RESPONSE_MAPPING, () -> offers.rankedOrders.rows()
+                    .mapToObj(row -> new OrderVM(store.getId(row), store.getDescription(row)))
+                    .collect(Collectors.toList()));
+
+            return withNextCursor(plan, offers).body(orders);
+        });
+    }
+
+    /**
+     * Same as getCourierOrders, one JSON order per line. Orders are ranked before the response starts, so errors still
+     * get their status, and written as they come out of the ranking.
+     */
+    @GetMapping(value = "/orders/{courierId}", produces = NDJSON_VALUE)
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> streamCourierOrders(@PathVariable("courierId") final String courierId,
+                                                                                        @RequestParam(value = "limit", required = false) final Integer limit,
+                                                                                        @RequestParam(value = "cursor", required = false) final String cursor,
+                                                                                        @RequestParam(value = "criteria", required = false) final List<String> criteria,
+                                                                                        @RequestParam(value = "slot", required = false) final Double slotDistanceInKm) {
+        validateLimit(limit);
+        final SortPlan plan = sortPlanCache.getPlan(criteria, slotDistanceInKm);
+        final OrderCursor after = cursor == null ? null : OrderCursor.decode(cursor, plan);
+        final Courier courier = offerMetrics.time(OfferMetrics.Stage.COURIER_LOOKUP, () -> findCourier(courierId));
+        final OrderSnapshot snapshot = orderRepository.getSnapshot();
+
+        return rankCourierOrders(snapshot, plan, courier, limit, after, offers -> {
+            final StreamingResponseBody body = writeOrders(offers.store, offers.rankedOrders.rows());
+            return withNextCursor(plan, offers)
+                    .contentType(NDJSON)
+                    .body(outputStream -> {
+                        final long start = System.nanoTime();
+                        body.writeTo(outputStream);
+                        offerMetrics.record(OfferMetrics.Stage.SERIALIZATION, System.nanoTime() - start);
+                    });
+        });
+    }
+
+    /**
+     * Adds the order, or replaces the one with the same id. Couriers are offered the order as soon as this returns.
+     * With the orders split between instances, the order is saved in the instance of its shard.
+     */
+    @PostMapping(value = "/orders")
+    @ResponseBody
+    public ResponseEntity<OrderVM> saveOrder(@RequestBody final Order order) {
+        validateOrder(order);
+        if (!shardRouter.owns(order)) {
+            final boolean created = shardRouter.saveRemotely(order);
+            return ResponseEntity.status(created ? HttpStatus.CREATED : HttpStatus.OK)
+                    .body(new OrderVM(order.getId(), order.getDescription()));
+        }
+        return ShardResource.saveOwnedOrder(orderRepository, shardRouter, order);
+    }
+
+    /**
+     * Deletes the order, from whichever instance has it when the orders are split between instances.
+     */
+    @DeleteMapping(value = "/orders/{orderId}")
+    public ResponseEntity<Void> deleteOrder(@PathVariable("orderId") final String orderId) {
+        final Order deleted = shardRouter.deleteLocally(orderId, () -> orderRepository.delete(orderId));
+        // An order of this instance is in no other one. The rest may be in the instance of their shard, or still here
+        // after moving there.
+        if (deleted != null && shardRouter.owns(deleted)) {
+            return ResponseEntity.noContent().build();
+        }
+        if (!shardRouter.deleteRemotely(orderId) && deleted == null) {
+            throw new OrderNotFoundException();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Orders of many couriers at once, by courier id in the requested order. Each courier gets the same orders as from
+     * getCourierOrders, but the work that does not depend on a single courier is done once for all of them. With the
+     * orders split between instances, only the orders of this instance are offered.
+     */
+    @PostMapping(value = "/orders/batch")
+    @ResponseBody
+    public CompletableFuture<Map<String, List<OrderVM>>> getCouriersOrders(@RequestBody final List<String> courierIds,
+                                                                           @RequestParam(value = "limit", required = false) final Integer limit) {
+        validateLimit(limit);
+        final List<Courier> couriers = new ArrayList<>(courierIds.size());
+        for (String courierId : courierIds) {
+            couriers.add(findCourier(courierId));
+        }
+        final OrderSnapshot snapshot = orderRepository.getSnapshot();
+
+        return offerExecutor.supply(() -> {
+            final OrderStore store = snapshot.getStore();
+            final Map<String, RankedOrders> rankedOrders = batchOfferPipeline.rankOrders(snapshot, couriers,
+                    limit == null ? Integer.MAX_VALUE : limit);
+
+            final Map<String, List<OrderVM>> orders = new LinkedHashMap<>();
+            for (Courier courier : couriers) {
+                orders.put(courier.getId(), rankedOrders.get(courier.getId()).rows()
+                        .mapToObj(row -> new OrderVM(store.getId(row), store.getDescription(row)))
+                        .collect(Collectors.toList()));
+            }
+            return orders;
+        });
+    }
+
+    /**
+     * Ranks the orders of the courier, and then makes the response of the ranked orders, both on the OfferExecutor.
+     * Orders of other instances are waited for without holding any of its threads.
+     */
+    private <T> CompletableFuture<T> rankCourierOrders(OrderSnapshot snapshot, SortPlan plan, Courier courier, Integer limit,
+                                                       OrderCursor after, Function<CourierOffers, T> response) {
+        final int maxOrders = limit == null ? Integer.MAX_VALUE : limit;
+        final double maxDistanceInKm = orderFilter.getMaxDistanceToCourierInKm(courier);
+        final List<String> remoteNodes = shardRouter.remoteNodesInRange(courier.getLocation(), maxDistanceInKm);
+        final OrderStore store = snapshot.getStore();
+        if (remoteNodes.isEmpty()) {
+            return offerExecutor.supply(() -> response.apply(
+                    new CourierOffers(store, rankLocalOrders(snapshot, plan, courier, maxDistanceInKm, maxOrders, after))));
+        }
+
+        // Other instances have orders in range: every instance ranks its own, and only the first ones of each, one more
+        // than the limit to know whether any are left, are ranked again together, in a store of this request only.
+        // Cursors keep their place by order id, so they start the page of every instance at the same place.
+        final int maxOrdersPerInstance = maxOrders == Integer.MAX_VALUE ? maxOrders : maxOrders + 1;
+        final CompletableFuture<List<Order>> remoteOrders = shardRouter.findRemoteOrders(remoteNodes, courier, plan,
+                maxOrdersPerInstance, after);
+        final CompletableFuture<List<Order>> localOrders = offerExecutor.supply(() ->
+                rankLocalOrders(snapshot, plan, courier, maxDistanceInKm, maxOrdersPerInstance, after).rows()
+                        .mapToObj(store::getOrder)
+                        .collect(Collectors.toList()));
+
+        return offerExecutor.supplyAfter(localOrders.thenCombine(remoteOrders, (local, remote) -> {
+            final List<Order> orders = new ArrayList<>(local);
+            orders.addAll(remote);
+            return orders;
+        }), orders -> {
+            // An order moving between instances may be in both for a moment: it is offered once.
+            final Map<String, Order> ordersById = new LinkedHashMap<>();
+            for (Order order : orders) {
+                ordersById.putIfAbsent(order.getId(), order);
+            }
+            final OrderStore candidates = OrderStorage.OBJECTS.create(new ArrayList<>(ordersById.values()));
+            return response.apply(new CourierOffers(candidates, offerPipeline.rankOrders(plan, candidates,
+                    IntStream.range(0, candidates.size()).toArray(), courier, maxOrders, after)));
+        });
+    }
+
+    // Only the orders in range of the courier are visited, and only once for the couriers of the same cell. The distance
+    // filter still discards the ones a bit further. The pipeline works over rows of the store, so only the returned
+    // orders are read as a whole.
+    private RankedOrders rankLocalOrders(OrderSnapshot snapshot, SortPlan plan, Courier courier, double maxDistanceInKm,
+                                         int maxOrders, OrderCursor after) {
+        final OrderStore store = snapshot.getStore();
+        final int[] candidateRows = offerMetrics.time(OfferMetrics.Stage.CANDIDATE_LOOKUP,
+                () -> offerCache.findCandidates(snapshot.getVersion(), courier, maxDistanceInKm, (location, radiusInKm) ->
+                        IntStream.of(snapshot.findNearby(location, radiusInKm))
+                                .filter(orderFilter.filterByCourierBox(store, courier))
+                                .toArray()));
+        return offerPipeline.rankCarriedOrders(plan, store, candidateRows, courier, maxOrders, after);
+    }
+
+    private Courier findCourier(String courierId) {
         final Courier courier = courierRepository.findById(courierId);
         if (courier == null) {
             throw new CourierNotFoundException();
         }
+        return courier;
+    }
+
+    // Without an id or locations, the order could not be found, filtered nor sorted.
+    static void validateOrder(Order order) {
+        if (order == null || order.getId() == null || order.getId().isEmpty()
+                || !isValid(order.getPickup()) || !isValid(order.getDelivery())) {
+            throw new InvalidOrderException();
+        }
+    }
+
+    private static boolean isValid(Location location) {
+        return location != null && location.getLat() != null && location.getLon() != null;
+    }
+
+    private static void validateLimit(Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new InvalidLimitException();
+        }
+    }
 
-        final Stream<Order> filteredOrders = orderRepository.findAll()
-                .stream()
-                .filter(orderFilter.filterByCourierBox(courier))
-                .filter(orderFilter.filterByDistanceToCourier(courier));
+    // The cursor of the next page, only when the limit left orders out.
+    private static ResponseEntity.BodyBuilder withNextCursor(SortPlan plan, CourierOffers offers) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (offers.rankedOrders.hasMore()) {
+            response.header(NEXT_CURSOR_HEADER, offers.rankedOrders.getNextCursor(plan, offers.store).encode());
+        }
+        return response;
+    }
 
-        return orderSorter.sortOrders(filteredOrders, courier)
-                .map(order -> new OrderVM(order.getId(), order.getDescription()))
-                .collect(Collectors.toList());
+    private StreamingResponseBody writeOrders(OrderStore store, IntStream rows) {
+        return outputStream -> {
+            try (JsonGenerator generator = orderWriter.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // The stream belongs to the response.
+                generator.setRootValueSeparator(null);
+                final PrimitiveIterator.OfInt iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    final int row = iterator.next();
+                    orderWriter.writeValue(generator, new OrderVM(store.getId(row), store.getDescription(row)));
+                    generator.writeRaw('\n');
+                }
+            }
+        };
     }
 
     @GetMapping(value = "/stats")
     @ResponseBody
-    public Stat getStats() {
-        final List<Order> allOrders = orderRepository.findAll();
-        final List<Courier> couriers = courierRepository.findAll();
-
-        final int numberOfCouriers = couriers.size();
-        final long numberOfNonFoodOrders = allOrders.stream()
-                .filter(o -> !o.getFood())
-                .count();
-
-        final int totalOrdersCount = allOrders.size();
-        final float foodPercentage = (float) numberOfNonFoodOrders / (float) totalOrdersCount;
-
-        // Average courier-to-pickup distance in meters
-        double averageCourierToPickupDistanceInMeters;
-        int countOfDistances = numberOfCouriers * totalOrdersCount;
-        double totalDistanceInKilometers = 0;
-
-        for (Courier c : couriers) {
-            for (Order o : allOrders) {
-                totalDistanceInKilometers += DistanceCalculator.calculateDistance(c.getLocation(), o.getPickup());
-            }
-        }
+    public CompletableFuture<Stat> getStats() {
+        return offerExecutor.supply(() -> offerMetrics.timeStats(statsEngine::getStat));
+    }
 
-        averageCourierToPickupDistanceInMeters = (totalDistanceInKilometers / countOfDistances) * 1000;
-        return new Stat(totalOrdersCount, numberOfCouriers, foodPercentage, averageCourierToPickupDistanceInMeters);
+    @GetMapping(value = "/stats/offer-cache")
+    @ResponseBody
+    public OfferCacheStat getOfferCacheStats() {
+        return new OfferCacheStat(offerCache.getHits(), offerCache.getMisses(), offerCache.size(), offerCache.getRows(), offerCache.getMaxRows());
     }
 
+    /**
+     * Orders ranked for a courier, with the store their rows refer to.
+     */
+    private static class CourierOffers {
+        private final OrderStore store;
+        private final RankedOrders rankedOrders;
 
+        CourierOffers(OrderStore store, RankedOrders rankedOrders) {
+            this.store = store;
+            this.rankedOrders = rankedOrders;
+        }
+    }
 }
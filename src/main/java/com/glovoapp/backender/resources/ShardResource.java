@@ -0,0 +1,142 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.OrderVM;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
+import com.glovoapp.backender.exceptions.OrderNotOwnedException;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.offers.OfferCache;
+import com.glovoapp.backender.offers.OfferPipeline;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sharding.ShardRouter;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.SortPlan;
+import com.glovoapp.backender.sorting.SortPlanCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Orders of this instance, for the other instances when the orders are split between them by ShardRouter.
+ */
+@Controller
+public class ShardResource {
+
+    private final OrderRepository orderRepository;
+    private final OrderFilter orderFilter;
+    private final OfferPipeline offerPipeline;
+    private final OfferCache offerCache;
+    private final SortPlanCache sortPlanCache;
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public ShardResource(OrderRepository orderRepository,
+                         OrderFilter orderFilter,
+                         OfferPipeline offerPipeline,
+                         OfferCache offerCache,
+                         SortPlanCache sortPlanCache,
+                         ShardRouter shardRouter) {
+        this.orderRepository = orderRepository;
+        this.orderFilter = orderFilter;
+        this.offerPipeline = offerPipeline;
+        this.offerCache = offerCache;
+        this.sortPlanCache = sortPlanCache;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * The first limit orders of this instance that a courier at the location, with or without a box and riding the
+     * vehicle, can see: sorted by the criteria and slot size of the instance asking, after its cursor when there is one.
+     * That instance ranks them again with its own and the other instances' first orders, so no instance sends more than
+     * a page, whatever the distance threshold of the vehicle.
+     */
+    @GetMapping(value = "/shards/orders")
+    @ResponseBody
+    public List<Order> findCourierOrders(@RequestParam("lat") final double lat,
+                                         @RequestParam("lon") final double lon,
+                                         @RequestParam("box") final boolean box,
+                                         @RequestParam(value = "vehicle", required = false) final Vehicle vehicle,
+                                         @RequestParam("criteria") final List<String> criteria,
+                                         @RequestParam("slot") final double slotDistanceInKm,
+                                         @RequestParam(value = "limit", required = false) final Integer limit,
+                                         @RequestParam(value = "cursor", required = false) final String cursor) {
+        final SortPlan plan = sortPlanCache.getPlan(criteria, slotDistanceInKm);
+        final OrderCursor after = cursor == null ? null : OrderCursor.decode(cursor, plan);
+        final Courier courier = new Courier()
+                .withBox(box)
+                .withVehicle(vehicle)
+                .withLocation(new Location(lat, lon));
+
+        // Same candidates as the orders of a courier of this instance.
+        final OrderSnapshot snapshot = orderRepository.getSnapshot();
+        final OrderStore store = snapshot.getStore();
+        final double maxDistanceInKm = orderFilter.getMaxDistanceToCourierInKm(courier);
+        final int[] candidateRows = offerCache.findCandidates(snapshot.getVersion(), courier, maxDistanceInKm, (location, radiusInKm) ->
+                IntStream.of(snapshot.findNearby(location, radiusInKm))
+                        .filter(orderFilter.filterByCourierBox(store, courier))
+                        .toArray());
+        return offerPipeline.rankCarriedOrders(plan, store, candidateRows, courier, limit == null ? Integer.MAX_VALUE : limit, after)
+                .rows()
+                .mapToObj(store::getOrder)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Saves an order of this instance, sent by the instance that received it. Orders of the shards of other instances
+     * are rejected, since this instance would never offer them.
+     */
+    @PostMapping(value = "/shards/orders")
+    @ResponseBody
+    public ResponseEntity<OrderVM> saveOrder(@RequestBody final Order order) {
+        OrderResource.validateOrder(order);
+        if (!shardRouter.owns(order)) {
+            throw new OrderNotOwnedException();
+        }
+        return saveOwnedOrder(orderRepository, shardRouter, order);
+    }
+
+    /**
+     * Deletes the order from this instance only. With savedBefore, the time another instance saved the order at after
+     * it moved there, the order is kept when it was saved here again since.
+     */
+    @DeleteMapping(value = "/shards/orders/{orderId}")
+    public ResponseEntity<Void> deleteOrder(@PathVariable("orderId") final String orderId,
+                                            @RequestParam(value = "savedBefore", required = false) final Long savedBefore) {
+        final boolean deleted = savedBefore == null
+                ? shardRouter.deleteLocally(orderId, () -> orderRepository.delete(orderId)) != null
+                : shardRouter.deleteLocallyIfSavedBefore(orderId, savedBefore, () -> orderRepository.delete(orderId));
+        if (!deleted) {
+            throw new OrderNotFoundException();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // Created when the order is new to this instance. Only then may it have moved here from the shard of another
+    // instance, which is told to delete its copy without waiting for it, unless saved there again since.
+    static ResponseEntity<OrderVM> saveOwnedOrder(OrderRepository orderRepository, ShardRouter shardRouter, Order order) {
+        final long savedAt = System.currentTimeMillis();
+        final Order previous = shardRouter.saveLocally(order.getId(), savedAt, () -> orderRepository.save(order));
+        if (previous == null) {
+            shardRouter.deleteRemotelyLater(order.getId(), savedAt);
+        }
+        return ResponseEntity.status(previous == null ? HttpStatus.CREATED : HttpStatus.OK)
+                .body(new OrderVM(order.getId(), order.getDescription()));
+    }
+}
@@ -0,0 +1,42 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces the sorting criteria at runtime. An actuator endpoint, so it is only reachable where the management
+ * endpoints are exposed (management.endpoints.web.exposure.include), which can be a port of their own.
+ */
+@Component
+@Endpoint(id = "sorting")
+public class SortingEndpoint {
+
+    private final OrderSorter orderSorter;
+
+    @Autowired
+    public SortingEndpoint(OrderSorter orderSorter) {
+        this.orderSorter = orderSorter;
+    }
+
+    @ReadOperation
+    public List<SortingCriteria> criteria() {
+        return orderSorter.getPlan().getCriteria();
+    }
+
+    /**
+     * Replaces the sorting criteria with the comma separated ones, in priority order. Requests already being sorted
+     * finish with the previous ones, and their cursors are rejected from then on.
+     */
+    @WriteOperation
+    public List<SortingCriteria> reloadCriteria(String criteria) {
+        return orderSorter.reload(Arrays.asList(criteria.split(",", -1))).getCriteria();
+    }
+}
@@ -0,0 +1,30 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+
+@Controller
+public class SortingResource {
+
+    private final OrderSorter orderSorter;
+
+    @Autowired
+    public SortingResource(OrderSorter orderSorter) {
+        this.orderSorter = orderSorter;
+    }
+
+    /**
+     * Criteria the orders are sorted by, in priority order, without the ones that can't change the result.
+     */
+    @GetMapping(value = "/sorting/criteria")
+    @ResponseBody
+    public List<SortingCriteria> getCriteria() {
+        return orderSorter.getPlan().getCriteria();
+    }
+}
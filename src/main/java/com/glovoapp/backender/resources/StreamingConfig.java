@@ -0,0 +1,46 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.exceptions.StreamingOverloadedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Bodies streamed as NDJSON are written by a bounded pool of their own, apart from the request threads and from the
+ * threads ranking the offers, instead of by a new thread per response. Responses beyond the bounded queue are
+ * rejected with 503 Service Unavailable instead of piling up.
+ */
+@Configuration
+public class StreamingConfig implements WebMvcConfigurer {
+
+    private final int threads;
+    private final int queueSize;
+
+    public StreamingConfig(@Value("${backender.streaming.threads:16}") int threads,
+                           @Value("${backender.streaming.queue-size:100}") int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor streamingExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueSize);
+        // Spring wraps it in a TaskRejectedException, whose cause gives the response its status.
+        executor.setRejectedExecutionHandler((runnable, pool) -> {
+            throw new StreamingOverloadedException();
+        });
+        executor.setThreadNamePrefix("streaming-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingExecutor());
+    }
+}
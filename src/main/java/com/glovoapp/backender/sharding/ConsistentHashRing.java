@@ -0,0 +1,57 @@
+package com.glovoapp.backender.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns keys to nodes on a hash ring: every node is hashed to many points, and a key belongs to the node of the first
+ * point after its hash. Adding or removing a node only moves the keys of its points, about 1/n of them, and the points
+ * spread the keys evenly. Hashes are MD5 based, so every instance with the same nodes assigns keys the same way.
+ */
+public class ConsistentHashRing {
+
+    private final List<String> nodes;
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    public ConsistentHashRing(List<String> nodes, int pointsPerNode) {
+        if (nodes.isEmpty() || pointsPerNode <= 0) {
+            throw new IllegalArgumentException("A ring needs nodes and points per node");
+        }
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (String node : nodes) {
+            for (int i = 0; i < pointsPerNode; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public String nodeFor(String key) {
+        final Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point == null ? points.firstEntry().getValue() : point.getValue();
+    }
+
+    private static long hash(String value) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every Java platform has MD5.
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,104 @@
+package com.glovoapp.backender.sharding;
+
+import com.glovoapp.backender.entities.Location;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohashes: a location as a base 32 string whose characters halve the longitude and latitude ranges in turn, so
+ * nearby locations share their first characters. A prefix of a given length is a cell, and names a region shard.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final double KM_PER_DEGREE = 111.19492664455873; // 2 * PI * 6371 / 360
+
+    private Geohash() {
+    }
+
+    /**
+     * The cell of the given number of characters that contains the location.
+     */
+    public static String encode(double lat, double lon, int precision) {
+        return encodeCell(latCell(lat, precision), lonCell(lon, precision), precision);
+    }
+
+    /**
+     * The cells of the given number of characters that may have locations within radiusInKm of the center: the ones
+     * intersecting the bounding box of the circle, as with OrderSpatialIndex. Returns null when they are more than
+     * maxCells, the radius being infinite or too big for the precision.
+     */
+    public static Set<String> covering(Location center, double radiusInKm, int precision, int maxCells) {
+        final double latDelta = radiusInKm / KM_PER_DEGREE;
+        final double minLat = center.getLat() - latDelta;
+        final double maxLat = center.getLat() + latDelta;
+        if (latDelta >= 180) {
+            return null;
+        }
+
+        // Close to the poles every longitude is in range.
+        final double lonDelta = minLat <= -90 || maxLat >= 90 ? 180 :
+                latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        final int lonCells = 1 << lonBits(precision);
+        final int fromLatCell = latCell(Math.max(minLat, -90), precision);
+        final int toLatCell = latCell(Math.min(maxLat, 90), precision);
+        final int fromLonCell;
+        final int lonCellCount;
+        if (lonDelta >= 180) {
+            fromLonCell = 0;
+            lonCellCount = lonCells;
+        } else {
+            fromLonCell = lonCell(center.getLon() - lonDelta, precision);
+            lonCellCount = Math.min(lonCells, Math.floorMod(lonCell(center.getLon() + lonDelta, precision) - fromLonCell, lonCells) + 1);
+        }
+
+        if ((long) (toLatCell - fromLatCell + 1) * lonCellCount > maxCells) {
+            return null;
+        }
+        final Set<String> cells = new LinkedHashSet<>();
+        for (int latCell = fromLatCell; latCell <= toLatCell; latCell++) {
+            for (int i = 0; i < lonCellCount; i++) {
+                cells.add(encodeCell(latCell, (fromLonCell + i) % lonCells, precision));
+            }
+        }
+        return cells;
+    }
+
+    // Bits alternate starting with the longitude, so it gets the extra bit of odd lengths.
+    private static int lonBits(int precision) {
+        return (5 * precision + 1) / 2;
+    }
+
+    private static int latBits(int precision) {
+        return 5 * precision / 2;
+    }
+
+    private static int latCell(double lat, int precision) {
+        final int cells = 1 << latBits(precision);
+        return Math.min(cells - 1, (int) ((lat + 90) / 180 * cells));
+    }
+
+    // Longitudes wrap around, so cells on both sides of the antimeridian are neighbours.
+    private static int lonCell(double lon, int precision) {
+        final int cells = 1 << lonBits(precision);
+        final double wrapped = lon - 360 * Math.floor((lon + 180) / 360);
+        return Math.min(cells - 1, (int) ((wrapped + 180) / 360 * cells));
+    }
+
+    private static String encodeCell(int latCell, int lonCell, int precision) {
+        final char[] chars = new char[precision];
+        int lonBit = lonBits(precision);
+        int latBit = latBits(precision);
+        for (int c = 0; c < precision; c++) {
+            int value = 0;
+            for (int b = 0; b < 5; b++) {
+                final boolean lonTurn = (5 * c + b) % 2 == 0;
+                final int bit = lonTurn ? (lonCell >> --lonBit) & 1 : (latCell >> --latBit) & 1;
+                value = (value << 1) | bit;
+            }
+            chars[c] = BASE32[value];
+        }
+        return new String(chars);
+    }
+}
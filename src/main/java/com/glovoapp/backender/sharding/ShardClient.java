@@ -0,0 +1,136 @@
+package com.glovoapp.backender.sharding;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.exceptions.ShardUnavailableException;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.SortPlan;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Calls the /shards endpoints of the other instances, each call on its own thread so the instances are asked in
+ * parallel. Failures complete the futures with ShardUnavailableException: results missing part of the orders are
+ * never returned.
+ */
+@Component
+public class ShardClient {
+
+    private static final ParameterizedTypeReference<List<Order>> ORDER_LIST = new ParameterizedTypeReference<List<Order>>() {
+    };
+
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+
+    @Autowired
+    public ShardClient(RestTemplateBuilder restTemplateBuilder,
+                       @Value("${backender.sharding.timeout-ms:2000}") int timeoutInMs,
+                       @Value("${backender.sharding.threads:16}") int threads) {
+        // Built by Spring Boot, so orders are read with the same Jackson modules as the ones received by the endpoints
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(timeoutInMs)
+                .setReadTimeout(timeoutInMs)
+                .build();
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "shards-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The first limit orders of the instance the courier can see, sorted by the plan, after the cursor when there is one.
+     */
+    public CompletableFuture<List<Order>> findCourierOrders(String node, Courier courier, SortPlan plan, int limit,
+                                                            OrderCursor after) {
+        final UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node + "/shards/orders")
+                .queryParam("lat", courier.getLocation().getLat())
+                .queryParam("lon", courier.getLocation().getLon())
+                .queryParam("box", courier.getBox())
+                .queryParam("criteria", plan.getCriteria().stream().map(Enum::name).toArray())
+                .queryParam("slot", plan.getSlotDistanceInKm());
+        if (courier.getVehicle() != null) {
+            uri.queryParam("vehicle", courier.getVehicle());
+        }
+        if (limit != Integer.MAX_VALUE) {
+            uri.queryParam("limit", limit);
+        }
+        if (after != null) {
+            uri.queryParam("cursor", after.encode());
+        }
+        final URI target = uri.build().encode().toUri();
+        return call(() -> restTemplate.exchange(target, HttpMethod.GET, null, ORDER_LIST).getBody());
+    }
+
+    /**
+     * Saves the order in the instance, which owns it. Completed with whether the order is new to that instance.
+     */
+    public CompletableFuture<Boolean> save(String node, Order order) {
+        return call(() -> restTemplate.exchange(node + "/shards/orders", HttpMethod.POST, new HttpEntity<>(order), Void.class)
+                .getStatusCode() == HttpStatus.CREATED);
+    }
+
+    /**
+     * Deletes the order from the instance, only when it was saved there before savedBefore if given. Completed with
+     * whether the order was deleted.
+     */
+    public CompletableFuture<Boolean> delete(String node, String orderId, Long savedBefore) {
+        final UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node + "/shards/orders/{orderId}");
+        if (savedBefore != null) {
+            uri.queryParam("savedBefore", savedBefore);
+        }
+        final URI target = uri.buildAndExpand(orderId).encode().toUri();
+        return call(() -> {
+            try {
+                final ResponseEntity<Void> response = restTemplate.exchange(target, HttpMethod.DELETE, null, Void.class);
+                return response.getStatusCode().is2xxSuccessful();
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                    return false;
+                }
+                throw e;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> request) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(request.get());
+            } catch (RestClientException e) {
+                future.completeExceptionally(new ShardUnavailableException(e));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,253 @@
+package com.glovoapp.backender.sharding;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.exceptions.ShardUnavailableException;
+import com.glovoapp.backender.repositories.OrderPartition;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.SortPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the orders between the instances in backender.sharding.nodes by region: the shard of an order is the geohash
+ * cell of its delivery, and shards are assigned to the instances on a consistent hash ring, so each instance keeps the
+ * orders of its shards, all in the same store and index: shards only decide which instance an order goes to. A courier
+ * query asks the other instances only when they have shards within its distance threshold, and each of them only for
+ * its first orders. With no nodes configured there is a single instance, which keeps every order.
+ */
+@Component
+public class ShardRouter implements OrderPartition {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+
+    // Beyond this many cells in range, asking every instance is cheaper than finding their owners.
+    private static final int MAX_CELLS_IN_RANGE = 1024;
+    private static final int SAVE_LOCKS = 64;
+
+    private final String self;
+    private final int precision;
+    private final ConsistentHashRing ring;
+    private final List<String> remoteNodes;
+    private final ShardClient shardClient;
+    // When the orders of this instance were last saved here, so that a late delete sent by another instance for an
+    // older save of its own leaves a newer save here. Writes of the same order hold the same lock.
+    private final Map<String, Long> saveTimes = new ConcurrentHashMap<>();
+    private final Object[] saveLocks = new Object[SAVE_LOCKS];
+
+    public ShardRouter() {
+        this("", "", 3, 100, null);
+    }
+
+    @Autowired
+    public ShardRouter(@Value("${backender.sharding.nodes:}") String nodes,
+                       @Value("${backender.sharding.self:}") String self,
+                       @Value("${backender.sharding.geohash-precision:3}") int precision,
+                       @Value("${backender.sharding.points-per-node:100}") int pointsPerNode,
+                       ShardClient shardClient) {
+        final List<String> nodeList = Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (!nodeList.isEmpty() && !nodeList.contains(self)) {
+            throw new IllegalArgumentException("backender.sharding.self must be one of backender.sharding.nodes: " + self);
+        }
+        if (precision < 1 || precision > 12) {
+            throw new IllegalArgumentException("backender.sharding.geohash-precision must be from 1 to 12: " + precision);
+        }
+
+        this.self = self;
+        this.precision = precision;
+        this.ring = nodeList.isEmpty() ? null : new ConsistentHashRing(nodeList, pointsPerNode);
+        this.remoteNodes = nodeList.stream()
+                .filter(node -> !node.equals(self))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+        this.shardClient = shardClient;
+        for (int i = 0; i < SAVE_LOCKS; i++) {
+            saveLocks[i] = new Object();
+        }
+    }
+
+    public boolean isSharded() {
+        return !remoteNodes.isEmpty();
+    }
+
+    /**
+     * The shard of an order delivered at the location. Orders without a delivery location share the empty shard.
+     */
+    public String shardOf(Location delivery) {
+        return delivery == null || delivery.getLat() == null || delivery.getLon() == null ? "" :
+                Geohash.encode(delivery.getLat(), delivery.getLon(), precision);
+    }
+
+    /**
+     * The instance that keeps the order.
+     */
+    public String ownerOf(Order order) {
+        return ring == null ? self : ring.nodeFor(shardOf(order.getDelivery()));
+    }
+
+    @Override
+    public boolean owns(Order order) {
+        return !isSharded() || ownerOf(order).equals(self);
+    }
+
+    /**
+     * The other instances owning shards with orders that may be delivered within radiusInKm of the location.
+     */
+    public List<String> remoteNodesInRange(Location location, double radiusInKm) {
+        if (!isSharded()) {
+            return Collections.emptyList();
+        }
+
+        final Set<String> cells = Geohash.covering(location, radiusInKm, precision, MAX_CELLS_IN_RANGE);
+        if (cells == null) {
+            return remoteNodes;
+        }
+        final Set<String> owners = new LinkedHashSet<>();
+        for (String cell : cells) {
+            owners.add(ring.nodeFor(cell));
+        }
+        return remoteNodes.stream().filter(owners::contains).collect(Collectors.toList());
+    }
+
+    /**
+     * The first limit orders of each of the given instances the courier can see, sorted by the plan, after the cursor
+     * when there is one. The instances are asked in parallel, and their orders returned by instance in the given order.
+     * Completed once every instance answered, on a thread of the ShardClient, or with the first failure unwrapped.
+     */
+    public CompletableFuture<List<Order>> findRemoteOrders(List<String> nodes, Courier courier, SortPlan plan, int limit,
+                                                           OrderCursor after) {
+        final List<CompletableFuture<List<Order>>> responses = new ArrayList<>();
+        for (String node : nodes) {
+            responses.add(shardClient.findCourierOrders(node, courier, plan, limit, after));
+        }
+
+        final CompletableFuture<List<Order>> orders = new CompletableFuture<>();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, e) -> {
+            if (e != null) {
+                orders.completeExceptionally(unwrap(e));
+                return;
+            }
+            final List<Order> remoteOrders = new ArrayList<>();
+            for (CompletableFuture<List<Order>> response : responses) {
+                remoteOrders.addAll(response.join());
+            }
+            orders.complete(remoteOrders);
+        });
+        return orders;
+    }
+
+    /**
+     * Saves the order in the instance that owns it. Returns whether the order is new to that instance.
+     */
+    public boolean saveRemotely(Order order) {
+        return join(shardClient.save(ownerOf(order), order));
+    }
+
+    /**
+     * Deletes the order from every other instance, waiting for all of them. Returns whether any of them had it.
+     */
+    public boolean deleteRemotely(String orderId) {
+        final List<CompletableFuture<Boolean>> responses = new ArrayList<>();
+        for (String node : remoteNodes) {
+            responses.add(shardClient.delete(node, orderId, null));
+        }
+
+        boolean deleted = false;
+        for (CompletableFuture<Boolean> response : responses) {
+            deleted |= join(response);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the order from every other instance without waiting for them, for the copy left in the one it moved here
+     * from, saved here at savedAt. Instances where the order was saved again since keep it, even when the delete
+     * arrives late, so the clocks of the instances must be kept in sync. An instance that fails keeps its copy until
+     * the order is deleted, and the failure is only logged.
+     */
+    public void deleteRemotelyLater(String orderId, long savedAt) {
+        for (String node : remoteNodes) {
+            shardClient.delete(node, orderId, savedAt).whenComplete((deleted, e) -> {
+                if (e != null) {
+                    LOGGER.warn("Could not delete order {} from {}", orderId, node, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Saves an order in this instance with save, noting that it was saved at savedAt. Returns what save returned.
+     */
+    public <T> T saveLocally(String orderId, long savedAt, Supplier<T> save) {
+        synchronized (saveLock(orderId)) {
+            final T result = save.get();
+            if (isSharded()) {
+                saveTimes.merge(orderId, savedAt, Math::max);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Deletes an order from this instance with delete. Returns what delete returned.
+     */
+    public <T> T deleteLocally(String orderId, Supplier<T> delete) {
+        synchronized (saveLock(orderId)) {
+            saveTimes.remove(orderId);
+            return delete.get();
+        }
+    }
+
+    /**
+     * Same as deleteLocally, unless the order was saved in this instance at or after savedAt. Returns whether it was
+     * deleted.
+     */
+    public boolean deleteLocallyIfSavedBefore(String orderId, long savedAt, Supplier<Order> delete) {
+        synchronized (saveLock(orderId)) {
+            final Long savedHereAt = saveTimes.get(orderId);
+            if (savedHereAt != null && savedHereAt >= savedAt) {
+                return false;
+            }
+            saveTimes.remove(orderId);
+            return delete.get() != null;
+        }
+    }
+
+    private Object saveLock(String orderId) {
+        return saveLocks[(orderId.hashCode() & Integer.MAX_VALUE) % SAVE_LOCKS];
+    }
+
+    private static <T> T join(CompletableFuture<T> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // Unwrapped, so the failure keeps its response status.
+    private static RuntimeException unwrap(Throwable e) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new ShardUnavailableException(cause);
+    }
+}
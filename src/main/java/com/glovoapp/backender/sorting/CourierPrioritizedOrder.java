@@ -36,6 +36,14 @@ public class CourierPrioritizedOrder {
         return priority;
     }
 
+    boolean isVip() {
+        return Boolean.TRUE.equals(order.getVip());
+    }
+
+    boolean isFood() {
+        return Boolean.TRUE.equals(order.getFood());
+    }
+
     double getDistanceToCourier() {
         return distanceToCourier;
     }
@@ -0,0 +1,119 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.exceptions.InvalidCursorException;
+import com.glovoapp.backender.repositories.OrderStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Position in a sorted list of orders: the sort key and the id of the last order of a page.
+ * Orders are sorted by key and then by id, so the next page starts right after that pair and
+ * nothing before it has to be sorted again. Ids, unlike rows, stay the same when orders are
+ * saved or deleted between pages. Keys only compare within a plan, so the cursor also carries
+ * the fingerprint of the plan it was made with.
+ */
+public class OrderCursor {
+
+    // Outside of the base64url alphabet of the encoded ids, which includes '-' and '_'.
+    private static final String SEPARATOR = ".";
+
+    private final int planFingerprint;
+    private final long key;
+    private final String id;
+
+    public OrderCursor(int planFingerprint, long key, String id) {
+        this.planFingerprint = planFingerprint;
+        this.key = key;
+        this.id = id == null ? "" : id;
+    }
+
+    public static OrderCursor decode(String cursor) {
+        // Ids may contain the separator, but never once encoded.
+        final String[] parts = cursor.split(Pattern.quote(SEPARATOR), -1);
+        if (parts.length != 3) {
+            throw new InvalidCursorException();
+        }
+        try {
+            return new OrderCursor(Integer.parseUnsignedInt(parts[0], 16), Long.parseLong(parts[1], 16),
+                    new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) { // NumberFormatException included.
+            throw new InvalidCursorException();
+        }
+    }
+
+    /**
+     * Decodes the cursor, which must have been made with the given plan.
+     */
+    public static OrderCursor decode(String cursor, SortPlan plan) {
+        final OrderCursor decoded = decode(cursor);
+        if (decoded.planFingerprint != plan.getFingerprint()) {
+            throw new InvalidCursorException();
+        }
+        return decoded;
+    }
+
+    public String encode() {
+        return Integer.toHexString(planFingerprint) + SEPARATOR + Long.toHexString(key) + SEPARATOR
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether an order with the given key and id goes after this position.
+     */
+    public boolean isBefore(long key, String id) {
+        return this.key < key || (this.key == key && compareIds(this.id, id) < 0);
+    }
+
+    /**
+     * Same as isBefore(long, String), for the order in a row of the store. The id is only read when the keys are the same.
+     */
+    public boolean isBefore(long key, OrderStore store, int row) {
+        return this.key < key || (this.key == key && compareIds(this.id, store.getId(row)) < 0);
+    }
+
+    /**
+     * Order of the orders with the same key. Missing ids go first.
+     */
+    static int compareIds(String id, String otherId) {
+        return (id == null ? "" : id).compareTo(otherId == null ? "" : otherId);
+    }
+
+    public int getPlanFingerprint() {
+        return planFingerprint;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OrderCursor that = (OrderCursor) o;
+        return planFingerprint == that.planFingerprint &&
+                key == that.key &&
+                Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(planFingerprint, key, id);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderCursor{" +
+                "planFingerprint=" + planFingerprint +
+                ", key=" + key +
+                ", id='" + id + '\'' +
+                '}';
+    }
+}
@@ -2,72 +2,155 @@ package com.glovoapp.backender.sorting;
 
 import com.glovoapp.backender.entities.Courier;
 import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.utils.DistanceCalculator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Component
 public class OrderSorter {
 
-    private final Map<Integer, String> sortingCriteria;
     private final double slotDistanceInKm;
-
-    private static final Map<SortingCriteria, Comparator<CourierPrioritizedOrder>> sortingCriteriaMap = createCriteriaMap();
-
-    private static Map<SortingCriteria, Comparator<CourierPrioritizedOrder>> createCriteriaMap() {
-        final Map<SortingCriteria, Comparator<CourierPrioritizedOrder>> criteriaMap = new HashMap<>();
-        criteriaMap.put(SortingCriteria.DISTANCE_SLOT, sortByPriority());
-        criteriaMap.put(SortingCriteria.VIP, sortByVip());
-        criteriaMap.put(SortingCriteria.FOOD, sortByFood());
-        criteriaMap.put(SortingCriteria.ABSOLUTE_DISTANCE, sortByAbsoluteDistance());
-
-        return criteriaMap;
-    }
+    // The configured criteria, compiled once. Every order is then sorted by a single primitive key.
+    // Each sort reads the plan once, so replacing it never mixes two plans in one result.
+    private final AtomicReference<SortPlan> plan;
 
     @Autowired
     public OrderSorter(SortingPriorityConfig sortingPriorityConfig,
                        @Value("${backender.sorting.slot-distance-in-km}") double slotDistanceInKm) {
-        this.sortingCriteria = sortingPriorityConfig.getSortingCriteria();
         this.slotDistanceInKm = slotDistanceInKm;
+        this.plan = new AtomicReference<>(SortPlan.compile(sortingPriorityConfig.getSortingCriteria(), slotDistanceInKm));
+    }
+
+    public SortPlan getPlan() {
+        return plan.get();
+    }
+
+    /**
+     * Compiles the criteria, in priority order, and sorts every following request by them. The current plan is kept
+     * when they are not valid.
+     */
+    public SortPlan reload(List<String> criteria) {
+        final SortPlan newPlan = SortPlan.compile(criteria, slotDistanceInKm);
+        plan.set(newPlan);
+        return newPlan;
     }
 
     public Stream<Order> sortOrders(Stream<Order> orders, Courier courier) {
-        // The comparators work over CourierPrioritizedOrder. Then the order is extracted again.
-        return orders
+        final PackedSortKey sortKey = plan.get().getSortKey();
+        // The keys are calculated from CourierPrioritizedOrder. Then the order is extracted again.
+        final List<CourierPrioritizedOrder> prioritizedOrders = orders
                 .map(o -> new CourierPrioritizedOrder(o, courier, slotDistanceInKm))
-                .sorted(compareOrders())
-                .map(CourierPrioritizedOrder::getOrder);
+                .collect(Collectors.toList());
+
+        final long[] keys = new long[prioritizedOrders.size()];
+        final int[] positions = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final CourierPrioritizedOrder prioritizedOrder = prioritizedOrders.get(i);
+            keys[i] = sortKey.encode(prioritizedOrder.isVip(), prioritizedOrder.isFood(), prioritizedOrder.getDistanceToCourier());
+            positions[i] = i;
+        }
+        RadixSort.sort(keys, positions, keys.length, sortKey.getBits());
+
+        return IntStream.of(positions).mapToObj(i -> prioritizedOrders.get(i).getOrder());
     }
 
-    private Comparator<CourierPrioritizedOrder> compareOrders() {
-        return sortingCriteriaMap.get(SortingCriteria.valueOf(sortingCriteria.get(1)))
-                .thenComparing(sortingCriteriaMap.get(SortingCriteria.valueOf(sortingCriteria.get(2))))
-                .thenComparing(sortingCriteriaMap.get(SortingCriteria.valueOf(sortingCriteria.get(3))))
-                .thenComparing(sortingCriteriaMap.get(SortingCriteria.valueOf(sortingCriteria.get(4))));
+    /**
+     * Same as sortOrders(Stream, Courier), over the rows of an order store.
+     */
+    public IntStream sortOrders(OrderStore store, IntStream rows, Courier courier) {
+        final int[] rowArray = rows.toArray();
+        final double courierLat = courier.getLocation().getLat();
+        final double courierLon = courier.getLocation().getLon();
+
+        final double[] distancesToCourier = new double[rowArray.length];
+        for (int i = 0; i < rowArray.length; i++) {
+            distancesToCourier[i] = DistanceCalculator.calculateDistance(
+                    store.getDeliveryLat(rowArray[i]), store.getDeliveryLon(rowArray[i]), courierLat, courierLon);
+        }
+        return rankOrders(store, rowArray, distancesToCourier, Integer.MAX_VALUE, null).rows();
     }
 
-    // Orders that are close to the courier, in slots.
-    private static Comparator<CourierPrioritizedOrder> sortByPriority() {
-        return Comparator.comparing(CourierPrioritizedOrder::getPriority);
+    /**
+     * Sorts rows of an order store whose distance to the courier is already calculated: distancesToCourier[i] is the distance of rows[i].
+     * Orders are sorted by key and then by id, and only the first limit orders after the cursor, when there is one, are
+     * returned.
+     */
+    public RankedOrders rankOrders(OrderStore store, int[] rows, double[] distancesToCourier, int limit, OrderCursor after) {
+        return rankOrders(plan.get(), store, rows, distancesToCourier, limit, after);
     }
 
-    // Orders that belong to a VIP customer.
-    private static Comparator<CourierPrioritizedOrder> sortByVip() {
-        return Comparator.comparing(po -> !po.getOrder().getVip()); // Reverse order (true values first).
+    /**
+     * Same as rankOrders(OrderStore, int[], double[], int, OrderCursor), sorted by the given plan instead of the configured one.
+     */
+    public RankedOrders rankOrders(SortPlan plan, OrderStore store, int[] rows, double[] distancesToCourier, int limit,
+                                   OrderCursor after) {
+        final PackedSortKey sortKey = plan.getSortKey();
+        final long[] keys = new long[rows.length];
+        final int[] rankedRows = new int[rows.length];
+        int size = 0;
+        for (int i = 0; i < rows.length; i++) {
+            final long key = sortKey.encode(store.isVip(rows[i]), store.isFood(rows[i]), distancesToCourier[i]);
+            if (after == null || after.isBefore(key, store, rows[i])) {
+                keys[size] = key;
+                rankedRows[size++] = rows[i];
+            }
+        }
+
+        if (limit >= size) {
+            RadixSort.sort(keys, rankedRows, size, sortKey.getBits());
+            sortTiesById(store, keys, rankedRows, size);
+            return new RankedOrders(Arrays.copyOf(rankedRows, size), Arrays.copyOf(keys, size), false);
+        }
+
+        // Only a page is needed: a bounded heap keeps it, plus one more order to know there is a next page.
+        final TopKSelector selector = new TopKSelector(store, limit + 1);
+        for (int i = 0; i < size; i++) {
+            selector.offer(keys[i], rankedRows[i]);
+        }
+        final long[] selectedKeys = new long[limit + 1];
+        final int[] selectedRows = new int[limit + 1];
+        selector.drainSorted(selectedKeys, selectedRows);
+        return new RankedOrders(Arrays.copyOf(selectedRows, limit), Arrays.copyOf(selectedKeys, limit), true);
     }
 
-    // Orders that are food.
-    private static Comparator<CourierPrioritizedOrder> sortByFood() {
-        return Comparator.comparing(po -> !po.getOrder().getFood()); // Reverse order (true values first).
+    // Orders with the same key go by id, which, unlike the row, is the same in every snapshot: pages of a cursor
+    // neither skip nor repeat orders when others are saved or deleted in between.
+    private static void sortTiesById(OrderStore store, long[] keys, int[] rows, int size) {
+        int start = 0;
+        while (start < size) {
+            int end = start + 1;
+            while (end < size && keys[end] == keys[start]) {
+                end++;
+            }
+            if (end - start > 1) {
+                sortById(store, rows, start, end);
+            }
+            start = end;
+        }
     }
 
-    // By absolute distance.
-    private static Comparator<CourierPrioritizedOrder> sortByAbsoluteDistance() {
-        return Comparator.comparing(CourierPrioritizedOrder::getDistanceToCourier);
+    private static void sortById(OrderStore store, int[] rows, int from, int to) {
+        final String[] ids = new String[to - from];
+        final Integer[] positions = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.getId(rows[from + i]);
+            positions[i] = i;
+        }
+        Arrays.sort(positions, (i, j) -> OrderCursor.compareIds(ids[i], ids[j]));
+
+        final int[] sortedRows = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sortedRows[i] = rows[from + positions[i]];
+        }
+        System.arraycopy(sortedRows, 0, rows, from, sortedRows.length);
     }
 }
@@ -0,0 +1,118 @@
+package com.glovoapp.backender.sorting;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Packs the sorting criteria of an order into a single long. The first criterion takes the most significant bits,
+ * so comparing two keys as numbers gives the same result as comparing the criteria one after the other.
+ */
+public class PackedSortKey {
+
+    // Half the circumference of the Earth: no two locations are further apart.
+    private static final double MAX_DISTANCE_IN_KM = Math.PI * 6371;
+    // The sign bit is never used, so keys can be compared (and radix sorted) as positive numbers.
+    private static final int KEY_BITS = 63;
+    // Fractions of a millimeter when there is room for all of them.
+    private static final int MAX_DISTANCE_BITS = 35;
+    private static final int NOT_USED = -1;
+
+    private final double slotDistanceInKm;
+    private final int maxSlot;
+    private final long maxDistanceUnits;
+    private final double distanceUnitsPerKm;
+    private final int bits;
+
+    private int vipShift = NOT_USED;
+    private int foodShift = NOT_USED;
+    private int slotShift = NOT_USED;
+    private int distanceShift = NOT_USED;
+
+    /**
+     * Criteria in priority order (the first one is the most important). Repeated criteria can't change the order, so they are ignored.
+     */
+    public PackedSortKey(List<SortingCriteria> criteria, double slotDistanceInKm) {
+        this.slotDistanceInKm = slotDistanceInKm;
+        this.maxSlot = (int) (MAX_DISTANCE_IN_KM / slotDistanceInKm);
+
+        final Set<SortingCriteria> usedCriteria = EnumSet.noneOf(SortingCriteria.class);
+        usedCriteria.addAll(criteria);
+        final int slotBits = usedCriteria.contains(SortingCriteria.DISTANCE_SLOT) ? bitsFor(maxSlot) : 0;
+        final int flagBits = (usedCriteria.contains(SortingCriteria.VIP) ? 1 : 0) + (usedCriteria.contains(SortingCriteria.FOOD) ? 1 : 0);
+        final int distanceBits = Math.min(MAX_DISTANCE_BITS, KEY_BITS - slotBits - flagBits);
+        this.maxDistanceUnits = (1L << distanceBits) - 1;
+        this.distanceUnitsPerKm = maxDistanceUnits / MAX_DISTANCE_IN_KM;
+
+        // From the last criterion (least significant bits) to the first one.
+        int shift = 0;
+        for (int i = criteria.size() - 1; i >= 0; i--) {
+            if (criteria.indexOf(criteria.get(i)) != i) {
+                continue;
+            }
+            switch (criteria.get(i)) {
+                case VIP:
+                    vipShift = shift;
+                    shift += 1;
+                    break;
+                case FOOD:
+                    foodShift = shift;
+                    shift += 1;
+                    break;
+                case DISTANCE_SLOT:
+                    slotShift = shift;
+                    shift += slotBits;
+                    break;
+                case ABSOLUTE_DISTANCE:
+                    distanceShift = shift;
+                    shift += distanceBits;
+                    break;
+            }
+        }
+        this.bits = shift;
+    }
+
+    /**
+     * Number of low bits used by the keys. The rest are always zero.
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    public long encode(boolean vip, boolean food, double distanceToCourierInKm) {
+        long key = 0;
+        if (vipShift != NOT_USED && !vip) { // True values first.
+            key |= 1L << vipShift;
+        }
+        if (foodShift != NOT_USED && !food) { // True values first.
+            key |= 1L << foodShift;
+        }
+        if (slotShift != NOT_USED) {
+            key |= (long) slot(distanceToCourierInKm) << slotShift;
+        }
+        if (distanceShift != NOT_USED) {
+            key |= distanceUnits(distanceToCourierInKm) << distanceShift;
+        }
+        return key;
+    }
+
+    // Same slots as CourierPrioritizedOrder. Unknown distances go to the last slot.
+    private int slot(double distanceToCourierInKm) {
+        if (Double.isNaN(distanceToCourierInKm)) {
+            return maxSlot;
+        }
+        return Math.max(0, Math.min(maxSlot, (int) (distanceToCourierInKm / slotDistanceInKm)));
+    }
+
+    // Unknown distances go last, as Double.compare does with NaN.
+    private long distanceUnits(double distanceToCourierInKm) {
+        if (Double.isNaN(distanceToCourierInKm)) {
+            return maxDistanceUnits;
+        }
+        return Math.max(0, Math.min(maxDistanceUnits, Math.round(distanceToCourierInKm * distanceUnitsPerKm)));
+    }
+
+    private static int bitsFor(long maxValue) {
+        return 64 - Long.numberOfLeadingZeros(maxValue);
+    }
+}
@@ -0,0 +1,86 @@
+package com.glovoapp.backender.sorting;
+
+import java.util.Arrays;
+
+/**
+ * Stable LSD radix sort of positive long keys, moving a parallel array of int values along with them.
+ * Stability keeps the input order of the orders with the same key, as Stream.sorted does.
+ */
+final class RadixSort {
+
+    private static final int DIGIT_BITS = 8;
+    private static final int BUCKETS = 1 << DIGIT_BITS;
+    private static final int INSERTION_SORT_THRESHOLD = 48;
+
+    private RadixSort() {
+    }
+
+    /**
+     * Sorts the first size keys (whose set bits are all among the keyBits low bits), and their values, in ascending key order.
+     */
+    static void sort(long[] keys, int[] values, int size, int keyBits) {
+        if (size < INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, values, size);
+            return;
+        }
+
+        long[] sourceKeys = keys;
+        int[] sourceValues = values;
+        long[] targetKeys = new long[size];
+        int[] targetValues = new int[size];
+        final int[] counts = new int[BUCKETS];
+
+        for (int shift = 0; shift < keyBits; shift += DIGIT_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[digit(sourceKeys[i], shift)]++;
+            }
+            // All keys share this digit: the pass would not move anything.
+            if (counts[digit(sourceKeys[0], shift)] == size) {
+                continue;
+            }
+
+            for (int bucket = 0, offset = 0; bucket < BUCKETS; bucket++) {
+                final int count = counts[bucket];
+                counts[bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                final int position = counts[digit(sourceKeys[i], shift)]++;
+                targetKeys[position] = sourceKeys[i];
+                targetValues[position] = sourceValues[i];
+            }
+
+            final long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+            final int[] swapValues = sourceValues;
+            sourceValues = targetValues;
+            targetValues = swapValues;
+        }
+
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, size);
+            System.arraycopy(sourceValues, 0, values, 0, size);
+        }
+    }
+
+    private static void insertionSort(long[] keys, int[] values, int size) {
+        for (int i = 1; i < size; i++) {
+            final long key = keys[i];
+            final int value = values[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private static int digit(long key, int shift) {
+        return (int) (key >>> shift) & (BUCKETS - 1);
+    }
+}
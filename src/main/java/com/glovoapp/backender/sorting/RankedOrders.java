@@ -0,0 +1,52 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.repositories.OrderStore;
+
+import java.util.stream.IntStream;
+
+/**
+ * Rows of an order store sorted by priority, together with their sort keys.
+ */
+public class RankedOrders {
+
+    private final int[] rows;
+    private final long[] keys;
+    private final boolean hasMore;
+
+    public RankedOrders(int[] rows, long[] keys, boolean hasMore) {
+        this.rows = rows;
+        this.keys = keys;
+        this.hasMore = hasMore;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public int getRow(int position) {
+        return rows[position];
+    }
+
+    public long getKey(int position) {
+        return keys[position];
+    }
+
+    public IntStream rows() {
+        return IntStream.of(rows);
+    }
+
+    /**
+     * Whether there were more orders after the last one, left out by the limit.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Cursor to the last order, from which the next page starts. Null when there is no next page.
+     * The plan and the store are the ones the rows were ranked with.
+     */
+    public OrderCursor getNextCursor(SortPlan plan, OrderStore store) {
+        return hasMore ? new OrderCursor(plan.getFingerprint(), keys[rows.length - 1], store.getId(rows[rows.length - 1])) : null;
+    }
+}
@@ -0,0 +1,117 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.exceptions.InvalidSortingCriteriaException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Sorting criteria validated and compiled once into the key every order is sorted by. Immutable, so a plan can be
+ * shared by every request and replaced as a whole.
+ * Criteria that can't change the result are left out: repeated ones, and DISTANCE_SLOT after ABSOLUTE_DISTANCE
+ * (orders at the same distance are always in the same slot).
+ */
+public class SortPlan {
+
+    private final List<SortingCriteria> criteria;
+    private final double slotDistanceInKm;
+    private final PackedSortKey sortKey;
+    private final int fingerprint;
+
+    private SortPlan(List<SortingCriteria> criteria, double slotDistanceInKm) {
+        this.criteria = Collections.unmodifiableList(criteria);
+        this.slotDistanceInKm = slotDistanceInKm;
+        this.sortKey = new PackedSortKey(criteria, slotDistanceInKm);
+        this.fingerprint = fingerprint(criteria, slotDistanceInKm);
+    }
+
+    /**
+     * Compiles the criteria by priority, 1 being the first one. Priorities go from 1 to the number of criteria.
+     */
+    public static SortPlan compile(Map<Integer, String> criteriaByPriority, double slotDistanceInKm) {
+        final Map<Integer, String> sortedCriteria = new TreeMap<>(criteriaByPriority);
+        int expectedPriority = 1;
+        for (Integer priority : sortedCriteria.keySet()) {
+            if (priority != expectedPriority++) {
+                throw new InvalidSortingCriteriaException("priorities must go from 1 to " + sortedCriteria.size() + ", got " + sortedCriteria.keySet());
+            }
+        }
+        return compile(new ArrayList<>(sortedCriteria.values()), slotDistanceInKm);
+    }
+
+    /**
+     * Compiles the criteria named in priority order, the first one being the most important.
+     */
+    public static SortPlan compile(List<String> criteriaNames, double slotDistanceInKm) {
+        if (criteriaNames == null || criteriaNames.isEmpty()) {
+            throw new InvalidSortingCriteriaException("at least one criterion is needed");
+        }
+        if (!(slotDistanceInKm > 0) || Double.isInfinite(slotDistanceInKm)) {
+            throw new InvalidSortingCriteriaException("slot distance must be greater than zero, got " + slotDistanceInKm);
+        }
+
+        final List<SortingCriteria> criteria = new ArrayList<>();
+        final Set<SortingCriteria> seen = EnumSet.noneOf(SortingCriteria.class);
+        for (String name : criteriaNames) {
+            final SortingCriteria criterion = parse(name);
+            if (!seen.add(criterion)) {
+                continue;
+            }
+            if (criterion == SortingCriteria.DISTANCE_SLOT && seen.contains(SortingCriteria.ABSOLUTE_DISTANCE)) {
+                continue;
+            }
+            criteria.add(criterion);
+        }
+        return new SortPlan(criteria, slotDistanceInKm);
+    }
+
+    /**
+     * Criteria the orders are sorted by, in priority order, without the ones that can't change the result.
+     */
+    public List<SortingCriteria> getCriteria() {
+        return criteria;
+    }
+
+    public double getSlotDistanceInKm() {
+        return slotDistanceInKm;
+    }
+
+    /**
+     * Same for the plans that sort the same way, in every instance and across restarts: the criteria, and the slot
+     * distance when they use it. Cursors carry it, so they are not used with another plan.
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+
+    PackedSortKey getSortKey() {
+        return sortKey;
+    }
+
+    private static int fingerprint(List<SortingCriteria> criteria, double slotDistanceInKm) {
+        final CRC32 crc = new CRC32();
+        crc.update(criteria.toString().getBytes(StandardCharsets.UTF_8));
+        if (criteria.contains(SortingCriteria.DISTANCE_SLOT)) {
+            crc.update(Double.toHexString(slotDistanceInKm).getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static SortingCriteria parse(String name) {
+        if (name != null) {
+            for (SortingCriteria criterion : SortingCriteria.values()) {
+                if (criterion.name().equals(name.trim())) {
+                    return criterion;
+                }
+            }
+        }
+        throw new InvalidSortingCriteriaException("unknown criterion " + name);
+    }
+}
@@ -0,0 +1,104 @@
+package com.glovoapp.backender.sorting;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Sort plans of the criteria and slot sizes requested instead of the configured ones, each compiled once and kept in
+ * a bounded LRU cache, so requests repeating an override share its plan.
+ * Disabled when the maximum size is 0: every override is then compiled again.
+ */
+@Component
+public class SortPlanCache {
+
+    private final OrderSorter orderSorter;
+    private final int maxSize;
+    private final Map<PlanKey, SortPlan> plans;
+
+    @Autowired
+    public SortPlanCache(OrderSorter orderSorter,
+                         @Value("${backender.sorting.plan-cache.max-size:100}") int maxSize) {
+        this.orderSorter = orderSorter;
+        this.maxSize = maxSize;
+        this.plans = new LinkedHashMap<PlanKey, SortPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanKey, SortPlan> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the plan of the criteria, in priority order, and the slot size. Whichever is missing is taken from the
+     * configured plan, which is returned as is when both are.
+     */
+    public SortPlan getPlan(List<String> criteria, Double slotDistanceInKm) {
+        final SortPlan configuredPlan = orderSorter.getPlan();
+        final boolean defaultCriteria = criteria == null || criteria.isEmpty();
+        if (defaultCriteria && slotDistanceInKm == null) {
+            return configuredPlan;
+        }
+
+        final List<String> criteriaNames = new ArrayList<>();
+        if (defaultCriteria) {
+            configuredPlan.getCriteria().forEach(criterion -> criteriaNames.add(criterion.name()));
+        } else {
+            criteriaNames.addAll(criteria);
+        }
+        final PlanKey key = new PlanKey(criteriaNames,
+                slotDistanceInKm == null ? configuredPlan.getSlotDistanceInKm() : slotDistanceInKm);
+        if (maxSize <= 0) {
+            return SortPlan.compile(key.criteria, key.slotDistanceInKm);
+        }
+
+        synchronized (plans) {
+            final SortPlan plan = plans.get(key);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        // Compiled out of the lock. Invalid overrides throw here, so they are never cached.
+        final SortPlan plan = SortPlan.compile(key.criteria, key.slotDistanceInKm);
+        synchronized (plans) {
+            final SortPlan cachedPlan = plans.putIfAbsent(key, plan);
+            return cachedPlan == null ? plan : cachedPlan;
+        }
+    }
+
+    public int size() {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+
+    private static class PlanKey {
+        private final List<String> criteria;
+        private final double slotDistanceInKm;
+
+        PlanKey(List<String> criteria, double slotDistanceInKm) {
+            this.criteria = criteria;
+            this.slotDistanceInKm = slotDistanceInKm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PlanKey that = (PlanKey) o;
+            return Double.compare(that.slotDistanceInKm, slotDistanceInKm) == 0 &&
+                    Objects.equals(criteria, that.criteria);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(criteria, slotDistanceInKm);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.repositories.OrderStore;
+
+/**
+ * Keeps the k first rows seen so far, by key and then by id, in a bounded max-heap, so selecting the first k of n
+ * orders costs O(n log k) instead of sorting all of them. Ids are only read for rows with the same key.
+ */
+final class TopKSelector {
+
+    private final OrderStore store;
+    private final int capacity;
+    private final long[] keys;
+    private final int[] rows;
+    private int size;
+
+    TopKSelector(OrderStore store, int capacity) {
+        this.store = store;
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.rows = new int[capacity];
+    }
+
+    void offer(long key, int row) {
+        if (size < capacity) {
+            keys[size] = key;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (capacity > 0 && isLess(key, row, keys[0], rows[0])) {
+            keys[0] = key;
+            rows[0] = row;
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap into the given arrays, in ascending (key, id) order.
+     */
+    void drainSorted(long[] sortedKeys, int[] sortedRows) {
+        for (int position = size - 1; position >= 0; position--) {
+            sortedKeys[position] = keys[0];
+            sortedRows[position] = rows[0];
+            size--;
+            keys[0] = keys[size];
+            rows[0] = rows[size];
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            if (!isLess(keys[parent], rows[parent], keys[position], rows[position])) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            final int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            int largest = left;
+            final int right = left + 1;
+            if (right < size && isLess(keys[left], rows[left], keys[right], rows[right])) {
+                largest = right;
+            }
+            if (!isLess(keys[position], rows[position], keys[largest], rows[largest])) {
+                return;
+            }
+            swap(position, largest);
+            position = largest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        final long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        final int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+
+    private boolean isLess(long key, int row, long otherKey, int otherRow) {
+        return key < otherKey || (key == otherKey && OrderCursor.compareIds(store.getId(row), store.getId(otherRow)) < 0);
+    }
+}
@@ -0,0 +1,561 @@
+package com.glovoapp.backender.stats;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Stat;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.CourierChangeListener;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderChangeListener;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderStorage;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps the aggregates behind the stats up to date as orders and couriers change, so reading them is O(1): a stats
+ * request only reads the latest published Stat. The changes are queued, without locking, and applied in order on the
+ * thread of the engine, which publishes a new Stat after each batch.
+ * The average distance is the one from the couriers to the pickups within their distance threshold, the orders they
+ * can be offered: couriers and pickups are kept in grids, so adding, removing or moving one only measures the others
+ * in range of it. Couriers that can do long trips have no threshold: they are counted, but never measured. The moves
+ * of a courier queued in the same batch are applied once, to its latest location. Nothing is read at startup: the
+ * orders are read by row from the store of the repository on the first change or stats request, and the distances
+ * are only summed on the first stats request, which waits for them.
+ */
+@Component
+public class StatsEngine implements OrderChangeListener, CourierChangeListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatsEngine.class);
+    // Changes applied before publishing a Stat, so a stream of changes never holds the stats back.
+    private static final int MAX_CHANGES_PER_BATCH = 10_000;
+    private static final double GRID_CELL_SIZE_IN_DEGREES = 0.05; // Around 5.5 km of latitude.
+
+    private final OrderFilter orderFilter;
+    // Only touched by the thread of the engine.
+    private final Locations orderPickups = new Locations();
+    // Couriers with a distance threshold, which is their radius.
+    private final Locations courierLocations = new Locations();
+    private final Set<String> longTripCourierIds = new HashSet<>();
+    private final Set<String> nonFoodOrderIds = new HashSet<>();
+    // Largest radius of the couriers, to find the ones in range of a pickup.
+    private double maxRadiusInKm;
+    private double totalCourierToPickupDistanceInKm;
+    private long countOfDistances;
+    private boolean totalSummed;
+    // The orders the changes start from, until they are read.
+    private OrderStore unreadOrders;
+
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean applyScheduled = new AtomicBoolean();
+    // Changes queued before the fields are set wait for it.
+    private volatile boolean started;
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Null until the total is summed.
+    private volatile Stat stat;
+
+    @Autowired
+    public StatsEngine(OrderRepository orderRepository, CourierRepository courierRepository, OrderFilter orderFilter) {
+        this.orderFilter = orderFilter;
+        // Listening before reading, so no change is missed. Changes are only applied once the fields are set.
+        courierRepository.addChangeListener(this);
+        this.unreadOrders = orderRepository.addChangeListener(this).getStore();
+        addCouriers(courierRepository.findAll());
+        start();
+    }
+
+    public StatsEngine(List<Order> orders, List<Courier> couriers, OrderFilter orderFilter) {
+        this.orderFilter = orderFilter;
+        this.unreadOrders = OrderStorage.OBJECTS.create(orders);
+        addCouriers(couriers);
+        start();
+    }
+
+    private void start() {
+        started = true;
+        scheduleApply();
+    }
+
+    private void addCouriers(List<Courier> couriers) {
+        // Queued, so the couriers updated meanwhile end up with their latest version.
+        couriers.forEach(courier -> enqueue(Change.saveCourier(courier)));
+    }
+
+    public Stat getStat() {
+        final Stat published = stat;
+        if (published != null) {
+            return published;
+        }
+        // Queued after the changes already queued, which are applied first.
+        return CompletableFuture.supplyAsync(() -> {
+            sumTotal();
+            publish();
+            return stat;
+        }, applier).join();
+    }
+
+    /**
+     * Adds the order, or replaces the one with the same id.
+     */
+    public void addOrder(Order order) {
+        enqueue(Change.saveOrder(order));
+    }
+
+    public void removeOrder(String orderId) {
+        enqueue(Change.deleteOrder(orderId));
+    }
+
+    /**
+     * Adds the courier, or replaces the one with the same id.
+     */
+    public void addCourier(Courier courier) {
+        enqueue(Change.saveCourier(courier));
+    }
+
+    public void removeCourier(String courierId) {
+        enqueue(Change.deleteCourier(courierId));
+    }
+
+    public void moveCourier(String courierId, Location location) {
+        enqueue(Change.moveCourier(courierId, location));
+    }
+
+    @Override
+    public void orderSaved(Order previous, Order order) {
+        addOrder(order);
+    }
+
+    @Override
+    public void orderDeleted(Order order) {
+        removeOrder(order.getId());
+    }
+
+    @Override
+    public void courierMoved(Courier previous, Courier courier) {
+        moveCourier(courier.getId(), courier.getLocation());
+    }
+
+    @Override
+    public void courierSaved(Courier previous, Courier courier) {
+        addCourier(courier);
+    }
+
+    @Override
+    public void courierDeleted(Courier courier) {
+        removeCourier(courier.getId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        applier.shutdown();
+    }
+
+    /**
+     * Waits until every change queued so far is applied and published.
+     */
+    void awaitChanges() {
+        CompletableFuture.runAsync(() -> {
+            while (!changes.isEmpty()) {
+                applyChanges();
+            }
+        }, applier).join();
+    }
+
+    private void enqueue(Change change) {
+        changes.add(change);
+        scheduleApply();
+    }
+
+    private void scheduleApply() {
+        if (started && applyScheduled.compareAndSet(false, true)) {
+            applier.execute(this::applyChanges);
+        }
+    }
+
+    private void applyChanges() {
+        // Changes queued from now on are either applied by this batch or schedule the next one.
+        applyScheduled.set(false);
+        final Map<String, Location> moves = new HashMap<>();
+        int applied = 0;
+        for (Change change = changes.poll(); change != null; change = applied < MAX_CHANGES_PER_BATCH ? changes.poll() : null) {
+            applied++;
+            try {
+                apply(change, moves);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not apply {} to the stats", change, e);
+            }
+        }
+        moves.forEach(this::applyMove);
+        publish();
+        if (!changes.isEmpty()) {
+            scheduleApply();
+        }
+    }
+
+    private void apply(Change change, Map<String, Location> moves) {
+        if (change.location != null) {
+            moves.put(change.courierId, change.location);
+            return;
+        }
+        if (change.courierId != null) {
+            // Saved or deleted after the moves queued before: those are outdated.
+            moves.remove(change.courierId);
+            removeCourierNow(change.courierId);
+            if (change.courier != null) {
+                addCourierNow(change.courier);
+            }
+            return;
+        }
+        readOrders();
+        removeOrderNow(change.orderId);
+        if (change.order != null) {
+            addOrderNow(change.order);
+        }
+    }
+
+    // Only once summed: until then, the first stats request publishes one.
+    private void publish() {
+        if (!totalSummed) {
+            return;
+        }
+        final int numberOfOrders = orderPickups.size();
+        final int numberOfCouriers = courierLocations.size() + longTripCourierIds.size();
+        final float percentageOfNonFoodOrders = (float) nonFoodOrderIds.size() / (float) numberOfOrders;
+
+        // Average courier-to-pickup distance in meters, over the pickups in range of the couriers
+        final double averageCourierToPickupDistanceInMeters = (totalCourierToPickupDistanceInKm / countOfDistances) * 1000;
+        stat = new Stat(numberOfOrders, numberOfCouriers, percentageOfNonFoodOrders, averageCourierToPickupDistanceInMeters);
+    }
+
+    // Only the id, the pickup and the food flag of every row: no Order is built.
+    private void readOrders() {
+        if (unreadOrders == null) {
+            return;
+        }
+        final OrderStore store = unreadOrders;
+        unreadOrders = null;
+        for (int row = 0; row < store.size(); row++) {
+            final String id = store.getId(row);
+            orderPickups.add(id, store.getPickupLat(row), store.getPickupLon(row), 0);
+            if (!store.isFood(row)) {
+                nonFoodOrderIds.add(id);
+            }
+        }
+    }
+
+    // One distance per courier and pickup in its range, once. Every change after that keeps the total up to date.
+    private void sumTotal() {
+        readOrders();
+        if (totalSummed) {
+            return;
+        }
+        totalSummed = true;
+        totalCourierToPickupDistanceInKm = 0;
+        countOfDistances = 0;
+        for (int c = 0; c < courierLocations.size(); c++) {
+            addDistancesFromCourier(c, 1);
+        }
+    }
+
+    private void addOrderNow(Order order) {
+        orderPickups.add(order.getId(), order.getPickup().getLat(), order.getPickup().getLon(), 0);
+        if (!Boolean.TRUE.equals(order.getFood())) {
+            nonFoodOrderIds.add(order.getId());
+        }
+        if (totalSummed) {
+            addDistancesToPickup(orderPickups.size() - 1, 1);
+        }
+    }
+
+    private void removeOrderNow(String orderId) {
+        final int index = orderPickups.indexOf(orderId);
+        if (index < 0) {
+            return;
+        }
+        if (totalSummed) {
+            addDistancesToPickup(index, -1);
+        }
+        orderPickups.remove(index);
+        nonFoodOrderIds.remove(orderId);
+        resetTotalWhenEmpty();
+    }
+
+    private void addCourierNow(Courier courier) {
+        final double radiusInKm = orderFilter.getMaxDistanceToCourierInKm(courier);
+        if (Double.isInfinite(radiusInKm)) {
+            longTripCourierIds.add(courier.getId());
+            return;
+        }
+        courierLocations.add(courier.getId(), courier.getLocation().getLat(), courier.getLocation().getLon(), radiusInKm);
+        maxRadiusInKm = Math.max(maxRadiusInKm, radiusInKm);
+        if (totalSummed) {
+            addDistancesFromCourier(courierLocations.size() - 1, 1);
+        }
+    }
+
+    private void removeCourierNow(String courierId) {
+        longTripCourierIds.remove(courierId);
+        final int index = courierLocations.indexOf(courierId);
+        if (index < 0) {
+            return;
+        }
+        if (totalSummed) {
+            addDistancesFromCourier(index, -1);
+        }
+        courierLocations.remove(index);
+        resetTotalWhenEmpty();
+    }
+
+    // Only the pickups in range of the old and the new location are measured.
+    private void applyMove(String courierId, Location location) {
+        final int index = courierLocations.indexOf(courierId);
+        if (index < 0) {
+            return;
+        }
+        if (totalSummed) {
+            addDistancesFromCourier(index, -1);
+        }
+        courierLocations.set(index, location.getLat(), location.getLon());
+        if (totalSummed) {
+            addDistancesFromCourier(index, 1);
+        }
+    }
+
+    // Adds (sign 1) or subtracts (sign -1) the distances from the couriers in range of the pickup.
+    private void addDistancesToPickup(int order, int sign) {
+        courierLocations.forEachNearby(orderPickups.getLat(order), orderPickups.getLon(order), maxRadiusInKm, courier -> {
+            final double distance = distance(courier, order);
+            if (!(distance > courierLocations.getRadius(courier))) {
+                totalCourierToPickupDistanceInKm += sign * distance;
+                countOfDistances += sign;
+            }
+        });
+    }
+
+    // Adds (sign 1) or subtracts (sign -1) the distances to the pickups in range of the courier.
+    private void addDistancesFromCourier(int courier, int sign) {
+        final double radiusInKm = courierLocations.getRadius(courier);
+        orderPickups.forEachNearby(courierLocations.getLat(courier), courierLocations.getLon(courier), radiusInKm, order -> {
+            final double distance = distance(courier, order);
+            if (!(distance > radiusInKm)) {
+                totalCourierToPickupDistanceInKm += sign * distance;
+                countOfDistances += sign;
+            }
+        });
+    }
+
+    private double distance(int courier, int order) {
+        return DistanceCalculator.calculateDistance(courierLocations.getLat(courier), courierLocations.getLon(courier),
+                orderPickups.getLat(order), orderPickups.getLon(order));
+    }
+
+    // Without distances left, whatever remains of the total is rounding error of the subtractions.
+    private void resetTotalWhenEmpty() {
+        if (countOfDistances == 0) {
+            totalCourierToPickupDistanceInKm = 0;
+        }
+    }
+
+    /**
+     * A queued change: an order saved (order set) or deleted (orderId only), or a courier saved (courier set),
+     * deleted (courierId only) or moved (location set).
+     */
+    private static final class Change {
+        private final Order order;
+        private final String orderId;
+        private final Courier courier;
+        private final String courierId;
+        private final Location location;
+
+        private Change(Order order, String orderId, Courier courier, String courierId, Location location) {
+            this.order = order;
+            this.orderId = orderId;
+            this.courier = courier;
+            this.courierId = courierId;
+            this.location = location;
+        }
+
+        static Change saveOrder(Order order) {
+            return new Change(order, order.getId(), null, null, null);
+        }
+
+        static Change deleteOrder(String orderId) {
+            return new Change(null, orderId, null, null, null);
+        }
+
+        static Change saveCourier(Courier courier) {
+            return new Change(null, null, courier, courier.getId(), null);
+        }
+
+        static Change deleteCourier(String courierId) {
+            return new Change(null, null, null, courierId, null);
+        }
+
+        static Change moveCourier(String courierId, Location location) {
+            return new Change(null, null, null, courierId, location);
+        }
+
+        @Override
+        public String toString() {
+            return courierId != null ? "change of courier " + courierId : "change of order " + orderId;
+        }
+    }
+
+    /**
+     * Locations by id, packed in arrays, with a radius each, and by cell of a uniform lat/lon grid, so the ones near a
+     * location are found without visiting the rest. Removing moves the last location to the freed position.
+     */
+    private static class Locations {
+        private static final double KM_PER_DEGREE = 111.19492664455873; // 2 * PI * 6371 / 360
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final Map<Long, Set<String>> cells = new HashMap<>();
+        private final int lonCells = (int) Math.round(360 / GRID_CELL_SIZE_IN_DEGREES);
+        private String[] ids = new String[16];
+        private double[] lats = new double[16];
+        private double[] lons = new double[16];
+        private double[] radii = new double[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int indexOf(String id) {
+            final Integer index = indexes.get(id);
+            return index == null ? -1 : index;
+        }
+
+        double getLat(int index) {
+            return lats[index];
+        }
+
+        double getLon(int index) {
+            return lons[index];
+        }
+
+        double getRadius(int index) {
+            return radii[index];
+        }
+
+        void add(String id, double lat, double lon, double radius) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+                radii = Arrays.copyOf(radii, size * 2);
+            }
+            indexes.put(id, size);
+            ids[size] = id;
+            lats[size] = lat;
+            lons[size] = lon;
+            radii[size] = radius;
+            cells.computeIfAbsent(cellKey(lat, lon), key -> new HashSet<>()).add(id);
+            size++;
+        }
+
+        void set(int index, double lat, double lon) {
+            removeFromCell(index);
+            lats[index] = lat;
+            lons[index] = lon;
+            cells.computeIfAbsent(cellKey(lat, lon), key -> new HashSet<>()).add(ids[index]);
+        }
+
+        void remove(int index) {
+            final int last = --size;
+            removeFromCell(index);
+            indexes.remove(ids[index]);
+            if (index != last) {
+                ids[index] = ids[last];
+                lats[index] = lats[last];
+                lons[index] = lons[last];
+                radii[index] = radii[last];
+                indexes.put(ids[index], index);
+            }
+            ids[last] = null;
+        }
+
+        /**
+         * Visits the indexes of the locations that may be within radiusInKm of the given one, and maybe others: the
+         * exact distance still has to be checked.
+         */
+        void forEachNearby(double lat, double lon, double radiusInKm, IntConsumer action) {
+            final double latDelta = radiusInKm / KM_PER_DEGREE;
+            final double minLat = lat - latDelta;
+            final double maxLat = lat + latDelta;
+            // Close to the poles, or with a large radius, every longitude is in range.
+            final double lonDelta = minLat <= -90 || maxLat >= 90 ? 180 :
+                    latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+            final int fromLatCell = latCell(Math.max(minLat, -90));
+            final int toLatCell = latCell(Math.min(maxLat, 90));
+            final int fromLonCell = lonCell(lon - Math.min(lonDelta, 180));
+            final int lonSpan = Math.min(lonCells, lonCell(lon + Math.min(lonDelta, 180)) - fromLonCell + 1);
+
+            // More cells in range than occupied ones: cheaper to visit every location.
+            if ((long) (toLatCell - fromLatCell + 1) * lonSpan > cells.size()) {
+                for (int index = 0; index < size; index++) {
+                    action.accept(index);
+                }
+                return;
+            }
+            for (int latCell = fromLatCell; latCell <= toLatCell; latCell++) {
+                for (int i = 0; i < lonSpan; i++) {
+                    final Set<String> cellIds = cells.get(cellKey(latCell, Math.floorMod(fromLonCell + i, lonCells)));
+                    if (cellIds != null) {
+                        for (String id : cellIds) {
+                            action.accept(indexes.get(id));
+                        }
+                    }
+                }
+            }
+        }
+
+        private void removeFromCell(int index) {
+            final long key = cellKey(lats[index], lons[index]);
+            final Set<String> cellIds = cells.get(key);
+            cellIds.remove(ids[index]);
+            if (cellIds.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+
+        private long cellKey(double lat, double lon) {
+            return cellKey(latCell(lat), Math.floorMod(lonCell(lon), lonCells));
+        }
+
+        private static int latCell(double lat) {
+            return (int) Math.floor((lat + 90) / GRID_CELL_SIZE_IN_DEGREES);
+        }
+
+        private static int lonCell(double lon) {
+            return (int) Math.floor((lon + 180) / GRID_CELL_SIZE_IN_DEGREES);
+        }
+
+        private static long cellKey(int latCell, int lonCell) {
+            return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+        }
+    }
+}
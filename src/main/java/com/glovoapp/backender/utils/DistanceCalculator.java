@@ -15,11 +15,18 @@ public class DistanceCalculator {
      * Returns distance between two locations in kilometers
      */
     public static double calculateDistance(Location start, Location end) {
-        double deltaLat = toRadians((end.getLat() - start.getLat()));
-        double deltaLong = toRadians((end.getLon() - start.getLon()));
+        return calculateDistance(start.getLat(), start.getLon(), end.getLat(), end.getLon());
+    }
+
+    /**
+     * Same as calculateDistance(Location, Location), for coordinates that are not kept in a Location
+     */
+    public static double calculateDistance(double startLatitude, double startLongitude, double endLatitude, double endLongitude) {
+        double deltaLat = toRadians((endLatitude - startLatitude));
+        double deltaLong = toRadians((endLongitude - startLongitude));
 
-        double startLat = toRadians(start.getLat());
-        double endLat = toRadians(end.getLat());
+        double startLat = toRadians(startLatitude);
+        double endLat = toRadians(endLatitude);
 
         double a = haversin(deltaLat) + cos(startLat) * cos(endLat) * haversin(deltaLong);
         double c = 2 * atan2(sqrt(a), sqrt(1 - a));
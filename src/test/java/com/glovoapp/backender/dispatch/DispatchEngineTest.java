@@ -0,0 +1,231 @@
+package com.glovoapp.backender.dispatch;
+
+import com.glovoapp.backender.entities.Assignment;
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Dispatch;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.offers.OfferPipeline;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DispatchEngineTest {
+
+    private static final Location BARCELONA = new Location(41.3965463, 2.1963997);
+
+    private OrderRepository orderRepository;
+    private CourierRepository courierRepository;
+    private BatchOfferPipeline batchOfferPipeline;
+    private Random random;
+
+    @BeforeEach
+    public void setUp() {
+        final SortingPriorityConfig sortingPriorityConfig = new SortingPriorityConfig();
+        sortingPriorityConfig.getSortingCriteria().put(1, SortingCriteria.VIP.toString());
+        sortingPriorityConfig.getSortingCriteria().put(2, SortingCriteria.DISTANCE_SLOT.toString());
+        final OrderFilter orderFilter = new OrderFilter("pizza,cake", ",", 5);
+        batchOfferPipeline = new BatchOfferPipeline(orderFilter, new OfferPipeline(orderFilter, new OrderSorter(sortingPriorityConfig, 0.5)), 2);
+        orderRepository = new OrderRepository();
+        courierRepository = new CourierRepository();
+        random = new Random(13);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batchOfferPipeline.shutdown();
+    }
+
+    @Test
+    public void dispatch_exactBeatsGreedy() {
+        // Greedy gives the closest pair, a-x, and leaves b the far order. Exact swaps them.
+        courierRepository.reload(Arrays.asList(createCourier("a", true, Vehicle.MOTORCYCLE, BARCELONA),
+                createCourier("b", true, Vehicle.MOTORCYCLE, new Location(41.4165463, 2.1963997))));
+        orderRepository.reload(new ColumnarOrderStore(Arrays.asList(
+                createOrder("x", "1x Salad", new Location(41.4015463, 2.1963997)),
+                createOrder("y", "1x Salad", new Location(41.3765463, 2.1963997)))));
+
+        final Dispatch greedy = createEngine(20, 200).dispatch(DispatchMode.GREEDY);
+        final Dispatch exact = createEngine(20, 200).dispatch(DispatchMode.EXACT);
+
+        assertEquals(pairs("a", "x", "b", "y"), pairs(greedy));
+        assertEquals(pairs("a", "y", "b", "x"), pairs(exact));
+        assertTrue(exact.getTotalPickupDistanceInKm() < greedy.getTotalPickupDistanceInKm());
+        assertEquals("EXACT", exact.getMode());
+    }
+
+    @Test
+    public void dispatch_respectsFilters() {
+        courierRepository.reload(Arrays.asList(createCourier("no-box", false, Vehicle.MOTORCYCLE, BARCELONA),
+                createCourier("bicycle", true, Vehicle.BICYCLE, BARCELONA)));
+        orderRepository.reload(new ColumnarOrderStore(Arrays.asList(
+                createOrder("pizza-close", "1x Pizza", BARCELONA),
+                createOrder("salad-far", "1x Salad", new Location(40.4167047, -3.7035825))))); // Madrid.
+
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Dispatch dispatch = createEngine(20, 200).dispatch(mode);
+
+            // The courier without a box can't carry the pizza, and the bicycle can't go to Madrid.
+            assertEquals(pairs("no-box", "salad-far", "bicycle", "pizza-close"), pairs(dispatch));
+            assertEquals(0, dispatch.getUnassignedCouriers());
+            assertEquals(0, dispatch.getUnassignedOrders());
+        }
+    }
+
+    @Test
+    public void dispatch_randomFleet_exactNeverWorseThanGreedy() {
+        final Vehicle[] vehicles = Vehicle.values();
+        courierRepository.reload(IntStream.range(0, 60)
+                .mapToObj(i -> createCourier("courier-" + i, random.nextBoolean(), vehicles[random.nextInt(vehicles.length)], randomLocation()))
+                .collect(Collectors.toList()));
+        orderRepository.reload(new ColumnarOrderStore(IntStream.range(0, 80)
+                .mapToObj(i -> createOrder("order-" + i, random.nextInt(4) == 0 ? "1x Cake" : "1x Salad", randomLocation()))
+                .collect(Collectors.toList())));
+
+        final Dispatch greedy = createEngine(5, 200).dispatch(DispatchMode.GREEDY);
+        final Dispatch exact = createEngine(5, 200).dispatch(DispatchMode.EXACT);
+
+        assertOneToOne(greedy);
+        assertOneToOne(exact);
+        assertTrue(exact.getAssignments().size() >= greedy.getAssignments().size());
+        if (exact.getAssignments().size() == greedy.getAssignments().size()) {
+            assertTrue(exact.getTotalPickupDistanceInKm() <= greedy.getTotalPickupDistanceInKm() + 1e-9);
+        }
+        for (Assignment assignment : exact.getAssignments()) {
+            final Courier courier = courierRepository.findById(assignment.getCourierId());
+            final Order order = orderRepository.getSnapshot().findById(assignment.getOrderId());
+            assertEquals(DistanceCalculator.calculateDistance(order.getPickup(), courier.getLocation()), assignment.getPickupDistanceInKm(), 1e-9);
+        }
+    }
+
+    @Test
+    public void dispatch_exactTooLarge_greedyFallback() {
+        courierRepository.reload(Arrays.asList(createCourier("a", true, Vehicle.MOTORCYCLE, BARCELONA),
+                createCourier("b", true, Vehicle.MOTORCYCLE, BARCELONA)));
+        orderRepository.reload(new ColumnarOrderStore(Arrays.asList(
+                createOrder("x", "1x Salad", BARCELONA),
+                createOrder("y", "1x Salad", BARCELONA))));
+
+        final Dispatch exact = createEngine(20, 1).dispatch(DispatchMode.EXACT);
+        final Dispatch greedy = createEngine(20, 1).dispatch(DispatchMode.GREEDY);
+
+        assertEquals(pairs(greedy), pairs(exact));
+        assertEquals(2, exact.getGreedyCouriers());
+        assertEquals(2, greedy.getGreedyCouriers());
+        assertEquals(0, createEngine(20, 2).dispatch(DispatchMode.EXACT).getGreedyCouriers());
+    }
+
+    @Test
+    public void dispatch_courierIds_onlyThoseCouriers() {
+        courierRepository.reload(Arrays.asList(createCourier("a", true, Vehicle.MOTORCYCLE, BARCELONA),
+                createCourier("b", true, Vehicle.MOTORCYCLE, BARCELONA)));
+        orderRepository.reload(new ColumnarOrderStore(Arrays.asList(
+                createOrder("x", "1x Salad", BARCELONA),
+                createOrder("y", "1x Salad", BARCELONA))));
+
+        final Dispatch exact = createEngine(20, 2).dispatch(DispatchMode.EXACT, Collections.singletonList("b"));
+
+        assertEquals(1, exact.getAssignments().size());
+        assertEquals("b", exact.getAssignments().get(0).getCourierId());
+        assertEquals(0, exact.getGreedyCouriers());
+        assertEquals(1, exact.getUnassignedOrders());
+        assertThrows(CourierNotFoundException.class,
+                () -> createEngine(20, 1).dispatch(DispatchMode.EXACT, Arrays.asList("b", "unknown")));
+    }
+
+    @Test
+    public void dispatch_repeatedCourierIds_oneOrderPerCourier() {
+        courierRepository.reload(Collections.singletonList(createCourier("a", true, Vehicle.MOTORCYCLE, BARCELONA)));
+        orderRepository.reload(new ColumnarOrderStore(Arrays.asList(
+                createOrder("x", "1x Salad", BARCELONA),
+                createOrder("y", "1x Salad", BARCELONA))));
+
+        for (DispatchMode mode : DispatchMode.values()) {
+            final Dispatch dispatch = createEngine(20, 200).dispatch(mode, Arrays.asList("a", "a"));
+
+            assertEquals(1, dispatch.getAssignments().size());
+            assertEquals(0, dispatch.getUnassignedCouriers());
+            assertEquals(1, dispatch.getUnassignedOrders());
+            assertOneToOne(dispatch);
+        }
+    }
+
+    private DispatchEngine createEngine(int candidatesPerCourier, int exactMaxSize) {
+        return new DispatchEngine(orderRepository, courierRepository, batchOfferPipeline, candidatesPerCourier, exactMaxSize, 2);
+    }
+
+    private static void assertOneToOne(Dispatch dispatch) {
+        final Set<String> couriers = new HashSet<>();
+        final Set<String> orders = new HashSet<>();
+        for (Assignment assignment : dispatch.getAssignments()) {
+            assertTrue(couriers.add(assignment.getCourierId()));
+            assertTrue(orders.add(assignment.getOrderId()));
+        }
+    }
+
+    private static Map<String, String> pairs(String... courierAndOrderIds) {
+        final Map<String, String> pairs = new HashMap<>();
+        for (int i = 0; i < courierAndOrderIds.length; i += 2) {
+            pairs.put(courierAndOrderIds[i], courierAndOrderIds[i + 1]);
+        }
+        return pairs;
+    }
+
+    private static Map<String, String> pairs(Dispatch dispatch) {
+        final List<String> courierAndOrderIds = new ArrayList<>();
+        for (Assignment assignment : dispatch.getAssignments()) {
+            courierAndOrderIds.add(assignment.getCourierId());
+            courierAndOrderIds.add(assignment.getOrderId());
+        }
+        return pairs(courierAndOrderIds.toArray(new String[0]));
+    }
+
+    private Location randomLocation() {
+        return new Location(BARCELONA.getLat() + (random.nextDouble() - 0.5) * 0.1, BARCELONA.getLon() + (random.nextDouble() - 0.5) * 0.1);
+    }
+
+    private static Courier createCourier(String id, boolean box, Vehicle vehicle, Location location) {
+        return new Courier().withId(id)
+                .withBox(box)
+                .withName("Manolo Escobar")
+                .withVehicle(vehicle)
+                .withLocation(location);
+    }
+
+    // Delivered where it is picked up: the distance filter and the pickup distance measure the same.
+    private static Order createOrder(String id, String description, Location location) {
+        return new Order().withId(id)
+                .withDescription(description)
+                .withFood(true)
+                .withVip(false)
+                .withPickup(location)
+                .withDelivery(location);
+    }
+}
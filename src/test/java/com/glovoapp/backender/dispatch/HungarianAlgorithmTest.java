@@ -0,0 +1,74 @@
+package com.glovoapp.backender.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class HungarianAlgorithmTest {
+
+    @Test
+    public void solve_square() {
+        final double[][] cost = {
+                {4, 1, 3},
+                {2, 0, 5},
+                {3, 2, 2}};
+
+        assertArrayEquals(new int[]{1, 0, 2}, HungarianAlgorithm.solve(cost));
+    }
+
+    @Test
+    public void solve_randomMatrices_sameAsEveryAssignment() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            final int rows = 1 + random.nextInt(5);
+            final int columns = rows + random.nextInt(3);
+            final double[][] cost = new double[rows][columns];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    cost[row][column] = random.nextInt(20) + random.nextDouble();
+                }
+            }
+
+            final int[] columnOfRow = HungarianAlgorithm.solve(cost);
+
+            for (int row = 0; row < rows; row++) {
+                for (int other = row + 1; other < rows; other++) {
+                    assertNotEquals(columnOfRow[row], columnOfRow[other]);
+                }
+            }
+            assertEquals(minCost(cost, 0, new boolean[columns]), totalCost(cost, columnOfRow), 1e-9);
+        }
+    }
+
+    @Test
+    public void solve_noRows() {
+        assertArrayEquals(new int[0], HungarianAlgorithm.solve(new double[0][0]));
+    }
+
+    private static double totalCost(double[][] cost, int[] columnOfRow) {
+        double total = 0;
+        for (int row = 0; row < cost.length; row++) {
+            total += cost[row][columnOfRow[row]];
+        }
+        return total;
+    }
+
+    private static double minCost(double[][] cost, int row, boolean[] usedColumns) {
+        if (row == cost.length) {
+            return 0;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for (int column = 0; column < usedColumns.length; column++) {
+            if (!usedColumns[column]) {
+                usedColumns[column] = true;
+                min = Math.min(min, cost[row][column] + minCost(cost, row + 1, usedColumns));
+                usedColumns[column] = false;
+            }
+        }
+        return min;
+    }
+}
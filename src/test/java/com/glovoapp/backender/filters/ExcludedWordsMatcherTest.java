@@ -0,0 +1,65 @@
+package com.glovoapp.backender.filters;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExcludedWordsMatcherTest {
+
+    private final ExcludedWordsMatcher subject = ExcludedWordsMatcher.compile("pizza,cake,flamingo", ",");
+
+    @Test
+    void matches_anyWord() {
+        assertTrue(subject.matches("I want a pizza cut into very small slices"));
+        assertTrue(subject.matches("1x Cheese cake"));
+        assertTrue(subject.matches("flamingo"));
+        assertFalse(subject.matches("I want a steak very big"));
+    }
+
+    @Test
+    void matches_ignoresCase() {
+        assertTrue(subject.matches("2x PIZZA with Fries"));
+        assertTrue(ExcludedWordsMatcher.compile("Pizza", ",").matches("pizza"));
+    }
+
+    @Test
+    void matches_insideOtherWords() {
+        assertTrue(subject.matches("Pancakes"));
+        assertFalse(subject.matches("piz za"));
+    }
+
+    @Test
+    void matches_overlappingWords() {
+        final ExcludedWordsMatcher matcher = ExcludedWordsMatcher.compile("she,hers,his", ",");
+
+        assertTrue(matcher.matches("ushers"));
+        assertTrue(matcher.matches("ahishe"));
+        assertFalse(matcher.matches("her"));
+    }
+
+    @Test
+    void matches_prefixFailure() {
+        final ExcludedWordsMatcher matcher = ExcludedWordsMatcher.compile("abcd,bce", ",");
+
+        assertTrue(matcher.matches("xabce"));
+        assertFalse(matcher.matches("xabcx"));
+    }
+
+    @Test
+    void matches_nonAsciiWords() {
+        final ExcludedWordsMatcher matcher = ExcludedWordsMatcher.compile("jamón|crème brûlée", "\\|");
+
+        assertTrue(matcher.matches("Bocadillo de JAMÓN"));
+        assertTrue(matcher.matches("1x Crème Brûlée"));
+        assertFalse(matcher.matches("1x Creme Brulee"));
+    }
+
+    @Test
+    void matches_noWords() {
+        assertFalse(ExcludedWordsMatcher.compile(null, null).matches("pizza"));
+        assertFalse(ExcludedWordsMatcher.compile(",,", ",").matches("pizza"));
+        assertFalse(subject.matches(""));
+        assertFalse(subject.matches(null));
+    }
+}
@@ -6,13 +6,19 @@ import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.entities.Vehicle;
 import com.glovoapp.backender.exceptions.InvalidDistanceThresholdException;
 import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.OrderStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -187,4 +193,91 @@ public class OrderFilterTest {
         assertEquals("Distance threshold has an invalid value.", e.getMessage());
     }
 
+    @Test
+    public void filterRows_withoutBox_inBicycle_getsNothing() {
+        final Courier courier = new Courier().withId("courier-2")
+                .withBox(false)
+                .withName("Manolo Escobar does not have box")
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+        final OrderStore store = new ColumnarOrderStore(Arrays.asList(order1, order2));
+
+        assertArrayEquals(new int[]{1}, IntStream.range(0, store.size()).filter(subject.filterByCourierBox(store, courier)).toArray());
+        assertArrayEquals(new int[]{0}, IntStream.range(0, store.size()).filter(subject.filterByDistanceToCourier(store, courier)).toArray());
+    }
+
+    @Test
+    public void filterRows_withoutBox_inMotorcycle_getsOrder2() {
+        final Courier courier = new Courier().withId("courier-1")
+                .withBox(false)
+                .withName("Manolo Escobar does not have box")
+                .withVehicle(Vehicle.MOTORCYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+        final OrderStore store = new ColumnarOrderStore(Arrays.asList(order1, order2));
+
+        final int[] filteredRows = IntStream.range(0, store.size())
+                .filter(subject.filterByCourierBox(store, courier))
+                .filter(subject.filterByDistanceToCourier(store, courier))
+                .toArray();
+
+        assertArrayEquals(new int[]{1}, filteredRows);
+    }
+
+    @Test
+    public void findOrdersRequiringBox_sharedByCouriers() {
+        final OrderStore store = new ColumnarOrderStore(Arrays.asList(order1, order2));
+        final BitSet ordersRequiringBox = subject.findOrdersRequiringBox(store);
+        final Courier courierWithBox = new Courier().withBox(true);
+        final Courier courierWithoutBox = new Courier().withBox(false);
+
+        assertEquals(1, ordersRequiringBox.cardinality());
+        assertTrue(ordersRequiringBox.get(0));
+        assertArrayEquals(new int[]{0, 1}, IntStream.range(0, store.size()).filter(subject.filterByCourierBox(ordersRequiringBox, courierWithBox)).toArray());
+        assertArrayEquals(new int[]{1}, IntStream.range(0, store.size()).filter(subject.filterByCourierBox(ordersRequiringBox, courierWithoutBox)).toArray());
+    }
+
+    @Test
+    public void getMaxDistanceToCourierInKm_courierWithBicycle_threshold() {
+        final Courier courier = new Courier().withVehicle(Vehicle.BICYCLE);
+
+        assertEquals(5, subject.getMaxDistanceToCourierInKm(courier), 0);
+    }
+
+    @Test
+    public void getMaxDistanceToCourierInKm_courierWithMotorcycle_unlimited() {
+        final Courier courier = new Courier().withVehicle(Vehicle.MOTORCYCLE);
+
+        assertEquals(Double.POSITIVE_INFINITY, subject.getMaxDistanceToCourierInKm(courier), 0);
+    }
+
+    @Test
+    public void getMaxDistanceToCourierInKm_invalidThreshold_exceptionThrown() {
+        subject = new OrderFilter(null, null, 0);
+
+        assertThrows(InvalidDistanceThresholdException.class,
+                () -> subject.getMaxDistanceToCourierInKm(new Courier()));
+    }
+
+    @Test
+    public void filterCouriers_sameRulesAsOrderFilters() {
+        final Location barcelona = new Location(41.3965463, 2.1963997);
+        final Location madrid = new Location(40.4167047, -3.7035825);
+        final List<Courier> couriers = Arrays.asList(
+                new Courier().withId("box-bicycle-barcelona").withBox(true).withVehicle(Vehicle.BICYCLE).withLocation(barcelona),
+                new Courier().withId("bicycle-barcelona").withBox(false).withVehicle(Vehicle.BICYCLE).withLocation(barcelona),
+                new Courier().withId("box-bicycle-madrid").withBox(true).withVehicle(Vehicle.BICYCLE).withLocation(madrid),
+                new Courier().withId("box-motorcycle-madrid").withBox(true).withVehicle(Vehicle.MOTORCYCLE).withLocation(madrid));
+
+        for (Order order : Arrays.asList(order1, order2)) {
+            for (Courier courier : couriers) {
+                assertEquals(subject.filterByCourierBox(courier).test(order) && subject.filterByDistanceToCourier(courier).test(order),
+                        subject.filterCouriers(order).test(courier), order.getDescription() + " " + courier.getId());
+            }
+        }
+        assertEquals(Arrays.asList("box-bicycle-barcelona", "box-motorcycle-madrid"), couriers.stream()
+                .filter(subject.filterCouriers(order1))
+                .map(Courier::getId)
+                .collect(Collectors.toList()));
+    }
+
 }
@@ -0,0 +1,129 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderSpatialIndex;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.RankedOrders;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.when;
+
+public class BatchOfferPipelineTest {
+
+    private BatchOfferPipeline subject;
+    private OfferPipeline offerPipeline;
+    private OrderStore store;
+    private OrderSpatialIndex index;
+    private Random random;
+
+    @Mock
+    private SortingPriorityConfig sortingPriorityConfig;
+    @Mock
+    private OrderSnapshot snapshot;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        final Map<Integer, String> sortingCriteriaMap = new HashMap<>();
+        sortingCriteriaMap.put(1, SortingCriteria.VIP.toString());
+        sortingCriteriaMap.put(2, SortingCriteria.DISTANCE_SLOT.toString());
+        sortingCriteriaMap.put(3, SortingCriteria.FOOD.toString());
+        sortingCriteriaMap.put(4, SortingCriteria.ABSOLUTE_DISTANCE.toString());
+        when(sortingPriorityConfig.getSortingCriteria()).thenReturn(sortingCriteriaMap);
+
+        final OrderFilter orderFilter = new OrderFilter("pizza,cake", ",", 5);
+        offerPipeline = new OfferPipeline(orderFilter, new OrderSorter(sortingPriorityConfig, 0.5));
+        subject = new BatchOfferPipeline(orderFilter, offerPipeline, 4);
+
+        random = new Random(5);
+        final List<Order> orders = IntStream.range(0, 1000)
+                .mapToObj(i -> new Order().withId("order-" + i)
+                        .withDescription(random.nextInt(4) == 0 ? "1x Pizza" : "1x Salad")
+                        .withFood(random.nextBoolean())
+                        .withVip(random.nextInt(10) == 0)
+                        .withPickup(randomLocation())
+                        .withDelivery(randomLocation()))
+                .collect(Collectors.toList());
+        store = new ColumnarOrderStore(orders);
+        index = OrderSpatialIndex.forDeliveries(store, 0.05);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(any(), anyDouble()))
+                .thenAnswer(invocation -> index.findNearby(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        subject.shutdown();
+    }
+
+    @Test
+    public void rankOrders_sameAsEveryCourierOnItsOwn() {
+        final Vehicle[] vehicles = Vehicle.values();
+        final List<Courier> couriers = IntStream.range(0, 200)
+                .mapToObj(i -> new Courier().withId("courier-" + i)
+                        .withName("Manolo Escobar")
+                        .withBox(random.nextBoolean())
+                        .withVehicle(vehicles[random.nextInt(vehicles.length)])
+                        .withLocation(randomLocation()))
+                .collect(Collectors.toList());
+
+        final Map<String, RankedOrders> rankedOrders = subject.rankOrders(snapshot, couriers, Integer.MAX_VALUE);
+
+        assertEquals(couriers.size(), rankedOrders.size());
+        for (Courier courier : couriers) {
+            final int[] expected = offerPipeline.rankOrders(store, IntStream.range(0, store.size()).toArray(), courier).rows().toArray();
+            assertArrayEquals(expected, rankedOrders.get(courier.getId()).rows().toArray(), courier.getId());
+        }
+    }
+
+    @Test
+    public void rankOrders_withLimit() {
+        final Courier courier = new Courier().withId("courier-1")
+                .withName("Manolo Escobar")
+                .withBox(true)
+                .withVehicle(Vehicle.MOTORCYCLE)
+                .withLocation(randomLocation());
+
+        final RankedOrders rankedOrders = subject.rankOrders(snapshot, Collections.singletonList(courier), 10).get(courier.getId());
+
+        assertEquals(10, rankedOrders.size());
+        assertTrue(rankedOrders.hasMore());
+    }
+
+    @Test
+    public void rankOrders_noCouriers() {
+        assertTrue(subject.rankOrders(snapshot, Collections.emptyList(), Integer.MAX_VALUE).isEmpty());
+    }
+
+    // Around Barcelona, spread over more than the distance threshold.
+    private Location randomLocation() {
+        return new Location(41.3965463 + random.nextGaussian() * 0.05, 2.1963997 + random.nextGaussian() * 0.05);
+    }
+}
@@ -0,0 +1,141 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OfferCacheTest {
+
+    private static final Location BARCELONA = new Location(41.3965463, 2.1963997);
+
+    private final List<Location> lookedUpLocations = new ArrayList<>();
+    private final List<Double> lookedUpRadiuses = new ArrayList<>();
+    private final BiFunction<Location, Double, int[]> lookup = (location, radiusInKm) -> {
+        lookedUpLocations.add(location);
+        lookedUpRadiuses.add(radiusInKm);
+        return new int[]{lookedUpLocations.size()};
+    };
+
+    @Test
+    public void findCandidates_disabled_exactLocation() {
+        final OfferCache subject = new OfferCache(0, 0.5);
+        final Courier courier = createCourier(Vehicle.BICYCLE, BARCELONA);
+
+        subject.findCandidates(1, courier, 5, lookup);
+        subject.findCandidates(1, courier, 5, lookup);
+
+        assertFalse(subject.isEnabled());
+        assertEquals(Arrays.asList(BARCELONA, BARCELONA), lookedUpLocations);
+        assertEquals(Arrays.asList(5.0, 5.0), lookedUpRadiuses);
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void findCandidates_sameCell_hit() {
+        final OfferCache subject = new OfferCache(10, 0.5);
+
+        final int[] first = subject.findCandidates(1, createCourier(Vehicle.BICYCLE, BARCELONA), 5, lookup);
+        final int[] second = subject.findCandidates(1, createCourier(Vehicle.BICYCLE, new Location(41.3965, 2.1964)), 5, lookup);
+
+        assertSame(first, second);
+        assertEquals(1, subject.getHits());
+        assertEquals(1, subject.getMisses());
+        // Looked up once, from the center of the cell, far enough to cover every courier in it.
+        assertEquals(1, lookedUpLocations.size());
+        final double distanceToCenter = DistanceCalculator.calculateDistance(BARCELONA, lookedUpLocations.get(0));
+        assertTrue(distanceToCenter < 0.5);
+        assertTrue(lookedUpRadiuses.get(0) >= 5 + distanceToCenter);
+    }
+
+    @Test
+    public void findCandidates_unlimitedDistance_sameCandidatesEverywhere() {
+        final OfferCache subject = new OfferCache(10, 0.5);
+
+        final int[] first = subject.findCandidates(1, createCourier(Vehicle.MOTORCYCLE, BARCELONA), Double.POSITIVE_INFINITY, lookup);
+
+        assertSame(first, subject.findCandidates(1, createCourier(Vehicle.MOTORCYCLE, new Location(40.4167047, -3.7035825)),
+                Double.POSITIVE_INFINITY, lookup));
+        assertEquals(Collections.singletonList(Double.POSITIVE_INFINITY), lookedUpRadiuses);
+    }
+
+    @Test
+    public void findCandidates_differentKey_miss() {
+        final OfferCache subject = new OfferCache(10, 0.5);
+        final int[] candidateRows = subject.findCandidates(1, createCourier(Vehicle.BICYCLE, BARCELONA), 5, lookup);
+
+        assertNotSame(candidateRows, subject.findCandidates(2, createCourier(Vehicle.BICYCLE, BARCELONA), 5, lookup));
+        assertNotSame(candidateRows, subject.findCandidates(1, createCourier(Vehicle.MOTORCYCLE, BARCELONA), Double.POSITIVE_INFINITY, lookup));
+        assertNotSame(candidateRows, subject.findCandidates(1, createCourier(Vehicle.BICYCLE, new Location(41.4165463, 2.1963997)), 5, lookup));
+        assertNotSame(candidateRows, subject.findCandidates(1, createCourier(Vehicle.BICYCLE, BARCELONA).withBox(false), 5, lookup));
+
+        assertEquals(0, subject.getHits());
+        assertEquals(5, subject.getMisses());
+    }
+
+    @Test
+    public void findCandidates_full_leastRecentlyUsedEvicted() {
+        final OfferCache subject = new OfferCache(2, 0.5);
+        final Courier courier = createCourier(Vehicle.BICYCLE, BARCELONA);
+        final Courier northCourier = createCourier(Vehicle.BICYCLE, new Location(41.4165463, 2.1963997));
+        final int[] here = subject.findCandidates(1, courier, 5, lookup);
+        final int[] north = subject.findCandidates(1, northCourier, 5, lookup);
+
+        subject.findCandidates(1, courier, 5, lookup); // The north cell is now the least recently used.
+        subject.findCandidates(1, createCourier(Vehicle.BICYCLE, new Location(41.3765463, 2.1963997)), 5, lookup);
+
+        assertEquals(2, subject.size());
+        assertEquals(2, subject.getRows());
+        assertSame(here, subject.findCandidates(1, courier, 5, lookup));
+        assertNotSame(north, subject.findCandidates(1, northCourier, 5, lookup));
+    }
+
+    @Test
+    public void findCandidates_newerVersion_olderVersionsDropped() {
+        final OfferCache subject = new OfferCache(10, 0.5);
+        final Courier courier = createCourier(Vehicle.BICYCLE, BARCELONA);
+        subject.findCandidates(1, courier, 5, lookup);
+        subject.findCandidates(1, createCourier(Vehicle.BICYCLE, new Location(41.4165463, 2.1963997)), 5, lookup);
+
+        final int[] version2 = subject.findCandidates(2, courier, 5, lookup);
+        assertEquals(1, subject.size());
+
+        // Older versions are still looked up, but no longer cached.
+        assertNotSame(subject.findCandidates(1, courier, 5, lookup), subject.findCandidates(1, courier, 5, lookup));
+        assertSame(version2, subject.findCandidates(2, courier, 5, lookup));
+        assertEquals(1, subject.size());
+        assertEquals(1, subject.getRows());
+    }
+
+    @Test
+    public void findCandidates_moreRowsThanMaximum_notCached() {
+        final OfferCache subject = new OfferCache(2, 0.5);
+        final Courier courier = createCourier(Vehicle.BICYCLE, BARCELONA);
+        final BiFunction<Location, Double, int[]> manyRows = (location, radiusInKm) -> new int[]{1, 2, 3};
+
+        assertNotSame(subject.findCandidates(1, courier, 5, manyRows), subject.findCandidates(1, courier, 5, manyRows));
+        assertEquals(0, subject.size());
+        assertEquals(0, subject.getRows());
+    }
+
+    private static Courier createCourier(Vehicle vehicle, Location location) {
+        return new Courier().withId("courier-1")
+                .withName("Manolo Escobar")
+                .withBox(true)
+                .withVehicle(vehicle)
+                .withLocation(location);
+    }
+}
@@ -0,0 +1,102 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.exceptions.OffersOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OfferExecutorTest {
+
+    private OfferExecutor subject;
+
+    @BeforeEach
+    public void setUp() {
+        subject = new OfferExecutor(1, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        subject.shutdown();
+    }
+
+    @Test
+    public void supply_offTheCallingThread() {
+        assertTrue(subject.supply(() -> Thread.currentThread().getName()).join().startsWith("offers-"));
+    }
+
+    @Test
+    public void supply_failsWithTheExceptionAsIs() {
+        final CourierNotFoundException exception = new CourierNotFoundException();
+        final CompletableFuture<Object> future = subject.supply(() -> {
+            throw exception;
+        });
+
+        final CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertSame(exception, e.getCause());
+        future.handle((value, thrown) -> {
+            assertSame(exception, thrown);
+            return null;
+        }).join();
+    }
+
+    @Test
+    public void supplyAfter_dependencyCompleted_appliedOnExecutor() {
+        final CompletableFuture<Integer> dependency = new CompletableFuture<>();
+        final CompletableFuture<String> future = subject.supplyAfter(dependency, value -> value + " on " + Thread.currentThread().getName());
+
+        dependency.complete(1);
+
+        assertTrue(future.join().startsWith("1 on offers-"));
+    }
+
+    @Test
+    public void supplyAfter_dependencyFailed_failsWithItsCauseAsIs() {
+        final CourierNotFoundException exception = new CourierNotFoundException();
+        final CompletableFuture<Integer> dependency = CompletableFuture.<Integer>supplyAsync(() -> {
+            throw exception;
+        }).thenApply(value -> value + 1);
+
+        subject.supplyAfter(dependency, value -> value).handle((value, thrown) -> {
+            assertSame(exception, thrown);
+            return null;
+        }).join();
+    }
+
+    @Test
+    public void supply_queueFull_overloaded() throws InterruptedException {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Integer> first = subject.supply(() -> {
+            running.countDown();
+            await(release);
+            return 1;
+        });
+        running.await();
+        final CompletableFuture<Integer> queued = subject.supply(() -> 2);
+
+        final CompletionException e = assertThrows(CompletionException.class, () -> subject.supply(() -> 3).join());
+        assertTrue(e.getCause() instanceof OffersOverloadedException);
+
+        release.countDown();
+        assertEquals(1, (int) first.join());
+        assertEquals(2, (int) queued.join());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.glovoapp.backender.offers;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.metrics.OfferMetrics;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.RankedOrders;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class OfferPipelineTest {
+
+    private OfferPipeline subject;
+    private OrderFilter orderFilter;
+    private OrderSorter orderSorter;
+    private OrderStore store;
+    private int[] allRows;
+
+    @Mock
+    private SortingPriorityConfig sortingPriorityConfig;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        final Map<Integer, String> sortingCriteriaMap = new HashMap<>();
+        sortingCriteriaMap.put(1, SortingCriteria.DISTANCE_SLOT.toString());
+        sortingCriteriaMap.put(2, SortingCriteria.VIP.toString());
+        sortingCriteriaMap.put(3, SortingCriteria.FOOD.toString());
+        sortingCriteriaMap.put(4, SortingCriteria.ABSOLUTE_DISTANCE.toString());
+        when(sortingPriorityConfig.getSortingCriteria()).thenReturn(sortingCriteriaMap);
+
+        orderFilter = new OrderFilter("pizza,cake", ",", 5);
+        orderSorter = new OrderSorter(sortingPriorityConfig, 0.5);
+        subject = new OfferPipeline(orderFilter, orderSorter);
+
+        final List<Order> orders = Arrays.asList(
+                createOrder("pizza-close", "1x Pizza", false, new Location(41.397117, 2.196976)),
+                createOrder("vip-close", "1x Salad", true, new Location(41.3973345, 2.19493746)),
+                createOrder("far", "1x Salad", true, new Location(40.4167047, -3.7035825)), // Madrid.
+                createOrder("closest", "1x Salad", false, new Location(41.3966, 2.1964)),
+                createOrder("second-slot", "1x Salad", false, new Location(41.4014394, 2.2030515)));
+        store = new ColumnarOrderStore(orders);
+        allRows = IntStream.range(0, store.size()).toArray();
+    }
+
+    @Test
+    public void rankOrders_withBox_inMotorcycle() {
+        final Courier courier = createCourier(true, Vehicle.MOTORCYCLE);
+
+        assertEquals(Arrays.asList("vip-close", "closest", "pizza-close", "second-slot", "far"), rankOrderIds(courier));
+    }
+
+    @Test
+    public void rankOrders_withoutBox_inBicycle() {
+        final Courier courier = createCourier(false, Vehicle.BICYCLE);
+
+        assertEquals(Arrays.asList("vip-close", "closest", "second-slot"), rankOrderIds(courier));
+    }
+
+    @Test
+    public void rankOrders_sameResultAsSeparateFilterAndSort() {
+        for (Courier courier : Arrays.asList(createCourier(true, Vehicle.BICYCLE), createCourier(false, Vehicle.ELECTRIC_SCOOTER))) {
+            final IntStream filteredRows = IntStream.of(allRows)
+                    .filter(orderFilter.filterByCourierBox(store, courier))
+                    .filter(orderFilter.filterByDistanceToCourier(store, courier));
+
+            assertArrayEquals(orderSorter.sortOrders(store, filteredRows, courier).toArray(),
+                    subject.rankOrders(store, allRows, courier).rows().toArray());
+        }
+    }
+
+    @Test
+    public void rankOrders_withLimit_pagesWithCursor() {
+        final Courier courier = createCourier(true, Vehicle.MOTORCYCLE);
+
+        final RankedOrders firstPage = subject.rankOrders(store, allRows, courier, 2, null);
+        assertEquals(Arrays.asList("vip-close", "closest"), ids(firstPage));
+        assertTrue(firstPage.hasMore());
+
+        final RankedOrders secondPage = subject.rankOrders(store, allRows, courier, 2, firstPage.getNextCursor(orderSorter.getPlan(), store));
+        assertEquals(Arrays.asList("pizza-close", "second-slot"), ids(secondPage));
+
+        final RankedOrders lastPage = subject.rankOrders(store, allRows, courier, 2, secondPage.getNextCursor(orderSorter.getPlan(), store));
+        assertEquals(Arrays.asList("far"), ids(lastPage));
+        assertFalse(lastPage.hasMore());
+        assertNull(lastPage.getNextCursor(orderSorter.getPlan(), store));
+    }
+
+    @Test
+    public void rankOrders_recordsMetrics() {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final OfferPipeline pipeline = new OfferPipeline(orderFilter, orderSorter, new OfferMetrics(meterRegistry));
+
+        pipeline.rankOrders(store, allRows, createCourier(false, Vehicle.BICYCLE));
+
+        assertEquals(1, meterRegistry.get("backender.offers.stage").tag("stage", "filter").timer().count());
+        assertEquals(1, meterRegistry.get("backender.offers.stage").tag("stage", "sort").timer().count());
+        assertEquals(5, meterRegistry.get("backender.offers.orders").tag("set", "candidates").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("backender.offers.orders").tag("set", "excluded_by_box").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("backender.offers.orders").tag("set", "excluded_by_distance").summary().totalAmount());
+        assertEquals(3, meterRegistry.get("backender.offers.orders").tag("set", "results").summary().totalAmount());
+        // The pizza is left out before its distance is calculated.
+        assertEquals(4, meterRegistry.get("backender.offers.distance.calculations").counter().count());
+    }
+
+    @Test
+    public void rankOrders_noCandidates() {
+        assertEquals(0, subject.rankOrders(store, new int[0], createCourier(true, Vehicle.MOTORCYCLE)).size());
+    }
+
+    private List<String> rankOrderIds(Courier courier) {
+        return ids(subject.rankOrders(store, allRows, courier));
+    }
+
+    private List<String> ids(RankedOrders rankedOrders) {
+        return rankedOrders.rows()
+                .mapToObj(store::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static Courier createCourier(boolean box, Vehicle vehicle) {
+        return new Courier().withId("courier-1")
+                .withBox(box)
+                .withName("Manolo Escobar")
+                .withVehicle(vehicle)
+                .withLocation(new Location(41.3965463, 2.1963997)); // Barcelona.
+    }
+
+    private static Order createOrder(String id, String description, boolean isVip, Location deliveryLocation) {
+        return new Order().withId(id)
+                .withDescription(description)
+                .withFood(true)
+                .withVip(isVip)
+                .withDelivery(deliveryLocation);
+    }
+}
@@ -6,11 +6,19 @@ import com.glovoapp.backender.entities.Vehicle;
 import com.glovoapp.backender.repositories.CourierRepository;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class CourierRepositoryTest {
     @Test
@@ -36,4 +44,178 @@ class CourierRepositoryTest {
         List<Courier> all = new CourierRepository().findAll();
         assertFalse(all.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateLocation_newCopyStored() {
+        CourierRepository subject = new CourierRepository();
+        Courier previous = subject.findById("courier-1");
+        Location location = new Location(41.4014394, 2.2030515);
+
+        Courier updated = subject.updateLocation("courier-1", location);
+
+        assertEquals(location, updated.getLocation());
+        assertEquals(previous.getName(), updated.getName());
+        assertEquals(previous.getVehicle(), updated.getVehicle());
+        assertSame(updated, subject.findById("courier-1"));
+        assertEquals(new Location(41.3965463, 2.1963997), previous.getLocation()); // Readers of the previous one see no change.
+    }
+
+    @Test
+    void updateLocation_notExisting() {
+        CourierRepository subject = new CourierRepository();
+
+        assertNull(subject.updateLocation("bad-courier-id", new Location(41.4014394, 2.2030515)));
+        assertNull(subject.findById("bad-courier-id"));
+    }
+
+    @Test
+    void updateLocation_listenersNotified() {
+        CourierRepository subject = new CourierRepository();
+        List<Courier> moved = new ArrayList<>();
+        subject.addChangeListener(new CourierChangeListener() {
+            @Override
+            public void courierMoved(Courier previous, Courier courier) {
+                moved.add(courier);
+            }
+
+            @Override
+            public void courierSaved(Courier previous, Courier courier) {
+            }
+
+            @Override
+            public void courierDeleted(Courier courier) {
+            }
+        });
+
+        Courier updated = subject.updateLocation("courier-1", new Location(41.4014394, 2.2030515));
+        subject.updateLocation("bad-courier-id", new Location(41.4014394, 2.2030515));
+
+        assertEquals(Collections.singletonList(updated), moved);
+    }
+
+    @Test
+    void updateLocation_listenersNotifiedAfterUpdate() {
+        CourierRepository subject = new CourierRepository();
+        String otherId = "courier-new";
+        subject.reload(Arrays.asList(subject.findById("courier-1"), new Courier().withId(otherId)
+                .withName("Ana")
+                .withBox(false)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.39, 2.19))));
+        List<Courier> found = new ArrayList<>();
+        subject.addChangeListener(new CourierChangeListener() {
+            @Override
+            public void courierMoved(Courier previous, Courier courier) {
+                found.add(subject.findById(courier.getId()));
+                // Updating from a listener does not deadlock the map.
+                if (courier.getId().equals("courier-1")) {
+                    subject.updateLocation(otherId, courier.getLocation());
+                }
+            }
+
+            @Override
+            public void courierSaved(Courier previous, Courier courier) {
+            }
+
+            @Override
+            public void courierDeleted(Courier courier) {
+            }
+        });
+
+        Courier updated = subject.updateLocation("courier-1", new Location(41.4014394, 2.2030515));
+
+        assertEquals(Arrays.asList(updated, subject.findById(otherId)), found);
+    }
+
+    @Test
+    void findAll_updatedCouriersInSameOrder() {
+        CourierRepository subject = new CourierRepository();
+        List<Courier> before = subject.findAll();
+
+        Courier updated = subject.updateLocation(before.get(0).getId(), new Location(41.4014394, 2.2030515));
+
+        List<Courier> after = subject.findAll();
+        assertEquals(before.size(), after.size());
+        assertSame(updated, after.get(0));
+    }
+
+    @Test
+    void couriersFile() throws IOException {
+        Path file = Files.createTempFile("couriers", ".json");
+        try {
+            Files.write(file, ("[{\"id\":\"courier-a\",\"name\":\"Ana\",\"box\":false,\"vehicle\":\"BICYCLE\"," +
+                    "\"location\":{\"lat\":41.39,\"lon\":2.19}}]").getBytes(StandardCharsets.UTF_8));
+
+            CourierRepository subject = new CourierRepository(file.toString());
+
+            assertEquals(1, subject.findAll().size());
+            assertEquals(Vehicle.BICYCLE, subject.findById("courier-a").getVehicle());
+            assertNull(subject.findById("courier-1"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void binaryFormat_sameCouriersAsWritten() throws IOException {
+        Path file = Files.createTempFile("couriers", ".bin");
+        try {
+            CourierRepository written = new CourierRepository();
+            written.updateLocation("courier-1", new Location(41.4, 2.18));
+            written.writeSnapshot(file);
+
+            CourierRepository subject = new CourierRepository(file.toString(), SourceFormat.BINARY);
+
+            assertEquals(written.findAll(), subject.findAll());
+            assertEquals(new Location(41.4, 2.18), subject.findById("courier-1").getLocation());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void reload_onlyDifferencesNotified() {
+        CourierRepository subject = new CourierRepository();
+        List<String> changes = new ArrayList<>();
+        subject.addChangeListener(new CourierChangeListener() {
+            @Override
+            public void courierMoved(Courier previous, Courier courier) {
+                changes.add("moved " + courier.getId());
+            }
+
+            @Override
+            public void courierSaved(Courier previous, Courier courier) {
+                changes.add("saved " + courier.getId() + (previous == null ? "" : " replacing " + previous.getId()));
+            }
+
+            @Override
+            public void courierDeleted(Courier courier) {
+                changes.add("deleted " + courier.getId());
+            }
+        });
+        Courier courier1 = subject.findById("courier-1");
+        Courier replaced = new Courier().withId("courier-1")
+                .withName(courier1.getName())
+                .withBox(!courier1.getBox())
+                .withVehicle(courier1.getVehicle())
+                .withLocation(courier1.getLocation());
+        Courier added = new Courier().withId("courier-new")
+                .withName("Ana")
+                .withBox(false)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.39, 2.19));
+        List<Courier> reloaded = Arrays.asList(replaced, added);
+
+        assertEquals(2, subject.reload(reloaded));
+
+        assertEquals(Arrays.asList("saved courier-1 replacing courier-1", "saved courier-new"), changes);
+        assertEquals(reloaded, subject.findAll());
+        assertSame(added, subject.findById("courier-new"));
+
+        assertEquals(1, subject.reload(Collections.singletonList(added)));
+
+        assertEquals("deleted courier-1", changes.get(2));
+        assertNull(subject.findById("courier-1"));
+        assertEquals(Collections.singletonList(added), subject.findAll());
+    }
+}
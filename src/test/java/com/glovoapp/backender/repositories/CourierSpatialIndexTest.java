@@ -0,0 +1,154 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierSpatialIndexTest {
+
+    private final Location barcelona = new Location(41.3965463, 2.1963997);
+
+    @Test
+    void findNearest_closestFirst() {
+        final CourierSpatialIndex subject = new CourierSpatialIndex(Arrays.asList(
+                courier("madrid", 40.4167047, -3.7035825),
+                courier("near", 41.3973345, 2.19493746),
+                courier("sydney", -33.8688, 151.2093),
+                courier("sabadell", 41.5463, 2.1086),
+                courier("gracia", 41.407834, 2.1675979)));
+
+        assertEquals(Arrays.asList("near", "gracia", "sabadell"), ids(subject.findNearest(barcelona, 3, c -> true)));
+        assertEquals(Arrays.asList("near", "gracia", "sabadell", "madrid", "sydney"), ids(subject.findNearest(barcelona, 10, c -> true)));
+    }
+
+    @Test
+    void findNearest_skipsCouriersRejectedByFilter() {
+        final CourierSpatialIndex subject = new CourierSpatialIndex(Arrays.asList(
+                courier("near", 41.3973345, 2.19493746).withBox(false),
+                courier("gracia", 41.407834, 2.1675979).withBox(true),
+                courier("madrid", 40.4167047, -3.7035825).withBox(true)));
+
+        assertEquals(Arrays.asList("gracia", "madrid"), ids(subject.findNearest(barcelona, 2, Courier::getBox)));
+    }
+
+    @Test
+    void findNearest_couriersWithoutLocation_neverFound() {
+        final CourierSpatialIndex subject = new CourierSpatialIndex(Arrays.asList(
+                new Courier().withId("nowhere"),
+                courier("near", 41.3973345, 2.19493746)));
+
+        assertEquals(Collections.singletonList("near"), ids(subject.findNearest(barcelona, 10, c -> true)));
+        assertTrue(subject.findNearest(new Location(null, 2.0), 10, c -> true).isEmpty());
+    }
+
+    @Test
+    void findNearest_acrossAntimeridian() {
+        final CourierSpatialIndex subject = new CourierSpatialIndex(Arrays.asList(
+                courier("west", -17.71, -179.99),
+                courier("far", -17.71, 179.5)));
+
+        assertEquals(Collections.singletonList("west"), ids(subject.findNearest(new Location(-17.71, 179.995), 1, c -> true)));
+    }
+
+    @Test
+    void findNearest_sameAsScanningEveryCourier() {
+        final Random random = new Random(42);
+        final List<Courier> couriers = randomCouriers(random, 2000);
+        final CourierSpatialIndex subject = new CourierSpatialIndex(couriers);
+
+        assertSameAsScan(random, subject, couriers);
+    }
+
+    @Test
+    void findNearest_followsRepositoryChanges_beforeAndAfterRebuild() {
+        final Random random = new Random(7);
+        final CourierRepository courierRepository = new CourierRepository();
+        courierRepository.reload(randomCouriers(random, 1000));
+        final CourierSpatialIndex subject = new CourierSpatialIndex(courierRepository);
+
+        // A few changes are kept aside, then enough of them rebuild the tree.
+        for (int changes : new int[]{10, 500}) {
+            final List<Courier> couriers = new ArrayList<>(courierRepository.findAll());
+            for (int i = 0; i < changes; i++) {
+                final Courier courier = couriers.get(random.nextInt(couriers.size()));
+                courierRepository.updateLocation(courier.getId(), randomLocation(random));
+            }
+            final List<Courier> reloaded = new ArrayList<>(courierRepository.findAll());
+            reloaded.remove(0);
+            reloaded.addAll(randomCouriers(random, 3));
+            courierRepository.reload(reloaded);
+
+            assertSameAsScan(random, subject, courierRepository.findAll());
+        }
+    }
+
+    @Test
+    void findNearest_manyMoves_rebuiltInBackground() {
+        final Random random = new Random(11);
+        final CourierRepository courierRepository = new CourierRepository();
+        courierRepository.reload(randomCouriers(random, 1000));
+        final CourierSpatialIndex subject = new CourierSpatialIndex(courierRepository);
+
+        final List<Courier> couriers = courierRepository.findAll();
+        for (int i = 0; i < 2000; i++) {
+            courierRepository.updateLocation(couriers.get(random.nextInt(couriers.size())).getId(), randomLocation(random));
+        }
+        subject.awaitRebuild();
+
+        // Only the moves since the last rebuild are scanned by the queries.
+        assertTrue(subject.changesAside() <= 32);
+        assertSameAsScan(random, subject, courierRepository.findAll());
+    }
+
+    private void assertSameAsScan(Random random, CourierSpatialIndex subject, List<Courier> couriers) {
+        final Predicate<Courier> filter = Courier::getBox;
+        for (int query = 0; query < 50; query++) {
+            final Location location = randomLocation(random);
+            final int k = 1 + random.nextInt(20);
+
+            final List<String> expected = couriers.stream()
+                    .filter(filter)
+                    .sorted(Comparator.comparingDouble((Courier c) -> DistanceCalculator.calculateDistance(location, c.getLocation())))
+                    .limit(k)
+                    .map(Courier::getId)
+                    .collect(Collectors.toList());
+            assertEquals(expected, ids(subject.findNearest(location, k, filter)));
+        }
+    }
+
+    private static List<Courier> randomCouriers(Random random, int count) {
+        final List<Courier> couriers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Location location = randomLocation(random);
+            couriers.add(courier("courier-" + random.nextLong(), location.getLat(), location.getLon()).withBox(random.nextBoolean()));
+        }
+        return couriers;
+    }
+
+    // Around Barcelona, so many couriers are close to each other.
+    private static Location randomLocation(Random random) {
+        return new Location(41.2 + random.nextDouble() * 0.4, 2.0 + random.nextDouble() * 0.4);
+    }
+
+    private static Courier courier(String id, double lat, double lon) {
+        return new Courier().withId(id).withBox(true).withVehicle(Vehicle.MOTORCYCLE).withLocation(new Location(lat, lon));
+    }
+
+    private static List<String> ids(List<Courier> couriers) {
+        return couriers.stream().map(Courier::getId).collect(Collectors.toList());
+    }
+}
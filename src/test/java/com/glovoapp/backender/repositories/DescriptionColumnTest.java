@@ -0,0 +1,99 @@
+package com.glovoapp.backender.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DescriptionColumnTest {
+
+    private final List<String> descriptions = Arrays.asList(
+            "2x Hot dog with Fries\n2x Kebab with Fries",
+            "1x Kebab with Fries\n2x Hot dog with Fries",
+            null,
+            "",
+            "Keys\n",
+            "Crème brûlée 🍮",
+            "2x Kebab with Fries");
+
+    @Test
+    void get_decodesEveryDescription() {
+        final DescriptionColumn subject = column(descriptions);
+
+        for (int row = 0; row < descriptions.size(); row++) {
+            assertEquals(descriptions.get(row), subject.get(row));
+        }
+        assertNull(subject.get(2));
+    }
+
+    @Test
+    void lineCount_repeatedLinesOnce() {
+        // Hot dog, 2x Kebab, 1x Kebab, the empty line, Keys and the crème brûlée.
+        assertEquals(6, column(descriptions).lineCount());
+    }
+
+    @Test
+    void matches_anyLine() {
+        final DescriptionColumn subject = column(descriptions);
+        final Predicate<String> kebab = line -> line.contains("Kebab");
+
+        assertTrue(subject.matches(0, kebab));
+        assertTrue(subject.matches(1, kebab));
+        assertFalse(subject.matches(2, kebab));
+        assertFalse(subject.matches(3, kebab));
+        assertFalse(subject.matches(4, kebab));
+        assertTrue(subject.matches(6, kebab));
+    }
+
+    @Test
+    void matches_testsEveryDistinctLineOnce() {
+        final DescriptionColumn subject = column(descriptions);
+        final AtomicInteger tests = new AtomicInteger();
+        final Predicate<String> hotDog = line -> {
+            tests.incrementAndGet();
+            return line.contains("Hot dog");
+        };
+
+        for (int i = 0; i < 3; i++) {
+            for (int row = 0; row < descriptions.size(); row++) {
+                subject.matches(row, hotDog);
+            }
+        }
+
+        assertEquals(subject.lineCount(), tests.get());
+    }
+
+    @Test
+    void matches_anotherMatcher_answersAgain() {
+        final DescriptionColumn subject = column(descriptions);
+
+        assertTrue(subject.matches(5, line -> line.contains("brûlée")));
+        assertFalse(subject.matches(5, line -> line.contains("Kebab")));
+    }
+
+    @Test
+    void builder_manyDescriptions() {
+        final DescriptionColumn.Builder builder = new DescriptionColumn.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("Order " + i + "\n1x Coke");
+        }
+
+        final DescriptionColumn subject = builder.build();
+
+        assertEquals("Order 999\n1x Coke", subject.get(999));
+        assertEquals(1001, subject.lineCount());
+    }
+
+    private static DescriptionColumn column(List<String> descriptions) {
+        final DescriptionColumn.Builder builder = new DescriptionColumn.Builder();
+        descriptions.forEach(builder::add);
+        return builder.build();
+    }
+}
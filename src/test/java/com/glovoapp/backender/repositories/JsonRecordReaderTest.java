@@ -0,0 +1,88 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonRecordReaderTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("records", ".json");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    void read_classpathResource() {
+        final List<Courier> couriers = new ArrayList<>();
+
+        assertEquals(1, JsonRecordReader.read("", "/couriers.json", Courier.class, couriers::add));
+        assertEquals("courier-1", couriers.get(0).getId());
+    }
+
+    @Test
+    void read_file_everyRecordInOrder() throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("[");
+            for (int i = 0; i < 250_000; i++) {
+                writer.write((i == 0 ? "" : ",") + "{\"id\":\"order-" + i + "\",\"food\":true,\"pickup\":{\"lat\":41.39,\"lon\":2.19}}");
+            }
+            writer.write("]");
+        }
+        final int[] count = new int[1];
+
+        final int read = JsonRecordReader.read(file.toString(), "/orders.json", Order.class, order -> {
+            assertEquals("order-" + count[0]++, order.getId());
+            assertEquals(new Location(41.39, 2.19), order.getPickup());
+        });
+
+        assertEquals(250_000, read);
+        assertEquals(250_000, count[0]);
+    }
+
+    @Test
+    void read_emptyArray() throws IOException {
+        Files.write(file, "[]".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, JsonRecordReader.read(file.toString(), "/orders.json", Order.class, order -> {
+        }));
+    }
+
+    @Test
+    void read_malformedFile_sourceInError() throws IOException {
+        Files.write(file, "[{\"id\":\"order-1\"},{\"id\":".getBytes(StandardCharsets.UTF_8));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> JsonRecordReader.read(file.toString(), "/orders.json", Order.class, order -> {
+                }));
+        assertTrue(e.getMessage().contains(file.toString()));
+    }
+
+    @Test
+    void read_missingFile() {
+        assertThrows(RuntimeException.class,
+                () -> JsonRecordReader.read(file + ".missing", "/orders.json", Order.class, order -> {
+                }));
+    }
+}
@@ -0,0 +1,134 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.glovoapp.backender.utils.DistanceCalculator.calculateDistance;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayeredOrderStoreTest {
+
+    @Test
+    void edit_baseUntouched() {
+        OrderStore base = new ColumnarOrderStore(Arrays.asList(createOrder(1), createOrder(2)));
+        LayeredOrderStore subject = new LayeredOrderStore(base);
+
+        LayeredOrderStore.Editor editor = subject.edit();
+        assertEquals(createOrder(1), editor.delete("order-1"));
+        assertNull(editor.save(createOrder(3)));
+        LayeredOrderStore edited = editor.build();
+
+        assertEquals(2, subject.size());
+        assertEquals(0, subject.findRow("order-1"));
+        assertEquals(0, subject.patchCount());
+        assertEquals(Arrays.asList("order-2", "order-3"), Arrays.asList(edited.getId(0), edited.getId(1)));
+        assertEquals(-1, edited.findRow("order-1"));
+        assertSame(base, edited.getBase());
+        assertTrue(edited.isPatched(0));
+        assertTrue(edited.isPatched(1));
+    }
+
+    @Test
+    void edit_randomWrites_sameOrdersAsMap() {
+        final Random random = new Random(42);
+        final List<Order> initial = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            initial.add(createOrder(i));
+        }
+        final Map<String, Order> expected = new HashMap<>();
+        initial.forEach(order -> expected.put(order.getId(), order));
+        LayeredOrderStore subject = new LayeredOrderStore(new ColumnarOrderStore(initial));
+
+        for (int round = 0; round < 50; round++) {
+            LayeredOrderStore.Editor editor = subject.edit();
+            for (int i = 0; i < 10; i++) {
+                final Order order = createOrder(random.nextInt(200)).withFood(random.nextBoolean());
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(order.getId()), editor.delete(order.getId()));
+                } else {
+                    assertEquals(expected.put(order.getId(), order), editor.save(order));
+                }
+            }
+            subject = editor.build();
+            assertSameOrders(expected, subject);
+        }
+
+        OrderStore compacted = subject.compact(OrderStorage.COLUMNAR);
+        assertTrue(compacted instanceof ColumnarOrderStore);
+        assertSameOrders(expected, new LayeredOrderStore(compacted));
+        for (int row = 0; row < compacted.size(); row++) {
+            assertEquals(subject.getOrder(row), compacted.getOrder(row));
+        }
+    }
+
+    @Test
+    void findNearby_patchedSnapshot_sameRowsAsScan() {
+        final List<Order> initial = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            initial.add(createOrder(i));
+        }
+        OrderSnapshot snapshot = new OrderSnapshot(0, OrderStorage.COLUMNAR, new ColumnarOrderStore(initial), 0.01);
+        final List<OrderChange> changes = new ArrayList<>();
+        for (int i = 0; i < 100; i += 3) {
+            changes.add(OrderChange.delete("order-" + i));
+        }
+        for (int i = 100; i < 130; i++) {
+            changes.add(OrderChange.save(createOrder(i)));
+        }
+        changes.add(OrderChange.save(createOrder(1).withDelivery(new Location(41.5, 2.3))));
+        snapshot = snapshot.apply(changes);
+
+        final Location location = new Location(41.3965463, 2.1963997);
+        final OrderStore store = snapshot.getStore();
+        final List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            if (calculateDistance(location, new Location(store.getDeliveryLat(row), store.getDeliveryLon(row))) <= 2) {
+                expected.add(row);
+            }
+        }
+        final List<Integer> rows = new ArrayList<>();
+        for (int row : snapshot.findNearby(location, 2)) {
+            if (calculateDistance(location, new Location(store.getDeliveryLat(row), store.getDeliveryLon(row))) <= 2) {
+                rows.add(row);
+            }
+        }
+        assertEquals(expected, rows);
+        assertFalse(expected.contains(snapshot.findRow("order-1")));
+    }
+
+    private static void assertSameOrders(Map<String, Order> expected, LayeredOrderStore store) {
+        assertEquals(expected.size(), store.size());
+        final List<String> ids = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            ids.add(store.getId(row));
+            assertEquals(row, store.findRow(store.getId(row)));
+            assertEquals(expected.get(store.getId(row)), store.getOrder(row));
+        }
+        final List<String> expectedIds = new ArrayList<>(expected.keySet());
+        Collections.sort(ids);
+        Collections.sort(expectedIds);
+        assertEquals(expectedIds, ids);
+    }
+
+    private static Order createOrder(int i) {
+        return new Order().withId("order-" + i)
+                .withDescription("Order " + i)
+                .withFood(i % 2 == 0)
+                .withVip(i % 5 == 0)
+                .withPickup(new Location(41.407834, 2.1675979))
+                .withDelivery(new Location(41.3965463 + i * 1e-3, 2.1963997));
+    }
+}
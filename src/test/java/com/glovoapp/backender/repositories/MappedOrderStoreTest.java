@@ -0,0 +1,100 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedOrderStoreTest {
+
+    private Path file;
+    private List<Order> orders;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("orders", ".bin");
+        orders = Arrays.asList(
+                new Order().withId("order-1")
+                        .withDescription("I want a pizza cut into very small slices")
+                        .withFood(true)
+                        .withVip(false)
+                        .withPickup(new Location(41.3965463, 2.1963997))
+                        .withDelivery(new Location(41.407834, 2.1675979)),
+                new Order().withId("order-2")
+                        .withDescription("Jamón ibérico, 2 × 100 g")
+                        .withFood(false)
+                        .withVip(true)
+                        .withPickup(new Location(40.4167047, -3.7035825))
+                        .withDelivery(new Location(40.4167047, -3.7035825)),
+                new Order().withId("order-3")
+                        .withFood(false)
+                        .withVip(false));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void writeThenOpen_sameOrders() {
+        MappedOrderStore.write(new ColumnarOrderStore(orders), file);
+
+        MappedOrderStore subject = MappedOrderStore.open(file);
+
+        assertEquals(3, subject.size());
+        assertEquals("order-2", subject.getId(1));
+        assertTrue(subject.isFood(0));
+        assertTrue(subject.isVip(1));
+        assertFalse(subject.isVip(2));
+        assertEquals(41.407834, subject.getDeliveryLat(0), 0);
+        assertNull(subject.getDescription(2));
+        assertTrue(Double.isNaN(subject.getPickupLat(2)));
+        for (int row = 0; row < orders.size(); row++) {
+            assertEquals(orders.get(row), subject.getOrder(row));
+        }
+    }
+
+    @Test
+    void write_empty() {
+        MappedOrderStore.write(new ColumnarOrderStore(Arrays.asList()), file);
+
+        assertEquals(0, MappedOrderStore.open(file).size());
+    }
+
+    @Test
+    void getId_rowOutOfRange() {
+        MappedOrderStore.write(new ColumnarOrderStore(orders), file);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> MappedOrderStore.open(file).getId(3));
+    }
+
+    @Test
+    void open_truncatedFile() throws IOException {
+        MappedOrderStore.write(new ColumnarOrderStore(orders), file);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, 100));
+
+        assertThrows(IllegalArgumentException.class, () -> MappedOrderStore.open(file));
+    }
+
+    @Test
+    void open_notASnapshot() throws IOException {
+        Files.write(file, "[{\"id\":\"order-1\"}]".getBytes("UTF-8"));
+
+        assertThrows(RuntimeException.class, () -> MappedOrderStore.open(file));
+    }
+}
@@ -0,0 +1,114 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapOrderStoreTest {
+
+    private Order order1;
+    private Order order2;
+    private OffHeapOrderStore subject;
+
+    @BeforeEach
+    void setUp() {
+        order1 = new Order().withId("order-1")
+                .withDescription("I want a pizza cut into very small slices")
+                .withFood(true)
+                .withVip(false)
+                .withPickup(new Location(41.3965463, 2.1963997))
+                .withDelivery(new Location(41.407834, 2.1675979));
+
+        order2 = new Order().withId("order-2")
+                .withDescription("I want a steak very big")
+                .withFood(false)
+                .withVip(true)
+                .withPickup(new Location(40.4167047, -3.7035825))
+                .withDelivery(new Location(40.4167047, -3.7035825));
+
+        subject = new OffHeapOrderStore(Arrays.asList(order1, order2));
+    }
+
+    @Test
+    void columns() {
+        assertEquals(2, subject.size());
+        assertEquals("order-2", subject.getId(1));
+        assertEquals("I want a steak very big", subject.getDescription(1));
+        assertTrue(subject.isFood(0));
+        assertFalse(subject.isFood(1));
+        assertFalse(subject.isVip(0));
+        assertTrue(subject.isVip(1));
+        assertEquals(41.3965463, subject.getPickupLat(0), 0);
+        assertEquals(2.1963997, subject.getPickupLon(0), 0);
+        assertEquals(41.407834, subject.getDeliveryLat(0), 0);
+        assertEquals(2.1675979, subject.getDeliveryLon(0), 0);
+    }
+
+    @Test
+    void getOrder_rebuildsOrder() {
+        assertEquals(order1, subject.getOrder(0));
+        assertEquals(order2, subject.getOrder(1));
+    }
+
+    @Test
+    void getOrder_missingFields() {
+        final OffHeapOrderStore store = new OffHeapOrderStore(Arrays.asList(new Order().withId("order-3")));
+
+        final Order order = store.getOrder(0);
+
+        assertEquals("order-3", order.getId());
+        assertFalse(order.getFood());
+        assertNull(order.getPickup());
+        assertNull(order.getDelivery());
+    }
+
+    @Test
+    void noOrders() {
+        assertEquals(0, new OffHeapOrderStore(new ArrayList<>()).size());
+        assertEquals(0, OrderStorage.OFF_HEAP.builder().build().size());
+    }
+
+    @Test
+    void builder_manyOrders_sameAsFromList() {
+        final List<Order> orders = new ArrayList<>();
+        final OrderStoreBuilder builder = OrderStorage.OFF_HEAP.builder();
+        for (int i = 0; i < 100; i++) {
+            final Order order = i % 2 == 0 ? order1 : order2;
+            orders.add(order);
+            builder.add(order);
+        }
+
+        final OrderStore store = builder.build();
+
+        assertEquals(100, store.size());
+        for (int row = 0; row < orders.size(); row++) {
+            assertEquals(orders.get(row), store.getOrder(row));
+        }
+    }
+
+    @Test
+    void builder_expectedSize_grownWhenExceeded() {
+        for (int expectedSize : new int[]{100, 50}) {
+            final OrderStoreBuilder builder = OrderStorage.OFF_HEAP.builder(expectedSize);
+            for (int i = 0; i < 100; i++) {
+                builder.add(i % 2 == 0 ? order1 : order2);
+            }
+
+            final OrderStore store = builder.build();
+
+            assertEquals(100, store.size());
+            assertEquals(order1, store.getOrder(98));
+            assertEquals(order2, store.getOrder(99));
+        }
+    }
+}
@@ -6,10 +6,24 @@ import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.repositories.OrderRepository;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class OrderRepositoryTest {
     @Test
@@ -29,4 +43,265 @@ class OrderRepositoryTest {
 
         assertEquals(expected, firstOrder);
     }
-}
\ No newline at end of file
+
+    @Test
+    void findAll_columnarStorage() {
+        assertEquals(new OrderRepository().findAll(), new OrderRepository(OrderStorage.COLUMNAR).findAll());
+    }
+
+    @Test
+    void findAll_offHeapStorage() {
+        assertEquals(new OrderRepository().findAll(), new OrderRepository(OrderStorage.OFF_HEAP).findAll());
+    }
+
+    @Test
+    void findNearby() {
+        OrderRepository subject = new OrderRepository();
+
+        assertArrayEquals(new int[]{0}, subject.findNearby(new Location(41.3965463, 2.1963997), 5));
+        assertEquals(0, subject.findNearby(new Location(40.4167047, -3.7035825), 5).length); // Madrid.
+        assertEquals("order-1", subject.getStore().getId(0));
+    }
+
+    @Test
+    void save_newOrder_lastRow() {
+        OrderRepository subject = new OrderRepository();
+        OrderSnapshot before = subject.getSnapshot();
+        Order order = createOrder("order-2", new Location(41.3965463, 2.1963997));
+
+        assertNull(subject.save(order));
+
+        OrderSnapshot after = subject.getSnapshot();
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertEquals(1, after.findRow("order-2"));
+        assertEquals(order, after.findById("order-2"));
+        assertArrayEquals(new int[]{0, 1}, after.findNearby(new Location(41.3965463, 2.1963997), 5));
+        // The previous snapshot does not change.
+        assertEquals(1, before.getStore().size());
+        assertEquals(-1, before.findRow("order-2"));
+    }
+
+    @Test
+    void save_existingOrder_sameRow() {
+        OrderRepository subject = new OrderRepository(OrderStorage.COLUMNAR);
+        Order previous = subject.getSnapshot().findById("order-1");
+        subject.save(createOrder("order-2", new Location(41.3965463, 2.1963997)));
+        Order order = createOrder("order-1", new Location(40.4167047, -3.7035825)); // Madrid.
+
+        assertEquals(previous, subject.save(order));
+
+        OrderSnapshot snapshot = subject.getSnapshot();
+        assertEquals(0, snapshot.findRow("order-1"));
+        assertEquals(order, snapshot.findById("order-1"));
+        assertArrayEquals(new int[]{0}, snapshot.findNearby(new Location(40.4167047, -3.7035825), 5));
+    }
+
+    @Test
+    void delete() {
+        OrderRepository subject = new OrderRepository();
+        Order order1 = subject.getSnapshot().findById("order-1");
+        subject.save(createOrder("order-2", new Location(41.3965463, 2.1963997)));
+
+        assertEquals(order1, subject.delete("order-1"));
+        assertNull(subject.delete("order-1"));
+
+        OrderSnapshot snapshot = subject.getSnapshot();
+        assertEquals(1, snapshot.getStore().size());
+        assertEquals(0, snapshot.findRow("order-2"));
+        assertEquals(-1, snapshot.findRow("order-1"));
+    }
+
+    @Test
+    void addChangeListener_notifiedOfChanges() {
+        OrderRepository subject = new OrderRepository();
+        List<String> changes = new ArrayList<>();
+        OrderSnapshot snapshot = subject.addChangeListener(new OrderChangeListener() {
+            @Override
+            public void orderSaved(Order previous, Order order) {
+                changes.add("saved " + order.getId() + (previous == null ? "" : " replacing " + previous.getId()));
+            }
+
+            @Override
+            public void orderDeleted(Order order) {
+                changes.add("deleted " + order.getId());
+            }
+        });
+
+        subject.save(createOrder("order-2", new Location(41.3965463, 2.1963997)));
+        subject.save(createOrder("order-2", new Location(41.3965463, 2.1963997)));
+        subject.delete("order-1");
+        subject.delete("order-not-found");
+
+        assertEquals(1, snapshot.getStore().size());
+        assertEquals(Arrays.asList("saved order-2", "saved order-2 replacing order-2", "deleted order-1"), changes);
+    }
+
+    @Test
+    void save_concurrentWriters_allPublished() throws InterruptedException {
+        OrderRepository subject = new OrderRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            final Order order = createOrder("order-new-" + i, new Location(41.3965463, 2.1963997));
+            executor.execute(() -> subject.save(order));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        OrderSnapshot snapshot = subject.getSnapshot();
+        assertEquals(1001, snapshot.getStore().size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(snapshot.findRow("order-new-" + i) > 0);
+        }
+        // Writes queued while another one was being published go together in the next snapshot.
+        assertTrue(snapshot.getVersion() <= 1000);
+    }
+
+    @Test
+    void ordersFile_streamedIntoStore() throws IOException {
+        Path file = Files.createTempFile("orders", ".json");
+        try {
+            Files.write(file, ("[{\"id\":\"order-a\",\"description\":\"Keys\",\"food\":false,\"vip\":true," +
+                    "\"pickup\":{\"lat\":41.39,\"lon\":2.19},\"delivery\":{\"lat\":41.4,\"lon\":2.18}}," +
+                    "{\"id\":\"order-b\",\"description\":\"1x Burger\",\"food\":true,\"vip\":false," +
+                    "\"pickup\":{\"lat\":40.41,\"lon\":-3.7},\"delivery\":{\"lat\":40.42,\"lon\":-3.71}}]").getBytes(StandardCharsets.UTF_8));
+
+            OrderSnapshot snapshot = new OrderRepository(OrderStorage.COLUMNAR, file.toString()).getSnapshot();
+
+            assertEquals(2, snapshot.getStore().size());
+            assertEquals(1, snapshot.findRow("order-b"));
+            assertEquals(new Location(41.4, 2.18), snapshot.findById("order-a").getDelivery());
+            assertArrayEquals(new int[]{1}, snapshot.findNearby(new Location(40.42, -3.71), 5));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void binaryFormat_mapsSnapshotThenWritesToStorage() throws IOException {
+        Path file = Files.createTempFile("orders", ".bin");
+        try {
+            new OrderRepository().writeSnapshot(file);
+
+            OrderRepository subject = new OrderRepository(OrderStorage.COLUMNAR, file.toString(), SourceFormat.BINARY);
+            assertTrue(subject.getStore() instanceof MappedOrderStore);
+            assertEquals(new OrderRepository().findAll(), subject.findAll());
+
+            Order order = createOrder("order-new", new Location(41.4, 2.19));
+            subject.save(order);
+            subject.compact();
+            assertTrue(subject.getStore() instanceof ColumnarOrderStore);
+            assertEquals(order, subject.getSnapshot().findById("order-new"));
+            assertEquals("order-1", subject.getSnapshot().findById("order-1").getId());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void partition_onlyOwnedOrdersLoaded() throws IOException {
+        final OrderPartition barcelona = order -> order.getDelivery().getLat() > 41;
+        final List<Order> expected = new ArrayList<>();
+        for (Order order : new OrderRepository().findAll()) {
+            if (barcelona.owns(order)) {
+                expected.add(order);
+            }
+        }
+
+        assertEquals(expected, new OrderRepository(OrderStorage.OBJECTS, "", SourceFormat.JSON, barcelona).findAll());
+
+        Path file = Files.createTempFile("orders", ".bin");
+        try {
+            new OrderRepository().writeSnapshot(file);
+            assertEquals(expected, new OrderRepository(OrderStorage.COLUMNAR, file.toString(), SourceFormat.BINARY, barcelona).findAll());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void reload_onlyDifferencesPublished() {
+        OrderRepository subject = new OrderRepository();
+        List<Order> orders = Arrays.asList(createOrder("order-1", new Location(41.39, 2.19)),
+                createOrder("order-2", new Location(41.39, 2.19)),
+                createOrder("order-3", new Location(41.39, 2.19)));
+        subject.reload(new ColumnarOrderStore(orders));
+        List<String> changes = new ArrayList<>();
+        subject.addChangeListener(new OrderChangeListener() {
+            @Override
+            public void orderSaved(Order previous, Order order) {
+                changes.add("saved " + order.getId() + (previous == null ? "" : " replacing " + previous.getId()));
+            }
+
+            @Override
+            public void orderDeleted(Order order) {
+                changes.add("deleted " + order.getId());
+            }
+        });
+        List<Order> reloaded = Arrays.asList(createOrder("order-2", new Location(41.4, 2.19)),
+                orders.get(2),
+                createOrder("order-new", new Location(41.4, 2.19)));
+        long version = subject.getSnapshot().getVersion();
+
+        assertEquals(3, subject.reload(new ColumnarOrderStore(reloaded)));
+
+        assertEquals(Arrays.asList("saved order-2 replacing order-2", "saved order-new", "deleted order-1"), changes);
+        assertEquals(version + 1, subject.getSnapshot().getVersion());
+        assertEquals(byId(reloaded), byId(subject.findAll()));
+    }
+
+    @Test
+    void reload_sameOrders_nothingPublished() {
+        OrderRepository subject = new OrderRepository();
+        OrderSnapshot snapshot = subject.getSnapshot();
+
+        assertEquals(0, subject.reload(new ColumnarOrderStore(subject.findAll())));
+        assertSame(snapshot, subject.getSnapshot());
+    }
+
+    @Test
+    void save_manyWrites_compactedWithoutLosingWrites() throws InterruptedException {
+        OrderRepository subject = new OrderRepository(OrderStorage.COLUMNAR);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 5000; i++) {
+            final Order order = createOrder("order-new-" + i, new Location(41.3965463 + i * 1e-5, 2.1963997));
+            executor.execute(() -> {
+                subject.save(order);
+                if (order.getId().endsWith("7")) {
+                    subject.delete(order.getId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        final long version = subject.getSnapshot().getVersion();
+        subject.compact();
+
+        OrderSnapshot snapshot = subject.getSnapshot();
+        assertTrue(snapshot.getVersion() > version);
+        assertTrue(snapshot.getStore() instanceof ColumnarOrderStore);
+        assertEquals(1 + 4500, snapshot.getStore().size());
+        for (int i = 0; i < 5000; i++) {
+            final int row = snapshot.findRow("order-new-" + i);
+            assertEquals(i % 10 != 7, row >= 0);
+            if (row >= 0) {
+                assertEquals("order-new-" + i, snapshot.getStore().getId(row));
+            }
+        }
+        assertEquals(snapshot.getStore().size(), snapshot.findNearby(new Location(41.3965463, 2.1963997), 50).length);
+    }
+
+    private static List<Order> byId(List<Order> orders) {
+        final List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(Comparator.comparing(Order::getId));
+        return sorted;
+    }
+
+    private static Order createOrder(String id, Location delivery) {
+        return new Order().withId(id)
+                .withDescription("1x Burger")
+                .withFood(true)
+                .withVip(false)
+                .withPickup(delivery)
+                .withDelivery(delivery);
+    }
+}
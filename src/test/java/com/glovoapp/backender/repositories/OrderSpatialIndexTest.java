@@ -0,0 +1,85 @@
+package com.glovoapp.backender.repositories;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderSpatialIndexTest {
+
+    private static final double CELL_SIZE_IN_DEGREES = 0.05;
+
+    private final Location barcelona = new Location(41.3965463, 2.1963997);
+    private OrderSpatialIndex subject;
+
+    @BeforeEach
+    void setUp() {
+        final List<Location> locations = Arrays.asList(
+                new Location(41.407834, 2.1675979), // Barcelona, ~2.6 km.
+                new Location(40.4167047, -3.7035825), // Madrid, ~500 km.
+                new Location(41.3973345, 2.19493746), // Barcelona, ~0.15 km.
+                new Location(41.5463, 2.1086), // Sabadell, ~18 km.
+                new Location(-33.8688, 151.2093)); // Sydney.
+
+        subject = index(locations);
+    }
+
+    @Test
+    void findNearby_onlyCellsInRange() {
+        assertArrayEquals(new int[]{0, 2}, subject.findNearby(barcelona, 5));
+    }
+
+    @Test
+    void findNearby_biggerRadius_keepsRowOrder() {
+        assertArrayEquals(new int[]{0, 2, 3}, subject.findNearby(barcelona, 25));
+    }
+
+    @Test
+    void findNearby_infiniteRadius_returnsAllRows() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, subject.findNearby(barcelona, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void findNearby_acrossAntimeridian() {
+        final OrderSpatialIndex index = index(Arrays.asList(
+                new Location(-17.71, 179.99),
+                new Location(-17.71, -179.99)));
+
+        assertArrayEquals(new int[]{0, 1}, index.findNearby(new Location(-17.71, 179.995), 5));
+    }
+
+    @Test
+    void findNearby_emptyIndex() {
+        final OrderSpatialIndex index = index(Collections.emptyList());
+
+        assertEquals(0, index.findNearby(barcelona, 5).length);
+        assertEquals(0, index.findNearby(barcelona, Double.POSITIVE_INFINITY).length);
+    }
+
+    @Test
+    void forDeliveries_indexesDeliveryLocation() {
+        final OrderStore store = new ObjectOrderStore(Arrays.asList(
+                new Order().withId("madrid-to-barcelona")
+                        .withPickup(new Location(40.4167047, -3.7035825))
+                        .withDelivery(new Location(41.407834, 2.1675979)),
+                new Order().withId("barcelona-to-madrid")
+                        .withPickup(new Location(41.407834, 2.1675979))
+                        .withDelivery(new Location(40.4167047, -3.7035825))));
+
+        assertArrayEquals(new int[]{0}, OrderSpatialIndex.forDeliveries(store, CELL_SIZE_IN_DEGREES).findNearby(barcelona, 5));
+    }
+
+    private static OrderSpatialIndex index(List<Location> locations) {
+        return new OrderSpatialIndex(locations.size(),
+                row -> locations.get(row).getLat(),
+                row -> locations.get(row).getLon(),
+                CELL_SIZE_IN_DEGREES);
+    }
+}
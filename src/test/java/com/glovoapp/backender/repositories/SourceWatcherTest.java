@@ -0,0 +1,93 @@
+package com.glovoapp.backender.repositories;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SourceWatcherTest {
+
+    private static final String ORDER_A = "{\"id\":\"order-a\",\"description\":\"Keys\",\"food\":false,\"vip\":false," +
+            "\"pickup\":{\"lat\":41.39,\"lon\":2.19},\"delivery\":{\"lat\":41.4,\"lon\":2.18}}";
+    private static final String ORDER_B = "{\"id\":\"order-b\",\"description\":\"1x Burger\",\"food\":true,\"vip\":false," +
+            "\"pickup\":{\"lat\":41.39,\"lon\":2.19},\"delivery\":{\"lat\":41.4,\"lon\":2.18}}";
+    private static final String COURIER_A = "{\"id\":\"courier-a\",\"name\":\"Ana\",\"box\":false,\"vehicle\":\"BICYCLE\"," +
+            "\"location\":{\"lat\":41.39,\"lon\":2.19}}";
+
+    private Path directory;
+    private Path ordersFile;
+    private Path couriersFile;
+    private OrderRepository orderRepository;
+    private CourierRepository courierRepository;
+    private SourceWatcher subject;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("sources");
+        ordersFile = directory.resolve("orders.json");
+        couriersFile = directory.resolve("couriers.json");
+        Files.write(ordersFile, ("[" + ORDER_A + "]").getBytes(StandardCharsets.UTF_8));
+        Files.write(couriersFile, ("[" + COURIER_A + "]").getBytes(StandardCharsets.UTF_8));
+
+        orderRepository = new OrderRepository(OrderStorage.COLUMNAR, ordersFile.toString());
+        courierRepository = new CourierRepository(couriersFile.toString());
+        subject = new SourceWatcher(orderRepository, courierRepository, true);
+        subject.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        subject.stop();
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void replacedOrdersFile_reloaded() throws Exception {
+        replace(ordersFile, "[" + ORDER_B + "]");
+
+        awaitUntil(() -> orderRepository.getSnapshot().findById("order-b") != null);
+        assertNull(orderRepository.getSnapshot().findById("order-a"));
+        assertEquals(1, orderRepository.getStore().size());
+        assertNotNull(courierRepository.findById("courier-a"));
+    }
+
+    @Test
+    void malformedFile_currentOrdersKept() throws Exception {
+        replace(ordersFile, "[" + ORDER_B + ",");
+        replace(couriersFile, "[]");
+
+        awaitUntil(() -> courierRepository.findAll().isEmpty());
+        assertNotNull(orderRepository.getSnapshot().findById("order-a"));
+        assertEquals(0, orderRepository.getSnapshot().getVersion());
+    }
+
+    private void replace(Path file, String content) throws IOException {
+        final Path temporary = Files.createTempFile("source", ".json");
+        Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
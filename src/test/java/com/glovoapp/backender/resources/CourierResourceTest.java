@@ -0,0 +1,111 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.CourierDistance;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.exceptions.InvalidLimitException;
+import com.glovoapp.backender.exceptions.InvalidLocationException;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.CourierSpatialIndex;
+import com.glovoapp.backender.repositories.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CourierResourceTest {
+
+    private CourierResource subject;
+
+    @Mock
+    private CourierRepository courierRepository;
+
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        final Location barcelona = new Location(41.3965463, 2.1963997);
+        orderRepository = new OrderRepository();
+        orderRepository.save(new Order().withId("pizza-order")
+                .withDescription("I want a pizza")
+                .withPickup(barcelona)
+                .withDelivery(new Location(41.407834, 2.1675979)));
+        final CourierSpatialIndex courierSpatialIndex = new CourierSpatialIndex(Arrays.asList(
+                new Courier().withId("near-without-box").withBox(false).withVehicle(Vehicle.MOTORCYCLE)
+                        .withLocation(new Location(41.3973345, 2.19493746)),
+                new Courier().withId("gracia").withBox(true).withVehicle(Vehicle.BICYCLE)
+                        .withLocation(new Location(41.407834, 2.1675979)),
+                new Courier().withId("sabadell").withBox(true).withVehicle(Vehicle.MOTORCYCLE)
+                        .withLocation(new Location(41.5463, 2.1086)),
+                new Courier().withId("madrid-bicycle").withBox(true).withVehicle(Vehicle.BICYCLE)
+                        .withLocation(new Location(40.4167047, -3.7035825))));
+
+        subject = new CourierResource(courierRepository, orderRepository, new OrderFilter("pizza", ",", 5), courierSpatialIndex);
+    }
+
+    @Test
+    public void updateLocation_success() {
+        final Location location = new Location(41.3965463, 2.1963997);
+        final Courier courier = new Courier().withId("courier-1").withLocation(location);
+        when(courierRepository.updateLocation("courier-1", location)).thenReturn(courier);
+
+        assertEquals(courier, subject.updateLocation("courier-1", location));
+        verify(courierRepository, times(1)).updateLocation("courier-1", location);
+    }
+
+    @Test
+    public void updateLocation_courierNotFound() {
+        final Location location = new Location(41.3965463, 2.1963997);
+        when(courierRepository.updateLocation("courier-not-found", location)).thenReturn(null);
+
+        CourierNotFoundException e = assertThrows(CourierNotFoundException.class, () -> subject.updateLocation("courier-not-found", location));
+        assertEquals("Courier not found.", e.getMessage());
+    }
+
+    @Test
+    public void updateLocation_invalidLocation() {
+        assertThrows(InvalidLocationException.class, () -> subject.updateLocation("courier-1", new Location(null, 2.1963997)));
+        assertThrows(InvalidLocationException.class, () -> subject.updateLocation("courier-1", new Location(91.0, 2.1963997)));
+        verify(courierRepository, never()).updateLocation(any(), any());
+    }
+
+    @Test
+    public void getNearestCouriers_eligibleCouriersClosestFirst() {
+        final List<CourierDistance> couriers = subject.getNearestCouriers("pizza-order", null);
+
+        assertEquals(Arrays.asList("gracia", "sabadell"), couriers.stream()
+                .map(courierDistance -> courierDistance.getCourier().getId())
+                .collect(Collectors.toList()));
+        assertEquals(2.71, couriers.get(0).getPickupDistanceInKm(), 0.01);
+    }
+
+    @Test
+    public void getNearestCouriers_k() {
+        assertEquals(1, subject.getNearestCouriers("pizza-order", 1).size());
+        assertThrows(InvalidLimitException.class, () -> subject.getNearestCouriers("pizza-order", 0));
+    }
+
+    @Test
+    public void getNearestCouriers_orderNotFound() {
+        assertThrows(OrderNotFoundException.class, () -> subject.getNearestCouriers("order-not-found", null));
+    }
+}
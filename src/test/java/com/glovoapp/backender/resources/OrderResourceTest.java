@@ -1,48 +1,101 @@
 package com.glovoapp.backender.resources;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.glovoapp.backender.entities.Courier;
 import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.OfferCacheStat;
 import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.entities.OrderVM;
+import com.glovoapp.backender.entities.Stat;
 import com.glovoapp.backender.entities.Vehicle;
 import com.glovoapp.backender.exceptions.CourierNotFoundException;
+import com.glovoapp.backender.exceptions.InvalidCursorException;
+import com.glovoapp.backender.exceptions.InvalidLimitException;
+import com.glovoapp.backender.exceptions.InvalidOrderException;
+import com.glovoapp.backender.exceptions.InvalidSortingCriteriaException;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
+import com.glovoapp.backender.exceptions.ShardUnavailableException;
 import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.metrics.OfferMetrics;
+import com.glovoapp.backender.offers.BatchOfferPipeline;
+import com.glovoapp.backender.offers.OfferCache;
+import com.glovoapp.backender.offers.OfferExecutor;
+import com.glovoapp.backender.offers.OfferPipeline;
 import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.ObjectOrderStore;
+import com.glovoapp.backender.repositories.OrderStore;
 import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderSnapshot;
 import com.glovoapp.backender.resources.OrderResource;
+import com.glovoapp.backender.sharding.ShardRouter;
+import com.glovoapp.backender.sorting.OrderCursor;
+import com.glovoapp.backender.sorting.RankedOrders;
 import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortPlan;
+import com.glovoapp.backender.sorting.SortPlanCache;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import com.glovoapp.backender.stats.StatsEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.doubleThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class OrderResourceTest {
 
     private OrderResource subject;
+    private SimpleMeterRegistry meterRegistry;
+    private OfferExecutor offerExecutor;
+    private SortPlan plan;
     private List<Order> orders;
+    private ObjectOrderStore store;
 
     private static final String ORDER_ID_1 = "1";
     private static final String ORDER_ID_2 = "2";
     private static final String ORDER_DESC_1 = "This is the description 1";
     private static final String ORDER_DESC_2 = "This is the description 2";
+    private static final double DISTANCE_THRESHOLD_IN_KM = 5;
 
     private Order order1;
     private Order order2;
@@ -50,17 +103,42 @@ public class OrderResourceTest {
     @Mock
     private OrderRepository orderRepository;
     @Mock
+    private OrderSnapshot snapshot;
+    @Mock
     private CourierRepository courierRepository;
     @Mock
     private OrderFilter orderFilter;
     @Mock
-    private OrderSorter orderSorter;
+    private OfferPipeline offerPipeline;
+    @Mock
+    private BatchOfferPipeline batchOfferPipeline;
+    @Mock
+    private StatsEngine statsEngine;
+    @Mock
+    private ShardRouter shardRouter;
+    private SortPlanCache sortPlanCache;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        subject = new OrderResource(orderRepository, courierRepository, orderSorter, orderFilter);
+        when(orderRepository.getSnapshot()).thenReturn(snapshot);
+        when(shardRouter.owns(any())).thenReturn(true);
+        when(shardRouter.saveLocally(anyString(), anyLong(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
+        when(shardRouter.deleteLocally(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        when(orderFilter.filterByCourierBox(any(OrderStore.class), any(Courier.class))).thenReturn(row -> true);
+        meterRegistry = new SimpleMeterRegistry();
+        offerExecutor = new OfferExecutor(1, 10);
+        final SortingPriorityConfig sortingPriorityConfig = new SortingPriorityConfig();
+        sortingPriorityConfig.getSortingCriteria().put(1, SortingCriteria.VIP.toString());
+        final OrderSorter orderSorter = new OrderSorter(sortingPriorityConfig, 0.5);
+        plan = orderSorter.getPlan();
+        sortPlanCache = new SortPlanCache(orderSorter, 10);
+        subject = new OrderResource(orderRepository, courierRepository, orderFilter, offerPipeline, batchOfferPipeline,
+                new OfferCache(0, 0.5), statsEngine, new OfferMetrics(meterRegistry), offerExecutor, sortPlanCache,
+                shardRouter, new ObjectMapper());
 
         // This order has the excluded word "pizza"
         order1 = new Order().withId(ORDER_ID_1)
@@ -78,12 +156,18 @@ public class OrderResourceTest {
                 .withDelivery(new Location(40.4167047, -3.7035825));
 
         orders = Arrays.asList(order1, order2);
+        store = new ObjectOrderStore(orders);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        offerExecutor.shutdown();
     }
 
     @Test
     public void orders_sucess() {
-        when(orderRepository.findAll()).thenReturn(orders);
-        List<OrderVM> orderVMList = subject.orders();
+        when(orderRepository.getStore()).thenReturn(store);
+        List<OrderVM> orderVMList = subject.orders().join();
 
         assertNotNull(orderVMList);
         assertFalse(orderVMList.isEmpty());
@@ -93,18 +177,45 @@ public class OrderResourceTest {
         assertEquals(ORDER_ID_2, orderVMList.get(1).getId());
         assertEquals(ORDER_DESC_2, orderVMList.get(1).getDescription());
 
-        verify(orderRepository, times(1)).findAll();
+        verify(orderRepository, times(1)).getStore();
     }
 
     @Test
     public void orders_emptyList_sucess() {
-        when(orderRepository.findAll()).thenReturn(Collections.emptyList());
-        List<OrderVM> orderVMList = subject.orders();
+        when(orderRepository.getStore()).thenReturn(new ObjectOrderStore(Collections.emptyList()));
+        List<OrderVM> orderVMList = subject.orders().join();
 
         assertNotNull(orderVMList);
         assertTrue(orderVMList.isEmpty());
 
-        verify(orderRepository, times(1)).findAll();
+        verify(orderRepository, times(1)).getStore();
+    }
+
+    @Test
+    public void streamOrders_oneOrderPerLine() throws IOException {
+        when(orderRepository.getStore()).thenReturn(store);
+        final ResponseEntity<StreamingResponseBody> response = subject.streamOrders();
+
+        assertEquals(OrderResource.NDJSON, response.getHeaders().getContentType());
+        assertEquals("{\"id\":\"1\",\"description\":\"This is the description 1\"}\n" +
+                "{\"id\":\"2\",\"description\":\"This is the description 2\"}\n", write(response.getBody()));
+    }
+
+    @Test
+    public void streamOrders_applicationMapper() throws IOException {
+        final OrderResource subject = new OrderResource(orderRepository, courierRepository, orderFilter, offerPipeline, batchOfferPipeline,
+                new OfferCache(0, 0.5), statsEngine, OfferMetrics.none(), offerExecutor, sortPlanCache,
+                shardRouter, new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL));
+        when(orderRepository.getStore()).thenReturn(new ObjectOrderStore(Collections.singletonList(new Order().withId("1"))));
+
+        assertEquals("{\"id\":\"1\"}\n", write(subject.streamOrders().getBody()));
+    }
+
+    @Test
+    public void streamOrders_emptyList() throws IOException {
+        when(orderRepository.getStore()).thenReturn(new ObjectOrderStore(Collections.emptyList()));
+
+        assertEquals("", write(subject.streamOrders().getBody()));
     }
 
     @Test
@@ -112,7 +223,7 @@ public class OrderResourceTest {
         final String courierId = "courier-not-found";
         when(courierRepository.findById(courierId)).thenReturn(null);
 
-        CourierNotFoundException e = assertThrows(CourierNotFoundException.class, () -> subject.getCourierOrders(courierId));
+        CourierNotFoundException e = assertThrows(CourierNotFoundException.class, () -> subject.getCourierOrders(courierId, null, null, null, null));
         assertEquals("Courier not found.", e.getMessage());
     }
 
@@ -127,12 +238,12 @@ public class OrderResourceTest {
                 .withLocation(new Location(41.3965463, 2.1963997));
 
         when(courierRepository.findById(courierId)).thenReturn(courier);
-        when(orderRepository.findAll()).thenReturn(orders);
-        when(orderFilter.filterByDistanceToCourier(courier)).thenReturn(o -> true);
-        when(orderFilter.filterByCourierBox(courier)).thenReturn(o -> true);
-        when(orderSorter.sortOrders(any(), eq(courier))).thenReturn(orders.stream());
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull())).thenReturn(ranked(false, 0, 1));
 
-        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId);
+        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId, null, null, null, null).join().getBody();
 
         assertNotNull(orderVMList);
         assertFalse(orderVMList.isEmpty());
@@ -143,10 +254,44 @@ public class OrderResourceTest {
         assertEquals(ORDER_DESC_2, orderVMList.get(1).getDescription());
 
         verify(courierRepository, times(1)).findById(courierId);
-        verify(orderRepository, times(1)).findAll();
-        verify(orderFilter, times(1)).filterByDistanceToCourier(courier);
-        verify(orderFilter, times(1)).filterByCourierBox(courier);
-        verify(orderSorter, times(1)).sortOrders(any(), eq(courier));
+        verify(snapshot, times(1)).findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM);
+        verify(orderFilter, times(1)).getMaxDistanceToCourierInKm(courier);
+        verify(offerPipeline, times(1)).rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull());
+
+        for (String stage : Arrays.asList("courier_lookup", "candidate_lookup", "response_mapping")) {
+            assertEquals(1, meterRegistry.get("backender.offers.stage").tag("stage", stage).timer().count());
+        }
+    }
+
+    @Test
+    public void getCourierOrders_cachedCandidates_rankedFromExactLocation() {
+        final OrderResource subject = new OrderResource(orderRepository, courierRepository, orderFilter, offerPipeline, batchOfferPipeline,
+                new OfferCache(10, 0.5), statsEngine, OfferMetrics.none(), offerExecutor, sortPlanCache,
+                shardRouter, new ObjectMapper());
+        final Courier courier1 = new Courier().withId("courier-1")
+                .withBox(false)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+        final Courier courier2 = new Courier().withId("courier-2")
+                .withBox(false)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965, 2.1964));
+        when(courierRepository.findById("courier-1")).thenReturn(courier1);
+        when(courierRepository.findById("courier-2")).thenReturn(courier2);
+        when(orderFilter.getMaxDistanceToCourierInKm(any(Courier.class))).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(orderFilter.filterByCourierBox(any(OrderStore.class), any(Courier.class))).thenReturn(row -> row != 0);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(any(), anyDouble())).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{1}), any(), eq(Integer.MAX_VALUE), isNull()))
+                .thenReturn(ranked(false, 1));
+
+        subject.getCourierOrders("courier-1", null, null, null, null).join();
+        subject.getCourierOrders("courier-2", null, null, null, null).join();
+
+        // Candidates are looked up once for the cell, and ranked from the location of each courier.
+        verify(snapshot, times(1)).findNearby(any(), doubleThat(radius -> radius > DISTANCE_THRESHOLD_IN_KM));
+        verify(offerPipeline).rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{1}), same(courier1), eq(Integer.MAX_VALUE), isNull());
+        verify(offerPipeline).rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{1}), same(courier2), eq(Integer.MAX_VALUE), isNull());
     }
 
     @Test
@@ -160,27 +305,20 @@ public class OrderResourceTest {
                 .withLocation(new Location(41.3965463, 2.1963997));
 
         when(courierRepository.findById(courierId)).thenReturn(courier);
-        when(orderRepository.findAll()).thenReturn(orders);
-        when(orderFilter.filterByCourierBox(courier)).thenReturn(o -> false);
-        when(orderFilter.filterByDistanceToCourier(courier)).thenReturn(o -> true);
-
-        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId);
-
-        ArgumentCaptor<Stream<Order>> filteredOrdersCaptor = ArgumentCaptor.forClass(Stream.class);
-        verify(orderSorter).sortOrders(filteredOrdersCaptor.capture(), eq(courier));
-        Stream<Order> filteredOrders = filteredOrdersCaptor.getValue();
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull())).thenReturn(ranked(false));
 
-        assertNotNull(filteredOrders);
-        assertTrue(filteredOrders.collect(Collectors.toList()).isEmpty());
+        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId, null, null, null, null).join().getBody();
 
         assertNotNull(orderVMList);
         assertTrue(orderVMList.isEmpty());
 
         verify(courierRepository, times(1)).findById(courierId);
-        verify(orderRepository, times(1)).findAll();
-        verify(orderFilter, times(1)).filterByDistanceToCourier(courier);
-        verify(orderFilter, times(1)).filterByCourierBox(courier);
-        verify(orderSorter, times(1)).sortOrders(any(), eq(courier));
+        verify(snapshot, times(1)).findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM);
+        verify(orderFilter, times(1)).getMaxDistanceToCourierInKm(courier);
+        verify(offerPipeline, times(1)).rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull());
     }
 
     @Test
@@ -194,14 +332,13 @@ public class OrderResourceTest {
                 .withLocation(new Location(41.3965463, 2.1963997));
 
         when(courierRepository.findById(courierId)).thenReturn(courier);
-        when(orderRepository.findAll()).thenReturn(orders);
-        when(orderFilter.filterByDistanceToCourier(courier)).thenReturn(o -> true);
-        when(orderFilter.filterByCourierBox(courier)).thenReturn(o -> true);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        RankedOrders ordersSorted = ranked(false, 1, 0);
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull())).thenReturn(ordersSorted);
 
-        Stream<Order> ordersSorted = Stream.of(order2, order1);
-        when(orderSorter.sortOrders(any(), eq(courier))).thenReturn(ordersSorted);
-
-        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId);
+        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId, null, null, null, null).join().getBody();
 
         assertNotNull(orderVMList);
         assertFalse(orderVMList.isEmpty());
@@ -212,11 +349,333 @@ public class OrderResourceTest {
         assertEquals(ORDER_DESC_1, orderVMList.get(1).getDescription());
 
         verify(courierRepository, times(1)).findById(courierId);
-        verify(orderRepository, times(1)).findAll();
-        verify(orderFilter, times(1)).filterByDistanceToCourier(courier);
-        verify(orderFilter, times(1)).filterByCourierBox(courier);
-        verify(orderSorter, times(1)).sortOrders(any(), eq(courier));
+        verify(snapshot, times(1)).findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM);
+        verify(orderFilter, times(1)).getMaxDistanceToCourierInKm(courier);
+        verify(offerPipeline, times(1)).rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull());
     }
 
+    @Test
+    public void getCourierOrders_withLimit_nextCursorHeader() {
+        final String courierId = "courier-1";
 
+        final Courier courier = new Courier().withId(courierId)
+                .withBox(true)
+                .withName("Manolo Escobar")
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+
+        when(courierRepository.findById(courierId)).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        final OrderCursor after = new OrderCursor(plan.getFingerprint(), 3, "7");
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(1), eq(after))).thenReturn(ranked(true, 1));
+
+        final ResponseEntity<List<OrderVM>> response = subject.getCourierOrders(courierId, 1, after.encode(), null, null).join();
+
+        assertEquals(1, response.getBody().size());
+        assertEquals(ORDER_ID_2, response.getBody().get(0).getId());
+        assertEquals(new OrderCursor(plan.getFingerprint(), 1, ORDER_ID_2).encode(), response.getHeaders().getFirst(OrderResource.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void getCourierOrders_cursorOfOtherCriteria_invalid() {
+        final String cursor = new OrderCursor(plan.getFingerprint(), 3, "7").encode();
+
+        assertThrows(InvalidCursorException.class,
+                () -> subject.getCourierOrders("courier-1", 1, cursor, Arrays.asList("FOOD", "VIP"), null));
+        verifyZeroInteractions(offerPipeline);
+    }
+
+    @Test
+    public void getCourierOrders_lastPage_noNextCursorHeader() {
+        final String courierId = "courier-1";
+
+        final Courier courier = new Courier().withId(courierId)
+                .withBox(true)
+                .withName("Manolo Escobar")
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+
+        when(courierRepository.findById(courierId)).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(5), isNull())).thenReturn(ranked(false, 1, 0));
+
+        final ResponseEntity<List<OrderVM>> response = subject.getCourierOrders(courierId, 5, null, null, null).join();
+
+        assertEquals(2, response.getBody().size());
+        assertFalse(response.getHeaders().containsKey(OrderResource.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void getCourierOrders_criteriaOverride() {
+        final String courierId = "courier-1";
+
+        final Courier courier = new Courier().withId(courierId)
+                .withBox(true)
+                .withName("Manolo Escobar")
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+
+        when(courierRepository.findById(courierId)).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(argThat((SortPlan p) -> p.getCriteria().equals(Arrays.asList(SortingCriteria.FOOD, SortingCriteria.DISTANCE_SLOT))
+                        && p.getSlotDistanceInKm() == 1), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(Integer.MAX_VALUE), isNull()))
+                .thenReturn(ranked(false, 1, 0));
+
+        final List<OrderVM> orderVMList = subject.getCourierOrders(courierId, null, null, Arrays.asList("FOOD", "DISTANCE_SLOT"), 1.0).join().getBody();
+
+        assertEquals(Arrays.asList(ORDER_ID_2, ORDER_ID_1), orderVMList.stream().map(OrderVM::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void getCourierOrders_invalidCriteria() {
+        assertThrows(InvalidSortingCriteriaException.class, () -> subject.getCourierOrders("courier-1", null, null, Arrays.asList("VIP", "CHEAPEST"), null));
+        assertThrows(InvalidSortingCriteriaException.class, () -> subject.getCourierOrders("courier-1", null, null, null, 0.0));
+    }
+
+    @Test
+    public void getCourierOrders_invalidLimit() {
+        InvalidLimitException e = assertThrows(InvalidLimitException.class, () -> subject.getCourierOrders("courier-1", 0, null, null, null));
+        assertEquals("Limit must be greater than zero.", e.getMessage());
+    }
+
+    @Test
+    public void getCourierOrders_invalidCursor() {
+        InvalidCursorException e = assertThrows(InvalidCursorException.class, () -> subject.getCourierOrders("courier-1", null, "not-a-cursor", null, null));
+        assertEquals("Invalid cursor.", e.getMessage());
+    }
+
+    @Test
+    public void streamCourierOrders_withLimit_nextCursorHeader() throws IOException {
+        final String courierId = "courier-1";
+
+        final Courier courier = new Courier().withId(courierId)
+                .withBox(true)
+                .withName("Manolo Escobar")
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+
+        when(courierRepository.findById(courierId)).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(store);
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0, 1});
+        when(offerPipeline.rankCarriedOrders(same(plan), eq(store), aryEq(new int[]{0, 1}), eq(courier), eq(1), isNull())).thenReturn(ranked(true, 1));
+
+        final ResponseEntity<StreamingResponseBody> response = subject.streamCourierOrders(courierId, 1, null, null, null).join();
+
+        assertEquals(OrderResource.NDJSON, response.getHeaders().getContentType());
+        assertEquals(new OrderCursor(plan.getFingerprint(), 1, ORDER_ID_2).encode(), response.getHeaders().getFirst(OrderResource.NEXT_CURSOR_HEADER));
+        assertEquals("{\"id\":\"2\",\"description\":\"This is the description 2\"}\n", write(response.getBody()));
+    }
+
+    @Test
+    public void streamCourierOrders_courierNotFound() {
+        final String courierId = "courier-not-found";
+        when(courierRepository.findById(courierId)).thenReturn(null);
+
+        assertThrows(CourierNotFoundException.class, () -> subject.streamCourierOrders(courierId, null, null, null, null));
+    }
+
+    private static String write(StreamingResponseBody body) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void getCouriersOrders_byCourierInRequestedOrder() {
+        final Courier courier1 = new Courier().withId("courier-1").withBox(true).withVehicle(Vehicle.BICYCLE);
+        final Courier courier2 = new Courier().withId("courier-2").withBox(false).withVehicle(Vehicle.MOTORCYCLE);
+        when(courierRepository.findById("courier-1")).thenReturn(courier1);
+        when(courierRepository.findById("courier-2")).thenReturn(courier2);
+        when(snapshot.getStore()).thenReturn(store);
+        final Map<String, RankedOrders> rankedOrders = new HashMap<>();
+        rankedOrders.put("courier-1", ranked(false, 0, 1));
+        rankedOrders.put("courier-2", ranked(false, 1));
+        when(batchOfferPipeline.rankOrders(snapshot, Arrays.asList(courier2, courier1), Integer.MAX_VALUE)).thenReturn(rankedOrders);
+
+        final Map<String, List<OrderVM>> orders = subject.getCouriersOrders(Arrays.asList("courier-2", "courier-1"), null).join();
+
+        assertEquals(Arrays.asList("courier-2", "courier-1"), new ArrayList<>(orders.keySet()));
+        assertEquals(1, orders.get("courier-2").size());
+        assertEquals(ORDER_ID_2, orders.get("courier-2").get(0).getId());
+        assertEquals(2, orders.get("courier-1").size());
+        assertEquals(ORDER_ID_1, orders.get("courier-1").get(0).getId());
+    }
+
+    @Test
+    public void getCouriersOrders_courierNotFound() {
+        when(courierRepository.findById("courier-1")).thenReturn(new Courier().withId("courier-1"));
+        when(courierRepository.findById("courier-not-found")).thenReturn(null);
+
+        assertThrows(CourierNotFoundException.class,
+                () -> subject.getCouriersOrders(Arrays.asList("courier-1", "courier-not-found"), null));
+        verify(batchOfferPipeline, never()).rankOrders(any(), any(), anyInt());
+    }
+
+    @Test
+    public void saveOrder_new_created() {
+        when(orderRepository.save(order1)).thenReturn(null);
+
+        final ResponseEntity<OrderVM> response = subject.saveOrder(order1);
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(ORDER_ID_1, response.getBody().getId());
+        assertEquals(ORDER_DESC_1, response.getBody().getDescription());
+        verify(orderRepository, times(1)).save(order1);
+    }
+
+    @Test
+    public void saveOrder_existing_replaced() {
+        when(orderRepository.save(order1)).thenReturn(order2);
+
+        assertEquals(HttpStatus.OK, subject.saveOrder(order1).getStatusCode());
+    }
+
+    @Test
+    public void saveOrder_withoutLocation_invalid() {
+        final Order order = new Order().withId("order-3").withPickup(new Location(41.3965463, 2.1963997));
+
+        InvalidOrderException e = assertThrows(InvalidOrderException.class, () -> subject.saveOrder(order));
+        assertEquals("Invalid order.", e.getMessage());
+        verify(orderRepository, never()).save(any());
+    }
+
+    @Test
+    public void deleteOrder_success() {
+        when(orderRepository.delete(ORDER_ID_1)).thenReturn(order1);
+
+        assertEquals(HttpStatus.NO_CONTENT, subject.deleteOrder(ORDER_ID_1).getStatusCode());
+        verify(shardRouter, never()).deleteRemotely(any());
+    }
+
+    @Test
+    public void deleteOrder_orderNotFound() {
+        when(orderRepository.delete("order-not-found")).thenReturn(null);
+
+        OrderNotFoundException e = assertThrows(OrderNotFoundException.class, () -> subject.deleteOrder("order-not-found"));
+        assertEquals("Order not found.", e.getMessage());
+    }
+
+    @Test
+    public void getCourierOrders_remoteShardsInRange_rankedWithLocalOrders() {
+        final Courier courier = new Courier().withId("courier-1")
+                .withBox(true)
+                .withVehicle(Vehicle.BICYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+        final List<String> remoteNodes = Collections.singletonList("http://localhost:8081");
+        when(courierRepository.findById("courier-1")).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(DISTANCE_THRESHOLD_IN_KM);
+        when(snapshot.getStore()).thenReturn(new ObjectOrderStore(Collections.singletonList(order1)));
+        when(snapshot.findNearby(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(new int[]{0});
+        when(offerPipeline.rankCarriedOrders(same(plan), any(), aryEq(new int[]{0}), eq(courier), eq(2), isNull()))
+                .thenReturn(ranked(false, 0));
+        when(shardRouter.remoteNodesInRange(courier.getLocation(), DISTANCE_THRESHOLD_IN_KM)).thenReturn(remoteNodes);
+        // The other instance only sends its first orders, one more than the limit.
+        when(shardRouter.findRemoteOrders(remoteNodes, courier, plan, 2, null))
+                .thenReturn(CompletableFuture.completedFuture(Arrays.asList(order2, order1)));
+        when(offerPipeline.rankOrders(same(plan), argThat(candidates -> candidates.size() == 2 && candidates.getOrder(1).equals(order2)),
+                aryEq(new int[]{0, 1}), eq(courier), eq(1), isNull())).thenReturn(ranked(true, 1));
+
+        final ResponseEntity<List<OrderVM>> response = subject.getCourierOrders("courier-1", 1, null, null, null).join();
+
+        assertEquals(Collections.singletonList(ORDER_ID_2), response.getBody().stream().map(OrderVM::getId).collect(Collectors.toList()));
+        assertNotNull(response.getHeaders().getFirst("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getCourierOrders_remoteShardUnavailable_failsAsIs() {
+        final Courier courier = new Courier().withId("courier-1")
+                .withBox(true)
+                .withVehicle(Vehicle.MOTORCYCLE)
+                .withLocation(new Location(41.3965463, 2.1963997));
+        final List<String> remoteNodes = Collections.singletonList("http://localhost:8081");
+        final CompletableFuture<List<Order>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new ShardUnavailableException(new RuntimeException("Connection refused")));
+        when(courierRepository.findById("courier-1")).thenReturn(courier);
+        when(orderFilter.getMaxDistanceToCourierInKm(courier)).thenReturn(Double.POSITIVE_INFINITY);
+        when(snapshot.getStore()).thenReturn(new ObjectOrderStore(Collections.singletonList(order1)));
+        when(snapshot.findNearby(courier.getLocation(), Double.POSITIVE_INFINITY)).thenReturn(new int[]{0});
+        when(offerPipeline.rankCarriedOrders(same(plan), any(), any(), eq(courier), anyInt(), isNull())).thenReturn(ranked(false, 0));
+        when(shardRouter.remoteNodesInRange(courier.getLocation(), Double.POSITIVE_INFINITY)).thenReturn(remoteNodes);
+        when(shardRouter.findRemoteOrders(remoteNodes, courier, plan, Integer.MAX_VALUE, null)).thenReturn(failed);
+
+        subject.getCourierOrders("courier-1", null, null, null, null).handle((response, e) -> {
+            assertTrue(e instanceof ShardUnavailableException);
+            return null;
+        }).join();
+    }
+
+    @Test
+    public void saveOrder_otherShard_savedInItsInstance() {
+        when(shardRouter.owns(order1)).thenReturn(false);
+        when(shardRouter.saveRemotely(order1)).thenReturn(true);
+
+        final ResponseEntity<OrderVM> response = subject.saveOrder(order1);
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(ORDER_ID_1, response.getBody().getId());
+        verify(orderRepository, never()).save(any());
+    }
+
+    @Test
+    public void saveOrder_newHere_deletedFromOtherInstancesLater() {
+        when(orderRepository.save(order1)).thenReturn(null);
+
+        assertEquals(HttpStatus.CREATED, subject.saveOrder(order1).getStatusCode());
+        verify(shardRouter).deleteRemotelyLater(eq(ORDER_ID_1), anyLong());
+        verify(shardRouter, never()).deleteRemotely(any());
+    }
+
+    @Test
+    public void deleteOrder_leftHereAfterMoving_deletedFromItsInstance() {
+        when(orderRepository.delete(ORDER_ID_1)).thenReturn(order1);
+        when(shardRouter.owns(order1)).thenReturn(false);
+        when(shardRouter.deleteRemotely(ORDER_ID_1)).thenReturn(false);
+
+        assertEquals(HttpStatus.NO_CONTENT, subject.deleteOrder(ORDER_ID_1).getStatusCode());
+        verify(shardRouter).deleteRemotely(ORDER_ID_1);
+    }
+
+    @Test
+    public void deleteOrder_inOtherInstance() {
+        when(orderRepository.delete(ORDER_ID_1)).thenReturn(null);
+        when(shardRouter.deleteRemotely(ORDER_ID_1)).thenReturn(true);
+
+        assertEquals(HttpStatus.NO_CONTENT, subject.deleteOrder(ORDER_ID_1).getStatusCode());
+    }
+
+    @Test
+    public void getStats_fromEngine() {
+        final Stat stat = new Stat(2, 1, 0.5f, 1000);
+        when(statsEngine.getStat()).thenReturn(stat);
+
+        assertEquals(stat, subject.getStats().join());
+        assertEquals(1, meterRegistry.get("backender.stats").timer().count());
+    }
+
+    @Test
+    public void getOfferCacheStats_disabledCache() {
+        final OfferCacheStat stat = subject.getOfferCacheStats();
+
+        assertEquals(0, stat.getHits());
+        assertEquals(0, stat.getMisses());
+        assertEquals(0, stat.getRows());
+        assertEquals(0, stat.getMaxRows());
+        assertEquals(0, stat.getHitRatio(), 0);
+    }
+
+    // The key of every ranked row is its row, enough for the resource.
+    private static RankedOrders ranked(boolean hasMore, int... rows) {
+        final long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = rows[i];
+        }
+        return new RankedOrders(rows, keys, hasMore);
+    }
 }
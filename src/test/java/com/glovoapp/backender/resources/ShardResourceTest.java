@@ -0,0 +1,152 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.exceptions.InvalidOrderException;
+import com.glovoapp.backender.exceptions.OrderNotFoundException;
+import com.glovoapp.backender.exceptions.OrderNotOwnedException;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.offers.OfferCache;
+import com.glovoapp.backender.offers.OfferPipeline;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.sharding.ShardRouter;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortPlanCache;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardResourceTest {
+
+    private ShardResource subject;
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(shardRouter.saveLocally(anyString(), anyLong(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
+        when(shardRouter.deleteLocally(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
+        orderRepository = new OrderRepository();
+        final OrderFilter orderFilter = new OrderFilter("pizza,cake", ",", 5);
+        final SortingPriorityConfig sortingPriorityConfig = new SortingPriorityConfig();
+        sortingPriorityConfig.getSortingCriteria().put(1, "VIP");
+        final OrderSorter orderSorter = new OrderSorter(sortingPriorityConfig, 0.5);
+        subject = new ShardResource(orderRepository, orderFilter, new OfferPipeline(orderFilter, orderSorter),
+                new OfferCache(1000, 0.5), new SortPlanCache(orderSorter, 10), shardRouter);
+    }
+
+    @Test
+    public void findCourierOrders_ordersInRange() {
+        final List<Order> orders = subject.findCourierOrders(41.3965463, 2.1963997, true, null,
+                Collections.singletonList("ABSOLUTE_DISTANCE"), 0.5, null, null);
+
+        assertTrue(!orders.isEmpty());
+        assertEquals(orderRepository.findAll().stream()
+                        .filter(order -> order.getDelivery().getLat() > 41)
+                        .map(Order::getId)
+                        .sorted()
+                        .collect(Collectors.toList()),
+                orders.stream().map(Order::getId).sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findCourierOrders_limit_firstOrdersOnly() {
+        final List<String> criteria = Collections.singletonList("ABSOLUTE_DISTANCE");
+        final List<Order> orders = subject.findCourierOrders(41.3965463, 2.1963997, true, null, criteria, 0.5, null, null);
+
+        assertEquals(orders.subList(0, 1), subject.findCourierOrders(41.3965463, 2.1963997, true, null, criteria, 0.5, 1, null));
+    }
+
+    @Test
+    public void saveOrder_newHere_deletedFromOtherInstancesLater() {
+        final Order order = new Order().withId("order-new")
+                .withDescription("Keys")
+                .withPickup(new Location(41.3965463, 2.1963997))
+                .withDelivery(new Location(41.407834, 2.1675979));
+        when(shardRouter.owns(order)).thenReturn(true);
+
+        assertEquals(HttpStatus.CREATED, subject.saveOrder(order).getStatusCode());
+        assertEquals(order, orderRepository.getSnapshot().findById("order-new"));
+        verify(shardRouter).deleteRemotelyLater(eq("order-new"), anyLong());
+    }
+
+    @Test
+    public void saveOrder_alreadyHere_notDeletedFromOtherInstances() {
+        final Order saved = orderRepository.getSnapshot().findById("order-1");
+        final Order order = new Order().withId("order-1")
+                .withDescription("Keys")
+                .withPickup(saved.getPickup())
+                .withDelivery(saved.getDelivery());
+        when(shardRouter.owns(order)).thenReturn(true);
+
+        assertEquals(HttpStatus.OK, subject.saveOrder(order).getStatusCode());
+        verify(shardRouter, never()).deleteRemotelyLater(any(), anyLong());
+    }
+
+    @Test
+    public void saveOrder_otherShard_rejected() {
+        final Order order = new Order().withId("order-new")
+                .withDescription("Keys")
+                .withPickup(new Location(41.3965463, 2.1963997))
+                .withDelivery(new Location(41.407834, 2.1675979));
+        when(shardRouter.owns(order)).thenReturn(false);
+
+        assertThrows(OrderNotOwnedException.class, () -> subject.saveOrder(order));
+        assertNull(orderRepository.getSnapshot().findById("order-new"));
+    }
+
+    @Test
+    public void saveOrder_invalid_rejected() {
+        final Order order = new Order().withId("order-new").withDescription("Keys");
+        when(shardRouter.owns(order)).thenReturn(true);
+
+        assertThrows(InvalidOrderException.class, () -> subject.saveOrder(order));
+        assertNull(orderRepository.getSnapshot().findById("order-new"));
+    }
+
+    @Test
+    public void deleteOrder_savedBefore_onlyWhenNotSavedSince() {
+        when(shardRouter.deleteLocallyIfSavedBefore(eq("order-1"), eq(100L), any())).thenReturn(false);
+        when(shardRouter.deleteLocallyIfSavedBefore(eq("order-1"), eq(200L), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Order>>getArgument(2).get() != null);
+
+        assertThrows(OrderNotFoundException.class, () -> subject.deleteOrder("order-1", 100L));
+        assertNotNull(orderRepository.getSnapshot().findById("order-1"));
+        assertEquals(HttpStatus.NO_CONTENT, subject.deleteOrder("order-1", 200L).getStatusCode());
+        assertNull(orderRepository.getSnapshot().findById("order-1"));
+    }
+
+    @Test
+    public void deleteOrder_onlyHere() {
+        assertEquals(HttpStatus.NO_CONTENT, subject.deleteOrder("order-1", null).getStatusCode());
+        assertNull(orderRepository.getSnapshot().findById("order-1"));
+        assertThrows(OrderNotFoundException.class, () -> subject.deleteOrder("order-1", null));
+    }
+}
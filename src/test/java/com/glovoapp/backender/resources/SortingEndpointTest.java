@@ -0,0 +1,44 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.exceptions.InvalidSortingCriteriaException;
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SortingEndpointTest {
+
+    private SortingEndpoint subject;
+
+    @BeforeEach
+    public void setUp() {
+        final SortingPriorityConfig config = new SortingPriorityConfig();
+        config.getSortingCriteria().put(1, SortingCriteria.VIP.toString());
+        config.getSortingCriteria().put(2, SortingCriteria.DISTANCE_SLOT.toString());
+        subject = new SortingEndpoint(new OrderSorter(config, 0.5));
+    }
+
+    @Test
+    public void criteria_configured() {
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.DISTANCE_SLOT), subject.criteria());
+    }
+
+    @Test
+    public void reloadCriteria_replacesThem() {
+        assertEquals(Arrays.asList(SortingCriteria.ABSOLUTE_DISTANCE, SortingCriteria.FOOD),
+                subject.reloadCriteria("ABSOLUTE_DISTANCE,DISTANCE_SLOT,FOOD"));
+        assertEquals(Arrays.asList(SortingCriteria.ABSOLUTE_DISTANCE, SortingCriteria.FOOD), subject.criteria());
+    }
+
+    @Test
+    public void reloadCriteria_invalid() {
+        assertThrows(InvalidSortingCriteriaException.class, () -> subject.reloadCriteria("VIP,vip "));
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.DISTANCE_SLOT), subject.criteria());
+    }
+}
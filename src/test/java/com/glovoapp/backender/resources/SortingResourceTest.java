@@ -0,0 +1,29 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.sorting.OrderSorter;
+import com.glovoapp.backender.sorting.SortingCriteria;
+import com.glovoapp.backender.sorting.SortingPriorityConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SortingResourceTest {
+
+    private SortingResource subject;
+
+    @BeforeEach
+    public void setUp() {
+        final SortingPriorityConfig config = new SortingPriorityConfig();
+        config.getSortingCriteria().put(1, SortingCriteria.VIP.toString());
+        config.getSortingCriteria().put(2, SortingCriteria.DISTANCE_SLOT.toString());
+        subject = new SortingResource(new OrderSorter(config, 0.5));
+    }
+
+    @Test
+    public void getCriteria_configured() {
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.DISTANCE_SLOT), subject.getCriteria());
+    }
+}
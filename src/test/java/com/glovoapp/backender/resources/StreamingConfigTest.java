@@ -0,0 +1,37 @@
+package com.glovoapp.backender.resources;
+
+import com.glovoapp.backender.exceptions.StreamingOverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingConfigTest {
+
+    @Test
+    public void streamingExecutor_queueFull_overloaded() throws InterruptedException {
+        final ThreadPoolTaskExecutor subject = new StreamingConfig(1, 1).streamingExecutor();
+        subject.initialize();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            subject.submit(() -> {
+                running.countDown();
+                release.await();
+                return null;
+            });
+            running.await();
+            subject.submit(() -> null); // Queued.
+
+            final TaskRejectedException e = assertThrows(TaskRejectedException.class, () -> subject.submit(() -> null));
+            assertTrue(e.getCause() instanceof StreamingOverloadedException);
+        } finally {
+            release.countDown();
+            subject.shutdown();
+        }
+    }
+}
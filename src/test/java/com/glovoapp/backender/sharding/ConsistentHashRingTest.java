@@ -0,0 +1,64 @@
+package com.glovoapp.backender.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES = Arrays.asList("http://localhost:8080", "http://localhost:8081", "http://localhost:8082");
+
+    @Test
+    void nodeFor_sameForEveryRingWithTheSameNodes() {
+        final ConsistentHashRing ring = new ConsistentHashRing(NODES, 100);
+        final ConsistentHashRing other = new ConsistentHashRing(NODES, 100);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.nodeFor("key-" + i), other.nodeFor("key-" + i));
+        }
+    }
+
+    @Test
+    void nodeFor_keysSpreadEvenly() {
+        final ConsistentHashRing ring = new ConsistentHashRing(NODES, 100);
+        final Map<String, Integer> keysByNode = new HashMap<>();
+
+        for (int i = 0; i < 30000; i++) {
+            keysByNode.merge(ring.nodeFor("key-" + i), 1, Integer::sum);
+        }
+
+        for (String node : NODES) {
+            assertTrue(keysByNode.get(node) > 7000, node + ": " + keysByNode.get(node));
+        }
+    }
+
+    @Test
+    void nodeFor_addingNode_onlyMovesKeysToIt() {
+        final ConsistentHashRing ring = new ConsistentHashRing(NODES, 100);
+        final ConsistentHashRing grown = new ConsistentHashRing(Arrays.asList(NODES.get(0), NODES.get(1), NODES.get(2),
+                "http://localhost:8083"), 100);
+
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            final String node = grown.nodeFor("key-" + i);
+            if (!node.equals(ring.nodeFor("key-" + i))) {
+                assertEquals("http://localhost:8083", node);
+                moved++;
+            }
+        }
+        assertTrue(moved > 1500 && moved < 3500, "moved: " + moved);
+    }
+
+    @Test
+    void noNodes_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Collections.emptyList(), 100));
+    }
+}
@@ -0,0 +1,58 @@
+package com.glovoapp.backender.sharding;
+
+import com.glovoapp.backender.entities.Location;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeohashTest {
+
+    @Test
+    void encode_knownGeohashes() {
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+        assertEquals("sp3e", Geohash.encode(41.3965463, 2.1963997, 4));
+        assertEquals("ezjm", Geohash.encode(40.4167047, -3.7035825, 4));
+    }
+
+    @Test
+    void encode_prefixOfLongerGeohash() {
+        final String geohash = Geohash.encode(-33.8688, 151.2093, 9);
+        for (int precision = 1; precision < 9; precision++) {
+            assertEquals(geohash.substring(0, precision), Geohash.encode(-33.8688, 151.2093, precision));
+        }
+    }
+
+    @Test
+    void covering_containsCellsOfLocationsInRange() {
+        final Random random = new Random(42);
+        final Location center = new Location(41.3965463, 2.1963997);
+        final Set<String> cells = Geohash.covering(center, 20, 4, 1024);
+
+        for (int i = 0; i < 1000; i++) {
+            // Up to ~14 km away in each direction, so within 20 km.
+            final double lat = center.getLat() + (random.nextDouble() - 0.5) * 0.25;
+            final double lon = center.getLon() + (random.nextDouble() - 0.5) * 0.25;
+            assertTrue(cells.contains(Geohash.encode(lat, lon, 4)));
+        }
+        assertTrue(cells.size() < 20);
+    }
+
+    @Test
+    void covering_acrossAntimeridian() {
+        final Set<String> cells = Geohash.covering(new Location(-17.71, 179.99), 5, 4, 1024);
+
+        assertTrue(cells.contains(Geohash.encode(-17.71, 179.99, 4)));
+        assertTrue(cells.contains(Geohash.encode(-17.71, -179.99, 4)));
+    }
+
+    @Test
+    void covering_tooManyCells_null() {
+        assertNull(Geohash.covering(new Location(41.3965463, 2.1963997), Double.POSITIVE_INFINITY, 3, 1024));
+        assertNull(Geohash.covering(new Location(41.3965463, 2.1963997), 1000, 5, 1024));
+    }
+}
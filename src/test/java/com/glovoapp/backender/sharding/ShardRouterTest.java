@@ -0,0 +1,202 @@
+package com.glovoapp.backender.sharding;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.exceptions.ShardUnavailableException;
+import com.glovoapp.backender.sorting.SortPlan;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShardRouterTest {
+
+    private static final String NODE_1 = "http://localhost:8080";
+    private static final String NODE_2 = "http://localhost:8081";
+    private static final String NODE_3 = "http://localhost:8082";
+    private static final String NODES = NODE_1 + ", " + NODE_2 + "," + NODE_3;
+
+    private final Location barcelona = new Location(41.3965463, 2.1963997);
+    private final Courier courier = new Courier().withId("courier-1").withBox(true).withLocation(barcelona);
+    private final SortPlan plan = SortPlan.compile(Collections.singletonList("VIP"), 0.5);
+
+    @Mock
+    private ShardClient shardClient;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    void singleInstance_ownsEveryOrder() {
+        final ShardRouter subject = new ShardRouter();
+
+        assertFalse(subject.isSharded());
+        assertTrue(subject.owns(order("order-1", 40.4167047, -3.7035825)));
+        assertTrue(subject.remoteNodesInRange(barcelona, Double.POSITIVE_INFINITY).isEmpty());
+        assertFalse(subject.deleteRemotely("order-1"));
+    }
+
+    @Test
+    void selfNotInNodes_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(NODES, "http://localhost:9090", 3, 100, shardClient));
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(NODES, NODE_1, 13, 100, shardClient));
+    }
+
+    @Test
+    void owns_everyOrderByExactlyOneInstance() {
+        final List<ShardRouter> routers = Arrays.asList(router(NODE_1, 4), router(NODE_2, 4), router(NODE_3, 4));
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            final Order order = order("order-" + i, 41 + random.nextDouble(), 2 + random.nextDouble());
+            assertEquals(1, routers.stream().filter(router -> router.owns(order)).count());
+        }
+        assertEquals(1, routers.stream().filter(router -> router.owns(new Order().withId("nowhere"))).count());
+    }
+
+    @Test
+    void remoteNodesInRange_ownersOfOrdersInRange() {
+        final ShardRouter subject = router(NODE_1, 4);
+        final List<ShardRouter> others = Arrays.asList(router(NODE_2, 4), router(NODE_3, 4));
+        final Random random = new Random(7);
+
+        for (int i = 0; i < 200; i++) {
+            final Location courier = new Location(41 + random.nextDouble(), 2 + random.nextDouble());
+            final List<String> remoteNodes = subject.remoteNodesInRange(courier, 5);
+            final Order order = order("order-" + i, courier.getLat() + (random.nextDouble() - 0.5) * 0.08,
+                    courier.getLon() + (random.nextDouble() - 0.5) * 0.08);
+            if (DistanceCalculator.calculateDistance(order.getDelivery(), courier) <= 5) {
+                for (ShardRouter other : others) {
+                    if (other.owns(order)) {
+                        assertTrue(remoteNodes.contains(subject.ownerOf(order)));
+                    }
+                }
+            }
+            assertFalse(remoteNodes.contains(NODE_1));
+        }
+        assertEquals(Arrays.asList(NODE_2, NODE_3), subject.remoteNodesInRange(barcelona, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void findRemoteOrders_inNodeOrder() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final Order order1 = order("order-1", 41.4, 2.19);
+        final Order order2 = order("order-2", 41.41, 2.18);
+        when(shardClient.findCourierOrders(NODE_2, courier, plan, 5, null))
+                .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(order1)));
+        when(shardClient.findCourierOrders(NODE_3, courier, plan, 5, null))
+                .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(order2)));
+
+        assertEquals(Arrays.asList(order1, order2), subject.findRemoteOrders(Arrays.asList(NODE_2, NODE_3), courier, plan, 5, null).join());
+    }
+
+    @Test
+    void findRemoteOrders_instanceDown_unavailable() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final CompletableFuture<List<Order>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new ShardUnavailableException(new RuntimeException("Connection refused")));
+        when(shardClient.findCourierOrders(NODE_2, courier, plan, 5, null)).thenReturn(failed);
+
+        subject.findRemoteOrders(Collections.singletonList(NODE_2), courier, plan, 5, null).handle((orders, e) -> {
+            assertTrue(e instanceof ShardUnavailableException);
+            return null;
+        }).join();
+    }
+
+    @Test
+    void saveRemotely_inOwner() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final Order order = order("order-1", 41.4, 2.19);
+        when(shardClient.save(subject.ownerOf(order), order)).thenReturn(CompletableFuture.completedFuture(true));
+
+        assertTrue(subject.saveRemotely(order));
+    }
+
+    @Test
+    void deleteRemotely_everyOtherInstance() {
+        final ShardRouter subject = router(NODE_1, 3);
+        when(shardClient.delete(NODE_2, "order-1", null)).thenReturn(CompletableFuture.completedFuture(false));
+        when(shardClient.delete(NODE_3, "order-1", null)).thenReturn(CompletableFuture.completedFuture(true));
+
+        assertTrue(subject.deleteRemotely("order-1"));
+        verify(shardClient, never()).delete(NODE_1, "order-1", null);
+    }
+
+    @Test
+    void deleteRemotelyLater_failuresNotThrown() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        when(shardClient.delete(NODE_2, "order-1", 100L)).thenReturn(failed);
+        when(shardClient.delete(NODE_3, "order-1", 100L)).thenReturn(new CompletableFuture<>());
+
+        subject.deleteRemotelyLater("order-1", 100L);
+        failed.completeExceptionally(new ShardUnavailableException(new RuntimeException("Connection refused")));
+
+        verify(shardClient).delete(NODE_2, "order-1", 100L);
+        verify(shardClient).delete(NODE_3, "order-1", 100L);
+        verify(shardClient, never()).delete(NODE_1, "order-1", 100L);
+    }
+
+    @Test
+    void deleteLocallyIfSavedBefore_savedSince_kept() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final Order order = order("order-1", 41.4, 2.19);
+        subject.saveLocally("order-1", 200L, () -> null);
+
+        assertFalse(subject.deleteLocallyIfSavedBefore("order-1", 100L, () -> order));
+        assertFalse(subject.deleteLocallyIfSavedBefore("order-1", 200L, () -> order));
+        assertTrue(subject.deleteLocallyIfSavedBefore("order-1", 300L, () -> order));
+        // Orders never saved here, such as the loaded ones, were saved before any other instance saved them.
+        assertTrue(subject.deleteLocallyIfSavedBefore("order-2", 100L, () -> order));
+    }
+
+    @Test
+    void deleteLocally_saveTimeForgotten() {
+        final ShardRouter subject = router(NODE_1, 3);
+        final Order order = order("order-1", 41.4, 2.19);
+        subject.saveLocally("order-1", 200L, () -> null);
+        subject.deleteLocally("order-1", () -> order);
+
+        assertTrue(subject.deleteLocallyIfSavedBefore("order-1", 100L, () -> order));
+    }
+
+    @Test
+    void shardOf_geohashOfDelivery() {
+        final ShardRouter subject = router(NODE_1, 4);
+
+        assertEquals("sp3e", subject.shardOf(barcelona));
+        assertEquals("", subject.shardOf(null));
+        assertNotEquals(subject.shardOf(barcelona), subject.shardOf(new Location(40.4167047, -3.7035825)));
+        verify(shardClient, never()).findCourierOrders(anyString(), any(), any(), anyInt(), any());
+    }
+
+    private ShardRouter router(String self, int precision) {
+        return new ShardRouter(NODES, self, precision, 100, shardClient);
+    }
+
+    private static Order order(String id, double lat, double lon) {
+        return new Order().withId(id).withPickup(new Location(lat, lon)).withDelivery(new Location(lat, lon));
+    }
+}
@@ -0,0 +1,72 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.exceptions.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderCursorTest {
+
+    @Test
+    public void decode_encoded_sameCursor() {
+        final OrderCursor cursor = new OrderCursor(-1, Long.MAX_VALUE, "order-1/ñ");
+
+        assertEquals(cursor, OrderCursor.decode(cursor.encode()));
+        assertEquals(new OrderCursor(0, 0, ""), OrderCursor.decode(new OrderCursor(0, 0, null).encode()));
+    }
+
+    @Test
+    public void decode_encodedIdWithBase64UrlSymbols_sameCursor() {
+        // Encoded as "b3JkZXJ-Pj8" and "Pz8_", with the symbols of base64url.
+        final OrderCursor cursor = new OrderCursor(5, 10, "order~>?");
+        final OrderCursor otherCursor = new OrderCursor(5, 10, "???");
+
+        assertTrue(cursor.encode().contains("-"));
+        assertEquals(cursor, OrderCursor.decode(cursor.encode()));
+        assertTrue(otherCursor.encode().contains("_"));
+        assertEquals(otherCursor, OrderCursor.decode(otherCursor.encode()));
+    }
+
+    @Test
+    public void decode_otherPlan_invalid() {
+        final SortPlan plan = SortPlan.compile(Arrays.asList("VIP", "DISTANCE_SLOT"), 0.5);
+        final String cursor = new OrderCursor(plan.getFingerprint(), 10, "order-5").encode();
+
+        assertEquals(new OrderCursor(plan.getFingerprint(), 10, "order-5"),
+                OrderCursor.decode(cursor, SortPlan.compile(Arrays.asList("VIP", "DISTANCE_SLOT", "VIP"), 0.5)));
+        assertThrows(InvalidCursorException.class,
+                () -> OrderCursor.decode(cursor, SortPlan.compile(Arrays.asList("DISTANCE_SLOT", "VIP"), 0.5)));
+        assertThrows(InvalidCursorException.class,
+                () -> OrderCursor.decode(cursor, SortPlan.compile(Arrays.asList("VIP", "DISTANCE_SLOT"), 1)));
+        // The slot only matters to the plans sorting by it.
+        assertEquals(SortPlan.compile(Arrays.asList("VIP", "FOOD"), 0.5).getFingerprint(),
+                SortPlan.compile(Arrays.asList("VIP", "FOOD"), 1).getFingerprint());
+    }
+
+    @Test
+    public void decode_invalid() {
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("abc"));
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("1.abc"));
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("1.xyz.abc"));
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("1.2.3.4"));
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("1.1.b3J*"));
+        assertThrows(InvalidCursorException.class, () -> OrderCursor.decode("100000000.1.abc"));
+    }
+
+    @Test
+    public void isBefore_byKeyThenId() {
+        final OrderCursor cursor = new OrderCursor(0, 10, "order-5");
+
+        assertTrue(cursor.isBefore(11, "order-0"));
+        assertTrue(cursor.isBefore(10, "order-6"));
+        assertFalse(cursor.isBefore(10, "order-5"));
+        assertFalse(cursor.isBefore(10, "order-4"));
+        assertFalse(cursor.isBefore(10, null));
+        assertFalse(cursor.isBefore(9, "order-9"));
+    }
+}
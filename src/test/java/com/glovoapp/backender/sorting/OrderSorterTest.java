@@ -4,6 +4,9 @@ import com.glovoapp.backender.entities.Courier;
 import com.glovoapp.backender.entities.Location;
 import com.glovoapp.backender.entities.Order;
 import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.exceptions.InvalidSortingCriteriaException;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.OrderStore;
 import com.glovoapp.backender.sorting.CourierPrioritizedOrder;
 import com.glovoapp.backender.sorting.OrderSorter;
 import com.glovoapp.backender.sorting.SortingCriteria;
@@ -14,17 +17,25 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -231,6 +242,134 @@ public class OrderSorterTest {
         assertEquals(order11, sortedOrders.get(10));
     }
 
+    @Test
+    public void sortOrders_rowsOfStore_defaultOrder() {
+        final List<Order> orders = orderStream.collect(Collectors.toList());
+        final OrderStore store = new ColumnarOrderStore(orders);
+
+        final List<Order> sortedOrders = subject.sortOrders(store, IntStream.range(0, store.size()), courier)
+                .mapToObj(orders::get)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(order1, order2, order3, order4, order5, order7, order6, order9, order8, order10, order11), sortedOrders);
+    }
+
+    @Test
+    public void sortOrders_manyOrders_sameAsComparingCriteria() {
+        final Random random = new Random(7);
+        final List<Order> orders = IntStream.range(0, 2000)
+                .mapToObj(i -> new Order().withId(String.valueOf(i))
+                        .withDescription("any description")
+                        .withFood(random.nextBoolean())
+                        .withVip(random.nextInt(10) == 0)
+                        .withDelivery(new Location(41.3965463 + random.nextGaussian() * 0.03, 2.1963997 + random.nextGaussian() * 0.03)))
+                .collect(Collectors.toList());
+
+        final Comparator<Order> byCriteria = Comparator
+                .comparing((Order o) -> (int) (DistanceCalculator.calculateDistance(o.getDelivery(), courier.getLocation()) / slotDistanceInKm))
+                .thenComparing(o -> !o.getVip())
+                .thenComparing(o -> !o.getFood())
+                .thenComparing(o -> DistanceCalculator.calculateDistance(o.getDelivery(), courier.getLocation()));
+
+        final List<Order> sortedOrders = subject.sortOrders(orders.stream(), courier).collect(Collectors.toList());
+
+        assertEquals(orders.stream().sorted(byCriteria).collect(Collectors.toList()), sortedOrders);
+    }
+
+    @Test
+    public void rankOrders_pagesWithCursor_sameAsFullRanking() {
+        final Random random = new Random(11);
+        final List<Order> orders = IntStream.range(0, 500)
+                .mapToObj(i -> new Order().withId(String.valueOf(i))
+                        .withDescription("any description")
+                        .withFood(random.nextBoolean())
+                        .withVip(random.nextBoolean())
+                        .withDelivery(new Location(41.3965463 + random.nextInt(20) * 0.001, 2.1963997)))
+                .collect(Collectors.toList());
+        final OrderStore store = new ColumnarOrderStore(orders);
+        final int[] rows = IntStream.range(0, store.size()).toArray();
+        final double[] distances = IntStream.of(rows)
+                .mapToDouble(row -> DistanceCalculator.calculateDistance(orders.get(row).getDelivery(), courier.getLocation()))
+                .toArray();
+
+        final int[] fullRanking = subject.rankOrders(store, rows, distances, Integer.MAX_VALUE, null).rows().toArray();
+
+        final List<Integer> pagedRanking = new ArrayList<>();
+        OrderCursor cursor = null;
+        RankedOrders page;
+        do {
+            page = subject.rankOrders(store, rows, distances, 30, cursor);
+            assertTrue(page.size() <= 30);
+            page.rows().forEach(pagedRanking::add);
+            cursor = page.getNextCursor(subject.getPlan(), store);
+        } while (page.hasMore());
+
+        assertArrayEquals(fullRanking, pagedRanking.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Test
+    public void rankOrders_tiesById_pagesSurviveDeletes() {
+        subject.reload(Collections.singletonList("VIP"));
+        final List<Order> orders = IntStream.range(0, 100)
+                .mapToObj(i -> new Order().withId(String.format("order-%03d", (i * 37) % 100))
+                        .withVip(false)
+                        .withDelivery(courier.getLocation()))
+                .collect(Collectors.toList());
+        final OrderStore store = new ColumnarOrderStore(orders);
+        final int[] rows = IntStream.range(0, store.size()).toArray();
+
+        final RankedOrders firstPage = subject.rankOrders(store, rows, new double[rows.length], 10, null);
+        assertEquals("order-009", store.getId(firstPage.getRow(9)));
+
+        // Every order but the first one, at other rows: the next page starts after the same id.
+        final List<Order> remaining = new ArrayList<>(orders.subList(1, orders.size()));
+        Collections.reverse(remaining);
+        final OrderStore nextStore = new ColumnarOrderStore(remaining);
+        final int[] nextRows = IntStream.range(0, nextStore.size()).toArray();
+        final RankedOrders secondPage = subject.rankOrders(nextStore, nextRows, new double[nextRows.length], 10,
+                firstPage.getNextCursor(subject.getPlan(), store));
+
+        assertEquals("order-010", nextStore.getId(secondPage.getRow(0)));
+        assertEquals(subject.rankOrders(nextStore, nextRows, new double[nextRows.length], Integer.MAX_VALUE,
+                firstPage.getNextCursor(subject.getPlan(), store)).rows().limit(10).boxed().collect(Collectors.toList()),
+                secondPage.rows().boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void rankOrders_limitLargerThanOrders_noMore() {
+        final OrderStore store = new ColumnarOrderStore(orderStream.collect(Collectors.toList()));
+        final int[] rows = IntStream.range(0, store.size()).toArray();
+
+        final RankedOrders rankedOrders = subject.rankOrders(store, rows, new double[rows.length], rows.length, null);
+
+        assertEquals(rows.length, rankedOrders.size());
+        assertFalse(rankedOrders.hasMore());
+        assertNull(rankedOrders.getNextCursor(subject.getPlan(), store));
+    }
+
+    @Test
+    public void sortOrders_reloadedCriteria() {
+        final List<Order> orders = orderStream.collect(Collectors.toList());
+        final Comparator<Order> byCriteria = Comparator
+                .comparing((Order o) -> !o.getFood())
+                .thenComparing(o -> DistanceCalculator.calculateDistance(o.getDelivery(), courier.getLocation()));
+
+        final SortPlan plan = subject.reload(Arrays.asList("FOOD", "ABSOLUTE_DISTANCE", "DISTANCE_SLOT"));
+
+        assertSame(plan, subject.getPlan());
+        assertEquals(Arrays.asList(SortingCriteria.FOOD, SortingCriteria.ABSOLUTE_DISTANCE), plan.getCriteria());
+        assertEquals(orders.stream().sorted(byCriteria).collect(Collectors.toList()),
+                subject.sortOrders(orders.stream(), courier).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void reload_invalidCriteria_keepsPlan() {
+        final SortPlan plan = subject.getPlan();
+
+        assertThrows(InvalidSortingCriteriaException.class, () -> subject.reload(Collections.singletonList("NEWEST")));
+        assertSame(plan, subject.getPlan());
+    }
+
     @Test
     public void sortOrders_emptyStream() {
         final Stream<Order> sortedStream = subject.sortOrders(Stream.empty(), courier);
@@ -0,0 +1,67 @@
+package com.glovoapp.backender.sorting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedSortKeyTest {
+
+    private static final double SLOT_DISTANCE_IN_KM = 0.5;
+
+    @Test
+    void encode_defaultCriteria() {
+        final PackedSortKey subject = new PackedSortKey(Arrays.asList(SortingCriteria.DISTANCE_SLOT, SortingCriteria.VIP,
+                SortingCriteria.FOOD, SortingCriteria.ABSOLUTE_DISTANCE), SLOT_DISTANCE_IN_KM);
+
+        // Slot first: a closer non VIP order goes before a VIP order of the next slot.
+        assertTrue(subject.encode(false, false, 0.49) < subject.encode(true, true, 0.51));
+        // Same slot: VIP, then food, then distance.
+        assertTrue(subject.encode(true, false, 0.4) < subject.encode(false, true, 0.1));
+        assertTrue(subject.encode(false, true, 0.4) < subject.encode(false, false, 0.1));
+        assertTrue(subject.encode(false, false, 0.1) < subject.encode(false, false, 0.1001));
+        assertEquals(subject.encode(true, true, 1.2), subject.encode(true, true, 1.2));
+    }
+
+    @Test
+    void encode_flagsFirst() {
+        final PackedSortKey subject = new PackedSortKey(Arrays.asList(SortingCriteria.VIP, SortingCriteria.FOOD,
+                SortingCriteria.DISTANCE_SLOT, SortingCriteria.ABSOLUTE_DISTANCE), SLOT_DISTANCE_IN_KM);
+
+        assertTrue(subject.encode(true, false, 2500) < subject.encode(false, true, 0));
+        assertTrue(subject.encode(false, true, 2500) < subject.encode(false, false, 0));
+    }
+
+    @Test
+    void encode_keysArePositive() {
+        final PackedSortKey subject = new PackedSortKey(Arrays.asList(SortingCriteria.VIP, SortingCriteria.FOOD,
+                SortingCriteria.DISTANCE_SLOT, SortingCriteria.ABSOLUTE_DISTANCE), 0.000001);
+
+        assertTrue(subject.getBits() <= 63);
+        assertTrue(subject.encode(false, false, 20015) > 0);
+        assertTrue(subject.encode(false, false, 20000) < subject.encode(false, false, 20015));
+        assertTrue(subject.encode(false, false, 20015) < subject.encode(false, false, Double.NaN));
+    }
+
+    @Test
+    void encode_repeatedCriteriaIgnored() {
+        final PackedSortKey repeated = new PackedSortKey(Arrays.asList(SortingCriteria.FOOD, SortingCriteria.FOOD,
+                SortingCriteria.ABSOLUTE_DISTANCE), SLOT_DISTANCE_IN_KM);
+        final PackedSortKey single = new PackedSortKey(Arrays.asList(SortingCriteria.FOOD,
+                SortingCriteria.ABSOLUTE_DISTANCE), SLOT_DISTANCE_IN_KM);
+
+        assertEquals(single.getBits(), repeated.getBits());
+        assertEquals(single.encode(false, false, 3), repeated.encode(false, false, 3));
+    }
+
+    @Test
+    void encode_noCriteria() {
+        final PackedSortKey subject = new PackedSortKey(Collections.emptyList(), SLOT_DISTANCE_IN_KM);
+
+        assertEquals(0, subject.getBits());
+        assertEquals(0, subject.encode(true, false, 3));
+    }
+}
@@ -0,0 +1,61 @@
+package com.glovoapp.backender.sorting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RadixSortTest {
+
+    @Test
+    void sort_fewKeys_insertionSort() {
+        final long[] keys = {5, 1, 3, 1, 0};
+        final int[] values = {0, 1, 2, 3, 4};
+
+        RadixSort.sort(keys, values, keys.length, 3);
+
+        assertArrayEquals(new long[]{0, 1, 1, 3, 5}, keys);
+        assertArrayEquals(new int[]{4, 1, 3, 2, 0}, values); // Stable: 1 before 3.
+    }
+
+    @Test
+    void sort_manyKeys_sameAsStableSort() {
+        final Random random = new Random(42);
+        for (int keyBits : new int[]{1, 8, 20, 53, 63}) {
+            final int size = 5000;
+            final long[] keys = random.longs(size, 0, keyBits == 63 ? Long.MAX_VALUE : 1L << keyBits).toArray();
+            final int[] values = IntStream.range(0, size).toArray();
+
+            final int[] expectedValues = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(i -> keys[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            final long[] expectedKeys = keys.clone();
+            Arrays.sort(expectedKeys);
+
+            RadixSort.sort(keys, values, size, keyBits);
+
+            assertArrayEquals(expectedKeys, keys);
+            assertArrayEquals(expectedValues, values);
+        }
+    }
+
+    @Test
+    void sort_onlyFirstKeys() {
+        final long[] keys = new long[100];
+        final int[] values = new int[100];
+        for (int i = 0; i < 60; i++) {
+            keys[i] = 60 - i;
+            values[i] = i;
+        }
+
+        RadixSort.sort(keys, values, 60, 6);
+
+        assertArrayEquals(IntStream.rangeClosed(1, 60).asLongStream().toArray(), Arrays.copyOf(keys, 60));
+        assertArrayEquals(new long[40], Arrays.copyOfRange(keys, 60, 100));
+    }
+}
@@ -0,0 +1,81 @@
+package com.glovoapp.backender.sorting;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SortPlanCacheTest {
+
+    private OrderSorter orderSorter;
+
+    @BeforeEach
+    public void setUp() {
+        final SortingPriorityConfig config = new SortingPriorityConfig();
+        config.getSortingCriteria().put(1, SortingCriteria.VIP.toString());
+        config.getSortingCriteria().put(2, SortingCriteria.DISTANCE_SLOT.toString());
+        orderSorter = new OrderSorter(config, 0.5);
+    }
+
+    @Test
+    public void getPlan_noOverride_configuredPlan() {
+        final SortPlanCache subject = new SortPlanCache(orderSorter, 10);
+
+        assertSame(orderSorter.getPlan(), subject.getPlan(null, null));
+        assertSame(orderSorter.getPlan(), subject.getPlan(Collections.emptyList(), null));
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void getPlan_sameOverride_compiledOnce() {
+        final SortPlanCache subject = new SortPlanCache(orderSorter, 10);
+
+        final SortPlan plan = subject.getPlan(Arrays.asList("FOOD", "ABSOLUTE_DISTANCE"), 1.0);
+
+        assertEquals(Arrays.asList(SortingCriteria.FOOD, SortingCriteria.ABSOLUTE_DISTANCE), plan.getCriteria());
+        assertEquals(1.0, plan.getSlotDistanceInKm(), 0);
+        assertSame(plan, subject.getPlan(Arrays.asList("FOOD", "ABSOLUTE_DISTANCE"), 1.0));
+        assertNotSame(plan, subject.getPlan(Arrays.asList("FOOD", "ABSOLUTE_DISTANCE"), 2.0));
+        assertEquals(2, subject.size());
+    }
+
+    @Test
+    public void getPlan_onlySlot_configuredCriteria() {
+        final SortPlanCache subject = new SortPlanCache(orderSorter, 10);
+
+        final SortPlan plan = subject.getPlan(null, 2.0);
+
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.DISTANCE_SLOT), plan.getCriteria());
+        assertEquals(2.0, plan.getSlotDistanceInKm(), 0);
+
+        orderSorter.reload(Collections.singletonList("FOOD"));
+        assertEquals(Collections.singletonList(SortingCriteria.FOOD), subject.getPlan(null, 2.0).getCriteria());
+    }
+
+    @Test
+    public void getPlan_leastRecentlyUsedEvicted() {
+        final SortPlanCache subject = new SortPlanCache(orderSorter, 2);
+        final SortPlan vip = subject.getPlan(Collections.singletonList("VIP"), null);
+        final SortPlan food = subject.getPlan(Collections.singletonList("FOOD"), null);
+
+        subject.getPlan(Collections.singletonList("VIP"), null); // FOOD is now the least recently used.
+        subject.getPlan(Collections.singletonList("ABSOLUTE_DISTANCE"), null);
+
+        assertEquals(2, subject.size());
+        assertSame(vip, subject.getPlan(Collections.singletonList("VIP"), null));
+        assertNotSame(food, subject.getPlan(Collections.singletonList("FOOD"), null));
+    }
+
+    @Test
+    public void getPlan_disabled_compiledEveryTime() {
+        final SortPlanCache subject = new SortPlanCache(orderSorter, 0);
+
+        assertNotSame(subject.getPlan(Collections.singletonList("VIP"), null), subject.getPlan(Collections.singletonList("VIP"), null));
+        assertEquals(0, subject.size());
+    }
+}
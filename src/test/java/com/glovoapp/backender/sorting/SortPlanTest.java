@@ -0,0 +1,60 @@
+package com.glovoapp.backender.sorting;
+
+import com.glovoapp.backender.exceptions.InvalidSortingCriteriaException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SortPlanTest {
+
+    @Test
+    public void compile_byPriority() {
+        final Map<Integer, String> criteria = new HashMap<>();
+        criteria.put(2, "FOOD");
+        criteria.put(1, "VIP");
+
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.FOOD), SortPlan.compile(criteria, 0.5).getCriteria());
+    }
+
+    @Test
+    public void compile_anyNumberOfCriteria() {
+        assertEquals(Collections.singletonList(SortingCriteria.ABSOLUTE_DISTANCE),
+                SortPlan.compile(Collections.singletonList("ABSOLUTE_DISTANCE"), 0.5).getCriteria());
+        assertEquals(Arrays.asList(SortingCriteria.DISTANCE_SLOT, SortingCriteria.VIP, SortingCriteria.FOOD, SortingCriteria.ABSOLUTE_DISTANCE),
+                SortPlan.compile(Arrays.asList("DISTANCE_SLOT", "VIP", "FOOD", "ABSOLUTE_DISTANCE"), 0.5).getCriteria());
+    }
+
+    @Test
+    public void compile_skipsCriteriaThatCantChangeTheResult() {
+        assertEquals(Arrays.asList(SortingCriteria.VIP, SortingCriteria.ABSOLUTE_DISTANCE, SortingCriteria.FOOD),
+                SortPlan.compile(Arrays.asList("VIP", "ABSOLUTE_DISTANCE", "VIP", "DISTANCE_SLOT", "FOOD"), 0.5).getCriteria());
+    }
+
+    @Test
+    public void compile_unknownCriterion() {
+        final InvalidSortingCriteriaException e = assertThrows(InvalidSortingCriteriaException.class,
+                () -> SortPlan.compile(Arrays.asList("VIP", "CHEAPEST"), 0.5));
+        assertEquals("Invalid sorting criteria: unknown criterion CHEAPEST", e.getMessage());
+    }
+
+    @Test
+    public void compile_noCriteria() {
+        assertThrows(InvalidSortingCriteriaException.class, () -> SortPlan.compile(Collections.<String>emptyList(), 0.5));
+        assertThrows(InvalidSortingCriteriaException.class, () -> SortPlan.compile(Collections.<Integer, String>emptyMap(), 0.5));
+    }
+
+    @Test
+    public void compile_missingPriority() {
+        final Map<Integer, String> criteria = new HashMap<>();
+        criteria.put(1, "VIP");
+        criteria.put(3, "FOOD");
+
+        assertThrows(InvalidSortingCriteriaException.class, () -> SortPlan.compile(criteria, 0.5));
+    }
+}
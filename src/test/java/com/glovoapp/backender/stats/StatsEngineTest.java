@@ -0,0 +1,325 @@
+package com.glovoapp.backender.stats;
+
+import com.glovoapp.backender.entities.Courier;
+import com.glovoapp.backender.entities.Location;
+import com.glovoapp.backender.entities.Order;
+import com.glovoapp.backender.entities.Stat;
+import com.glovoapp.backender.entities.Vehicle;
+import com.glovoapp.backender.filters.OrderFilter;
+import com.glovoapp.backender.repositories.ColumnarOrderStore;
+import com.glovoapp.backender.repositories.CourierRepository;
+import com.glovoapp.backender.repositories.OrderRepository;
+import com.glovoapp.backender.repositories.OrderSnapshot;
+import com.glovoapp.backender.repositories.OrderStore;
+import com.glovoapp.backender.utils.DistanceCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class StatsEngineTest {
+
+    private static final Location BARCELONA = new Location(41.3965463, 2.1963997);
+    private static final Location MADRID = new Location(40.4167047, -3.7035825);
+    private static final OrderFilter ORDER_FILTER = new OrderFilter("pizza,cake", ",", 5);
+
+    private StatsEngine subject;
+    private List<Order> orders;
+    private List<Courier> couriers;
+
+    @BeforeEach
+    public void setUp() {
+        orders = new ArrayList<>(Arrays.asList(
+                createOrder("order-1", true, BARCELONA),
+                createOrder("order-2", false, MADRID),
+                createOrder("order-3", true, new Location(41.407834, 2.1675979))));
+        couriers = new ArrayList<>(Arrays.asList(
+                createCourier("courier-1", BARCELONA),
+                createCourier("courier-2", new Location(41.4014394, 2.2030515))));
+        subject = new StatsEngine(orders, couriers, ORDER_FILTER);
+    }
+
+    @Test
+    public void getStat_initial() {
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void addOrder_andRemoveOrder() {
+        final Order order = createOrder("order-4", false, new Location(41.38, 2.17));
+        subject.addOrder(order);
+        orders.add(order);
+        assertStat(appliedStat());
+
+        subject.removeOrder("order-2");
+        orders.remove(1);
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void addOrder_sameId_replaced() {
+        final Order order = createOrder("order-2", true, BARCELONA);
+        subject.addOrder(order);
+        orders.set(1, order);
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void addCourier_moveCourier_removeCourier() {
+        final Courier courier = createCourier("courier-3", MADRID);
+        subject.addCourier(courier);
+        couriers.add(courier);
+        assertStat(appliedStat());
+
+        subject.moveCourier("courier-1", MADRID);
+        couriers.set(0, createCourier("courier-1", MADRID));
+        assertStat(appliedStat());
+
+        subject.removeCourier("courier-2");
+        couriers.remove(1);
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void moveCourier_latestMoveApplied() {
+        appliedStat();
+        subject.moveCourier("courier-1", MADRID);
+        subject.moveCourier("courier-1", BARCELONA);
+        subject.moveCourier("courier-1", MADRID);
+        couriers.set(0, createCourier("courier-1", MADRID));
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void moveCourier_thenReplaced_notMovedAgain() {
+        subject.moveCourier("courier-1", MADRID);
+        final Courier courier = createCourier("courier-1", BARCELONA);
+        subject.addCourier(courier);
+        couriers.remove(0);
+        couriers.add(courier);
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void unknownIds_ignored() {
+        subject.removeOrder("unknown");
+        subject.removeCourier("unknown");
+        subject.moveCourier("unknown", MADRID);
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void removeAllCouriers_noDistances() {
+        subject.removeCourier("courier-1");
+        subject.removeCourier("courier-2");
+
+        final Stat stat = appliedStat();
+        assertEquals(0, stat.getNumberOfCouriers().intValue());
+        assertTrue(Double.isNaN(stat.getAverageCourierToPickupDistanceInMeters()));
+
+        final Courier courier = createCourier("courier-3", BARCELONA);
+        subject.addCourier(courier);
+        assertStat(Collections.singletonList(courier), appliedStat());
+    }
+
+    @Test
+    public void longTripCourier_countedWithoutDistances() {
+        final Stat before = appliedStat();
+        final Courier courier = createCourier("courier-3", MADRID).withVehicle(Vehicle.MOTORCYCLE);
+        subject.addCourier(courier);
+        subject.moveCourier("courier-3", BARCELONA);
+
+        final Stat stat = appliedStat();
+        assertEquals(before.getNumberOfCouriers() + 1, stat.getNumberOfCouriers().intValue());
+        assertEquals(before.getAverageCourierToPickupDistanceInMeters(), stat.getAverageCourierToPickupDistanceInMeters(), 1e-6);
+
+        subject.removeCourier("courier-3");
+        assertEquals(before.getNumberOfCouriers(), appliedStat().getNumberOfCouriers());
+    }
+
+    @Test
+    public void moveCourier_outOfRange_pickupsNoLongerMeasured() {
+        subject.moveCourier("courier-1", MADRID);
+        subject.moveCourier("courier-2", MADRID);
+
+        final Stat stat = appliedStat();
+        // Only the pickup in Madrid is within range of them.
+        assertEquals(0, stat.getAverageCourierToPickupDistanceInMeters(), 1e-6);
+    }
+
+    @Test
+    public void manyChanges_sameAsRecomputing() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            final Location location = new Location(41.3965463 + random.nextGaussian() * 0.05, 2.1963997 + random.nextGaussian() * 0.05);
+            switch (random.nextInt(4)) {
+                case 0:
+                    final Order order = createOrder("order-" + random.nextInt(50), random.nextBoolean(), location);
+                    subject.addOrder(order);
+                    orders.removeIf(o -> o.getId().equals(order.getId()));
+                    orders.add(order);
+                    break;
+                case 1:
+                    final String orderId = "order-" + random.nextInt(50);
+                    subject.removeOrder(orderId);
+                    orders.removeIf(o -> o.getId().equals(orderId));
+                    break;
+                case 2:
+                    final Courier courier = createCourier("courier-" + random.nextInt(20), location)
+                            .withVehicle(random.nextInt(4) == 0 ? Vehicle.MOTORCYCLE : Vehicle.BICYCLE);
+                    subject.addCourier(courier);
+                    couriers.removeIf(c -> c.getId().equals(courier.getId()));
+                    couriers.add(courier);
+                    break;
+                default:
+                    if (!couriers.isEmpty()) {
+                        final Courier moved = couriers.get(random.nextInt(couriers.size()));
+                        subject.moveCourier(moved.getId(), location);
+                        moved.withLocation(location);
+                    }
+            }
+        }
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void listensToOrderRepository() {
+        final OrderRepository orderRepository = new OrderRepository();
+        subject = new StatsEngine(orderRepository, new CourierRepository(), ORDER_FILTER);
+        final int numberOfOrders = appliedStat().getNumberOfOrders();
+
+        orderRepository.save(createOrder("order-new", false, BARCELONA));
+        assertEquals(numberOfOrders + 1, appliedStat().getNumberOfOrders().intValue());
+
+        orderRepository.delete("order-new");
+        assertEquals(numberOfOrders, appliedStat().getNumberOfOrders().intValue());
+    }
+
+    @Test
+    public void ordersReadOnFirstStat() {
+        final OrderRepository orderRepository = mock(OrderRepository.class);
+        final OrderSnapshot snapshot = mock(OrderSnapshot.class);
+        final OrderStore store = spy(new ColumnarOrderStore(orders));
+        when(orderRepository.addChangeListener(any())).thenReturn(snapshot);
+        when(snapshot.getStore()).thenReturn(store);
+        final CourierRepository courierRepository = new CourierRepository();
+        courierRepository.reload(couriers);
+
+        subject = new StatsEngine(orderRepository, courierRepository, ORDER_FILTER);
+        verifyZeroInteractions(store);
+
+        assertStat(appliedStat());
+        verify(store, never()).getOrder(anyInt());
+    }
+
+    @Test
+    public void listensToCourierRepository() {
+        final OrderRepository orderRepository = new OrderRepository();
+        final CourierRepository courierRepository = new CourierRepository();
+        subject = new StatsEngine(orderRepository, courierRepository, ORDER_FILTER);
+        final String courierId = courierRepository.findAll().get(0).getId();
+
+        courierRepository.updateLocation(courierId, MADRID);
+
+        assertEquals(new StatsEngine(orderRepository.findAll(), courierRepository.findAll(), ORDER_FILTER).getStat().getAverageCourierToPickupDistanceInMeters(),
+                appliedStat().getAverageCourierToPickupDistanceInMeters(), 1e-6);
+    }
+
+    @Test
+    public void followsRepositoryReloads() {
+        final OrderRepository orderRepository = new OrderRepository();
+        final CourierRepository courierRepository = new CourierRepository();
+        subject = new StatsEngine(orderRepository, courierRepository, ORDER_FILTER);
+
+        orderRepository.reload(new ColumnarOrderStore(orders));
+        courierRepository.reload(Arrays.asList(createCourier("courier-1", MADRID), createCourier("courier-3", BARCELONA)));
+
+        assertStat(courierRepository.findAll(), appliedStat());
+    }
+
+    @Test
+    public void failedChange_laterChangesApplied() {
+        subject.addOrder(new Order().withId("order-4").withFood(false));
+        final Order order = createOrder("order-5", false, MADRID);
+        subject.addOrder(order);
+        orders.add(order);
+
+        assertStat(appliedStat());
+    }
+
+    @Test
+    public void getStat_readsPublishedStat() {
+        final Stat stat = appliedStat();
+
+        assertSame(stat, subject.getStat());
+    }
+
+    // The stat published once the changes queued so far are applied.
+    private Stat appliedStat() {
+        subject.awaitChanges();
+        return subject.getStat();
+    }
+
+    private void assertStat(Stat stat) {
+        assertStat(couriers, stat);
+    }
+
+    // Compares with the stats computed from scratch, over the pickups within the distance threshold of the couriers.
+    private void assertStat(List<Courier> couriers, Stat stat) {
+        final long nonFoodOrders = orders.stream().filter(o -> !o.getFood()).count();
+        double totalDistanceInKm = 0;
+        long countOfDistances = 0;
+        for (Courier c : couriers) {
+            for (Order o : orders) {
+                final double maxDistanceInKm = ORDER_FILTER.getMaxDistanceToCourierInKm(c);
+                final double distance = DistanceCalculator.calculateDistance(c.getLocation(), o.getPickup());
+                if (!Double.isInfinite(maxDistanceInKm) && distance <= maxDistanceInKm) {
+                    totalDistanceInKm += distance;
+                    countOfDistances++;
+                }
+            }
+        }
+
+        assertEquals(orders.size(), stat.getNumberOfOrders().intValue());
+        assertEquals(couriers.size(), stat.getNumberOfCouriers().intValue());
+        assertEquals((float) nonFoodOrders / orders.size(), stat.getPercentageOfNonFoodOrders(), 1e-6);
+        assertEquals(totalDistanceInKm / countOfDistances * 1000, stat.getAverageCourierToPickupDistanceInMeters(), 1e-6);
+    }
+
+    private static Order createOrder(String id, boolean food, Location pickup) {
+        return new Order().withId(id)
+                .withDescription("any description")
+                .withFood(food)
+                .withVip(false)
+                .withPickup(pickup)
+                .withDelivery(pickup);
+    }
+
+    private static Courier createCourier(String id, Location location) {
+        return new Courier().withId(id)
+                .withName("Manolo Escobar")
+                .withBox(true)
+                .withLocation(location);
+    }
+}